@@ -0,0 +1,123 @@
+-- TopLinks 数据库变更脚本
+-- 按时间顺序追加，已有数据库依次执行即可
+
+-- 文件表：增加可选的 SHA-256 哈希列
+ALTER TABLE `TLK_FILE` ADD COLUMN `sha256` VARCHAR(64) COMMENT '文件 SHA-256 哈希值（可选）' AFTER `hash`;
+
+-- 内容寻址去重：文件哈希索引与 blob 表
+ALTER TABLE `TLK_FILE` ADD KEY `idx_hash` (`hash`);
+CREATE TABLE IF NOT EXISTS `TLK_BLOB` (
+  `id`          VARCHAR(36)   NOT NULL PRIMARY KEY COMMENT '主键 UUID',
+  `hash`        VARCHAR(64)   NOT NULL              COMMENT '内容 SHA-256',
+  `size`        BIGINT        NOT NULL              COMMENT '内容大小（字节）',
+  `path`        VARCHAR(500)  NOT NULL              COMMENT '存储对象键',
+  `cloud_url`   VARCHAR(1000)                       COMMENT '公开访问地址',
+  `ref_count`   INT      DEFAULT 1                  COMMENT '引用该内容的文件数',
+  `create_time` DATETIME                            COMMENT '创建时间',
+  UNIQUE KEY `uk_hash_size` (`hash`, `size`),
+  UNIQUE KEY `uk_path` (`path`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='内容寻址存储对象表';
+
+-- 秒传预检：按 SHA-256 + 大小查找已有文件
+ALTER TABLE `TLK_FILE` ADD KEY `idx_sha256_size` (`sha256`, `size`);
+
+-- 异步上传：存储同步状态
+ALTER TABLE `TLK_FILE` ADD COLUMN `storage_status` INT DEFAULT 0 COMMENT '存储同步状态：0 已同步 1 待推送到 R2' AFTER `cloud_url`;
+ALTER TABLE `TLK_FILE` ADD KEY `idx_storage_status` (`storage_status`);
+
+-- 可续传上传会话表
+CREATE TABLE IF NOT EXISTS `TLK_UPLOAD_SESSION` (
+  `id`          VARCHAR(36)   NOT NULL PRIMARY KEY COMMENT '会话 ID',
+  `user_id`     VARCHAR(36)                         COMMENT '上传用户 ID',
+  `name`        VARCHAR(500)  NOT NULL              COMMENT '原始文件名',
+  `uid`         VARCHAR(10)   NOT NULL              COMMENT '预分配的访问码',
+  `path`        VARCHAR(500)  NOT NULL              COMMENT '目标存储对象键',
+  `size`        BIGINT        NOT NULL              COMMENT '文件总大小（字节）',
+  `chunk_size`  INT           NOT NULL              COMMENT '分片大小（字节）',
+  `chunk_count` INT           NOT NULL              COMMENT '分片总数',
+  `upload_id`   VARCHAR(1024)                       COMMENT 'R2 分片上传 ID，本地存储时为空',
+  `category_id` VARCHAR(36)                         COMMENT '所属分类 ID',
+  `create_time` DATETIME                            COMMENT '创建时间',
+  `update_time` DATETIME                            COMMENT '修改时间',
+  KEY `idx_create_time` (`create_time`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='可续传上传会话表';
+
+-- 可续传上传分片表
+CREATE TABLE IF NOT EXISTS `TLK_UPLOAD_CHUNK` (
+  `id`          VARCHAR(64)   NOT NULL PRIMARY KEY COMMENT '会话 ID:分片序号',
+  `session_id`  VARCHAR(36)   NOT NULL              COMMENT '会话 ID',
+  `chunk_index` INT           NOT NULL              COMMENT '分片序号，从 0 开始',
+  `size`        BIGINT                              COMMENT '分片大小（字节）',
+  `etag`        VARCHAR(255)                        COMMENT 'R2 分片 ETag',
+  `create_time` DATETIME                            COMMENT '创建时间',
+  KEY `idx_session` (`session_id`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='可续传上传分片表';
+
+-- 冷热分层：记录文件当前所在的存储层级
+ALTER TABLE `TLK_FILE` ADD COLUMN `storage_tier` INT DEFAULT 0 COMMENT '存储层级：0 仅 R2（冷） 1 本地 SSD 副本（热）' AFTER `storage_status`;
+ALTER TABLE `TLK_FILE` ADD KEY `idx_storage_tier` (`storage_tier`);
+
+-- 图片缩略图：缩略图地址（空字符串表示无法生成）
+ALTER TABLE `TLK_FILE` ADD COLUMN `thumb_url` VARCHAR(1000) COMMENT '缩略图地址，空字符串表示无法生成' AFTER `storage_tier`;
+
+-- PDF 预览：已渲染的预览页数（0 表示无法渲染）
+ALTER TABLE `TLK_FILE` ADD COLUMN `preview_pages` INT COMMENT 'PDF 预览已渲染页数，0 表示无法渲染' AFTER `thumb_url`;
+
+-- MOBI 服务端解析：preview_pages 同时记录 MOBI 切分后的片段数
+ALTER TABLE `TLK_FILE` MODIFY COLUMN `preview_pages` INT COMMENT '预览页数（PDF 渲染页 / MOBI 片段），0 表示无法生成';
+
+-- 首页 keyset 分页：按 (create_time, id) 定位，分类列表和全部列表各用一个覆盖排序的索引
+ALTER TABLE `TLK_FILE` ADD KEY `idx_status_category_time` (`status`, `category_id`, `create_time`, `id`);
+ALTER TABLE `TLK_FILE` ADD KEY `idx_status_time` (`status`, `create_time`, `id`);
+
+-- 访问码分配：各节点从共享序列预留号段，分配时不再查询 TLK_FILE
+CREATE TABLE IF NOT EXISTS `TLK_SEQUENCE` (
+  `id`          VARCHAR(64)   NOT NULL PRIMARY KEY COMMENT '序列名称',
+  `next_value`  BIGINT        NOT NULL DEFAULT 0    COMMENT '下一个未被预留的值',
+  `update_time` DATETIME                            COMMENT '最后预留时间'
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='多节点共享序列表';
+
+-- 时间有序主键：SYS_USER 和 TLK_FILE 的主键由随机 UUID（VARCHAR(36)）改为 UUIDv7（CHAR(32) ascii）。
+-- 已有记录按 create_time 生成新主键（时间戳 + 由旧主键 MD5 得到的随机位），并同步更新引用用户 ID 的列。
+-- 执行前请停止应用并备份；执行后清空 Redis 中的 users / fileByUid 缓存。
+ALTER TABLE `SYS_USER` ADD COLUMN `new_id` CHAR(32) CHARACTER SET ascii COLLATE ascii_bin AFTER `id`;
+UPDATE `SYS_USER` SET `new_id` = LOWER(CONCAT(
+    LPAD(HEX(FLOOR(UNIX_TIMESTAMP(IFNULL(`create_time`, NOW())) * 1000)), 12, '0'),
+    '7', SUBSTRING(MD5(`id`), 1, 3),
+    HEX(8 + CONV(SUBSTRING(MD5(`id`), 4, 1), 16, 10) % 4),
+    SUBSTRING(MD5(`id`), 5, 15)));
+UPDATE `TLK_FILE` f JOIN `SYS_USER` u ON f.`user_id` = u.`id` SET f.`user_id` = u.`new_id`;
+UPDATE `TLK_UPLOAD_SESSION` s JOIN `SYS_USER` u ON s.`user_id` = u.`id` SET s.`user_id` = u.`new_id`;
+-- 引用已不存在用户的记录无法换算新主键，置空后与主键使用相同的列类型
+UPDATE `TLK_FILE` f LEFT JOIN `SYS_USER` u ON f.`user_id` = u.`new_id`
+  SET f.`user_id` = NULL WHERE f.`user_id` IS NOT NULL AND u.`new_id` IS NULL;
+UPDATE `TLK_UPLOAD_SESSION` s LEFT JOIN `SYS_USER` u ON s.`user_id` = u.`new_id`
+  SET s.`user_id` = NULL WHERE s.`user_id` IS NOT NULL AND u.`new_id` IS NULL;
+ALTER TABLE `TLK_FILE` MODIFY COLUMN `user_id` CHAR(32) CHARACTER SET ascii COLLATE ascii_bin COMMENT '上传用户 ID';
+ALTER TABLE `TLK_UPLOAD_SESSION` MODIFY COLUMN `user_id` CHAR(32) CHARACTER SET ascii COLLATE ascii_bin COMMENT '上传用户 ID';
+ALTER TABLE `SYS_USER` DROP PRIMARY KEY, DROP COLUMN `id`;
+ALTER TABLE `SYS_USER` CHANGE COLUMN `new_id` `id` CHAR(32) CHARACTER SET ascii COLLATE ascii_bin NOT NULL COMMENT '主键 UUIDv7（时间有序，32 位十六进制）' FIRST,
+  ADD PRIMARY KEY (`id`);
+
+ALTER TABLE `TLK_FILE` ADD COLUMN `new_id` CHAR(32) CHARACTER SET ascii COLLATE ascii_bin AFTER `id`;
+UPDATE `TLK_FILE` SET `new_id` = LOWER(CONCAT(
+    LPAD(HEX(FLOOR(UNIX_TIMESTAMP(IFNULL(`create_time`, NOW())) * 1000)), 12, '0'),
+    '7', SUBSTRING(MD5(`id`), 1, 3),
+    HEX(8 + CONV(SUBSTRING(MD5(`id`), 4, 1), 16, 10) % 4),
+    SUBSTRING(MD5(`id`), 5, 15)));
+ALTER TABLE `TLK_FILE` DROP KEY `idx_status_category_time`, DROP KEY `idx_status_time`,
+  DROP PRIMARY KEY, DROP COLUMN `id`;
+ALTER TABLE `TLK_FILE` CHANGE COLUMN `new_id` `id` CHAR(32) CHARACTER SET ascii COLLATE ascii_bin NOT NULL COMMENT '主键 UUIDv7（时间有序，32 位十六进制）' FIRST,
+  ADD PRIMARY KEY (`id`),
+  ADD KEY `idx_status_category_time` (`status`, `category_id`, `create_time`, `id`),
+  ADD KEY `idx_status_time` (`status`, `create_time`, `id`);
+
+-- 可续传上传会话状态：完成和过期清理前先以条件更新认领会话，避免并发完成或完成途中被清理。
+ALTER TABLE `TLK_UPLOAD_SESSION` ADD COLUMN `status` TINYINT NOT NULL DEFAULT 0 COMMENT '会话状态：0 上传中 1 正在完成 2 正在清理' AFTER `category_id`;
+
+-- 可续传上传会话记录合并结果：对象合并后登记失败时重试只做哈希和登记，清理时删除已合并的对象。
+ALTER TABLE `TLK_UPLOAD_SESSION` MODIFY COLUMN `status` TINYINT NOT NULL DEFAULT 0 COMMENT '会话状态：0 上传中 1 正在合并 2 正在清理 3 已合并待登记 4 正在登记';
+ALTER TABLE `TLK_UPLOAD_SESSION` ADD COLUMN `cloud_url` VARCHAR(1000) COMMENT '合并后对象的公开访问地址，合并前为空' AFTER `status`;
+
+-- 文件表：MD5 哈希列不参与查询，去掉其索引；blob 释放、派生结果回写和分层存储都按存储对象键查找记录，补上 path 索引。
+ALTER TABLE `TLK_FILE` DROP KEY `idx_hash`, ADD KEY `idx_path` (`path`);
@@ -0,0 +1,60 @@
+#!/usr/bin/env bash
+# 下载路径负载对比：阻塞代理 vs 非阻塞下载（file.download.async.enabled）。
+#
+# 以 CLIENTS 个限速客户端并发下载同一个 R2 文件，期间每秒采样：
+#   - Tomcat 请求线程数（http-nio-*-exec，需要 jcmd 和应用 PID）
+#   - 一个普通请求的响应时间（请求线程耗尽时会明显变慢或超时）
+#   - /internal/stats/storage 中的 asyncDownloads.active（需要登录 Cookie）
+#
+# 对比方法：分别以 file.download.async.enabled=false / true 启动应用，
+# 建议同时设置 server.tomcat.threads.max=50、file.cache.enabled=false、
+# file.download.coalesce.enabled=false、file.download.redirect.enabled=false，
+# 使所有下载都经过被测路径，并让线程耗尽在较小并发下即可出现。
+#
+# 用法：
+#   PID=<应用进程号> COOKIE='JSESSIONID=...' ./download-load.sh http://localhost:8080 <uid> [clients] [rate]
+set -euo pipefail
+
+BASE_URL=${1:?base url}
+FILE_UID=${2:?file uid}
+CLIENTS=${3:-200}
+RATE=${4:-50k}
+PROBE_URL=${PROBE_URL:-$BASE_URL/}
+OUT=$(mktemp -d)
+
+sample() {
+    local threads="-" active="-"
+    if [[ -n "${PID:-}" ]] && command -v jcmd >/dev/null; then
+        threads=$(jcmd "$PID" Thread.print 2>/dev/null | grep -c '"http-nio-.*-exec-' || true)
+    fi
+    if [[ -n "${COOKIE:-}" ]]; then
+        active=$(curl -s -H "Cookie: $COOKIE" "$BASE_URL/internal/stats/storage" \
+            | grep -o '"asyncDownloads":{[^}]*"active":[0-9]*' | grep -o '[0-9]*$' || echo "-")
+    fi
+    local probe
+    probe=$(curl -s -o /dev/null -m 10 -w '%{time_total}' "$PROBE_URL" || echo "timeout")
+    printf '%s\tthreads=%s\tasyncActive=%s\tprobe=%ss\n' "$(date +%T)" "$threads" "$active" "$probe"
+}
+
+echo "Starting $CLIENTS clients at $RATE/s against $BASE_URL/file/$FILE_UID/download"
+for i in $(seq 1 "$CLIENTS"); do
+    curl -s -o /dev/null --limit-rate "$RATE" \
+        -w '%{http_code} %{size_download} %{time_starttransfer} %{time_total}\n' \
+        "$BASE_URL/file/$FILE_UID/download" >"$OUT/$i.txt" 2>&1 &
+done
+
+while [[ -n "$(jobs -rp)" ]]; do
+    sample
+    sleep 1
+done
+wait
+
+echo
+echo "status bytes ttfb total (per client):"
+cat "$OUT"/*.txt | awk '
+    { codes[$1]++; ttfb += $3; total += $4; if ($4 > max) max = $4 }
+    END {
+        for (c in codes) printf "  HTTP %s: %d\n", c, codes[c]
+        printf "  mean ttfb %.3fs, mean total %.3fs, max total %.3fs\n", ttfb / NR, total / NR, max
+    }'
+rm -rf "$OUT"
@@ -3,7 +3,7 @@
 
 -- 用户表
 CREATE TABLE IF NOT EXISTS `SYS_USER` (
-  `id`          VARCHAR(36)  NOT NULL PRIMARY KEY COMMENT '主键 UUID',
+  `id`          CHAR(32) CHARACTER SET ascii COLLATE ascii_bin NOT NULL PRIMARY KEY COMMENT '主键 UUIDv7（时间有序，32 位十六进制）',
   `username`    VARCHAR(100)          COMMENT '用户名',
   `email`       VARCHAR(255) NOT NULL COMMENT '邮箱（唯一）',
   `password`    VARCHAR(255)          COMMENT 'BCrypt 加密密码，OAuth 用户可为空',
@@ -38,17 +38,22 @@ CREATE TABLE IF NOT EXISTS `TLK_CATEGORY` (
 
 -- 文件表
 CREATE TABLE IF NOT EXISTS `TLK_FILE` (
-  `id`          VARCHAR(36)   NOT NULL PRIMARY KEY COMMENT '主键 UUID',
+  `id`          CHAR(32) CHARACTER SET ascii COLLATE ascii_bin NOT NULL PRIMARY KEY COMMENT '主键 UUIDv7（时间有序，32 位十六进制）',
   `name`        VARCHAR(500)  NOT NULL              COMMENT '原始文件名',
   `path`        VARCHAR(500)                        COMMENT '存储对象键（R2 key 或本地路径）',
-  `uid`         VARCHAR(10)   NOT NULL              COMMENT '6 位唯一访问码',
+  `uid`         VARCHAR(10)   NOT NULL              COMMENT '唯一访问码（6–10 位）',
   `ext`         VARCHAR(20)                         COMMENT '扩展名（不含点）',
   `size`        BIGINT                              COMMENT '文件大小（字节）',
   `hash`        VARCHAR(64)                         COMMENT '文件 MD5 哈希值',
+  `sha256`      VARCHAR(64)                         COMMENT '文件 SHA-256 哈希值（可选）',
   `create_ip`   VARCHAR(50)                         COMMENT '上传者 IP',
-  `user_id`     VARCHAR(36)                         COMMENT '上传用户 ID',
+  `user_id`     CHAR(32) CHARACTER SET ascii COLLATE ascii_bin COMMENT '上传用户 ID',
   `category_id` VARCHAR(36)                         COMMENT '所属分类 ID',
   `cloud_url`   VARCHAR(1000)                       COMMENT 'Cloudflare R2 公开访问地址',
+  `storage_status` INT   DEFAULT 0                  COMMENT '存储同步状态：0 已同步 1 待推送到 R2',
+  `storage_tier` INT     DEFAULT 0                  COMMENT '存储层级：0 仅 R2（冷） 1 本地 SSD 副本（热）',
+  `thumb_url`   VARCHAR(1000)                       COMMENT '缩略图地址，空字符串表示无法生成',
+  `preview_pages` INT                               COMMENT '预览页数（PDF 渲染页 / MOBI 片段），0 表示无法生成',
   `status`      INT      DEFAULT 1                  COMMENT '状态：1 启用 2 禁用',
   `deleted`     INT      DEFAULT 0                  COMMENT '软删除',
   `create_by`   VARCHAR(36)                         COMMENT '创建人',
@@ -57,9 +62,65 @@ CREATE TABLE IF NOT EXISTS `TLK_FILE` (
   `update_time` DATETIME                            COMMENT '修改时间',
   UNIQUE KEY `uk_uid` (`uid`),
   KEY `idx_category` (`category_id`),
-  KEY `idx_user` (`user_id`)
+  KEY `idx_user` (`user_id`),
+  KEY `idx_path` (`path`),
+  KEY `idx_sha256_size` (`sha256`, `size`),
+  KEY `idx_storage_status` (`storage_status`),
+  KEY `idx_storage_tier` (`storage_tier`),
+  KEY `idx_status_category_time` (`status`, `category_id`, `create_time`, `id`),
+  KEY `idx_status_time` (`status`, `create_time`, `id`)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='文件存储表';
 
+-- 内容寻址存储对象表（相同内容只存一份）
+CREATE TABLE IF NOT EXISTS `TLK_BLOB` (
+  `id`          VARCHAR(36)   NOT NULL PRIMARY KEY COMMENT '主键 UUID',
+  `hash`        VARCHAR(64)   NOT NULL              COMMENT '内容 SHA-256',
+  `size`        BIGINT        NOT NULL              COMMENT '内容大小（字节）',
+  `path`        VARCHAR(500)  NOT NULL              COMMENT '存储对象键',
+  `cloud_url`   VARCHAR(1000)                       COMMENT '公开访问地址',
+  `ref_count`   INT      DEFAULT 1                  COMMENT '引用该内容的文件数',
+  `create_time` DATETIME                            COMMENT '创建时间',
+  UNIQUE KEY `uk_hash_size` (`hash`, `size`),
+  UNIQUE KEY `uk_path` (`path`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='内容寻址存储对象表';
+
+-- 可续传上传会话表
+CREATE TABLE IF NOT EXISTS `TLK_UPLOAD_SESSION` (
+  `id`          VARCHAR(36)   NOT NULL PRIMARY KEY COMMENT '会话 ID',
+  `user_id`     CHAR(32) CHARACTER SET ascii COLLATE ascii_bin COMMENT '上传用户 ID',
+  `name`        VARCHAR(500)  NOT NULL              COMMENT '原始文件名',
+  `uid`         VARCHAR(10)   NOT NULL              COMMENT '预分配的访问码',
+  `path`        VARCHAR(500)  NOT NULL              COMMENT '目标存储对象键',
+  `size`        BIGINT        NOT NULL              COMMENT '文件总大小（字节）',
+  `chunk_size`  INT           NOT NULL              COMMENT '分片大小（字节）',
+  `chunk_count` INT           NOT NULL              COMMENT '分片总数',
+  `upload_id`   VARCHAR(1024)                       COMMENT 'R2 分片上传 ID，本地存储时为空',
+  `category_id` VARCHAR(36)                         COMMENT '所属分类 ID',
+  `status`      TINYINT       NOT NULL DEFAULT 0    COMMENT '会话状态：0 上传中 1 正在合并 2 正在清理 3 已合并待登记 4 正在登记',
+  `cloud_url`   VARCHAR(1000)                       COMMENT '合并后对象的公开访问地址，合并前为空',
+  `create_time` DATETIME                            COMMENT '创建时间',
+  `update_time` DATETIME                            COMMENT '修改时间',
+  KEY `idx_create_time` (`create_time`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='可续传上传会话表';
+
+-- 可续传上传分片表
+CREATE TABLE IF NOT EXISTS `TLK_UPLOAD_CHUNK` (
+  `id`          VARCHAR(64)   NOT NULL PRIMARY KEY COMMENT '会话 ID:分片序号',
+  `session_id`  VARCHAR(36)   NOT NULL              COMMENT '会话 ID',
+  `chunk_index` INT           NOT NULL              COMMENT '分片序号，从 0 开始',
+  `size`        BIGINT                              COMMENT '分片大小（字节）',
+  `etag`        VARCHAR(255)                        COMMENT 'R2 分片 ETag',
+  `create_time` DATETIME                            COMMENT '创建时间',
+  KEY `idx_session` (`session_id`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='可续传上传分片表';
+
+-- 多节点共享序列表（文件访问码按号段预留）
+CREATE TABLE IF NOT EXISTS `TLK_SEQUENCE` (
+  `id`          VARCHAR(64)   NOT NULL PRIMARY KEY COMMENT '序列名称',
+  `next_value`  BIGINT        NOT NULL DEFAULT 0    COMMENT '下一个未被预留的值',
+  `update_time` DATETIME                            COMMENT '最后预留时间'
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='多节点共享序列表';
+
 -- 示例分类数据
 INSERT IGNORE INTO `TLK_CATEGORY` (`id`, `name`, `description`, `icon`, `sort_order`, `status`, `deleted`, `create_time`) VALUES
   ('cat-001', '图片',   '图片类文件',   'bi-image',               1, 1, 0, NOW()),
@@ -1,5 +1,12 @@
 package com.yuz.toplinks.config;
 
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.cache.annotation.EnableCaching;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -14,4 +21,19 @@ public class AppConfig {
     public PasswordEncoder passwordEncoder() {
         return new BCryptPasswordEncoder();
     }
+
+    /**
+     * 批量上传写入存储的线程池。所有批量请求共享，因此并发写入数有上限；
+     * 队列满时由提交线程（请求线程）自己执行，形成自然的背压。
+     */
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService uploadBatchExecutor(@Value("${file.batch.concurrency:4}") int concurrency) {
+        int n = Math.max(1, concurrency);
+        AtomicInteger seq = new AtomicInteger();
+        return new ThreadPoolExecutor(n, n, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(n * 8), r -> {
+            Thread t = new Thread(r, "upload-batch-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }, new ThreadPoolExecutor.CallerRunsPolicy());
+    }
 }
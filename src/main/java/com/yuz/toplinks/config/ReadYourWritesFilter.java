@@ -0,0 +1,57 @@
+package com.yuz.toplinks.config;
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.function.LongSupplier;
+
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpSession;
+
+/**
+ * 读己之写：会话发出写请求后的 {@code stickyMillis} 内，该会话的所有读取都走主库，
+ * 例如上传后跳转到 {@code /file/{uid}} 时，副本可能还没有复制到新记录。
+ *
+ * <p>时间戳在写请求进入处理之前就写入会话，因为浏览器可能在写请求的过滤器链返回之前就已经跟随跳转。</p>
+ */
+public class ReadYourWritesFilter extends OncePerRequestFilter {
+
+    static final String PRIMARY_UNTIL = ReadYourWritesFilter.class.getName() + ".PRIMARY_UNTIL";
+    private static final Set<String> SAFE_METHODS = Set.of("GET", "HEAD", "OPTIONS", "TRACE");
+
+    private final long stickyMillis;
+    private final LongSupplier clock;
+
+    public ReadYourWritesFilter(long stickyMillis) {
+        this(stickyMillis, System::currentTimeMillis);
+    }
+
+    ReadYourWritesFilter(long stickyMillis, LongSupplier clock) {
+        this.stickyMillis = stickyMillis;
+        this.clock = clock;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        long now = clock.getAsLong();
+        boolean pinned;
+        if (!SAFE_METHODS.contains(request.getMethod())) {
+            request.getSession().setAttribute(PRIMARY_UNTIL, now + stickyMillis);
+            pinned = true;
+        } else {
+            HttpSession session = request.getSession(false);
+            pinned = session != null && session.getAttribute(PRIMARY_UNTIL) instanceof Long until && until > now;
+        }
+        ReplicaRoutingDataSource.pinPrimary(pinned);
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            ReplicaRoutingDataSource.pinPrimary(false);
+        }
+    }
+}
@@ -31,6 +31,7 @@ public class RedisConfig {
         configs.put("filesByCategory",defaults.entryTtl(Duration.ofMinutes(2)));
         configs.put("fileByUid",      defaults.entryTtl(Duration.ofMinutes(5)));
         configs.put("users",          defaults.entryTtl(Duration.ofMinutes(30)));
+        configs.put("textPreview",    defaults.entryTtl(Duration.ofHours(1)));
 
         return RedisCacheManager.builder(factory)
                 .cacheDefaults(defaults)
@@ -0,0 +1,274 @@
+package com.yuz.toplinks.config;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.View;
+import org.springframework.web.servlet.support.SessionFlashMapManager;
+import org.springframework.web.util.ContentCachingResponseWrapper;
+import org.thymeleaf.spring6.view.ThymeleafViewResolver;
+
+import com.yuz.toplinks.controller.GlobalControllerAdvice;
+import com.yuz.toplinks.service.FileCursor;
+import com.yuz.toplinks.service.FileService;
+import com.yuz.toplinks.service.RenderedPageCache;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpServletResponseWrapper;
+import jakarta.servlet.http.HttpSession;
+
+/**
+ * 首页和文件详情页的渲染结果缓存（见 {@link RenderedPageCache}）。
+ *
+ * <p>过滤器在 Spring Security 之后执行。匿名请求未命中时正常渲染并保存结果；已登录用户命中列表页缓存时
+ * 只为其渲染页面中与用户相关的片段，未命中时正常渲染且不保存；已登录用户的详情页（含上传者的删除按钮）
+ * 总是完整渲染。带 flash 消息（上传、删除后的跳转）或其他查询参数的请求不经过缓存。</p>
+ *
+ * <p>只保存状态为 200 的页面，不存在的文件不会占用缓存。列表页的查询参数先规范化再组成缓存键：
+ * 游标解码后重新编码，页码转为数字，格式不合法的分类、页码或游标不经过缓存，
+ * 避免任意参数组合把正常页面挤出缓存。</p>
+ */
+@Component
+public class RenderedPageCacheFilter extends OncePerRequestFilter {
+
+    private static final Logger logger = Logger.getLogger(RenderedPageCacheFilter.class.getName());
+
+    private static final Pattern DETAIL_PATH = Pattern.compile("/file/([A-Za-z0-9_-]+)");
+    private static final Set<String> LISTING_PARAMS = Set.of("categoryId", "page", "after", "before");
+    private static final Pattern ID = Pattern.compile("[0-9a-fA-F-]{32,36}");
+    private static final String FLASH_MAPS = SessionFlashMapManager.class.getName() + ".FLASH_MAPS";
+
+    private final RenderedPageCache cache;
+    private final ThymeleafViewResolver viewResolver;
+    private final GlobalControllerAdvice controllerAdvice;
+
+    public RenderedPageCacheFilter(RenderedPageCache cache, ThymeleafViewResolver viewResolver,
+            GlobalControllerAdvice controllerAdvice) {
+        this.cache = cache;
+        this.viewResolver = viewResolver;
+        this.controllerAdvice = controllerAdvice;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !cache.isEnabled() || !"GET".equals(request.getMethod());
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String key = keyOf(request);
+        if (key == null || hasFlash(request)) {
+            chain.doFilter(request, response);
+            return;
+        }
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        boolean anonymous = auth == null || auth instanceof AnonymousAuthenticationToken || !auth.isAuthenticated();
+        if (!anonymous && RenderedPageCache.isDetailKey(key)) {
+            // 详情页对上传者显示删除按钮，已登录用户总是完整渲染
+            chain.doFilter(request, response);
+            return;
+        }
+
+        RenderedPageCache.Entry entry = cache.get(key);
+        if (entry != null && cache.isFresh(entry)) {
+            serve(entry, "HIT", anonymous, auth, request, response);
+        } else if (entry != null && anonymous && cache.tryRefresh(entry)) {
+            renderAndStore(key, entry, request, response, chain);
+        } else if (entry != null && entry.isRefreshing()) {
+            serve(entry, "STALE", anonymous, auth, request, response);
+        } else if (anonymous) {
+            renderAndStore(key, null, request, response, chain);
+        } else {
+            chain.doFilter(request, response);
+        }
+    }
+
+    /** 缓存键；不是可缓存的页面时返回 null。 */
+    static String keyOf(HttpServletRequest request) {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        if ("/".equals(path)) {
+            for (Enumeration<String> names = request.getParameterNames(); names.hasMoreElements(); ) {
+                if (!LISTING_PARAMS.contains(names.nextElement())) return null;
+            }
+            return listingKeyOf(request);
+        }
+        Matcher m = DETAIL_PATH.matcher(path);
+        if (m.matches() && request.getQueryString() == null) {
+            return RenderedPageCache.detailKey(m.group(1));
+        }
+        return null;
+    }
+
+    /** 与 {@code HomeController#index} 的参数解析一致：有游标时忽略页码，after 优先于 before。 */
+    private static String listingKeyOf(HttpServletRequest request) {
+        String categoryId = request.getParameter("categoryId");
+        if (categoryId != null && !ID.matcher(categoryId).matches()) return null;
+        String after = request.getParameter("after");
+        String token = after != null ? after : request.getParameter("before");
+        if (token != null) {
+            FileCursor cursor = FileCursor.decode(token);
+            if (cursor == null || !ID.matcher(cursor.id()).matches()) return null;
+            String canonical = cursor.encode();
+            return after != null
+                    ? RenderedPageCache.listingKey(categoryId, null, canonical, null)
+                    : RenderedPageCache.listingKey(categoryId, null, null, canonical);
+        }
+        String pageParam = request.getParameter("page");
+        int page;
+        try {
+            page = pageParam != null ? Integer.parseInt(pageParam) : 1;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        if (page > FileService.MAX_NUMBERED_PAGES) return null;
+        return RenderedPageCache.listingKey(categoryId, String.valueOf(Math.max(1, page)), null, null);
+    }
+
+    private static boolean hasFlash(HttpServletRequest request) {
+        HttpSession session = request.getSession(false);
+        return session != null && session.getAttribute(FLASH_MAPS) instanceof Collection<?> maps && !maps.isEmpty();
+    }
+
+    private void renderAndStore(String key, RenderedPageCache.Entry stale, HttpServletRequest request,
+            HttpServletResponse response, FilterChain chain) throws ServletException, IOException {
+        long generation = cache.generation();
+        ContentCachingResponseWrapper wrapper = new ContentCachingResponseWrapper(response);
+        try {
+            chain.doFilter(request, wrapper);
+            String contentType = wrapper.getContentType();
+            if (wrapper.getStatus() == HttpServletResponse.SC_OK && contentType != null
+                    && contentType.startsWith("text/html") && !wrapper.getHeaderNames().contains("Set-Cookie")) {
+                String html = new String(wrapper.getContentAsByteArray(), wrapper.getCharacterEncoding());
+                cache.put(key, html, generation);
+            }
+        } finally {
+            if (stale != null) cache.release(stale);
+            wrapper.setHeader("X-Page-Cache", stale != null ? "REFRESH" : "MISS");
+            wrapper.copyBodyToResponse();
+        }
+    }
+
+    private void serve(RenderedPageCache.Entry entry, String state, boolean anonymous, Authentication auth,
+            HttpServletRequest request, HttpServletResponse response) throws IOException, ServletException {
+        response.setContentType("text/html;charset=UTF-8");
+        response.setHeader("Vary", "Accept-Encoding");
+        response.setHeader("X-Page-Cache", state);
+        byte[] body;
+        if (anonymous) {
+            String acceptEncoding = request.getHeader("Accept-Encoding");
+            if (acceptEncoding != null && acceptEncoding.contains("gzip")) {
+                response.setHeader("Content-Encoding", "gzip");
+                body = entry.gzip();
+            } else {
+                body = entry.html().getBytes(StandardCharsets.UTF_8);
+            }
+        } else {
+            Map<String, Object> model = Collections.singletonMap("currentUser", controllerAdvice.currentUser(auth));
+            try {
+                body = RenderedPageCache.splice(entry.html(), selector -> renderFragment(selector, model, request,
+                        response)).getBytes(StandardCharsets.UTF_8);
+            } catch (FragmentRenderException e) {
+                throw new ServletException("Failed to render user fragment", e.getCause());
+            }
+        }
+        response.setContentLength(body.length);
+        response.getOutputStream().write(body);
+    }
+
+    private String renderFragment(String selector, Map<String, ?> model, HttpServletRequest request,
+            HttpServletResponse response) {
+        try {
+            View view = viewResolver.resolveViewName(selector, request.getLocale());
+            if (view == null) {
+                logger.warning("No view for user fragment " + selector);
+                return "";
+            }
+            CapturingResponse capture = new CapturingResponse(response);
+            view.render(model, request, capture);
+            return capture.getContent();
+        } catch (Exception e) {
+            throw new FragmentRenderException(e);
+        }
+    }
+
+    private static final class FragmentRenderException extends RuntimeException {
+        FragmentRenderException(Throwable cause) {
+            super(cause);
+        }
+    }
+
+    /** 把片段的渲染结果收集为字符串，不改动真正响应的头部。 */
+    private static final class CapturingResponse extends HttpServletResponseWrapper {
+        private final StringWriter buffer = new StringWriter();
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private PrintWriter writer;
+
+        CapturingResponse(HttpServletResponse response) {
+            super(response);
+        }
+
+        @Override
+        public PrintWriter getWriter() {
+            if (writer == null) writer = new PrintWriter(buffer);
+            return writer;
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() {
+            return new ServletOutputStream() {
+                @Override
+                public void write(int b) {
+                    bytes.write(b);
+                }
+
+                @Override
+                public boolean isReady() {
+                    return true;
+                }
+
+                @Override
+                public void setWriteListener(WriteListener listener) {
+                }
+            };
+        }
+
+        @Override
+        public void setContentType(String type) {
+        }
+
+        @Override
+        public void setCharacterEncoding(String charset) {
+        }
+
+        @Override
+        public void setLocale(java.util.Locale loc) {
+        }
+
+        String getContent() {
+            if (writer != null) writer.flush();
+            return buffer + bytes.toString(StandardCharsets.UTF_8);
+        }
+    }
+}
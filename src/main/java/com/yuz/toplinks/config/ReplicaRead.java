@@ -0,0 +1,17 @@
+package com.yuz.toplinks.config;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 标记只读的服务方法：配置了只读副本（{@code db.replicas.urls}）时，方法内的查询发往健康的副本；
+ * 未配置副本、没有健康副本或当前会话刚刚写入过数据时仍使用主库。只在通过 Spring 代理调用时生效。
+ */
+@Documented
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface ReplicaRead {
+}
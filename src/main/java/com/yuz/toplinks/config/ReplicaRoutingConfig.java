@@ -0,0 +1,93 @@
+package com.yuz.toplinks.config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.springframework.aop.Advisor;
+import org.springframework.aop.support.DefaultPointcutAdvisor;
+import org.springframework.aop.support.annotation.AnnotationMatchingPointcut;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.annotation.Role;
+import org.springframework.core.env.Environment;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+/**
+ * 读写分离（配置了 {@code db.replicas.urls} 时生效）：主库仍取自 {@code spring.datasource.*}，
+ * 每个副本一个只读连接池，连接池参数共用 {@code spring.datasource.hikari.*}。
+ * {@link ReplicaRead} 方法由拦截器标记为只读，{@link ReadYourWritesFilter} 负责读己之写。
+ */
+@Configuration
+@ConditionalOnExpression("!'${db.replicas.urls:}'.isBlank()")
+public class ReplicaRoutingConfig {
+
+    @Bean(destroyMethod = "shutdown")
+    @Primary
+    public ReplicaRoutingDataSource replicaRoutingDataSource(DataSourceProperties properties, Environment environment,
+            @Value("${db.replicas.urls}") List<String> urls,
+            @Value("${db.replicas.username:${spring.datasource.username:}}") String username,
+            @Value("${db.replicas.password:${spring.datasource.password:}}") String password,
+            @Value("${db.replicas.max-lag-seconds:5}") long maxLagSeconds,
+            @Value("${db.replicas.allow-unknown-lag:false}") boolean allowUnknownLag,
+            @Value("${db.replicas.check-interval-millis:5000}") long checkIntervalMillis) {
+        Binder binder = Binder.get(environment);
+        HikariDataSource primary = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        binder.bind("spring.datasource.hikari", Bindable.ofInstance(primary));
+        primary.setPoolName("primary");
+
+        List<DataSource> replicas = new ArrayList<>();
+        for (String url : urls) {
+            if (url.isBlank()) continue;
+            HikariDataSource replica = new HikariDataSource();
+            binder.bind("spring.datasource.hikari", Bindable.ofInstance(replica));
+            replica.setJdbcUrl(url.trim());
+            replica.setUsername(username);
+            replica.setPassword(password);
+            replica.setDriverClassName(properties.determineDriverClassName());
+            replica.setReadOnly(true);
+            replica.setPoolName("replica-" + replicas.size());
+            replicas.add(replica);
+        }
+        ReplicaRoutingDataSource routing = new ReplicaRoutingDataSource(primary, replicas, maxLagSeconds,
+                allowUnknownLag);
+        routing.start(checkIntervalMillis);
+        return routing;
+    }
+
+    /** 把 {@link ReplicaRead} 方法内的查询标记为只读。 */
+    @Bean
+    @Role(BeanDefinition.ROLE_INFRASTRUCTURE)
+    public static Advisor replicaReadAdvisor() {
+        MethodInterceptor interceptor = invocation -> {
+            ReplicaRoutingDataSource.enterRead();
+            try {
+                return invocation.proceed();
+            } finally {
+                ReplicaRoutingDataSource.exitRead();
+            }
+        };
+        return new DefaultPointcutAdvisor(AnnotationMatchingPointcut.forMethodAnnotation(ReplicaRead.class),
+                interceptor);
+    }
+
+    @Bean
+    public FilterRegistrationBean<ReadYourWritesFilter> readYourWritesFilter(
+            @Value("${db.replicas.sticky-millis:10000}") long stickyMillis) {
+        FilterRegistrationBean<ReadYourWritesFilter> registration =
+                new FilterRegistrationBean<>(new ReadYourWritesFilter(stickyMillis));
+        registration.addUrlPatterns("/*");
+        return registration;
+    }
+}
@@ -0,0 +1,201 @@
+package com.yuz.toplinks.config;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+import javax.sql.DataSource;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+/**
+ * 读写分离数据源：{@link ReplicaRead} 方法内的查询轮询发往健康的只读副本，其余一律使用主库。
+ *
+ * <p>后台定期检查每个副本：无法连接、复制已停止或延迟超过 {@code maxLagSeconds} 的副本被移出轮询，
+ * 恢复后自动加回；没有健康副本时读取回退到主库。延迟取自 {@code SHOW REPLICA STATUS}
+ * （旧版本为 {@code SHOW SLAVE STATUS}），没有状态行（该库并不是副本）视为复制已停止。
+ * 副本账号没有查询权限时延迟记为未知（-1），默认同样移出轮询，只有显式开启 {@code allowUnknownLag} 时才使用。</p>
+ */
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource {
+
+    private static final Logger logger = Logger.getLogger(ReplicaRoutingDataSource.class.getName());
+
+    static final String PRIMARY = "primary";
+
+    /** 当前线程所在的 {@link ReplicaRead} 方法层数。 */
+    private static final ThreadLocal<Integer> READ_DEPTH = ThreadLocal.withInitial(() -> 0);
+    /** 当前请求必须读主库（会话刚写入过数据）。 */
+    private static final ThreadLocal<Boolean> PRIMARY_PINNED = ThreadLocal.withInitial(() -> false);
+
+    private final List<Replica> replicas;
+    private final long maxLagSeconds;
+    private final boolean allowUnknownLag;
+    private final AtomicInteger next = new AtomicInteger();
+    private final AtomicLong primaryReads = new AtomicLong();
+    private final ScheduledExecutorService checker;
+
+    public ReplicaRoutingDataSource(DataSource primary, List<DataSource> replicaSources, long maxLagSeconds,
+            boolean allowUnknownLag) {
+        this.maxLagSeconds = maxLagSeconds;
+        this.allowUnknownLag = allowUnknownLag;
+        Map<Object, Object> targets = new HashMap<>();
+        targets.put(PRIMARY, primary);
+        List<Replica> list = new ArrayList<>();
+        for (int i = 0; i < replicaSources.size(); i++) {
+            Replica replica = new Replica("replica-" + i, replicaSources.get(i));
+            targets.put(replica.name, replica.dataSource);
+            list.add(replica);
+        }
+        this.replicas = List.copyOf(list);
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(primary);
+        afterPropertiesSet();
+        this.checker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "replica-health-check");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    private static final class Replica {
+        final String name;
+        final DataSource dataSource;
+        /** 新加入的副本先视为健康，第一次检查后再决定。 */
+        volatile boolean healthy = true;
+        volatile long lagSeconds = -1;
+        final AtomicLong reads = new AtomicLong();
+        final AtomicLong ejections = new AtomicLong();
+
+        Replica(String name, DataSource dataSource) {
+            this.name = name;
+            this.dataSource = dataSource;
+        }
+    }
+
+    /** 进入只读方法。与 {@link #exitRead()} 成对调用。 */
+    static void enterRead() {
+        READ_DEPTH.set(READ_DEPTH.get() + 1);
+    }
+
+    static void exitRead() {
+        int depth = READ_DEPTH.get() - 1;
+        if (depth <= 0) READ_DEPTH.remove();
+        else READ_DEPTH.set(depth);
+    }
+
+    /** 当前请求的读取固定到主库（读己之写）。 */
+    static void pinPrimary(boolean pinned) {
+        if (pinned) PRIMARY_PINNED.set(true);
+        else PRIMARY_PINNED.remove();
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if (READ_DEPTH.get() == 0) {
+            return PRIMARY;
+        }
+        if (!PRIMARY_PINNED.get()) {
+            int n = replicas.size();
+            int start = Math.floorMod(next.getAndIncrement(), Math.max(1, n));
+            for (int i = 0; i < n; i++) {
+                Replica replica = replicas.get((start + i) % n);
+                if (replica.healthy) {
+                    replica.reads.incrementAndGet();
+                    return replica.name;
+                }
+            }
+        }
+        primaryReads.incrementAndGet();
+        return PRIMARY;
+    }
+
+    public void start(long intervalMillis) {
+        checker.scheduleWithFixedDelay(this::checkReplicas, 0, Math.max(1000, intervalMillis),
+                TimeUnit.MILLISECONDS);
+    }
+
+    /** 停止健康检查并关闭各连接池。 */
+    public void shutdown() {
+        checker.shutdownNow();
+        for (Object target : getResolvedDataSources().values()) {
+            if (target instanceof AutoCloseable closeable) {
+                try {
+                    closeable.close();
+                } catch (Exception e) {
+                    logger.warning("Failed to close data source: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /** 检查所有副本的连通性和复制延迟，更新轮询名单。 */
+    void checkReplicas() {
+        for (Replica replica : replicas) {
+            boolean healthy;
+            try (Connection c = replica.dataSource.getConnection(); Statement st = c.createStatement()) {
+                Long lag = replicationLag(st);
+                if (lag == null) {
+                    replica.lagSeconds = -1;
+                    healthy = false;
+                } else {
+                    replica.lagSeconds = lag;
+                    healthy = lag < 0 ? allowUnknownLag : lag <= maxLagSeconds;
+                }
+            } catch (SQLException | RuntimeException e) {
+                logger.fine("Replica " + replica.name + " check failed: " + e.getMessage());
+                healthy = false;
+            }
+            if (replica.healthy && !healthy) {
+                replica.ejections.incrementAndGet();
+                logger.warning("Replica " + replica.name + " ejected (lag " + replica.lagSeconds + "s)");
+            } else if (!replica.healthy && healthy) {
+                logger.info("Replica " + replica.name + " back in rotation");
+            }
+            replica.healthy = healthy;
+        }
+    }
+
+    /**
+     * @return 延迟秒数；无法查询时返回 -1（未知）；复制已停止或没有状态行时返回 null
+     */
+    private static Long replicationLag(Statement st) {
+        for (String[] query : new String[][] {
+                { "SHOW REPLICA STATUS", "Seconds_Behind_Source" },
+                { "SHOW SLAVE STATUS", "Seconds_Behind_Master" } }) {
+            try (ResultSet rs = st.executeQuery(query[0])) {
+                if (!rs.next()) return null;
+                long lag = rs.getLong(query[1]);
+                return rs.wasNull() ? null : lag;
+            } catch (SQLException e) {
+                // 旧版本不支持新语法，或副本账号没有 REPLICATION CLIENT 权限
+            }
+        }
+        return -1L;
+    }
+
+    /** 单个副本的状态。{@code lagSeconds} 为 -1 表示未知。 */
+    public record ReplicaStats(String name, boolean healthy, long lagSeconds, long reads, long ejections) {
+    }
+
+    public record Stats(long primaryReads, List<ReplicaStats> replicas) {
+    }
+
+    public Stats getStats() {
+        List<ReplicaStats> list = new ArrayList<>(replicas.size());
+        for (Replica r : replicas) {
+            list.add(new ReplicaStats(r.name, r.healthy, r.lagSeconds, r.reads.get(), r.ejections.get()));
+        }
+        return new Stats(primaryReads.get(), list);
+    }
+}
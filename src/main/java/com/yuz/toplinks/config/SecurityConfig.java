@@ -5,6 +5,7 @@ import com.yuz.toplinks.service.UserService;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpMethod;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.web.SecurityFilterChain;
@@ -28,9 +29,11 @@ public class SecurityConfig {
     public SecurityFilterChain filterChain(HttpSecurity http) throws Exception {
         http
             .authorizeHttpRequests(auth -> auth
+                .requestMatchers(HttpMethod.POST, "/file/*/delete").authenticated()
                 .requestMatchers("/", "/file/**", "/auth/**", "/static/**", "/error",
                                  "/about", "/contact", "/privacy", "/terms").permitAll()
                 .requestMatchers("/upload").authenticated()
+                .requestMatchers("/internal/**").hasRole("ADMIN")
                 .anyRequest().authenticated()
             )
             .formLogin(form -> form
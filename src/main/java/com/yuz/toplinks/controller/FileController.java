@@ -1,8 +1,12 @@
 package com.yuz.toplinks.controller;
 
 import java.io.IOException;
+import java.util.List;
+import java.util.Map;
 import java.util.logging.Logger;
 
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
@@ -13,17 +17,29 @@ import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.server.ResponseStatusException;
 import org.springframework.web.servlet.mvc.support.RedirectAttributes;
 
 import com.yuz.toplinks.entity.TlkFile;
 import com.yuz.toplinks.entity.SysUser;
+import com.yuz.toplinks.service.AsyncDownloadService;
+import com.yuz.toplinks.service.BatchUploadResult;
 import com.yuz.toplinks.service.FileService;
 import com.yuz.toplinks.service.FileStorageService;
+import com.yuz.toplinks.service.ImageVariantService;
+import com.yuz.toplinks.service.MobiBookService;
+import com.yuz.toplinks.service.PdfPreviewService;
+import com.yuz.toplinks.service.StoragePendingException;
+import com.yuz.toplinks.service.TextPreviewService;
+import com.yuz.toplinks.service.PresignedUrlService;
 import com.yuz.toplinks.service.UserService;
 
 import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 
 @Controller
 public class FileController {
@@ -33,23 +49,99 @@ public class FileController {
     private final FileService fileService;
     private final UserService userService;
     private final FileStorageService fileStorageService;
-    private final com.yuz.toplinks.service.CloudflareStorageService cloudflareStorageService;
+    private final PresignedUrlService presignedUrlService;
+    private final AsyncDownloadService asyncDownloadService;
+    private final ImageVariantService imageVariantService;
+    private final PdfPreviewService pdfPreviewService;
+    private final MobiBookService mobiBookService;
+    private final TextPreviewService textPreviewService;
+
+    /** 对象键内容不变的响应：长期缓存，无需再验证。 */
+    private static final CacheControl IMMUTABLE = CacheControl.maxAge(java.time.Duration.ofDays(365))
+            .cachePublic().immutable();
+
+    /** 按 UID 访问的响应：文件可能被删除，每次使用前用 ETag 再验证（命中时仅返回 304）。 */
+    private static final CacheControl REVALIDATE = CacheControl.noCache().cachePublic();
+
+    @Value("${file.batch.max-files:200}")
+    private int maxBatchFiles;
 
     public FileController(FileService fileService, UserService userService,
             FileStorageService fileStorageService,
-            com.yuz.toplinks.service.CloudflareStorageService cloudflareStorageService) {
+            PresignedUrlService presignedUrlService,
+            AsyncDownloadService asyncDownloadService,
+            ImageVariantService imageVariantService,
+            PdfPreviewService pdfPreviewService,
+            MobiBookService mobiBookService,
+            TextPreviewService textPreviewService) {
         this.fileService = fileService;
         this.userService = userService;
         this.fileStorageService = fileStorageService;
-        this.cloudflareStorageService = cloudflareStorageService;
+        this.presignedUrlService = presignedUrlService;
+        this.asyncDownloadService = asyncDownloadService;
+        this.imageVariantService = imageVariantService;
+        this.pdfPreviewService = pdfPreviewService;
+        this.mobiBookService = mobiBookService;
+        this.textPreviewService = textPreviewService;
     }
 
     /** 文件上传页面（需要登录） */
     @GetMapping("/upload")
-    public String uploadPage() {
+    public String uploadPage(Model model) {
+        model.addAttribute("instantUploadEnabled", fileService.isDedupEnabled());
         return "file/upload";
     }
 
+    /**
+     * 秒传预检：客户端提交 SHA-256、大小和文件名，若服务端已有相同内容则直接创建文件记录，
+     * 返回 {@code hit=true} 和详情页地址；否则返回 {@code hit=false}，客户端继续正常上传。
+     */
+    @PostMapping("/upload/precheck")
+    @org.springframework.web.bind.annotation.ResponseBody
+    public ResponseEntity<Map<String, Object>> precheckUpload(
+            @RequestParam("hash") String hash,
+            @RequestParam("size") long size,
+            @RequestParam("name") String name,
+            @RequestParam(value = "categoryId", required = false) String categoryId,
+            Authentication authentication,
+            HttpServletRequest request) {
+        String userId = resolveUserId(authentication);
+        TlkFile tlkFile = fileService.instantUpload(hash.toLowerCase(), size, name, userId, categoryId, request);
+        if (tlkFile == null) {
+            return ResponseEntity.ok(Map.of("hit", false));
+        }
+        return ResponseEntity.ok(Map.of(
+                "hit", true,
+                "uid", tlkFile.getUid(),
+                "url", "/file/" + tlkFile.getUid()));
+    }
+
+    /**
+     * 批量上传：一次请求提交多个文件，返回与提交顺序一致的逐项结果。
+     * 单个文件失败不会影响同批次的其他文件。
+     */
+    @PostMapping("/upload/batch")
+    @org.springframework.web.bind.annotation.ResponseBody
+    public ResponseEntity<Map<String, Object>> handleBatchUpload(
+            @RequestParam("files") List<MultipartFile> files,
+            @RequestParam(value = "categoryId", required = false) String categoryId,
+            Authentication authentication,
+            HttpServletRequest request) {
+        if (files == null || files.isEmpty()) {
+            return ResponseEntity.badRequest().body(Map.of("error", "Please select files to upload"));
+        }
+        if (files.size() > maxBatchFiles) {
+            return ResponseEntity.badRequest().body(Map.of("error", "Too many files, at most " + maxBatchFiles + " per batch"));
+        }
+        String userId = resolveUserId(authentication);
+        List<BatchUploadResult> results = fileService.uploadBatch(files, userId, categoryId, request);
+        long succeeded = results.stream().filter(BatchUploadResult::success).count();
+        return ResponseEntity.ok(Map.of(
+                "succeeded", succeeded,
+                "failed", results.size() - succeeded,
+                "results", results));
+    }
+
     /** 处理文件上传 */
     @PostMapping("/upload")
     public String handleUpload(
@@ -81,26 +173,233 @@ public class FileController {
 
     /** 文件详情页面（公开访问） */
     @GetMapping("/file/{uid}")
-    public String fileDetail(@PathVariable String uid, Model model) {
+    public String fileDetail(@PathVariable String uid, Model model, HttpServletResponse response) {
         TlkFile file = fileService.findByUid(uid);
         if (file == null) {
+            response.setStatus(HttpServletResponse.SC_NOT_FOUND);
             return "error/404";
         }
         model.addAttribute("file", file);
+        if (imageVariantService.supports(file) && !imageVariantService.getWidths().isEmpty()) {
+            // 浏览器按显示宽度从 srcset 中选择合适的缩放版本
+            List<Integer> widths = imageVariantService.getWidths();
+            String base = "/file/" + file.getUid() + "/img?w=";
+            model.addAttribute("imageSrc", base + widths.get((widths.size() - 1) / 2));
+            model.addAttribute("imageSrcset", widths.stream()
+                    .map(w -> base + w + " " + w + "w")
+                    .collect(java.util.stream.Collectors.joining(", ")));
+        }
+        if (textPreviewService.supports(file)) {
+            try {
+                model.addAttribute("textPreview", textPreviewService.preview(file));
+            } catch (java.io.IOException | RuntimeException e) {
+                // 预览读取失败时详情页回退为嵌入原文件
+                logger.warning("Text preview failed for uid=" + uid + ": " + e.getMessage());
+            }
+        }
         return "file/detail";
     }
 
+    /**
+     * 删除文件（仅限上传者本人）：释放存储对象及其派生内容，完成后返回首页。
+     * 文件不存在时返回 404，不是上传者时返回 403。
+     */
+    @PostMapping("/file/{uid}/delete")
+    public String deleteFile(@PathVariable String uid, Authentication authentication,
+            RedirectAttributes redirectAttributes) {
+        TlkFile file = fileService.findByUid(uid);
+        if (file == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND);
+        }
+        String userId = resolveUserId(authentication);
+        if (userId == null || !userId.equals(file.getUserId())) {
+            throw new ResponseStatusException(HttpStatus.FORBIDDEN);
+        }
+        try {
+            if (fileService.delete(uid)) {
+                redirectAttributes.addFlashAttribute("message", "File deleted: " + file.getName());
+                redirectAttributes.addFlashAttribute("alertClass", "alert-success");
+            }
+            return "redirect:/";
+        } catch (IOException e) {
+            logger.warning("File delete failed for uid=" + uid + ": " + e.getMessage());
+            redirectAttributes.addFlashAttribute("message", "Delete failed: " + e.getMessage());
+            redirectAttributes.addFlashAttribute("alertClass", "alert-danger");
+            return "redirect:/file/" + uid;
+        }
+    }
+
+    /**
+     * 文本文件预览：只读取开头（日志文件为结尾）的一段，在整行处截断后以 UTF-8 纯文本返回。
+     * 响应头 {@code X-Preview-Truncated} 表示文件还有未包含的内容，{@code X-Preview-Charset} 为识别出的原始字符集。
+     */
+    @GetMapping("/file/{uid}/text")
+    @org.springframework.web.bind.annotation.ResponseBody
+    public ResponseEntity<String> getTextPreview(@PathVariable String uid, WebRequest webRequest) {
+        TlkFile file = fileService.findByUid(uid);
+        if (file == null || !textPreviewService.supports(file)) {
+            return ResponseEntity.notFound().build();
+        }
+        if (webRequest.checkNotModified(etagOf(file), lastModifiedOf(file))) {
+            return null;
+        }
+        try {
+            TextPreviewService.TextPreview preview = textPreviewService.preview(file);
+            return ResponseEntity.ok()
+                    .cacheControl(REVALIDATE)
+                    .contentType(new org.springframework.http.MediaType("text", "plain",
+                            java.nio.charset.StandardCharsets.UTF_8))
+                    .header("X-Content-Type-Options", "nosniff")
+                    .header("X-Preview-Truncated", String.valueOf(preview.truncated()))
+                    .header("X-Preview-Charset", preview.charset())
+                    .body(preview.text());
+        } catch (java.io.IOException e) {
+            logger.warning("Text preview failed for uid=" + uid + ": " + e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+
+    /**
+     * 按需缩放的图片，供详情页和外部嵌入按显示宽度加载。宽度和格式须在白名单内，否则返回 400；
+     * 无法缩放的图片（如 SVG）跳转到原图。同一 UID 和参数对应的内容不变，因此返回长期 immutable 缓存头。
+     * 缩放任务已满时返回 503。
+     */
+    @GetMapping("/file/{uid}/img")
+    @org.springframework.web.bind.annotation.ResponseBody
+    public ResponseEntity<org.springframework.core.io.Resource> getResizedImage(
+            @PathVariable String uid,
+            @RequestParam("w") int width,
+            @RequestParam(value = "fmt", defaultValue = "jpg") String format,
+            WebRequest webRequest) {
+        if (!imageVariantService.isAllowed(width, format)) {
+            return ResponseEntity.badRequest().build();
+        }
+        TlkFile file = fileService.findByUid(uid);
+        if (file == null || file.getPath() == null || !"image".equals(file.getFileType())) {
+            return ResponseEntity.notFound().build();
+        }
+        if (!imageVariantService.supports(file)) {
+            return redirectTo(file.getCloudUrl());
+        }
+        String etag = file.getHash() != null
+                ? "\"" + file.getHash() + "-w" + width + "-" + format.toLowerCase() + "\"" : null;
+        if (etag != null && webRequest.checkNotModified(etag)) {
+            return null;
+        }
+        try {
+            ImageVariantService.Variant variant = imageVariantService.open(file, width, format);
+            ResponseEntity.BodyBuilder builder = ResponseEntity.ok()
+                    .cacheControl(IMMUTABLE)
+                    .contentType(org.springframework.http.MediaType.parseMediaType(variant.contentType()));
+            if (etag != null) {
+                builder.eTag(etag);
+            }
+            if (variant.length() != null) {
+                builder.contentLength(variant.length());
+            }
+            return builder.body(new org.springframework.core.io.InputStreamResource(variant.body()));
+        } catch (ImageVariantService.BusyException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, "1")
+                    .build();
+        } catch (java.io.IOException e) {
+            logger.warning("Image resize failed for uid=" + uid + ": " + e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+
+    /**
+     * PDF 预览页图片（页码从 1 开始），由 {@link PdfPreviewService} 在上传后渲染。
+     * 预览页内容不变，返回长期 immutable 缓存头；超出已渲染页数时返回 404。
+     */
+    @GetMapping("/file/{uid}/preview/{page}")
+    @org.springframework.web.bind.annotation.ResponseBody
+    public ResponseEntity<org.springframework.core.io.Resource> getPreviewPage(
+            @PathVariable String uid,
+            @PathVariable int page,
+            WebRequest webRequest) {
+        TlkFile file = fileService.findByUid(uid);
+        if (file == null || file.getPath() == null || !file.hasPreviewPages()
+                || page < 1 || page > file.getPreviewPages()) {
+            return ResponseEntity.notFound().build();
+        }
+        String etag = file.getHash() != null ? "\"" + file.getHash() + "-p" + page + "\"" : null;
+        if (etag != null && webRequest.checkNotModified(etag)) {
+            return null;
+        }
+        try {
+            ResponseEntity.BodyBuilder builder = ResponseEntity.ok()
+                    .cacheControl(IMMUTABLE)
+                    .contentType(org.springframework.http.MediaType.IMAGE_JPEG);
+            if (etag != null) {
+                builder.eTag(etag);
+            }
+            return builder.body(new org.springframework.core.io.InputStreamResource(
+                    pdfPreviewService.openPage(file, page)));
+        } catch (java.io.IOException | RuntimeException e) {
+            logger.warning("PDF preview page " + page + " unavailable for uid=" + uid + ": " + e.getMessage());
+            return ResponseEntity.notFound().build();
+        }
+    }
+
+    /**
+     * MOBI 书籍的 HTML 片段（序号从 1 开始），由 {@link MobiBookService} 在上传后切分，阅读器逐段请求。
+     * 片段内容来自用户上传的书籍，以 CSP sandbox 返回，脚本不会在本站源下执行；内容不变，返回长期缓存头。
+     */
+    @GetMapping("/file/{uid}/book/{chunk}")
+    @org.springframework.web.bind.annotation.ResponseBody
+    public ResponseEntity<org.springframework.core.io.Resource> getBookChunk(
+            @PathVariable String uid,
+            @PathVariable int chunk,
+            WebRequest webRequest) {
+        TlkFile file = fileService.findByUid(uid);
+        if (file == null || file.getPath() == null || !"mobi".equals(file.getFileType())
+                || !file.hasPreviewPages() || chunk < 1 || chunk > file.getPreviewPages()) {
+            return ResponseEntity.notFound().build();
+        }
+        String etag = file.getHash() != null ? "\"" + file.getHash() + "-c" + chunk + "\"" : null;
+        if (etag != null && webRequest.checkNotModified(etag)) {
+            return null;
+        }
+        try {
+            ResponseEntity.BodyBuilder builder = ResponseEntity.ok()
+                    .cacheControl(IMMUTABLE)
+                    .contentType(new org.springframework.http.MediaType("text", "html",
+                            java.nio.charset.StandardCharsets.UTF_8))
+                    .header("Content-Security-Policy", "sandbox; default-src 'none'; style-src 'unsafe-inline'")
+                    .header("X-Content-Type-Options", "nosniff");
+            if (etag != null) {
+                builder.eTag(etag);
+            }
+            return builder.body(new org.springframework.core.io.InputStreamResource(
+                    mobiBookService.openChunk(file, chunk)));
+        } catch (java.io.IOException | RuntimeException e) {
+            logger.warning("Book chunk " + chunk + " unavailable for uid=" + uid + ": " + e.getMessage());
+            return ResponseEntity.notFound().build();
+        }
+    }
+
     /**
      * 文件下载：通过服务端代理返回文件，并强制触发浏览器下载（Content-Disposition: attachment）。
+     * 启用重定向模式时改为 302 跳转到 R2 预签名地址。支持 HTTP Range（单区间和多区间），断点续传只传输请求的字节。
+     * 条件请求在访问存储之前即以 304 应答。
      */
     @GetMapping("/file/{uid}/download")
     @org.springframework.web.bind.annotation.ResponseBody
     public ResponseEntity<org.springframework.core.io.Resource> downloadFile(
-            @PathVariable String uid) {
+            @PathVariable String uid,
+            @RequestHeader(value = HttpHeaders.RANGE, required = false) String range,
+            @RequestHeader(value = HttpHeaders.IF_RANGE, required = false) String ifRange,
+            WebRequest webRequest,
+            HttpServletRequest request,
+            HttpServletResponse response) {
         TlkFile file = fileService.findByUid(uid);
         if (file == null || file.getPath() == null) {
             return ResponseEntity.notFound().build();
         }
+        if (webRequest.checkNotModified(etagOf(file), lastModifiedOf(file))) {
+            return null;
+        }
         try {
             String fileName = file.getName() != null ? file.getName() : file.getUid();
             String disposition = org.springframework.http.ContentDisposition.attachment()
@@ -109,14 +408,22 @@ public class FileController {
             org.springframework.http.MediaType contentType =
                     org.springframework.http.MediaTypeFactory.getMediaType(fileName)
                             .orElse(org.springframework.http.MediaType.APPLICATION_OCTET_STREAM);
-            // Open stream last; if it fails the catch block handles cleanup.
-            java.io.InputStream inputStream = cloudflareStorageService.getInputStream(file.getPath());
-            org.springframework.core.io.Resource resource =
-                    new org.springframework.core.io.InputStreamResource(inputStream);
-            return ResponseEntity.ok()
-                    .header(HttpHeaders.CONTENT_DISPOSITION, disposition)
-                    .contentType(contentType)
-                    .body(resource);
+            String redirectUrl = presignedUrlService.urlFor(file, contentType.toString(), disposition);
+            if (redirectUrl != null) {
+                return redirectTo(redirectUrl);
+            }
+            HttpHeaders headers = new HttpHeaders();
+            headers.setCacheControl(REVALIDATE);
+            headers.set(HttpHeaders.CONTENT_DISPOSITION, disposition);
+            String effectiveRange = RangeResponses.effectiveRange(range, ifRange, etagOf(file), lastModifiedOf(file));
+            if (streamAsync(file, effectiveRange, contentType, headers, request, response)) {
+                return null;
+            }
+            // Streams are opened last; if opening fails the catch block handles it.
+            return RangeResponses.build(effectiveRange, file.getSize(), contentType, headers,
+                    (start, end) -> fileService.openRange(file, start, end));
+        } catch (StoragePendingException e) {
+            return storagePending();
         } catch (java.io.IOException e) {
             logger.warning("File download failed for uid=" + uid + ": " + e.getMessage());
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
@@ -125,23 +432,44 @@ public class FileController {
 
     /**
      * 原始文件内容代理，供前端 mobi 预览使用（同源请求，无 CORS 问题）。
+     * 启用重定向模式时改为 302 跳转到 R2 预签名地址（需在存储桶上配置 CORS）。
+     * 支持 HTTP Range，客户端可以只读取需要的区间；条件请求在访问存储之前即以 304 应答。
      */
     @GetMapping("/file/{uid}/raw")
     @org.springframework.web.bind.annotation.ResponseBody
     public ResponseEntity<org.springframework.core.io.Resource> getRawContent(
-            @PathVariable String uid) {
+            @PathVariable String uid,
+            @RequestHeader(value = HttpHeaders.RANGE, required = false) String range,
+            @RequestHeader(value = HttpHeaders.IF_RANGE, required = false) String ifRange,
+            WebRequest webRequest,
+            HttpServletRequest request,
+            HttpServletResponse response) {
         TlkFile file = fileService.findByUid(uid);
         if (file == null || file.getPath() == null) {
             return ResponseEntity.notFound().build();
         }
+        if (webRequest.checkNotModified(etagOf(file), lastModifiedOf(file))) {
+            return null;
+        }
         try {
-            // Open stream last; if it fails the catch block handles cleanup.
-            java.io.InputStream inputStream = cloudflareStorageService.getInputStream(file.getPath());
-            org.springframework.core.io.Resource resource =
-                    new org.springframework.core.io.InputStreamResource(inputStream);
-            return ResponseEntity.ok()
-                    .contentType(org.springframework.http.MediaType.APPLICATION_OCTET_STREAM)
-                    .body(resource);
+            String redirectUrl = presignedUrlService.urlFor(file,
+                    org.springframework.http.MediaType.APPLICATION_OCTET_STREAM_VALUE, null);
+            if (redirectUrl != null) {
+                return redirectTo(redirectUrl);
+            }
+            HttpHeaders headers = new HttpHeaders();
+            headers.setCacheControl(REVALIDATE);
+            String effectiveRange = RangeResponses.effectiveRange(range, ifRange, etagOf(file), lastModifiedOf(file));
+            if (streamAsync(file, effectiveRange, org.springframework.http.MediaType.APPLICATION_OCTET_STREAM,
+                    headers, request, response)) {
+                return null;
+            }
+            // Streams are opened last; if opening fails the catch block handles it.
+            return RangeResponses.build(effectiveRange, file.getSize(),
+                    org.springframework.http.MediaType.APPLICATION_OCTET_STREAM, headers,
+                    (start, end) -> fileService.openRange(file, start, end));
+        } catch (StoragePendingException e) {
+            return storagePending();
         } catch (java.io.IOException e) {
             logger.warning("File raw access failed for uid=" + uid + ": " + e.getMessage());
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
@@ -150,14 +478,26 @@ public class FileController {
 
     // ---- legacy local-file endpoint (fallback when R2 is disabled) ----
 
+    /**
+     * 本地存储文件。对象键唯一且内容不变，因此返回长期 immutable 缓存头；
+     * ETag 由文件修改时间和大小生成，条件请求直接以 304 应答。
+     */
     @GetMapping("/files/{filename:.+}")
     @org.springframework.web.bind.annotation.ResponseBody
     public ResponseEntity<org.springframework.core.io.Resource> serveLocalFile(
-            @PathVariable String filename) {
+            @PathVariable String filename,
+            WebRequest webRequest) {
         try {
             java.nio.file.Path filePath = fileStorageService.getFilePath(filename);
             org.springframework.core.io.Resource resource = new org.springframework.core.io.UrlResource(filePath.toUri());
             if (resource.exists() && resource.isReadable()) {
+                java.nio.file.attribute.BasicFileAttributes attrs = java.nio.file.Files.readAttributes(
+                        filePath, java.nio.file.attribute.BasicFileAttributes.class);
+                long lastModified = attrs.lastModifiedTime().toMillis();
+                String etag = "\"" + Long.toHexString(lastModified) + "-" + Long.toHexString(attrs.size()) + "\"";
+                if (webRequest.checkNotModified(etag, lastModified)) {
+                    return null;
+                }
                 org.springframework.http.MediaType contentType =
                         org.springframework.http.MediaTypeFactory.getMediaType(filename)
                                 .orElse(org.springframework.http.MediaType.APPLICATION_OCTET_STREAM);
@@ -166,6 +506,7 @@ public class FileController {
                         .build().toString();
                 return ResponseEntity.ok()
                         .header(HttpHeaders.CONTENT_DISPOSITION, disposition)
+                        .cacheControl(IMMUTABLE)
                         .contentType(contentType)
                         .body(resource);
             }
@@ -174,11 +515,79 @@ public class FileController {
             return ResponseEntity.badRequest().build();
         } catch (java.net.MalformedURLException e) {
             return ResponseEntity.badRequest().build();
+        } catch (java.io.IOException e) {
+            return ResponseEntity.notFound().build();
         }
     }
 
     // ---- helpers ----
 
+    /** 强 ETag：文件哈希唯一确定内容；旧数据没有哈希时只使用 Last-Modified。 */
+    private static String etagOf(TlkFile file) {
+        return file.getHash() != null ? "\"" + file.getHash() + "\"" : null;
+    }
+
+    private static long lastModifiedOf(TlkFile file) {
+        return file.getCreateTime() != null ? file.getCreateTime().getTime() : -1;
+    }
+
+    /**
+     * 需要从 R2 读取时，若启用了非阻塞下载，则交给 {@link AsyncDownloadService} 传输并返回 true，
+     * 请求线程随即释放。本地可读的内容（磁盘缓存、异步上传暂存）和多区间请求仍走阻塞路径；
+     * 会填充磁盘缓存或参与下载合并的完整下载也走阻塞路径，非阻塞传输不会绕过这两者。
+     */
+    private boolean streamAsync(TlkFile file, String range, org.springframework.http.MediaType contentType,
+            HttpHeaders headers, HttpServletRequest request, HttpServletResponse response) throws java.io.IOException {
+        if (!asyncDownloadService.isEnabled() || file.getSize() == null || file.isStoragePending()
+                || fileService.isLocallyAvailable(file)) {
+            return false;
+        }
+        long length = file.getSize();
+        List<long[]> ranges;
+        try {
+            ranges = RangeResponses.resolve(range, length);
+        } catch (IllegalArgumentException e) {
+            return false; // 由阻塞路径返回 416
+        }
+        if (ranges != null && ranges.size() > 1) {
+            return false;
+        }
+        if (ranges == null && fileService.isFullReadShared(file)) {
+            return false;
+        }
+        headers.setContentType(contentType);
+        headers.set(HttpHeaders.ACCEPT_RANGES, "bytes");
+        if (ranges == null) {
+            headers.setContentLength(length);
+            asyncDownloadService.stream(request, response, file.getPath(), null, null,
+                    HttpStatus.OK.value(), headers);
+        } else {
+            long start = ranges.get(0)[0];
+            long end = ranges.get(0)[1];
+            headers.setContentLength(end - start + 1);
+            headers.set(HttpHeaders.CONTENT_RANGE, RangeResponses.contentRange(start, end, length));
+            asyncDownloadService.stream(request, response, file.getPath(), start, end,
+                    HttpStatus.PARTIAL_CONTENT.value(), headers);
+        }
+        return true;
+    }
+
+    /** 异步上传尚未推送完成、暂存又不在本节点：让客户端稍后重试。 */
+    private static ResponseEntity<org.springframework.core.io.Resource> storagePending() {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "5")
+                .cacheControl(CacheControl.noStore())
+                .build();
+    }
+
+    /** 跳转到预签名地址；地址很快过期，跳转本身不允许缓存。 */
+    private static ResponseEntity<org.springframework.core.io.Resource> redirectTo(String url) {
+        return ResponseEntity.status(HttpStatus.FOUND)
+                .location(java.net.URI.create(url))
+                .cacheControl(CacheControl.noStore())
+                .build();
+    }
+
     private String resolveUserId(Authentication authentication) {
         if (authentication == null) return null;
         String email;
@@ -1,9 +1,19 @@
 package com.yuz.toplinks.controller;
 
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.oauth2.core.user.OAuth2User;
+import org.springframework.util.unit.DataSize;
 import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.ModelAttribute;
+import org.springframework.web.multipart.MaxUploadSizeExceededException;
+
+import jakarta.servlet.http.HttpServletRequest;
 
 import com.yuz.toplinks.entity.SysUser;
 import com.yuz.toplinks.service.UserService;
@@ -12,9 +22,32 @@ import com.yuz.toplinks.service.UserService;
 public class GlobalControllerAdvice {
 
     private final UserService userService;
+    private final DataSize maxFileSize;
+    private final DataSize maxRequestSize;
 
-    public GlobalControllerAdvice(UserService userService) {
+    public GlobalControllerAdvice(UserService userService,
+            @Value("${spring.servlet.multipart.max-file-size:1MB}") DataSize maxFileSize,
+            @Value("${spring.servlet.multipart.max-request-size:10MB}") DataSize maxRequestSize) {
         this.userService = userService;
+        this.maxFileSize = maxFileSize;
+        this.maxRequestSize = maxRequestSize;
+    }
+
+    /**
+     * 批量上传超过 multipart 大小上限时，请求在进入控制器之前就被拒绝；
+     * 对 {@code /upload/batch} 返回 413 和 JSON 错误，客户端据此拆分批次。其他请求交回默认处理。
+     */
+    @ExceptionHandler(MaxUploadSizeExceededException.class)
+    public ResponseEntity<Map<String, Object>> uploadTooLarge(MaxUploadSizeExceededException e,
+            HttpServletRequest request) throws MaxUploadSizeExceededException {
+        if (!"/upload/batch".equals(request.getServletPath())) {
+            throw e;
+        }
+        return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).body(Map.of(
+                "error", "Batch too large: each file at most " + maxFileSize.toMegabytes() + " MB and "
+                        + maxRequestSize.toMegabytes() + " MB per request, split it into smaller batches",
+                "maxFileBytes", maxFileSize.toBytes(),
+                "maxRequestBytes", maxRequestSize.toBytes()));
     }
 
     /**
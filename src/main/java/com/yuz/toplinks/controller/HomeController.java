@@ -8,41 +8,71 @@ import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 
 import com.yuz.toplinks.entity.TlkCategory;
-import com.yuz.toplinks.entity.TlkFile;
 import com.yuz.toplinks.service.CategoryService;
+import com.yuz.toplinks.service.FileCounterService;
+import com.yuz.toplinks.service.FileCursor;
+import com.yuz.toplinks.service.FilePage;
 import com.yuz.toplinks.service.FileService;
 
+import jakarta.servlet.http.HttpServletResponse;
+
 @Controller
 public class HomeController {
 
     private final CategoryService categoryService;
     private final FileService fileService;
+    private final FileCounterService fileCounterService;
 
-    public HomeController(CategoryService categoryService, FileService fileService) {
+    public HomeController(CategoryService categoryService, FileService fileService,
+            FileCounterService fileCounterService) {
         this.categoryService = categoryService;
         this.fileService = fileService;
+        this.fileCounterService = fileCounterService;
     }
 
     private static final int PAGE_SIZE = FileService.DEFAULT_PAGE_SIZE;
 
+    /**
+     * 首页列表。前 {@link FileService#MAX_NUMBERED_PAGES} 页可以按页码访问；之后通过不透明游标
+     * （{@code after} 读取更早的一页，{@code before} 读取更新的一页）翻页，查询开销与页的深度无关。
+     */
     @GetMapping("/")
     public String index(
             @RequestParam(required = false) String categoryId,
             @RequestParam(defaultValue = "1") int page,
-            Model model) {
+            @RequestParam(required = false) String after,
+            @RequestParam(required = false) String before,
+            Model model,
+            HttpServletResponse response) {
 
         if (page < 1) page = 1;
 
+        FilePage filePage;
+        FileCursor cursor = FileCursor.decode(after != null ? after : before);
+        if (cursor != null) {
+            filePage = fileService.listPage(categoryId, cursor, after == null, PAGE_SIZE);
+            page = 0; // 游标页不对应页码
+        } else if (page <= FileService.MAX_NUMBERED_PAGES) {
+            filePage = fileService.listPage(categoryId, page, PAGE_SIZE);
+        } else {
+            response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+            return "error/404";
+        }
+
         List<TlkCategory> categories = categoryService.listActiveCategories();
-        List<TlkFile> files = fileService.listByCategory(categoryId, page, PAGE_SIZE);
-        long total = fileService.countByCategory(categoryId);
+        long total = fileCounterService.count(categoryId);
         long totalPages = (total + PAGE_SIZE - 1) / PAGE_SIZE;
 
         model.addAttribute("categories", categories);
-        model.addAttribute("files", files);
+        model.addAttribute("categoryCounts", fileCounterService.getCounts());
+        model.addAttribute("allCount", fileCounterService.count(null));
+        model.addAttribute("files", filePage.files());
         model.addAttribute("selectedCategory", categoryId);
         model.addAttribute("currentPage", page);
         model.addAttribute("totalPages", totalPages);
+        model.addAttribute("numberedPages", Math.min(totalPages, FileService.MAX_NUMBERED_PAGES));
+        model.addAttribute("nextCursor", filePage.nextCursor());
+        model.addAttribute("prevCursor", filePage.prevCursor());
         model.addAttribute("total", total);
 
         return "index";
@@ -0,0 +1,220 @@
+package com.yuz.toplinks.controller;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.UUID;
+
+import org.springframework.core.io.InputStreamResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+
+/**
+ * 按 HTTP Range 请求构造下载响应（RFC 9110 §14）。
+ *
+ * <p>单区间返回 206 和对应的 {@code Content-Range}；多区间返回 {@code multipart/byteranges}，
+ * 重叠或相邻的区间先合并。每个区间只向存储请求所需的字节，不会从文件头跳读。
+ * 合并后仍超过 {@link #MAX_PARTS} 个区间时忽略 Range、返回 200 和完整内容（RFC 9110 §14.2 允许），
+ * 避免大量小区间把一次下载放大为大量存储请求。区间无法满足时返回 416。</p>
+ */
+final class RangeResponses {
+
+    /** multipart/byteranges 响应的区间数上限。 */
+    static final int MAX_PARTS = 16;
+
+    /** 按区间打开内容流，start 与 end 均含；从 0 开始且覆盖到末尾时应返回完整内容流。 */
+    @FunctionalInterface
+    interface RangeOpener {
+        InputStream open(long start, long end) throws IOException;
+    }
+
+    private RangeResponses() {
+    }
+
+    /**
+     * @param rangeHeader 请求的 {@code Range} 头，可为 null
+     * @param length      内容总长度；未知时传 null，此时忽略 Range 并返回完整内容
+     * @param headers     需附加到响应上的其他头（如 Content-Disposition）
+     */
+    static ResponseEntity<Resource> build(String rangeHeader, Long length, MediaType contentType,
+            HttpHeaders headers, RangeOpener opener) throws IOException {
+        if (length == null || length < 0) {
+            return ResponseEntity.ok()
+                    .headers(headers)
+                    .header(HttpHeaders.ACCEPT_RANGES, "none")
+                    .contentType(contentType)
+                    .body(new InputStreamResource(opener.open(0, Long.MAX_VALUE)));
+        }
+
+        List<long[]> ranges;
+        try {
+            ranges = resolve(rangeHeader, length);
+        } catch (IllegalArgumentException e) {
+            return notSatisfiable(length);
+        }
+
+        if (ranges == null || ranges.isEmpty()) {
+            return ResponseEntity.ok()
+                    .headers(headers)
+                    .header(HttpHeaders.ACCEPT_RANGES, "bytes")
+                    .contentType(contentType)
+                    .contentLength(length)
+                    .body(new InputStreamResource(opener.open(0, Math.max(0, length - 1))));
+        }
+
+        if (ranges.size() == 1) {
+            long start = ranges.get(0)[0];
+            long end = ranges.get(0)[1];
+            return ResponseEntity.status(HttpStatus.PARTIAL_CONTENT)
+                    .headers(headers)
+                    .header(HttpHeaders.ACCEPT_RANGES, "bytes")
+                    .header(HttpHeaders.CONTENT_RANGE, contentRange(start, end, length))
+                    .contentType(contentType)
+                    .contentLength(end - start + 1)
+                    .body(new InputStreamResource(opener.open(start, end)));
+        }
+
+        String boundary = UUID.randomUUID().toString().replace("-", "");
+        List<byte[]> partHeaders = new ArrayList<>(ranges.size());
+        long total = 0;
+        for (long[] range : ranges) {
+            byte[] partHeader = ("\r\n--" + boundary + "\r\n"
+                    + HttpHeaders.CONTENT_TYPE + ": " + contentType + "\r\n"
+                    + HttpHeaders.CONTENT_RANGE + ": " + contentRange(range[0], range[1], length) + "\r\n\r\n")
+                    .getBytes(StandardCharsets.US_ASCII);
+            partHeaders.add(partHeader);
+            total += partHeader.length + range[1] - range[0] + 1;
+        }
+        byte[] closing = ("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.US_ASCII);
+        total += closing.length;
+
+        return ResponseEntity.status(HttpStatus.PARTIAL_CONTENT)
+                .headers(headers)
+                .header(HttpHeaders.ACCEPT_RANGES, "bytes")
+                .contentType(MediaType.parseMediaType("multipart/byteranges; boundary=" + boundary))
+                .contentLength(total)
+                .body(new InputStreamResource(multipartBody(ranges, partHeaders, closing, opener)));
+    }
+
+    /**
+     * 解析 Range 头并合并区间。
+     *
+     * @return 按起始偏移排序的 {start, end} 区间；没有 Range 头或合并后区间超过 {@link #MAX_PARTS} 个时返回 null
+     * @throws IllegalArgumentException Range 头无效或区间无法满足
+     */
+    static List<long[]> resolve(String rangeHeader, long length) {
+        if (rangeHeader == null || length <= 0) {
+            return null;
+        }
+        List<long[]> ranges = merge(HttpRange.parseRanges(rangeHeader), length);
+        return ranges.size() > MAX_PARTS ? null : ranges;
+    }
+
+    static ResponseEntity<Resource> notSatisfiable(long length) {
+        return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE)
+                .header(HttpHeaders.CONTENT_RANGE, "bytes */" + length)
+                .build();
+    }
+
+    static String contentRange(long start, long end, long length) {
+        return "bytes " + start + "-" + end + "/" + length;
+    }
+
+    /**
+     * 处理 {@code If-Range}：校验值与当前 ETag（强比较）或 Last-Modified（精确到秒）不一致时，
+     * 返回 null 表示忽略 Range、发送完整内容。
+     */
+    static String effectiveRange(String range, String ifRange, String etag, long lastModified) {
+        if (range == null || ifRange == null) {
+            return range;
+        }
+        String value = ifRange.trim();
+        if (value.startsWith("\"")) {
+            return value.equals(etag) ? range : null;
+        }
+        if (value.startsWith("W/")) {
+            return null;
+        }
+        try {
+            long date = ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+            return lastModified >= 0 && date / 1000 == lastModified / 1000 ? range : null;
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    /** 解析并合并区间，按起始偏移排序；越界的区间被忽略，全部越界时抛出 IllegalArgumentException。 */
+    static List<long[]> merge(List<HttpRange> httpRanges, long length) {
+        List<long[]> ranges = new ArrayList<>(httpRanges.size());
+        for (HttpRange range : httpRanges) {
+            long start = range.getRangeStart(length);
+            long end = range.getRangeEnd(length);
+            if (start < length && start <= end) {
+                ranges.add(new long[] { start, end });
+            }
+        }
+        if (ranges.isEmpty()) {
+            throw new IllegalArgumentException("No satisfiable range");
+        }
+        ranges.sort(Comparator.comparingLong(r -> r[0]));
+        List<long[]> merged = new ArrayList<>(ranges.size());
+        for (long[] range : ranges) {
+            long[] last = merged.isEmpty() ? null : merged.get(merged.size() - 1);
+            if (last != null && range[0] <= last[1] + 1) {
+                last[1] = Math.max(last[1], range[1]);
+            } else {
+                merged.add(range);
+            }
+        }
+        return merged;
+    }
+
+    /** 各区间的内容流在读取到该部分时才打开，同一时刻最多占用一个存储连接。 */
+    private static InputStream multipartBody(List<long[]> ranges, List<byte[]> partHeaders, byte[] closing,
+            RangeOpener opener) {
+        Iterator<long[]> rangeIt = ranges.iterator();
+        Iterator<byte[]> headerIt = partHeaders.iterator();
+        return new SequenceInputStream(new java.util.Enumeration<InputStream>() {
+            private boolean header = true;
+            private boolean closed;
+
+            @Override
+            public boolean hasMoreElements() {
+                return !closed;
+            }
+
+            @Override
+            public InputStream nextElement() {
+                if (!rangeIt.hasNext() && header) {
+                    closed = true;
+                    return new ByteArrayInputStream(closing);
+                }
+                if (header) {
+                    header = false;
+                    return new ByteArrayInputStream(headerIt.next());
+                }
+                header = true;
+                long[] range = rangeIt.next();
+                try {
+                    return opener.open(range[0], range[1]);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        });
+    }
+}
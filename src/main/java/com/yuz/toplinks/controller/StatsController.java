@@ -0,0 +1,78 @@
+package com.yuz.toplinks.controller;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.yuz.toplinks.config.ReplicaRoutingDataSource;
+import com.yuz.toplinks.service.AsyncDownloadService;
+import com.yuz.toplinks.service.DownloadCoalescer;
+import com.yuz.toplinks.service.FileCounterService;
+import com.yuz.toplinks.service.ImageVariantService;
+import com.yuz.toplinks.service.MobiBookService;
+import com.yuz.toplinks.service.ObjectDiskCache;
+import com.yuz.toplinks.service.PdfPreviewService;
+import com.yuz.toplinks.service.RenderedPageCache;
+import com.yuz.toplinks.service.ThumbnailService;
+import com.yuz.toplinks.service.TieredStorageService;
+
+/**
+ * 运行统计（仅限 {@code app.admin-emails} 中的管理员），用于观察下载链路的缓存效果并调整容量配置。
+ */
+@RestController
+@RequestMapping("/internal/stats")
+public class StatsController {
+
+    private final ObjectDiskCache diskCache;
+    private final DownloadCoalescer downloadCoalescer;
+    private final AsyncDownloadService asyncDownloadService;
+    private final TieredStorageService tieredStorage;
+    private final ThumbnailService thumbnailService;
+    private final ImageVariantService imageVariantService;
+    private final PdfPreviewService pdfPreviewService;
+    private final MobiBookService mobiBookService;
+    private final FileCounterService fileCounterService;
+    private final RenderedPageCache pageCache;
+    private final ObjectProvider<ReplicaRoutingDataSource> replicaRouting;
+
+    public StatsController(ObjectDiskCache diskCache, DownloadCoalescer downloadCoalescer,
+            AsyncDownloadService asyncDownloadService, TieredStorageService tieredStorage,
+            ThumbnailService thumbnailService, ImageVariantService imageVariantService,
+            PdfPreviewService pdfPreviewService, MobiBookService mobiBookService,
+            FileCounterService fileCounterService, RenderedPageCache pageCache,
+            ObjectProvider<ReplicaRoutingDataSource> replicaRouting) {
+        this.diskCache = diskCache;
+        this.downloadCoalescer = downloadCoalescer;
+        this.asyncDownloadService = asyncDownloadService;
+        this.tieredStorage = tieredStorage;
+        this.thumbnailService = thumbnailService;
+        this.imageVariantService = imageVariantService;
+        this.pdfPreviewService = pdfPreviewService;
+        this.mobiBookService = mobiBookService;
+        this.fileCounterService = fileCounterService;
+        this.pageCache = pageCache;
+        this.replicaRouting = replicaRouting;
+    }
+
+    /** 下载链路统计：磁盘缓存命中率、节省的 R2 读取字节数、淘汰次数，冷下载合并和非阻塞下载情况。 */
+    @GetMapping("/storage")
+    public Map<String, Object> storage() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("diskCache", diskCache.getStats());
+        stats.put("coalescing", downloadCoalescer.getStats());
+        stats.put("asyncDownloads", asyncDownloadService.getStats());
+        stats.put("tiering", tieredStorage.getStats());
+        stats.put("thumbnails", thumbnailService.getStats());
+        stats.put("imageVariants", imageVariantService.getStats());
+        stats.put("pdfPreviews", pdfPreviewService.getStats());
+        stats.put("mobiBooks", mobiBookService.getStats());
+        stats.put("fileCounters", fileCounterService.getStats());
+        stats.put("pageCache", pageCache.getStats());
+        replicaRouting.ifAvailable(routing -> stats.put("replicas", routing.getStats()));
+        return stats;
+    }
+}
@@ -0,0 +1,162 @@
+package com.yuz.toplinks.controller;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.oauth2.core.user.OAuth2User;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.yuz.toplinks.entity.SysUser;
+import com.yuz.toplinks.entity.TlkFile;
+import com.yuz.toplinks.entity.TlkUploadSession;
+import com.yuz.toplinks.service.ResumableUploadService;
+import com.yuz.toplinks.service.UserService;
+
+import jakarta.servlet.http.HttpServletRequest;
+
+/**
+ * 可续传分片上传 API（需要登录）：
+ * <ul>
+ *   <li>{@code POST /upload/sessions?name=&size=} 创建会话，返回分片大小和分片数</li>
+ *   <li>{@code PUT /upload/sessions/{id}/chunks/{index}} 上传一个分片（请求体为原始字节，可乱序、并行）</li>
+ *   <li>{@code GET /upload/sessions/{id}} 查询已接收和缺失的分片</li>
+ *   <li>{@code POST /upload/sessions/{id}/complete} 合并分片并创建文件</li>
+ *   <li>{@code DELETE /upload/sessions/{id}} 放弃上传</li>
+ * </ul>
+ */
+@RestController
+@RequestMapping("/upload/sessions")
+public class UploadSessionController {
+
+    private static final Logger logger = Logger.getLogger(UploadSessionController.class.getName());
+
+    private final ResumableUploadService uploadService;
+    private final UserService userService;
+
+    public UploadSessionController(ResumableUploadService uploadService, UserService userService) {
+        this.uploadService = uploadService;
+        this.userService = userService;
+    }
+
+    @PostMapping
+    public ResponseEntity<Map<String, Object>> create(
+            @RequestParam("name") String name,
+            @RequestParam("size") long size,
+            @RequestParam(value = "categoryId", required = false) String categoryId,
+            Authentication authentication) {
+        try {
+            TlkUploadSession session = uploadService.create(name, size, resolveUserId(authentication), categoryId);
+            return ResponseEntity.status(HttpStatus.CREATED).body(describe(session));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        } catch (IOException e) {
+            logger.warning("Failed to create upload session: " + e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+
+    @GetMapping("/{id}")
+    public ResponseEntity<Map<String, Object>> status(@PathVariable String id, Authentication authentication) {
+        TlkUploadSession session = uploadService.find(id, resolveUserId(authentication));
+        if (session == null) {
+            return ResponseEntity.notFound().build();
+        }
+        Map<String, Object> body = describe(session);
+        body.put("received", uploadService.receivedChunks(session));
+        body.put("missing", uploadService.missingChunks(session));
+        return ResponseEntity.ok(body);
+    }
+
+    @PutMapping("/{id}/chunks/{index}")
+    public ResponseEntity<Map<String, Object>> putChunk(
+            @PathVariable String id,
+            @PathVariable int index,
+            Authentication authentication,
+            HttpServletRequest request) {
+        TlkUploadSession session = uploadService.find(id, resolveUserId(authentication));
+        if (session == null) {
+            return ResponseEntity.notFound().build();
+        }
+        try {
+            uploadService.putChunk(session, index, request.getInputStream(), request.getContentLengthLong());
+            return ResponseEntity.ok(Map.of("index", index));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(Map.of("error", e.getMessage()));
+        } catch (IOException e) {
+            logger.warning("Chunk " + index + " of session " + id + " failed: " + e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+
+    @PostMapping("/{id}/complete")
+    public ResponseEntity<Map<String, Object>> complete(
+            @PathVariable String id,
+            Authentication authentication,
+            HttpServletRequest request) {
+        TlkUploadSession session = uploadService.find(id, resolveUserId(authentication));
+        if (session == null) {
+            return ResponseEntity.notFound().build();
+        }
+        try {
+            TlkFile file = uploadService.complete(session, request);
+            return ResponseEntity.ok(Map.of("uid", file.getUid(), "url", "/file/" + file.getUid()));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(Map.of("error", e.getMessage()));
+        } catch (IOException e) {
+            logger.warning("Completing upload session " + id + " failed: " + e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+
+    @DeleteMapping("/{id}")
+    public ResponseEntity<Void> abort(@PathVariable String id, Authentication authentication) {
+        TlkUploadSession session = uploadService.find(id, resolveUserId(authentication));
+        if (session == null) {
+            return ResponseEntity.notFound().build();
+        }
+        try {
+            uploadService.abort(session);
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        }
+        return ResponseEntity.noContent().build();
+    }
+
+    // ---- helpers ----
+
+    private static Map<String, Object> describe(TlkUploadSession session) {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("id", session.getId());
+        body.put("name", session.getName());
+        body.put("size", session.getSize());
+        body.put("chunkSize", session.getChunkSize());
+        body.put("chunkCount", session.getChunkCount());
+        return body;
+    }
+
+    private String resolveUserId(Authentication authentication) {
+        if (authentication == null) return null;
+        String email;
+        if (authentication.getPrincipal() instanceof OAuth2User oAuth2User) {
+            email = oAuth2User.getAttribute("email");
+        } else {
+            email = authentication.getName();
+        }
+        SysUser user = userService.findByEmail(email);
+        return user != null ? user.getId() : null;
+    }
+}
@@ -5,6 +5,8 @@ import java.util.Date;
 
 import org.apache.commons.lang3.time.DateFormatUtils;
 
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableId;
 import com.baomidou.mybatisplus.annotation.TableLogic;
 
 public class BaseEntity implements Serializable {
@@ -17,6 +19,8 @@ public class BaseEntity implements Serializable {
 	public static final int STATUS_ACTIVE = 1;
 	public static final int STATUS_INACTIVE = 2;
 
+	//插入时为空则由 TimeOrderedIdGenerator 生成时间有序的 UUIDv7
+	@TableId(type = IdType.ASSIGN_UUID)
 	private String id;
 
 	private Integer status;
@@ -0,0 +1,38 @@
+package com.yuz.toplinks.entity;
+
+import java.io.Serializable;
+import java.util.Date;
+
+import com.baomidou.mybatisplus.annotation.TableName;
+
+import lombok.Data;
+
+/**
+ * 内容寻址的存储对象：相同内容（SHA-256 + 大小）只存储一份，
+ * 多个 {@link TlkFile} 通过 path 指向同一个 blob，refCount 记录引用数。
+ */
+@TableName("TLK_BLOB")
+@Data
+public class TlkBlob implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private String id;
+
+	//内容 SHA-256
+	private String hash;
+
+	//文件大小
+	private Long size;
+
+	//存储对象键
+	private String path;
+
+	//公开访问地址
+	private String cloudUrl;
+
+	//引用该 blob 的文件记录数
+	private Integer refCount;
+
+	private Date createTime;
+}
@@ -30,8 +30,11 @@ public class TlkFile extends BaseEntity {
 	//文件大小
 	private Long size;
 	
-	//文件hash值
+	//文件hash值（MD5）
 	private String hash;
+
+	//文件 SHA-256 值（可选，file.hash.sha256-enabled 开启时计算）
+	private String sha256;
 	
 	//创建IP地址
 	private String createIp;
@@ -45,6 +48,26 @@ public class TlkFile extends BaseEntity {
 	//Cloudflare R2 公开访问地址
 	private String cloudUrl;
 
+	//存储同步状态：0 已同步 1 待推送到 R2（异步上传，内容暂存在本地）
+	private Integer storageStatus;
+
+	public static final int STORAGE_SYNCED  = 0;
+	public static final int STORAGE_PENDING = 1;
+
+	//存储层级：0 仅在 R2（冷） 1 本地 SSD 另有副本（热）
+	private Integer storageTier;
+
+	public static final int TIER_COLD = 0;
+	public static final int TIER_HOT  = 1;
+
+	//缩略图访问地址；为空字符串表示无法生成（首页显示原图），为 null 表示尚未生成
+	private String thumbUrl;
+
+	public static final String THUMB_NONE = "";
+
+	//预览页数：PDF 为已渲染的页数，MOBI 为切分后的 HTML 片段数；0 表示无法生成（详情页回退到原文件），为 null 表示尚未处理
+	private Integer previewPages;
+
 	public static final Set<String> IMAGE_EXTS  = Set.of("jpg","jpeg","png","gif","webp","svg","bmp","ico");
 	public static final Set<String> VIDEO_EXTS  = Set.of("mp4","mkv","avi","mov","webm","flv");
 	public static final Set<String> AUDIO_EXTS  = Set.of("mp3","wav","ogg","flac","aac","m4a");
@@ -68,6 +91,27 @@ public class TlkFile extends BaseEntity {
 		return "other";
 	}
 
+	/**
+	 * 是否仍在等待推送到 R2（此时内容由本地暂存提供）
+	 */
+	public boolean isStoragePending() {
+		return storageStatus != null && storageStatus == STORAGE_PENDING;
+	}
+
+	/**
+	 * 列表预览使用的图片地址：有缩略图时用缩略图，否则用原图
+	 */
+	public String getPreviewUrl() {
+		return thumbUrl != null && !thumbUrl.isEmpty() ? thumbUrl : cloudUrl;
+	}
+
+	/**
+	 * 是否有服务端生成的预览页（PDF 页面图片或 MOBI 片段）
+	 */
+	public boolean hasPreviewPages() {
+		return previewPages != null && previewPages > 0;
+	}
+
 	/**
 	 * 返回文件大小的可读字符串
 	 */
@@ -0,0 +1,26 @@
+package com.yuz.toplinks.entity;
+
+import java.io.Serializable;
+import java.util.Date;
+
+import com.baomidou.mybatisplus.annotation.TableName;
+
+import lombok.Data;
+
+/**
+ * 多节点共享的序列：各节点以条件更新（比较并交换）的方式从 nextValue 预留一段号码，之后在内存中分配。
+ */
+@TableName("TLK_SEQUENCE")
+@Data
+public class TlkSequence implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	//序列名称
+	private String id;
+
+	//下一个未被预留的值
+	private Long nextValue;
+
+	private Date updateTime;
+}
@@ -0,0 +1,33 @@
+package com.yuz.toplinks.entity;
+
+import java.io.Serializable;
+import java.util.Date;
+
+import com.baomidou.mybatisplus.annotation.TableName;
+
+import lombok.Data;
+
+/**
+ * 上传会话中已接收的分片。
+ */
+@TableName("TLK_UPLOAD_CHUNK")
+@Data
+public class TlkUploadChunk implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	//会话 ID + ":" + 分片序号
+	private String id;
+
+	private String sessionId;
+
+	//分片序号，从 0 开始
+	private Integer chunkIndex;
+
+	private Long size;
+
+	//R2 分片 ETag；本地存储时为空
+	private String etag;
+
+	private Date createTime;
+}
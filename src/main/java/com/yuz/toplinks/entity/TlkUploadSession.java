@@ -0,0 +1,64 @@
+package com.yuz.toplinks.entity;
+
+import java.io.Serializable;
+import java.util.Date;
+
+import com.baomidou.mybatisplus.annotation.TableName;
+
+import lombok.Data;
+
+/**
+ * 可续传上传会话：记录目标文件、分片规格以及 R2 分片上传 ID，
+ * 已接收的分片记录在 {@link TlkUploadChunk} 中，客户端或服务端重启后均可继续。
+ */
+@TableName("TLK_UPLOAD_SESSION")
+@Data
+public class TlkUploadSession implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private String id;
+
+	//上传用户 ID
+	private String userId;
+
+	//原始文件名
+	private String name;
+
+	//预先分配的访问码，完成后成为文件 uid
+	private String uid;
+
+	//目标存储对象键
+	private String path;
+
+	//文件总大小
+	private Long size;
+
+	//分片大小
+	private Integer chunkSize;
+
+	//分片总数
+	private Integer chunkCount;
+
+	//R2 分片上传 ID；本地存储时为空
+	private String uploadId;
+
+	//所属分类 ID
+	private String categoryId;
+
+	//会话状态：0 上传中 1 正在合并 2 正在清理 3 已合并待登记 4 正在登记；通过条件更新认领，同一会话只会被完成或清理一次
+	private Integer status;
+
+	public static final int STATUS_OPEN        = 0;
+	public static final int STATUS_COMPLETING  = 1;
+	public static final int STATUS_ABORTING    = 2;
+	public static final int STATUS_STORED      = 3;
+	public static final int STATUS_REGISTERING = 4;
+
+	//合并后目标对象的公开访问地址；合并前为空，非空表示目标对象已存在
+	private String cloudUrl;
+
+	private Date createTime;
+
+	private Date updateTime;
+}
@@ -0,0 +1,7 @@
+package com.yuz.toplinks.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.yuz.toplinks.entity.TlkBlob;
+
+public interface TlkBlobMapper extends BaseMapper<TlkBlob> {
+}
@@ -0,0 +1,239 @@
+package com.yuz.toplinks.service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Service;
+
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import software.amazon.awssdk.core.async.ResponsePublisher;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+
+/**
+ * 非阻塞下载：通过 {@code S3AsyncClient} 读取 R2，并以 Servlet 非阻塞 I/O（{@link WriteListener}）写给客户端。
+ *
+ * <p>请求线程只负责发起读取后立即返回。之后每次只向 R2 请求一块数据，只有在客户端连接可写时才请求下一块，
+ * 因此慢客户端既不占用 Tomcat 线程，也不会让数据在内存中堆积；大量并发慢下载只需要少量固定的 I/O 线程。</p>
+ */
+@Service
+public class AsyncDownloadService {
+
+    private static final Logger logger = Logger.getLogger(AsyncDownloadService.class.getName());
+
+    private final CloudflareStorageService storageService;
+    private final boolean enabled;
+    private final long timeoutMillis;
+
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicLong started = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong bytesWritten = new AtomicLong();
+
+    /** 非阻塞下载统计：active 为正在传输的下载数（不占用请求线程）。 */
+    public record Stats(boolean enabled, int active, long started, long failed, long bytesWritten) {
+    }
+
+    public AsyncDownloadService(CloudflareStorageService storageService,
+            @Value("${file.download.async.enabled:false}") boolean asyncEnabled,
+            @Value("${file.download.async.timeout-millis:3600000}") long timeoutMillis) {
+        this.storageService = storageService;
+        this.enabled = asyncEnabled && storageService.isR2Enabled();
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public Stats getStats() {
+        return new Stats(enabled, active.get(), started.get(), failed.get(), bytesWritten.get());
+    }
+
+    /**
+     * 开始非阻塞传输。调用后请求进入异步模式，调用方不得再写响应。
+     *
+     * @param status  响应状态（200 或 206）
+     * @param headers 响应头（应包含 Content-Type、Content-Length，区间请求还应包含 Content-Range）
+     * @param start   起始偏移（含），为 null 时读取整个对象
+     * @param end     结束偏移（含）
+     */
+    public void stream(HttpServletRequest request, HttpServletResponse response, String objectKey,
+            Long start, Long end, int status, HttpHeaders headers) throws IOException {
+        CompletableFuture<ResponsePublisher<GetObjectResponse>> future =
+                storageService.getObjectPublisher(objectKey, start, end);
+
+        response.setStatus(status);
+        headers.forEach((name, values) -> values.forEach(value -> response.addHeader(name, value)));
+
+        AsyncContext context = request.startAsync();
+        context.setTimeout(timeoutMillis);
+        Transfer transfer = new Transfer(context, response, objectKey);
+        context.addListener(transfer);
+        response.getOutputStream().setWriteListener(transfer);
+        active.incrementAndGet();
+        started.incrementAndGet();
+
+        future.whenComplete((publisher, error) -> {
+            if (error != null) {
+                transfer.fail(error);
+            } else {
+                publisher.subscribe(transfer);
+            }
+        });
+    }
+
+    /**
+     * 一次传输：R2 数据块的订阅者，同时是客户端连接的写监听器。
+     * 所有状态变更和写操作都在 this 的监视器下进行，保证同一时刻只有一个线程写输出流。
+     */
+    private final class Transfer implements Subscriber<ByteBuffer>, WriteListener, AsyncListener {
+
+        private final AsyncContext context;
+        private final HttpServletResponse response;
+        private final ServletOutputStream out;
+        private final String objectKey;
+
+        private Subscription subscription;
+        private ByteBuffer pending;
+        private byte[] chunk = new byte[0];
+        private boolean requested;
+        private boolean upstreamDone;
+        private boolean finished;
+
+        Transfer(AsyncContext context, HttpServletResponse response, String objectKey) throws IOException {
+            this.context = context;
+            this.response = response;
+            this.out = response.getOutputStream();
+            this.objectKey = objectKey;
+        }
+
+        @Override
+        public synchronized void onSubscribe(Subscription s) {
+            if (finished) {
+                s.cancel();
+                return;
+            }
+            subscription = s;
+            drain();
+        }
+
+        @Override
+        public synchronized void onNext(ByteBuffer buffer) {
+            pending = buffer;
+            requested = false;
+            drain();
+        }
+
+        @Override
+        public synchronized void onComplete() {
+            upstreamDone = true;
+            drain();
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            fail(t);
+        }
+
+        @Override
+        public synchronized void onWritePossible() {
+            drain();
+        }
+
+        /**
+         * 在连接可写时尽量写出数据；{@code isReady()} 返回 false 时容器会在可写后回调 onWritePossible。
+         * 只有手头数据写完后才向上游请求下一块，这就是背压。
+         */
+        private void drain() {
+            if (finished) return;
+            try {
+                while (out.isReady()) {
+                    if (pending != null && pending.hasRemaining()) {
+                        int n = pending.remaining();
+                        if (chunk.length < n) chunk = new byte[n];
+                        pending.get(chunk, 0, n);
+                        out.write(chunk, 0, n);
+                        bytesWritten.addAndGet(n);
+                        continue;
+                    }
+                    pending = null;
+                    if (upstreamDone) {
+                        finish();
+                        return;
+                    }
+                    if (subscription != null && !requested) {
+                        requested = true;
+                        subscription.request(1);
+                    }
+                    return;
+                }
+            } catch (IOException e) {
+                fail(e);
+            }
+        }
+
+        synchronized void fail(Throwable t) {
+            if (finished) return;
+            failed.incrementAndGet();
+            logger.warning("Async download of " + objectKey + " failed: " + t.getMessage());
+            if (subscription != null) {
+                subscription.cancel();
+            }
+            if (!response.isCommitted()) {
+                response.reset();
+                response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+            }
+            // 已开始传输时无法再改状态码；Content-Length 不足会让客户端识别为不完整的响应
+            finish();
+        }
+
+        private void finish() {
+            if (finished) return;
+            finished = true;
+            active.decrementAndGet();
+            try {
+                context.complete();
+            } catch (IllegalStateException ignored) {
+                // 容器已结束该请求（超时或连接关闭）
+            }
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            fail(event.getThrowable() != null ? event.getThrowable() : new IOException("Async error"));
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            fail(new IOException("Download timed out"));
+        }
+
+        @Override
+        public synchronized void onComplete(AsyncEvent event) {
+            // 客户端断开等情况下由容器结束请求：停止从上游读取
+            if (!finished) {
+                finished = true;
+                active.decrementAndGet();
+                if (subscription != null) subscription.cancel();
+            }
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package com.yuz.toplinks.service;
+
+import com.yuz.toplinks.entity.TlkFile;
+
+/**
+ * 批量上传中单个文件的结果：成功时带 uid 和详情页地址，失败时带错误信息。
+ */
+public record BatchUploadResult(String name, boolean success, String uid, String url, String error) {
+
+    public static BatchUploadResult success(TlkFile file) {
+        return new BatchUploadResult(file.getName(), true, file.getUid(), "/file/" + file.getUid(), null);
+    }
+
+    public static BatchUploadResult failure(String name, String error) {
+        return new BatchUploadResult(name, false, null, null, error);
+    }
+}
@@ -0,0 +1,148 @@
+package com.yuz.toplinks.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Date;
+import java.util.UUID;
+import java.util.logging.Logger;
+
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.core.io.InputStreamSource;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.stereotype.Service;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.baomidou.mybatisplus.core.conditions.update.UpdateWrapper;
+import com.yuz.toplinks.entity.TlkBlob;
+import com.yuz.toplinks.mapper.TlkBlobMapper;
+
+/**
+ * 内容寻址存储：按 SHA-256 + 大小查找已有 blob，命中时只增加引用计数而不重复写入存储。
+ *
+ * <p>每个 blob 的对象键为 {@code blobs/<sha256>/<blobId>.<ext>}，包含 blob ID 是为了在
+ * 并发的"最后一个引用释放"与"重新上传同一内容"之间不会互相覆盖或误删对象。</p>
+ */
+@Service
+public class BlobService {
+
+    private static final Logger logger = Logger.getLogger(BlobService.class.getName());
+
+    public static final String KEY_PREFIX = "blobs/";
+
+    private final TlkBlobMapper blobMapper;
+    private final CloudflareStorageService storageService;
+    private final ApplicationEventPublisher eventPublisher;
+
+    public BlobService(TlkBlobMapper blobMapper, CloudflareStorageService storageService,
+            ApplicationEventPublisher eventPublisher) {
+        this.blobMapper = blobMapper;
+        this.storageService = storageService;
+        this.eventPublisher = eventPublisher;
+    }
+
+    public static boolean isBlobKey(String objectKey) {
+        return objectKey != null && objectKey.startsWith(KEY_PREFIX);
+    }
+
+    public TlkBlob findByHash(String sha256, long size) {
+        return blobMapper.selectOne(new QueryWrapper<TlkBlob>()
+                .eq("hash", sha256)
+                .eq("size", size));
+    }
+
+    /**
+     * 若已存在相同内容的 blob，则增加其引用计数并返回；否则返回 null，不做任何写入。
+     */
+    public TlkBlob reuse(String sha256, long size) {
+        TlkBlob existing = findByHash(sha256, size);
+        if (existing != null && incrementRef(existing.getId())) {
+            existing.setRefCount(existing.getRefCount() != null ? existing.getRefCount() + 1 : 1);
+            return existing;
+        }
+        return null;
+    }
+
+    /**
+     * 获取内容对应的 blob（引用计数已加一）。内容已存在时跳过存储写入，
+     * 否则从 {@code source} 读取并上传。
+     *
+     * @param sha256      内容 SHA-256
+     * @param size        内容大小
+     * @param ext         扩展名（不含点，可为空），用于对象键和本地降级时的 Content-Type 推断
+     * @param contentType MIME 类型
+     * @param source      内容来源，仅在需要上传时打开
+     */
+    public TlkBlob acquire(String sha256, long size, String ext, String contentType,
+            InputStreamSource source) throws IOException {
+        TlkBlob reused = reuse(sha256, size);
+        if (reused != null) {
+            return reused;
+        }
+
+        String id = UUID.randomUUID().toString();
+        String objectKey = KEY_PREFIX + sha256 + "/" + id + (ext == null || ext.isEmpty() ? "" : "." + ext);
+        String cloudUrl;
+        try (InputStream in = source.getInputStream()) {
+            cloudUrl = storageService.upload(objectKey, in, size, contentType);
+        }
+
+        TlkBlob blob = new TlkBlob();
+        blob.setId(id);
+        blob.setHash(sha256);
+        blob.setSize(size);
+        blob.setPath(objectKey);
+        blob.setCloudUrl(cloudUrl);
+        blob.setRefCount(1);
+        blob.setCreateTime(new Date());
+        try {
+            blobMapper.insert(blob);
+            return blob;
+        } catch (DuplicateKeyException e) {
+            // 并发上传了相同内容：使用先写入的 blob，并删除自己多余的对象
+            deleteObjectQuietly(objectKey);
+            TlkBlob winner = reuse(sha256, size);
+            if (winner == null) {
+                throw new IOException("Concurrent blob insert for " + sha256 + " could not be resolved", e);
+            }
+            return winner;
+        }
+    }
+
+    /**
+     * 释放一个对 blob 的引用；引用数归零时删除 blob 记录和存储对象。
+     *
+     * @param objectKey blob 的对象键（即 TlkFile.path）
+     */
+    public void release(String objectKey) {
+        if (!isBlobKey(objectKey)) return;
+        blobMapper.update(null, new UpdateWrapper<TlkBlob>()
+                .setSql("ref_count = ref_count - 1")
+                .eq("path", objectKey));
+        // 只有真正删除了记录的一方负责删除对象；期间若有新的引用加入，ref_count 不为 0 则不会删除
+        int deleted = blobMapper.delete(new QueryWrapper<TlkBlob>()
+                .eq("path", objectKey)
+                .le("ref_count", 0));
+        if (deleted > 0) {
+            deleteObjectQuietly(objectKey);
+            // 派生的缩略图（可能不存在，删除不存在的对象静默成功）
+            deleteObjectQuietly(ThumbnailService.thumbKey(objectKey));
+            if (eventPublisher != null) {
+                eventPublisher.publishEvent(new StoredObjectDeletedEvent(objectKey));
+            }
+        }
+    }
+
+    private boolean incrementRef(String blobId) {
+        return blobMapper.update(null, new UpdateWrapper<TlkBlob>()
+                .setSql("ref_count = ref_count + 1")
+                .eq("id", blobId)) > 0;
+    }
+
+    private void deleteObjectQuietly(String objectKey) {
+        try {
+            storageService.delete(objectKey);
+        } catch (IOException | RuntimeException e) {
+            logger.warning("Failed to delete blob object " + objectKey + ": " + e.getMessage());
+        }
+    }
+}
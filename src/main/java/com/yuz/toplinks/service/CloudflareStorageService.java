@@ -1,55 +1,155 @@
 package com.yuz.toplinks.service;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import jakarta.annotation.PreDestroy;
 import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
 import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.core.async.AsyncResponseTransformer;
+import software.amazon.awssdk.core.async.ResponsePublisher;
 import software.amazon.awssdk.core.sync.RequestBody;
 import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
 import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.S3Configuration;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompletedMultipartUpload;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.DeleteObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
 import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+import software.amazon.awssdk.services.s3.model.UploadPartRequest;
+import software.amazon.awssdk.services.s3.presigner.S3Presigner;
+import software.amazon.awssdk.services.s3.presigner.model.GetObjectPresignRequest;
 
 /**
- * Cloudflare R2 存储服务。
+ * Cloudflare R2 存储服务（S3 兼容的 {@link StorageBackend} 实现）。
  * 当 R2 凭证未配置时自动降级到本地文件存储。
  */
 @Service
-public class CloudflareStorageService {
+public class CloudflareStorageService implements StorageBackend {
+
+    private static final Logger logger = Logger.getLogger(CloudflareStorageService.class.getName());
+
+    /** S3 协议要求除最后一片外每片至少 5 MB。 */
+    static final int MIN_PART_SIZE = 5 * 1024 * 1024;
+    static final int DEFAULT_PART_SIZE = 8 * 1024 * 1024;
+    static final int DEFAULT_CONCURRENCY = 4;
+    static final int DEFAULT_MAX_BUFFERS = 16;
+
+    /**
+     * 写入 R2 对象的 Cache-Control 元数据。对象键包含唯一的 UID（或内容哈希），
+     * 同一键的内容永不改变，因此公开地址可以被浏览器和 CDN 长期缓存。
+     */
+    static final String OBJECT_CACHE_CONTROL = "public, max-age=31536000, immutable";
 
     private final String bucket;
     private final String publicUrl;
     private final boolean r2Enabled;
     private final S3Client s3Client;
+    private final S3Presigner presigner;
+    private final StaticCredentialsProvider credentials;
+    private final URI endpoint;
+    private volatile S3AsyncClient asyncClient;
     private final FileStorageService localStorage;
+    private final int concurrency;
+    private final PartBufferPool bufferPool;
+    private final ExecutorService partExecutor;
+
+    public CloudflareStorageService(String accountId, String accessKey, String secretKey,
+            String bucket, String publicUrl, FileStorageService localStorage) {
+        this(accountId, accessKey, secretKey, bucket, publicUrl,
+                DEFAULT_PART_SIZE, DEFAULT_CONCURRENCY, DEFAULT_MAX_BUFFERS, localStorage);
+    }
 
+    @Autowired
     public CloudflareStorageService(
             @Value("${cloudflare.r2.account-id:}") String accountId,
             @Value("${cloudflare.r2.access-key:}") String accessKey,
             @Value("${cloudflare.r2.secret-key:}") String secretKey,
             @Value("${cloudflare.r2.bucket:toplinks}") String bucket,
             @Value("${cloudflare.r2.public-url:}") String publicUrl,
+            @Value("${cloudflare.r2.multipart.part-size:8388608}") int partSize,
+            @Value("${cloudflare.r2.multipart.concurrency:4}") int concurrency,
+            @Value("${cloudflare.r2.multipart.max-buffers:16}") int maxBuffers,
             FileStorageService localStorage) {
 
         this.bucket = bucket;
         this.publicUrl = publicUrl;
         this.localStorage = localStorage;
         this.r2Enabled = !accountId.isBlank() && !accessKey.isBlank() && !secretKey.isBlank();
+        this.concurrency = Math.max(1, concurrency);
+        this.bufferPool = new PartBufferPool(Math.max(MIN_PART_SIZE, partSize), Math.max(1, maxBuffers));
 
         if (r2Enabled) {
+            this.credentials = StaticCredentialsProvider.create(AwsBasicCredentials.create(accessKey, secretKey));
+            this.endpoint = URI.create("https://" + accountId + ".r2.cloudflarestorage.com");
             this.s3Client = S3Client.builder()
-                    .credentialsProvider(StaticCredentialsProvider.create(
-                            AwsBasicCredentials.create(accessKey, secretKey)))
-                    .endpointOverride(URI.create("https://" + accountId + ".r2.cloudflarestorage.com"))
+                    .credentialsProvider(credentials)
+                    .endpointOverride(endpoint)
                     .region(Region.of("auto"))
                     .serviceConfiguration(s -> s.pathStyleAccessEnabled(true))
                     .build();
+            this.presigner = S3Presigner.builder()
+                    .credentialsProvider(credentials)
+                    .endpointOverride(endpoint)
+                    .region(Region.of("auto"))
+                    .serviceConfiguration(S3Configuration.builder().pathStyleAccessEnabled(true).build())
+                    .build();
+            // 每个进行中的分片都持有一个缓冲，因此线程数与缓冲数一致即可
+            AtomicInteger seq = new AtomicInteger();
+            this.partExecutor = Executors.newFixedThreadPool(bufferPool.getMaxBuffers(), r -> {
+                Thread t = new Thread(r, "r2-part-upload-" + seq.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
         } else {
             this.s3Client = null;
+            this.presigner = null;
+            this.credentials = null;
+            this.endpoint = null;
+            this.partExecutor = null;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (partExecutor != null) {
+            partExecutor.shutdown();
+        }
+        if (presigner != null) {
+            presigner.close();
+        }
+        if (asyncClient != null) {
+            asyncClient.close();
         }
     }
 
@@ -62,33 +162,261 @@ public class CloudflareStorageService {
      * @param contentType MIME 类型
      * @return 公开访问 URL
      */
+    @Override
     public String upload(String objectKey, InputStream inputStream, long size, String contentType) throws IOException {
         if (r2Enabled) {
-            // Read all bytes into memory so the SDK uses standard (non-chunked) SigV4 signing.
-            // Cloudflare R2 does not support STREAMING-AWS4-HMAC-SHA256-PAYLOAD chunked signing,
-            // which fromInputStream() uses. The caller is responsible for enforcing an upload
-            // size limit (e.g. spring.servlet.multipart.max-file-size) to bound memory usage.
+            // Parts are read into pooled, fixed-size buffers and sent with a known length, so every
+            // request uses standard (non-chunked) SigV4 signing. Cloudflare R2 does not support
+            // STREAMING-AWS4-HMAC-SHA256-PAYLOAD chunked signing, which fromInputStream() uses.
+            // Heap usage per upload is bounded by partSize * concurrency regardless of file size.
             if (size < 0) {
                 throw new IOException("Invalid file size: " + size);
             }
-            byte[] bytes = inputStream.readAllBytes();
-            s3Client.putObject(
-                    PutObjectRequest.builder()
-                            .bucket(bucket)
-                            .key(objectKey)
-                            .contentType(contentType)
-                            .contentLength((long) bytes.length)
-                            .build(),
-                    RequestBody.fromBytes(bytes));
+            byte[] first = bufferPool.acquire();
+            int n;
+            try {
+                n = inputStream.readNBytes(first, 0, first.length);
+            } catch (IOException | RuntimeException e) {
+                bufferPool.release(first);
+                throw e;
+            }
+            if (n < first.length) {
+                // 小文件：单次 PutObject
+                try {
+                    s3Client.putObject(
+                            PutObjectRequest.builder()
+                                    .bucket(bucket)
+                                    .key(objectKey)
+                                    .contentType(contentType)
+                                    .cacheControl(OBJECT_CACHE_CONTROL)
+                                    .contentLength((long) n)
+                                    .build(),
+                            bytesBody(first, n));
+                } finally {
+                    bufferPool.release(first);
+                }
+            } else {
+                multipartUpload(objectKey, first, inputStream, contentType);
+            }
             return buildPublicUrl(objectKey);
         } else {
             // 降级：存储到本地并返回本地访问路径
-            String filename = objectKey.contains("/") ? objectKey.substring(objectKey.lastIndexOf('/') + 1) : objectKey;
+            String filename = localName(objectKey);
             localStorage.storeWithName(inputStream, filename);
             return "/files/" + filename;
         }
     }
 
+    /**
+     * 使用 CreateMultipartUpload / UploadPart / CompleteMultipartUpload 流式上传。
+     * 每个上传最多同时有 {@code concurrency} 个分片在途；任一分片失败时中止整个上传。
+     *
+     * @param first 已读满的首个分片缓冲（来自缓冲池，本方法负责归还）
+     */
+    private void multipartUpload(String objectKey, byte[] first, InputStream inputStream,
+            String contentType) throws IOException {
+        String uploadId;
+        try {
+            uploadId = s3Client.createMultipartUpload(
+                    CreateMultipartUploadRequest.builder()
+                            .bucket(bucket)
+                            .key(objectKey)
+                            .contentType(contentType)
+                            .cacheControl(OBJECT_CACHE_CONTROL)
+                            .build()).uploadId();
+        } catch (RuntimeException e) {
+            bufferPool.release(first);
+            throw new IOException("Failed to start multipart upload for " + objectKey, e);
+        }
+
+        Deque<Future<CompletedPart>> inFlight = new ArrayDeque<>();
+        List<CompletedPart> parts = new ArrayList<>();
+        byte[] buf = first;
+        try {
+            int len = first.length;
+            int partNumber = 1;
+            while (len > 0) {
+                inFlight.addLast(submitPart(objectKey, uploadId, partNumber++, buf, len));
+                buf = null;
+                if (inFlight.size() >= concurrency) {
+                    parts.add(await(inFlight.removeFirst()));
+                }
+                buf = bufferPool.acquire();
+                len = inputStream.readNBytes(buf, 0, buf.length);
+            }
+            bufferPool.release(buf);
+            buf = null;
+            while (!inFlight.isEmpty()) {
+                parts.add(await(inFlight.removeFirst()));
+            }
+            s3Client.completeMultipartUpload(
+                    CompleteMultipartUploadRequest.builder()
+                            .bucket(bucket)
+                            .key(objectKey)
+                            .uploadId(uploadId)
+                            .multipartUpload(CompletedMultipartUpload.builder().parts(parts).build())
+                            .build());
+        } catch (IOException | RuntimeException e) {
+            bufferPool.release(buf);
+            abort(objectKey, uploadId, inFlight);
+            throw e instanceof IOException io ? io
+                    : new IOException("Multipart upload failed for " + objectKey, e);
+        }
+    }
+
+    private Future<CompletedPart> submitPart(String objectKey, String uploadId, int partNumber,
+            byte[] buf, int len) {
+        return partExecutor.submit(() -> {
+            try {
+                String eTag = s3Client.uploadPart(
+                        UploadPartRequest.builder()
+                                .bucket(bucket)
+                                .key(objectKey)
+                                .uploadId(uploadId)
+                                .partNumber(partNumber)
+                                .contentLength((long) len)
+                                .build(),
+                        bytesBody(buf, len)).eTag();
+                return CompletedPart.builder().partNumber(partNumber).eTag(eTag).build();
+            } finally {
+                bufferPool.release(buf);
+            }
+        });
+    }
+
+    private CompletedPart await(Future<CompletedPart> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while uploading part");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw new IOException("Part upload failed: " + cause.getMessage(), cause);
+        }
+    }
+
+    private void abort(String objectKey, String uploadId, Deque<Future<CompletedPart>> inFlight) {
+        // 等待在途分片结束，保证缓冲归还且中止后不会再有分片写入
+        for (Future<CompletedPart> f : inFlight) {
+            try {
+                f.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                f.cancel(true);
+            } catch (ExecutionException ignored) {
+                // 已在外层报告
+            }
+        }
+        try {
+            s3Client.abortMultipartUpload(
+                    AbortMultipartUploadRequest.builder()
+                            .bucket(bucket)
+                            .key(objectKey)
+                            .uploadId(uploadId)
+                            .build());
+        } catch (RuntimeException e) {
+            logger.warning("Failed to abort multipart upload " + uploadId + " for " + objectKey + ": " + e.getMessage());
+        }
+    }
+
+    // ---- 分片上传（供可续传上传会话使用，分片可乱序、并行到达） ----
+
+    /** 分片大小（字节）；除最后一片外，每片必须恰好为该大小。 */
+    public int getPartSize() {
+        return bufferPool.getBufferSize();
+    }
+
+    /**
+     * 创建 R2 分片上传并返回 uploadId。仅在 R2 启用时可用。
+     */
+    public String createMultipartUpload(String objectKey, String contentType) throws IOException {
+        requireR2();
+        try {
+            return s3Client.createMultipartUpload(CreateMultipartUploadRequest.builder()
+                    .bucket(bucket)
+                    .key(objectKey)
+                    .contentType(contentType)
+                    .cacheControl(OBJECT_CACHE_CONTROL)
+                    .build()).uploadId();
+        } catch (RuntimeException e) {
+            throw new IOException("Failed to start multipart upload for " + objectKey, e);
+        }
+    }
+
+    /**
+     * 上传一个分片：读入池化缓冲后以已知长度发送，返回分片 ETag。
+     *
+     * @param partNumber 分片号，从 1 开始
+     * @param length     分片字节数，不得超过 {@link #getPartSize()}
+     */
+    public String uploadPart(String objectKey, String uploadId, int partNumber, InputStream inputStream,
+            long length) throws IOException {
+        requireR2();
+        if (length <= 0 || length > bufferPool.getBufferSize()) {
+            throw new IOException("Invalid part length: " + length);
+        }
+        byte[] buf = bufferPool.acquire();
+        try {
+            int n = inputStream.readNBytes(buf, 0, (int) length);
+            if (n != length) {
+                throw new IOException("Part body truncated: expected " + length + " bytes, got " + n);
+            }
+            return s3Client.uploadPart(UploadPartRequest.builder()
+                    .bucket(bucket)
+                    .key(objectKey)
+                    .uploadId(uploadId)
+                    .partNumber(partNumber)
+                    .contentLength(length)
+                    .build(), bytesBody(buf, n)).eTag();
+        } catch (RuntimeException e) {
+            throw new IOException("Part upload failed: " + e.getMessage(), e);
+        } finally {
+            bufferPool.release(buf);
+        }
+    }
+
+    /**
+     * 合并分片并返回公开访问 URL。
+     *
+     * @param eTags 分片号到 ETag 的映射
+     */
+    public String completeMultipartUpload(String objectKey, String uploadId, Map<Integer, String> eTags)
+            throws IOException {
+        requireR2();
+        List<CompletedPart> parts = new ArrayList<>(eTags.size());
+        new TreeMap<>(eTags).forEach((n, eTag) ->
+                parts.add(CompletedPart.builder().partNumber(n).eTag(eTag).build()));
+        try {
+            s3Client.completeMultipartUpload(CompleteMultipartUploadRequest.builder()
+                    .bucket(bucket)
+                    .key(objectKey)
+                    .uploadId(uploadId)
+                    .multipartUpload(CompletedMultipartUpload.builder().parts(parts).build())
+                    .build());
+        } catch (RuntimeException e) {
+            throw new IOException("Failed to complete multipart upload for " + objectKey, e);
+        }
+        return buildPublicUrl(objectKey);
+    }
+
+    public void abortMultipartUpload(String objectKey, String uploadId) {
+        if (!r2Enabled) return;
+        abort(objectKey, uploadId, new ArrayDeque<>());
+    }
+
+    private void requireR2() throws IOException {
+        if (!r2Enabled) {
+            throw new IOException("This operation requires R2 storage");
+        }
+    }
+
+    /** 以缓冲区的前 len 个字节构造请求体，不复制数据；与 fromBytes 一样可重复读取以支持签名和重试。 */
+    private static RequestBody bytesBody(byte[] buf, int len) {
+        return RequestBody.fromContentProvider(() -> new ByteArrayInputStream(buf, 0, len), len,
+                "application/octet-stream");
+    }
+
     /**
      * 获取对象的公开访问 URL（用于图片直接重定向）。
      */
@@ -96,20 +424,25 @@ public class CloudflareStorageService {
         if (r2Enabled) {
             return buildPublicUrl(objectKey);
         }
-        String filename = objectKey.contains("/") ? objectKey.substring(objectKey.lastIndexOf('/') + 1) : objectKey;
-        return "/files/" + filename;
+        return "/files/" + localName(objectKey);
     }
 
     public boolean isR2Enabled() {
         return r2Enabled;
     }
 
+    @Override
+    public String name() {
+        return r2Enabled ? "r2" : "local";
+    }
+
     /**
      * 下载对象并返回输入流。
      * 当流包装在 {@link org.springframework.core.io.InputStreamResource} 中时，
      * Spring MVC 的 {@code ResourceHttpMessageConverter} 在响应写入完成后负责关闭流；
      * 其他调用方须自行关闭流（建议使用 try-with-resources）。
      */
+    @Override
     public java.io.InputStream getInputStream(String objectKey) throws java.io.IOException {
         if (r2Enabled) {
             return s3Client.getObject(
@@ -118,13 +451,138 @@ public class CloudflareStorageService {
                             .key(objectKey)
                             .build());
         } else {
-            String filename = objectKey.contains("/")
-                    ? objectKey.substring(objectKey.lastIndexOf('/') + 1)
-                    : objectKey;
-            return java.nio.file.Files.newInputStream(localStorage.getFilePath(filename));
+            return java.nio.file.Files.newInputStream(localStorage.getFilePath(localName(objectKey)));
         }
     }
 
+    /**
+     * 读取对象中 {@code [start, end]} 字节区间（均含）。
+     * R2 使用带 {@code Range} 头的 GetObject，只传输所需字节；本地存储使用定位读取。
+     */
+    @Override
+    public java.io.InputStream getInputStream(String objectKey, long start, long end) throws java.io.IOException {
+        if (r2Enabled) {
+            return s3Client.getObject(
+                    software.amazon.awssdk.services.s3.model.GetObjectRequest.builder()
+                            .bucket(bucket)
+                            .key(objectKey)
+                            .range("bytes=" + start + "-" + end)
+                            .build());
+        } else {
+            return FileRangeInputStream.open(localStorage.getFilePath(localName(objectKey)), start, end);
+        }
+    }
+
+    /**
+     * 以非阻塞方式读取对象（可选区间），返回按需拉取数据的字节流发布者。
+     * 订阅方通过 {@code request(n)} 控制读取速度，数据不会超前于消费堆积在内存中。
+     * 异步客户端在首次调用时创建，只用于非阻塞下载。
+     *
+     * @param start 起始偏移（含），为 null 时读取整个对象
+     * @param end   结束偏移（含）
+     */
+    public CompletableFuture<ResponsePublisher<GetObjectResponse>> getObjectPublisher(String objectKey,
+            Long start, Long end) throws IOException {
+        requireR2();
+        GetObjectRequest.Builder request = GetObjectRequest.builder()
+                .bucket(bucket)
+                .key(objectKey);
+        if (start != null) {
+            request.range("bytes=" + start + "-" + end);
+        }
+        return asyncClient().getObject(request.build(), AsyncResponseTransformer.toPublisher());
+    }
+
+    private S3AsyncClient asyncClient() {
+        S3AsyncClient client = asyncClient;
+        if (client == null) {
+            synchronized (this) {
+                client = asyncClient;
+                if (client == null) {
+                    client = S3AsyncClient.builder()
+                            .credentialsProvider(credentials)
+                            .endpointOverride(endpoint)
+                            .region(Region.of("auto"))
+                            .forcePathStyle(true)
+                            .build();
+                    asyncClient = client;
+                }
+            }
+        }
+        return client;
+    }
+
+    /**
+     * 生成对象的预签名 GET 地址，客户端可在有效期内直接从 R2 下载，不经过应用节点。
+     *
+     * @param contentType        R2 响应的 Content-Type（response-content-type）
+     * @param contentDisposition R2 响应的 Content-Disposition（response-content-disposition），可为 null
+     * @param ttl                有效期
+     */
+    public String presignGetUrl(String objectKey, String contentType, String contentDisposition, Duration ttl)
+            throws IOException {
+        requireR2();
+        GetObjectRequest.Builder request = GetObjectRequest.builder()
+                .bucket(bucket)
+                .key(objectKey)
+                .responseContentType(contentType);
+        if (contentDisposition != null) {
+            request.responseContentDisposition(contentDisposition);
+        }
+        try {
+            return presigner.presignGetObject(GetObjectPresignRequest.builder()
+                    .signatureDuration(ttl)
+                    .getObjectRequest(request.build())
+                    .build()).url().toString();
+        } catch (RuntimeException e) {
+            throw new IOException("Failed to presign " + objectKey, e);
+        }
+    }
+
+    /**
+     * 对象是否存在（R2 使用 HeadObject）。
+     */
+    @Override
+    public boolean exists(String objectKey) throws IOException {
+        if (r2Enabled) {
+            try {
+                s3Client.headObject(HeadObjectRequest.builder()
+                        .bucket(bucket)
+                        .key(objectKey)
+                        .build());
+                return true;
+            } catch (NoSuchKeyException e) {
+                return false;
+            } catch (S3Exception e) {
+                if (e.statusCode() == 404) return false;
+                throw new IOException("HeadObject failed for " + objectKey, e);
+            }
+        }
+        return java.nio.file.Files.isRegularFile(localStorage.getFilePath(localName(objectKey)));
+    }
+
+    /**
+     * 删除对象；对象不存在时静默成功。
+     */
+    @Override
+    public void delete(String objectKey) throws IOException {
+        if (r2Enabled) {
+            s3Client.deleteObject(DeleteObjectRequest.builder()
+                    .bucket(bucket)
+                    .key(objectKey)
+                    .build());
+        } else {
+            java.nio.file.Files.deleteIfExists(localStorage.getFilePath(localName(objectKey)));
+        }
+    }
+
+    /**
+     * 对象键在本地存储目录中对应的文件名（取最后一段）。
+     */
+    public static String localName(String objectKey) {
+        return objectKey.contains("/") ? objectKey.substring(objectKey.lastIndexOf('/') + 1) : objectKey;
+    }
+
     private String buildPublicUrl(String objectKey) {
         if (publicUrl.isBlank()) {
             // publicUrl must be configured when R2 is enabled; log a warning and return object key as path
@@ -1,8 +1,13 @@
 package com.yuz.toplinks.service;
 
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.oauth2.client.oidc.userinfo.OidcUserRequest;
 import org.springframework.security.oauth2.client.oidc.userinfo.OidcUserService;
 import org.springframework.security.oauth2.core.OAuth2AuthenticationException;
+import org.springframework.security.oauth2.core.oidc.user.DefaultOidcUser;
 import org.springframework.security.oauth2.core.oidc.user.OidcUser;
 import org.springframework.stereotype.Service;
 
@@ -26,6 +31,12 @@ public class CustomOAuth2UserService extends OidcUserService {
 
         userService.findOrCreateOAuthUser(googleId, email, name, avatar);
 
-        return oidcUser;
+        List<GrantedAuthority> extra = userService.authoritiesFor(email);
+        if (extra.isEmpty()) {
+            return oidcUser;
+        }
+        List<GrantedAuthority> authorities = new ArrayList<>(oidcUser.getAuthorities());
+        authorities.addAll(extra);
+        return new DefaultOidcUser(authorities, oidcUser.getIdToken(), oidcUser.getUserInfo());
     }
 }
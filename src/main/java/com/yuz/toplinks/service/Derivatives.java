@@ -0,0 +1,89 @@
+package com.yuz.toplinks.service;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.baomidou.mybatisplus.core.conditions.update.UpdateWrapper;
+import com.yuz.toplinks.entity.TlkFile;
+import com.yuz.toplinks.mapper.TlkFileMapper;
+
+/**
+ * 派生对象（缩略图、缩放图、PDF 预览页、MOBI 片段）共用的工具：派生键的计算、
+ * 按存储对象批量更新文件记录，以及处理任务的有界线程池。
+ *
+ * <p>派生结果按存储对象而不是按文件记录保存：内容寻址共享同一对象的多条记录共用一份派生结果。</p>
+ */
+final class Derivatives {
+
+    private Derivatives() {
+    }
+
+    /** 派生对象键：去掉原对象键的扩展名后加 {@code suffix}，如 files/abc.png, .thumb.jpg → files/abc.thumb.jpg。 */
+    static String key(String objectKey, String suffix) {
+        int slash = objectKey.lastIndexOf('/');
+        int dot = objectKey.lastIndexOf('.');
+        String base = dot > slash ? objectKey.substring(0, dot) : objectKey;
+        return base + suffix;
+    }
+
+    /** 更新所有引用该对象的记录的 {@code column}，并清除这些记录在 fileByUid 中的缓存。 */
+    static void updateByPath(TlkFileMapper fileMapper, CacheManager cacheManager, String objectKey, String column,
+            Object value) {
+        List<TlkFile> files = fileMapper.selectList(new QueryWrapper<TlkFile>()
+                .select("uid")
+                .eq("path", objectKey));
+        fileMapper.update(null, new UpdateWrapper<TlkFile>()
+                .set(column, value)
+                .eq("path", objectKey));
+        Cache cache = cacheManager.getCache("fileByUid");
+        if (cache != null) {
+            files.forEach(f -> cache.evict(f.getUid()));
+        }
+    }
+
+    /**
+     * 同一对象已有其他记录处理过（{@code column} 非空）时，把结果复制到所有引用该对象的记录上。
+     *
+     * @return 是否已复用，为 true 时调用方无需再处理
+     */
+    static boolean reuseExisting(TlkFileMapper fileMapper, CacheManager cacheManager, String objectKey,
+            String column, Function<TlkFile, Object> getter) {
+        TlkFile existing = fileMapper.selectOne(new QueryWrapper<TlkFile>()
+                .select(column)
+                .eq("path", objectKey)
+                .isNotNull(column)
+                .last("LIMIT 1"));
+        if (existing == null) return false;
+        updateByPath(fileMapper, cacheManager, objectKey, column, getter.apply(existing));
+        return true;
+    }
+
+    /** 命名的守护线程；{@code priority} 低于默认值时让位于处理请求的线程。 */
+    static ThreadFactory daemonThreads(String namePrefix, int priority) {
+        AtomicInteger seq = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, namePrefix + seq.incrementAndGet());
+            t.setDaemon(true);
+            t.setPriority(priority);
+            return t;
+        };
+    }
+
+    /** 固定线程数、有界队列的处理线程池，队列满时提交抛出 RejectedExecutionException；空闲线程会退出。 */
+    static ThreadPoolExecutor workerPool(String namePrefix, int workers, int queueCapacity, int priority) {
+        int n = Math.max(1, workers);
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(n, n, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueCapacity)), daemonThreads(namePrefix, priority));
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+}
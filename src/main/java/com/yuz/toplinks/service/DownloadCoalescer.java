@@ -0,0 +1,411 @@
+package com.yuz.toplinks.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PreDestroy;
+
+/**
+ * 冷下载合并（single-flight）：同一对象的并发完整下载只向 R2 发起一次读取。
+ *
+ * <p>第一个请求启动后台抓取，把 R2 的字节写入本地暂存文件；后续请求附加到同一次抓取，
+ * 各自按自己的速度从暂存文件读取，读到当前写入位置时等待新数据。抓取线程只受 R2 速度限制，
+ * 慢客户端不会拖慢快客户端，也不会拖慢抓取本身。</p>
+ *
+ * <p>抓取完成后，启用磁盘缓存时暂存文件直接转入 {@link ObjectDiskCache}，否则删除
+ * （已打开的读取者持有文件句柄，不受影响）。所有读取者都离开且不需要填充缓存时，抓取提前取消。
+ * 抓取线程用尽时不排队，直接回退为普通的直连读取。</p>
+ */
+@Service
+public class DownloadCoalescer {
+
+    private static final Logger logger = Logger.getLogger(DownloadCoalescer.class.getName());
+
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    /** 打开源对象流。 */
+    @FunctionalInterface
+    public interface Source {
+        InputStream open() throws IOException;
+    }
+
+    private final ObjectDiskCache diskCache;
+    private final boolean enabled;
+    private final Path dir;
+    private final long maxObjectBytes;
+    private final ThreadPoolExecutor fetchers;
+
+    private final Map<String, Flight> flights = new ConcurrentHashMap<>();
+
+    private final AtomicLong fetches = new AtomicLong();
+    private final AtomicLong joins = new AtomicLong();
+    private final AtomicLong bypasses = new AtomicLong();
+
+    /** 合并统计：fetches 为实际发起的 R2 读取次数，joins 为附加到已有读取的请求数。 */
+    public record Stats(boolean enabled, long fetches, long joins, long bypasses, int inFlight) {
+    }
+
+    public DownloadCoalescer(CloudflareStorageService storageService, ObjectDiskCache diskCache,
+            @Value("${file.download.coalesce.enabled:false}") boolean coalesceEnabled,
+            @Value("${file.download.coalesce.dir:cache/inflight}") String dir,
+            @Value("${file.download.coalesce.fetchers:16}") int fetcherCount,
+            @Value("${file.download.coalesce.max-object-bytes:1073741824}") long maxObjectBytes) throws IOException {
+        this.diskCache = diskCache;
+        this.enabled = coalesceEnabled && storageService.isR2Enabled();
+        this.dir = Paths.get(dir).toAbsolutePath().normalize();
+        this.maxObjectBytes = maxObjectBytes;
+        if (enabled) {
+            Files.createDirectories(this.dir);
+            // 清理上次退出时未完成的暂存文件
+            try (Stream<Path> files = Files.list(this.dir)) {
+                for (Path file : (Iterable<Path>) files::iterator) {
+                    if (file.getFileName().toString().endsWith(TEMP_SUFFIX)) {
+                        Files.deleteIfExists(file);
+                    }
+                }
+            }
+            AtomicInteger seq = new AtomicInteger();
+            int n = Math.max(1, fetcherCount);
+            this.fetchers = new ThreadPoolExecutor(n, n, 60, TimeUnit.SECONDS, new SynchronousQueue<>(), r -> {
+                Thread t = new Thread(r, "download-fetch-" + seq.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+            this.fetchers.allowCoreThreadTimeOut(true);
+        } else {
+            this.fetchers = null;
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 打开对象的完整内容流；同一 key 的并发调用共享一次源读取。
+     * 未启用、对象过大或抓取线程已满时返回 null，调用方应直接读取存储。
+     *
+     * @param key  对象标识（应包含内容哈希）
+     * @param size 对象字节数
+     */
+    public InputStream open(String key, long size, Source source) throws IOException {
+        if (!accepts(size)) {
+            return null;
+        }
+        while (true) {
+            Flight flight = flights.get(key);
+            if (flight == null) {
+                Flight created = new Flight(key, size, dir.resolve(UUID.randomUUID() + TEMP_SUFFIX));
+                flight = flights.putIfAbsent(key, created);
+                if (flight == null) {
+                    return start(created, source);
+                }
+            }
+            InputStream reader = flight.attach(source);
+            if (reader != null) {
+                joins.incrementAndGet();
+                return reader;
+            }
+            // 该次抓取正在结束：等它移交磁盘缓存并移出后重新查找（通常会命中磁盘缓存或发起新的抓取）
+            flight.awaitFinished();
+            if (diskCache != null) {
+                InputStream cached = diskCache.open(key, 0, size - 1);
+                if (cached != null) return cached;
+            }
+        }
+    }
+
+    /** 该大小的对象的完整读取是否会被合并。 */
+    public boolean accepts(long size) {
+        return enabled && size > 0 && size <= maxObjectBytes;
+    }
+
+    public Stats getStats() {
+        return new Stats(enabled, fetches.get(), joins.get(), bypasses.get(), flights.size());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (fetchers != null) {
+            fetchers.shutdownNow();
+        }
+    }
+
+    private InputStream start(Flight flight, Source source) throws IOException {
+        InputStream reader = null;
+        try {
+            Files.createFile(flight.temp);
+            reader = flight.attach(source);
+            fetchers.execute(() -> flight.fetch(source));
+        } catch (RejectedExecutionException | IOException e) {
+            if (reader != null) reader.close();
+            flight.fail(new AbandonedException("Coalesced fetch not started: " + e.getMessage()));
+            bypasses.incrementAndGet();
+            return null;
+        }
+        fetches.incrementAndGet();
+        return reader;
+    }
+
+    /** 抓取被主动放弃（没有读取者或未能启动），不需要记录警告。 */
+    private static final class AbandonedException extends IOException {
+        AbandonedException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * 一次进行中的源读取。写入进度、完成、失败与封存状态都在 this 的监视器下变更并通知等待的读取者；
+     * 判定放弃与封存在同一次加锁中完成，封存后附加的读取者不会读到放弃造成的失败。
+     */
+    private final class Flight {
+
+        private final String key;
+        private final long size;
+        private final Path temp;
+
+        private long written;
+        private boolean done;
+        private boolean sealed;
+        private boolean finished;
+        private IOException failure;
+        private int readers;
+
+        Flight(String key, long size, Path temp) {
+            this.key = key;
+            this.size = size;
+            this.temp = temp;
+        }
+
+        /** 附加一个读取者；抓取已结束且暂存文件已移走时返回 null。 */
+        synchronized InputStream attach(Source source) throws IOException {
+            if (sealed) return null;
+            readers++;
+            try {
+                return new FlightInputStream(this, FileChannel.open(temp, StandardOpenOption.READ), source);
+            } catch (IOException e) {
+                readers--;
+                throw e;
+            }
+        }
+
+        synchronized void detach() {
+            readers--;
+            notifyAll();
+        }
+
+        /** 等待 {@link #finish} 完成（暂存文件已转入磁盘缓存或删除，且已从进行中的抓取中移出）。 */
+        synchronized void awaitFinished() throws InterruptedIOException {
+            while (!finished) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting for a coalesced fetch to finish");
+                }
+            }
+        }
+
+        /**
+         * 所有读取者都已离开，且结果不会进入磁盘缓存时，继续抓取没有意义。
+         * 返回 true 时同时封存，之后的 {@link #attach} 返回 null，不会有新读取者附加到即将放弃的抓取上。
+         */
+        private synchronized boolean abandoned() {
+            if (readers == 0 && (diskCache == null || !diskCache.accepts(size))) {
+                sealed = true;
+                return true;
+            }
+            return false;
+        }
+
+        void fetch(Source source) {
+            try (InputStream in = source.open();
+                    FileChannel out = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                byte[] buf = new byte[COPY_BUFFER_SIZE];
+                int n;
+                while ((n = in.read(buf)) != -1) {
+                    if (abandoned()) {
+                        throw new AbandonedException("All readers left");
+                    }
+                    if (written + n > size) {
+                        throw new IOException("Source returned more than " + size + " bytes");
+                    }
+                    ByteBuffer bb = ByteBuffer.wrap(buf, 0, n);
+                    while (bb.hasRemaining()) {
+                        out.write(bb);
+                    }
+                    synchronized (this) {
+                        written += n;
+                        notifyAll();
+                    }
+                }
+                if (written != size) {
+                    throw new IOException("Expected " + size + " bytes but read " + written);
+                }
+                synchronized (this) {
+                    done = true;
+                    notifyAll();
+                }
+                finish(true);
+            } catch (IOException | RuntimeException e) {
+                fail(e instanceof IOException io ? io : new IOException(e));
+            }
+        }
+
+        void fail(IOException e) {
+            synchronized (this) {
+                failure = e;
+                notifyAll();
+            }
+            if (!(e instanceof AbandonedException)) {
+                logger.warning("Coalesced fetch failed for " + key + ": " + e.getMessage());
+            }
+            finish(false);
+        }
+
+        /** 结束抓取：封存后不再接受新读取者，暂存文件转入磁盘缓存或删除，最后移出并唤醒等待的 {@link #open}。 */
+        private void finish(boolean success) {
+            synchronized (this) {
+                sealed = true;
+            }
+            try {
+                if (success && diskCache != null && diskCache.accepts(size)) {
+                    diskCache.adopt(key, temp, size);
+                } else {
+                    Files.deleteIfExists(temp);
+                }
+            } catch (IOException e) {
+                logger.warning("Failed to finalize coalesced fetch for " + key + ": " + e.getMessage());
+                try {
+                    Files.deleteIfExists(temp);
+                } catch (IOException ignored) {
+                    // 重启时清理
+                }
+            }
+            flights.remove(key, this);
+            synchronized (this) {
+                finished = true;
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * 从暂存文件读取；读到抓取进度时等待，抓取失败时抛出异常。
+     * 抓取被放弃时不向客户端报错，而是直接打开源对象并跳到当前位置继续读取。
+     */
+    private static final class FlightInputStream extends InputStream {
+
+        private final Flight flight;
+        private final FileChannel channel;
+        private final Source source;
+        private long position;
+        private InputStream direct;
+        private boolean detached;
+        private boolean closed;
+
+        FlightInputStream(Flight flight, FileChannel channel, Source source) {
+            this.flight = flight;
+            this.channel = channel;
+            this.source = source;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            int n = read(one, 0, 1);
+            return n == -1 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) return 0;
+            if (direct != null) return direct.read(b, off, len);
+            long available;
+            boolean abandoned = false;
+            synchronized (flight) {
+                while (position >= flight.written && !flight.done && flight.failure == null) {
+                    try {
+                        flight.wait(1000);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException("Interrupted while waiting for download data");
+                    }
+                }
+                available = flight.written - position;
+                if (available <= 0) {
+                    if (flight.failure instanceof AbandonedException) {
+                        abandoned = true;
+                    } else if (flight.failure != null) {
+                        throw new IOException("Upstream read failed", flight.failure);
+                    } else {
+                        return -1;
+                    }
+                }
+            }
+            if (abandoned) {
+                return reopen().read(b, off, len);
+            }
+            int n = channel.read(ByteBuffer.wrap(b, off, (int) Math.min(len, available)), position);
+            if (n > 0) position += n;
+            return n;
+        }
+
+        /** 离开被放弃的抓取，改为直连读取源对象的剩余部分。 */
+        private InputStream reopen() throws IOException {
+            release();
+            InputStream in = source.open();
+            try {
+                in.skipNBytes(position);
+            } catch (IOException | RuntimeException e) {
+                in.close();
+                throw e;
+            }
+            direct = in;
+            return in;
+        }
+
+        private void release() throws IOException {
+            if (detached) return;
+            detached = true;
+            try {
+                channel.close();
+            } finally {
+                flight.detach();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) return;
+            closed = true;
+            try {
+                release();
+            } finally {
+                if (direct != null) direct.close();
+            }
+        }
+    }
+}
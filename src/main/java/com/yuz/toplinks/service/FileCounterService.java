@@ -0,0 +1,205 @@
+package com.yuz.toplinks.service;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.yuz.toplinks.entity.BaseEntity;
+import com.yuz.toplinks.entity.TlkFile;
+import com.yuz.toplinks.mapper.TlkFileMapper;
+
+import jakarta.annotation.PreDestroy;
+
+/**
+ * 按分类维护的有效文件数，首页和分类栏直接读取内存中的计数，不再每次请求执行 {@code COUNT(*)}。
+ *
+ * <p>每个分类一个计数器：{@code base} 为最近一次重新统计的结果，{@code delta} 为之后的增减
+ * （{@link LongAdder}，并发上传和删除时不争用同一个变量）。上传和删除通过事件即时调整计数；
+ * 后台定期按分类 {@code GROUP BY} 重新统计一次，纠正其他实例或直接改库造成的偏差。</p>
+ */
+@Service
+public class FileCounterService {
+
+    private static final Logger logger = Logger.getLogger(FileCounterService.class.getName());
+
+    /** 未分类文件的计数键；它们只计入总数。 */
+    private static final String UNCATEGORIZED = "";
+
+    private final TlkFileMapper fileMapper;
+    private final long reconcileMillis;
+    private final ScheduledExecutorService scheduler;
+
+    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+    private volatile boolean loaded;
+
+    private final AtomicLong reconciles = new AtomicLong();
+    private final AtomicLong lastDrift = new AtomicLong();
+
+    public FileCounterService(TlkFileMapper fileMapper,
+            @Value("${file.counter.reconcile-millis:600000}") long reconcileMillis) {
+        this.fileMapper = fileMapper;
+        this.reconcileMillis = reconcileMillis;
+        if (reconcileMillis > 0) {
+            this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "file-counter-reconciler");
+                t.setDaemon(true);
+                return t;
+            });
+        } else {
+            this.scheduler = null;
+        }
+    }
+
+    private static final class Counter {
+        volatile long base;
+        final LongAdder delta = new LongAdder();
+
+        long get() {
+            return base + delta.sum();
+        }
+    }
+
+    /**
+     * 启动后立即在后台做首次统计，之后定期重新统计。首次统计完成前（或其失败时）由第一次读取计数的请求统计。
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (scheduler != null) {
+            scheduler.scheduleWithFixedDelay(this::reconcileQuietly, 0, reconcileMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (scheduler != null) scheduler.shutdownNow();
+    }
+
+    @EventListener
+    public void onFileStored(FileStoredEvent event) {
+        adjust(event.file(), 1);
+    }
+
+    @EventListener
+    public void onFileDeleted(FileDeletedEvent event) {
+        adjust(event.file(), -1);
+    }
+
+    /**
+     * 某个分类（为空时为全部）的有效文件数。
+     */
+    public long count(String categoryId) {
+        ensureLoaded();
+        if (categoryId == null || categoryId.isBlank()) {
+            long total = 0;
+            for (Counter c : counters.values()) total += c.get();
+            return Math.max(0, total);
+        }
+        Counter c = counters.get(categoryId);
+        return c != null ? Math.max(0, c.get()) : 0;
+    }
+
+    /** 各分类的有效文件数（分类 ID → 数量），供分类栏显示角标。 */
+    public Map<String, Long> getCounts() {
+        ensureLoaded();
+        Map<String, Long> result = new HashMap<>(counters.size() * 2);
+        counters.forEach((key, c) -> {
+            if (!UNCATEGORIZED.equals(key)) result.put(key, Math.max(0, c.get()));
+        });
+        return result;
+    }
+
+    /**
+     * 按分类重新统计，并以统计结果替换各计数器的基数。
+     *
+     * <p>统计开始前先记下每个计数器的增量，统计结果加上统计期间新发生的增量即为新的计数；
+     * 与统计查询同时提交的变更可能被重复计入一次，下一轮统计时纠正。</p>
+     */
+    synchronized void reconcile() {
+        Map<String, Long> before = new HashMap<>();
+        counters.forEach((key, c) -> before.put(key, c.delta.sum()));
+
+        List<Map<String, Object>> rows = fileMapper.selectMaps(new QueryWrapper<TlkFile>()
+                .select("category_id", "COUNT(*) AS file_count")
+                .eq("status", BaseEntity.STATUS_ACTIVE)
+                .groupBy("category_id"));
+        Map<String, Long> recount = new HashMap<>();
+        for (Map<String, Object> row : rows) {
+            Object category = column(row, "category_id");
+            Object n = column(row, "file_count");
+            String key = category != null ? category.toString() : UNCATEGORIZED;
+            recount.merge(key, n instanceof Number num ? num.longValue() : 0L, Long::sum);
+        }
+
+        long drift = 0;
+        for (String key : recount.keySet()) {
+            counters.computeIfAbsent(key, k -> new Counter());
+        }
+        for (Map.Entry<String, Counter> e : counters.entrySet()) {
+            Counter c = e.getValue();
+            long actual = recount.getOrDefault(e.getKey(), 0L);
+            long seen = before.getOrDefault(e.getKey(), 0L);
+            if (loaded) drift += Math.abs(c.base + seen - actual);
+            c.base = actual - seen;
+        }
+        lastDrift.set(drift);
+        reconciles.incrementAndGet();
+        loaded = true;
+        if (drift > 0) {
+            logger.info("File counters reconciled, drift " + drift);
+        }
+    }
+
+    /** 计数统计。 */
+    public record Stats(int categories, long total, long reconciles, long lastDrift) {
+    }
+
+    public Stats getStats() {
+        return new Stats(counters.size(), loaded ? count(null) : 0, reconciles.get(), lastDrift.get());
+    }
+
+    private void adjust(TlkFile file, int delta) {
+        if (file.getStatus() != null && file.getStatus() != BaseEntity.STATUS_ACTIVE) return;
+        String key = file.getCategoryId() != null ? file.getCategoryId() : UNCATEGORIZED;
+        counters.computeIfAbsent(key, k -> new Counter()).delta.add(delta);
+    }
+
+    /** 冷启动时并发到达的请求只统计一次：其余请求等待统计完成后直接读取。 */
+    private void ensureLoaded() {
+        if (!loaded) {
+            synchronized (this) {
+                if (!loaded) reconcile();
+            }
+        }
+    }
+
+    private void reconcileQuietly() {
+        try {
+            reconcile();
+        } catch (RuntimeException e) {
+            logger.warning("File counter reconcile failed: " + e.getMessage());
+        }
+    }
+
+    /** 列名大小写随数据库而不同（H2 返回大写）。 */
+    private static Object column(Map<String, Object> row, String name) {
+        Object value = row.get(name);
+        if (value != null || row.containsKey(name)) return value;
+        for (Map.Entry<String, Object> e : row.entrySet()) {
+            if (e.getKey().equalsIgnoreCase(name)) return e.getValue();
+        }
+        return null;
+    }
+}
@@ -0,0 +1,42 @@
+package com.yuz.toplinks.service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Date;
+
+import com.yuz.toplinks.entity.TlkFile;
+
+/**
+ * 列表游标：记录一行的 {@code (create_time, id)}，下一页从该位置之后继续读取（keyset 分页）。
+ * 对外以不透明的 Base64 字符串传递。
+ */
+public record FileCursor(long createTime, String id) {
+
+    public static FileCursor of(TlkFile file) {
+        return new FileCursor(file.getCreateTime() != null ? file.getCreateTime().getTime() : 0, file.getId());
+    }
+
+    public Date createTimeAsDate() {
+        return new Date(createTime);
+    }
+
+    public String encode() {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString((createTime + ":" + id).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 解析游标；格式不正确时返回 null。
+     */
+    public static FileCursor decode(String token) {
+        if (token == null || token.isBlank() || token.length() > 200) return null;
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            int colon = raw.indexOf(':');
+            if (colon <= 0 || colon == raw.length() - 1) return null;
+            return new FileCursor(Long.parseLong(raw.substring(0, colon)), raw.substring(colon + 1));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
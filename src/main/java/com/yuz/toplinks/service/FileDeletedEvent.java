@@ -0,0 +1,10 @@
+package com.yuz.toplinks.service;
+
+import com.yuz.toplinks.entity.TlkFile;
+
+/**
+ * 文件记录已删除时发布的事件，供按分类计数等汇总数据的维护方更新。
+ * 与 {@link StoredObjectDeletedEvent} 不同，共享同一存储对象的记录删除时也会发布。
+ */
+public record FileDeletedEvent(TlkFile file) {
+}
@@ -0,0 +1,14 @@
+package com.yuz.toplinks.service;
+
+import java.util.List;
+
+import com.yuz.toplinks.entity.TlkFile;
+
+/**
+ * 一页文件列表及前后翻页游标。
+ *
+ * @param nextCursor 下一页（更早的文件）的游标，没有下一页时为 null
+ * @param prevCursor 上一页（更新的文件）的游标，没有上一页或上一页用页码访问时为 null
+ */
+public record FilePage(List<TlkFile> files, String nextCursor, String prevCursor) {
+}
@@ -1,21 +1,32 @@
 package com.yuz.toplinks.service;
 
 import java.io.IOException;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
-import java.util.Random;
-import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
 
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.cache.annotation.Cacheable;
+import org.springframework.cache.annotation.Caching;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.http.MediaType;
 import org.springframework.http.MediaTypeFactory;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
 import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.yuz.toplinks.config.ReplicaRead;
 import com.yuz.toplinks.entity.BaseEntity;
+import com.yuz.toplinks.entity.TlkBlob;
 import com.yuz.toplinks.entity.TlkCategory;
 import com.yuz.toplinks.entity.TlkFile;
 import com.yuz.toplinks.mapper.TlkFileMapper;
@@ -25,19 +36,45 @@ import jakarta.servlet.http.HttpServletRequest;
 @Service
 public class FileService {
 
-    private static final String UID_CHARS = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789";
-    private static final int UID_LENGTH = 6;
-    private static final Random RANDOM = new Random();
+    private static final Logger logger = Logger.getLogger(FileService.class.getName());
+
+    private static final Pattern SHA256_HEX = Pattern.compile("[0-9a-f]{64}");
 
     private final TlkFileMapper fileMapper;
     private final CloudflareStorageService storageService;
     private final CategoryService categoryService;
+    private final UidAllocator uidAllocator;
+    private final BlobService blobService;
+    private final UploadReplicationService replicationService;
+    private final ObjectDiskCache diskCache;
+    private final DownloadCoalescer downloadCoalescer;
+    private final TieredStorageService tieredStorage;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ExecutorService batchExecutor;
+
+    @Value("${file.hash.sha256-enabled:false}")
+    private boolean sha256Enabled;
+
+    @Value("${file.dedup.enabled:false}")
+    private boolean dedupEnabled;
 
     public FileService(TlkFileMapper fileMapper, CloudflareStorageService storageService,
-            CategoryService categoryService) {
+            CategoryService categoryService, UidAllocator uidAllocator, BlobService blobService,
+            UploadReplicationService replicationService, ObjectDiskCache diskCache,
+            DownloadCoalescer downloadCoalescer, TieredStorageService tieredStorage,
+            ApplicationEventPublisher eventPublisher,
+            @Qualifier("uploadBatchExecutor") ExecutorService batchExecutor) {
         this.fileMapper = fileMapper;
         this.storageService = storageService;
         this.categoryService = categoryService;
+        this.uidAllocator = uidAllocator;
+        this.blobService = blobService;
+        this.replicationService = replicationService;
+        this.diskCache = diskCache;
+        this.downloadCoalescer = downloadCoalescer;
+        this.tieredStorage = tieredStorage;
+        this.eventPublisher = eventPublisher;
+        this.batchExecutor = batchExecutor;
     }
 
     /**
@@ -50,114 +87,536 @@ public class FileService {
      * @return 保存的 TlkFile 实体
      */
     public TlkFile upload(MultipartFile file, String userId, String categoryId, HttpServletRequest request) throws IOException {
+        TlkFile tlkFile = store(file, uidAllocator.next(), userId, categoryId, getClientIp(request));
+        try {
+            fileMapper.insert(tlkFile);
+        } catch (RuntimeException e) {
+            discardStored(tlkFile);
+            throw e;
+        }
+        afterInsert(tlkFile);
+        return tlkFile;
+    }
+
+    /**
+     * 批量上传：一次性分配 UID，以有限并发写入存储，再用一次批量插入保存所有记录。
+     * 单个文件失败只影响该文件的结果，不影响整批。
+     *
+     * @return 与 files 顺序一致的逐项结果
+     */
+    public List<BatchUploadResult> uploadBatch(List<MultipartFile> files, String userId, String categoryId,
+            HttpServletRequest request) {
+        String ip = getClientIp(request);
+        List<String> uids = uidAllocator.next(files.size());
+
+        BatchUploadResult[] results = new BatchUploadResult[files.size()];
+        List<Future<TlkFile>> futures = new ArrayList<>(files.size());
+        for (int i = 0; i < files.size(); i++) {
+            MultipartFile file = files.get(i);
+            String uid = uids.get(i);
+            String name = file.getOriginalFilename();
+            // 可由客户端修正的错误直接返回固定提示，不提交存储写入
+            if (name == null || name.isBlank()) {
+                results[i] = BatchUploadResult.failure(name, "File name cannot be empty");
+                futures.add(null);
+            } else if (file.isEmpty()) {
+                results[i] = BatchUploadResult.failure(name, "File is empty");
+                futures.add(null);
+            } else {
+                futures.add(batchExecutor.submit(() -> store(file, uid, userId, categoryId, ip)));
+            }
+        }
+
+        List<TlkFile> stored = new ArrayList<>();
+        List<Integer> storedIndexes = new ArrayList<>();
+        for (int i = 0; i < futures.size(); i++) {
+            if (futures.get(i) == null) continue;
+            String name = files.get(i).getOriginalFilename();
+            try {
+                TlkFile tlkFile = futures.get(i).get();
+                stored.add(tlkFile);
+                storedIndexes.add(i);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                results[i] = BatchUploadResult.failure(name, "Interrupted");
+            } catch (ExecutionException e) {
+                // 异常信息可能包含存储地址、路径等内部细节，只记录日志，客户端收到按类型区分的固定提示
+                Throwable cause = e.getCause();
+                logger.warning("Batch upload of " + name + " failed: " + cause);
+                results[i] = BatchUploadResult.failure(name, cause instanceof IOException
+                        ? "Failed to store file"
+                        : "Upload failed");
+            }
+        }
+
+        if (!stored.isEmpty()) {
+            try {
+                fileMapper.insert(stored);
+                for (int k = 0; k < stored.size(); k++) {
+                    TlkFile tlkFile = stored.get(k);
+                    afterInsert(tlkFile);
+                    results[storedIndexes.get(k)] = BatchUploadResult.success(tlkFile);
+                }
+            } catch (RuntimeException e) {
+                logger.warning("Batch insert of " + stored.size() + " file(s) failed: " + e.getMessage());
+                for (int k = 0; k < stored.size(); k++) {
+                    discardStored(stored.get(k));
+                    results[storedIndexes.get(k)] = BatchUploadResult.failure(stored.get(k).getName(), "Failed to save file record");
+                }
+            }
+        }
+        return Arrays.asList(results);
+    }
+
+    /**
+     * 将内容写入存储并构造（尚未插入的）文件记录：
+     * 内容寻址模式下引用或新建 blob；异步模式下写入本地暂存；否则直接写入存储。
+     */
+    private TlkFile store(MultipartFile file, String uid, String userId, String categoryId, String ip) throws IOException {
         String originalName = file.getOriginalFilename();
         if (originalName == null || originalName.isBlank()) {
             throw new IOException("File name cannot be empty");
         }
+        if (file.isEmpty()) {
+            throw new IOException("File is empty");
+        }
         // Sanitize
-        String safeName = java.nio.file.Paths.get(originalName).getFileName().toString();
+        String safeName = sanitizeName(originalName);
         String ext = extractExt(safeName);
-        String uid = generateUniqueUid();
-        String objectKey = "files/" + uid + (ext.isEmpty() ? "" : "." + ext);
-
         String contentType = MediaTypeFactory.getMediaType(safeName)
                 .map(MediaType::toString)
                 .orElse("application/octet-stream");
+        TlkFile tlkFile = newFileRecord(safeName, ext, uid, file.getSize(), userId, categoryId, ip);
 
-        String cloudUrl = storageService.upload(objectKey, file.getInputStream(), file.getSize(), contentType);
+        if (dedupEnabled) {
+            // 内容寻址：先从 multipart 的磁盘暂存中流式计算哈希，内容已存在时直接引用已有 blob，跳过存储写入
+            try (HashingInputStream in = new HashingInputStream(file.getInputStream(), true)) {
+                in.transferTo(java.io.OutputStream.nullOutputStream());
+                tlkFile.setHash(in.md5Hex());
+                tlkFile.setSha256(in.sha256Hex());
+            }
+            TlkBlob blob = blobService.acquire(tlkFile.getSha256(), file.getSize(), ext, contentType, file);
+            tlkFile.setPath(blob.getPath());
+            tlkFile.setCloudUrl(blob.getCloudUrl());
+            markTier(tlkFile);
+            return tlkFile;
+        }
 
-        String hash = computeMd5(file.getBytes());
-        String ip = getClientIp(request);
+        String objectKey = objectKeyFor(uid, ext);
+        boolean async = replicationService.isEnabled();
+        // 单次读取：哈希在数据写入存储（或异步模式下的本地暂存）的同时计算
+        try (HashingInputStream in = new HashingInputStream(file.getInputStream(), sha256Enabled)) {
+            tlkFile.setCloudUrl(async
+                    ? replicationService.spool(objectKey, in)
+                    : storageService.upload(objectKey, in, file.getSize(), contentType));
+            tlkFile.setHash(in.md5Hex());
+            tlkFile.setSha256(in.sha256Hex());
+        }
+        tlkFile.setPath(objectKey);
+        if (async) {
+            tlkFile.setStorageStatus(TlkFile.STORAGE_PENDING);
+        } else if (tieredStorage.admitUpload(objectKey, file, file.getSize())) {
+            // 新上传的文件在本地 SSD 保留一份，直到迁移任务判定其变冷
+            tlkFile.setStorageTier(TlkFile.TIER_HOT);
+        }
+        return tlkFile;
+    }
+
+    /** 共享已有存储对象（blob）的记录沿用该对象当前所在的层级。 */
+    private void markTier(TlkFile tlkFile) {
+        if (tieredStorage.isHot(tlkFile.getPath())) {
+            tlkFile.setStorageTier(TlkFile.TIER_HOT);
+        }
+    }
+
+    /** 记录插入成功后的后续动作：异步模式下提交推送任务，并通知派生内容（缩略图等）的生成方。 */
+    private void afterInsert(TlkFile tlkFile) {
+        if (tlkFile.isStoragePending()) {
+            replicationService.submit(tlkFile);
+        }
+        eventPublisher.publishEvent(new FileStoredEvent(tlkFile));
+    }
+
+    /** 记录插入失败时撤销 {@link #store} 写入的内容。 */
+    private void discardStored(TlkFile tlkFile) {
+        try {
+            if (BlobService.isBlobKey(tlkFile.getPath())) {
+                blobService.release(tlkFile.getPath());
+            } else if (tlkFile.isStoragePending()) {
+                replicationService.discardSpool(tlkFile.getPath());
+            } else {
+                storageService.delete(tlkFile.getPath());
+                tieredStorage.discard(tlkFile.getPath());
+            }
+        } catch (IOException | RuntimeException e) {
+            logger.warning("Failed to clean up stored content for " + tlkFile.getUid() + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * 登记已写入存储的文件（可续传上传等先写存储、后建记录的流程在内容就绪后调用）。
+     * 开启去重且已有相同内容的 blob 时，记录改为引用该 blob，并删除刚写入的独占对象。
+     *
+     * @param uid 通过 {@link #allocateUid()} 预先分配的访问码
+     */
+    public TlkFile registerUpload(String safeName, String uid, long size, String objectKey, String cloudUrl,
+            String hash, String sha256, String userId, String categoryId, HttpServletRequest request) {
+        TlkFile tlkFile = newFileRecord(safeName, extractExt(safeName), uid, size, userId, categoryId,
+                getClientIp(request));
+        tlkFile.setHash(hash);
+        tlkFile.setSha256(sha256);
+        TlkBlob blob = dedupEnabled && sha256 != null ? blobService.reuse(sha256, size) : null;
+        if (blob != null) {
+            tlkFile.setPath(blob.getPath());
+            tlkFile.setCloudUrl(blob.getCloudUrl());
+            markTier(tlkFile);
+        } else {
+            tlkFile.setPath(objectKey);
+            tlkFile.setCloudUrl(cloudUrl);
+        }
+        try {
+            fileMapper.insert(tlkFile);
+        } catch (RuntimeException e) {
+            if (blob != null) blobService.release(blob.getPath());
+            throw e;
+        }
+        afterInsert(tlkFile);
+        if (blob != null) {
+            try {
+                storageService.delete(objectKey);
+            } catch (IOException | RuntimeException e) {
+                logger.warning("Failed to delete duplicate object " + objectKey + ": " + e.getMessage());
+            }
+        }
+        return tlkFile;
+    }
+
+    /** 先写存储、后建记录的流程是否需要计算 SHA-256（开启 SHA-256 或内容去重时）。 */
+    public boolean needsSha256() {
+        return sha256Enabled || dedupEnabled;
+    }
+
+    /** 预先分配一个未被占用的访问码，用于需要先确定对象键的上传流程。 */
+    public String allocateUid() {
+        return uidAllocator.next();
+    }
+
+    /** 文件独占存储对象的键：files/&lt;uid&gt;.&lt;ext&gt;。 */
+    public static String objectKeyFor(String uid, String ext) {
+        return "files/" + uid + (ext == null || ext.isEmpty() ? "" : "." + ext);
+    }
+
+    /** 去掉客户端文件名中的路径部分。 */
+    public static String sanitizeName(String originalName) {
+        return java.nio.file.Paths.get(originalName).getFileName().toString();
+    }
+
+    /**
+     * 秒传：客户端先提交内容的 SHA-256、大小和文件名，若已有相同内容的有效文件，
+     * 直接创建新的文件记录（新 uid，共享同一存储对象），无需再传输文件内容。
+     * 仅对内容寻址存储的文件生效，以保证引用计数正确。
+     *
+     * @return 新建的文件记录；未命中时返回 null，客户端应继续正常上传
+     */
+    public TlkFile instantUpload(String sha256, long size, String originalName, String userId,
+            String categoryId, HttpServletRequest request) {
+        if (!dedupEnabled || sha256 == null || !SHA256_HEX.matcher(sha256).matches() || size < 0
+                || originalName == null || originalName.isBlank()) {
+            return null;
+        }
+        TlkFile match = fileMapper.selectOne(new QueryWrapper<TlkFile>()
+                .eq("sha256", sha256)
+                .eq("size", size)
+                .eq("status", BaseEntity.STATUS_ACTIVE)
+                .likeRight("path", BlobService.KEY_PREFIX)
+                .last("LIMIT 1"));
+        if (match == null) {
+            return null;
+        }
+        TlkBlob blob = blobService.reuse(sha256, size);
+        if (blob == null) {
+            return null;
+        }
+
+        String safeName = sanitizeName(originalName);
+        String ext = extractExt(safeName);
+        TlkFile tlkFile = newFileRecord(safeName, ext, uidAllocator.next(), size, userId, categoryId,
+                getClientIp(request));
+        tlkFile.setPath(blob.getPath());
+        tlkFile.setHash(match.getHash());
+        tlkFile.setSha256(sha256);
+        tlkFile.setCloudUrl(blob.getCloudUrl());
+        markTier(tlkFile);
+        try {
+            fileMapper.insert(tlkFile);
+        } catch (RuntimeException e) {
+            blobService.release(blob.getPath());
+            throw e;
+        }
+        afterInsert(tlkFile);
+        return tlkFile;
+    }
+
+    /**
+     * 删除文件记录（逻辑删除），并释放其存储对象：
+     * 内容寻址的 blob 按引用计数释放，独占对象直接删除。
+     */
+    @Caching(evict = {
+            @CacheEvict(value = "fileByUid", key = "#uid"),
+            @CacheEvict(value = "textPreview", key = "#uid")
+    })
+    public boolean delete(String uid) throws IOException {
+        TlkFile file = fileMapper.selectOne(new QueryWrapper<TlkFile>().eq("uid", uid));
+        if (file == null || fileMapper.deleteById(file.getId()) == 0) {
+            return false;
+        }
+        eventPublisher.publishEvent(new FileDeletedEvent(file));
+        if (BlobService.isBlobKey(file.getPath())) {
+            blobService.release(file.getPath());
+        } else if (file.getPath() != null) {
+            if (file.isStoragePending()) {
+                replicationService.discardSpool(file.getPath());
+            }
+            storageService.delete(file.getPath());
+            tieredStorage.discard(file.getPath());
+            if (file.getThumbUrl() != null && !file.getThumbUrl().isEmpty()) {
+                storageService.delete(ThumbnailService.thumbKey(file.getPath()));
+            }
+            eventPublisher.publishEvent(new StoredObjectDeletedEvent(file.getPath()));
+        }
+        if (file.getPath() != null) {
+            diskCache.invalidate(cacheKey(file));
+        }
+        return true;
+    }
+
+    /**
+     * 打开文件内容流。异步上传尚未推送到 R2 的文件从本地暂存读取；
+     * 对象在热层时读取本地 SSD 副本；
+     * 启用磁盘缓存时优先读取本地缓存，未命中则从 R2 读取并顺带写入缓存；
+     * 启用下载合并时，同一对象的并发冷下载共享一次 R2 读取。
+     * 调用方负责关闭流（包装在 InputStreamResource 中时由 Spring MVC 关闭）。
+     */
+    public java.io.InputStream openStream(TlkFile file) throws IOException {
+        if (file.isStoragePending()) {
+            java.io.InputStream spooled = openSpool(file, null, null);
+            if (spooled != null) {
+                return spooled;
+            }
+        }
+        java.io.InputStream hot = tieredStorage.open(file.getPath(), null, null);
+        if (hot != null) {
+            return hot;
+        }
+        String key = cacheKey(file);
+        if (isDiskCacheable(file)) {
+            java.io.InputStream cached = diskCache.open(key, 0, file.getSize() - 1);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        if (file.getSize() != null) {
+            // 合并抓取完成后会自行把结果转入磁盘缓存
+            java.io.InputStream shared = downloadCoalescer.open(key, file.getSize(),
+                    () -> storageService.getInputStream(file.getPath()));
+            if (shared != null) {
+                return shared;
+            }
+        }
+        if (isDiskCacheable(file)) {
+            return diskCache.fillThrough(key, file.getSize(), storageService.getInputStream(file.getPath()));
+        }
+        return storageService.getInputStream(file.getPath());
+    }
+
+    /**
+     * 打开文件内容中 {@code [start, end]} 字节区间（均含）的流，用于 HTTP Range 请求。
+     * 区间覆盖整个文件（或文件大小未知时从 0 开始）时等同于 {@link #openStream(TlkFile)}。
+     */
+    public java.io.InputStream openRange(TlkFile file, long start, long end) throws IOException {
+        if (start == 0 && (file.getSize() == null || end >= file.getSize() - 1)) {
+            return openStream(file);
+        }
+        if (file.isStoragePending()) {
+            java.io.InputStream spooled = openSpool(file, start, end);
+            if (spooled != null) {
+                return spooled;
+            }
+        }
+        java.io.InputStream hot = tieredStorage.open(file.getPath(), start, end);
+        if (hot != null) {
+            return hot;
+        }
+        if (isDiskCacheable(file)) {
+            // 区间请求只读缓存，不触发填充；完整下载会填充缓存
+            java.io.InputStream cached = diskCache.open(cacheKey(file), start, end);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        return storageService.getInputStream(file.getPath(), start, end);
+    }
+
+    /**
+     * 直接打开异步上传的本地暂存（不先检查是否存在，避免与推送完成后的删除竞争）。
+     * 暂存不存在时重新读取记录：已同步说明推送刚刚完成、传入的是缓存中的旧记录，返回 null 由调用方读取存储；
+     * 仍未同步说明暂存在其他节点上，存储中还没有该对象。
+     *
+     * @param start 为 null 时打开整个文件
+     * @throws StoragePendingException 文件尚未推送且本节点没有暂存
+     */
+    private java.io.InputStream openSpool(TlkFile file, Long start, Long end) throws IOException {
+        java.nio.file.Path spool = replicationService.spoolPath(file.getPath());
+        try {
+            return start == null ? java.nio.file.Files.newInputStream(spool)
+                    : FileRangeInputStream.open(spool, start, end);
+        } catch (java.nio.file.NoSuchFileException e) {
+            TlkFile current = fileMapper.selectById(file.getId());
+            if (current != null && current.isStoragePending()) {
+                throw new StoragePendingException(file.getUid());
+            }
+            return null;
+        }
+    }
+
+    /**
+     * 文件内容是否可以从本节点磁盘读取（异步上传暂存、热层或磁盘缓存命中），此时不需要访问 R2。
+     */
+    public boolean isLocallyAvailable(TlkFile file) {
+        if (file.isStoragePending() && java.nio.file.Files.exists(replicationService.spoolPath(file.getPath()))) {
+            return true;
+        }
+        if (tieredStorage.isHot(file.getPath())) {
+            return true;
+        }
+        return isDiskCacheable(file) && diskCache.contains(cacheKey(file));
+    }
+
+    /**
+     * 文件的完整读取是否会经过磁盘缓存填充或下载合并。此时完整下载应走 {@link #openStream}，
+     * 否则缓存不会预热，并发的冷下载也会各自读取 R2。
+     */
+    public boolean isFullReadShared(TlkFile file) {
+        if (file.getSize() == null) return false;
+        return isDiskCacheable(file) && diskCache.accepts(file.getSize())
+                || downloadCoalescer.accepts(file.getSize());
+    }
+
+    private boolean isDiskCacheable(TlkFile file) {
+        return diskCache.isEnabled() && file.getSize() != null && file.getSize() > 0;
+    }
+
+    /** 磁盘缓存键：对象键加内容哈希，UID 被复用后不会命中旧内容。 */
+    private static String cacheKey(TlkFile file) {
+        return file.getPath() + "#" + (file.getHash() != null ? file.getHash() : file.getSize());
+    }
 
+    private TlkFile newFileRecord(String safeName, String ext, String uid, long size, String userId,
+            String categoryId, String ip) {
         TlkFile tlkFile = new TlkFile();
-        tlkFile.setId(UUID.randomUUID().toString());
         tlkFile.setName(safeName);
-        tlkFile.setPath(objectKey);
         tlkFile.setUid(uid);
         tlkFile.setExt(ext);
-        tlkFile.setSize(file.getSize());
-        tlkFile.setHash(hash);
-        tlkFile.setCloudUrl(cloudUrl);
+        tlkFile.setSize(size);
         tlkFile.setUserId(userId);
         tlkFile.setCategoryId(categoryId != null && !categoryId.isBlank() ? categoryId
                 : detectCategoryId(ext));
         tlkFile.setCreateIp(ip);
         tlkFile.setStatus(BaseEntity.STATUS_ACTIVE);
+        tlkFile.setStorageStatus(TlkFile.STORAGE_SYNCED);
+        tlkFile.setStorageTier(TlkFile.TIER_COLD);
         tlkFile.setCreateTime(new Date());
-
-        fileMapper.insert(tlkFile);
         return tlkFile;
     }
 
-    @Cacheable(value = "fileByUid", key = "#uid")
+    public boolean isDedupEnabled() {
+        return dedupEnabled;
+    }
+
+    /** 副本尚未复制到的记录不缓存空结果，复制完成后即可查到。 */
+    @ReplicaRead
+    @Cacheable(value = "fileByUid", key = "#uid", unless = "#result == null")
     public TlkFile findByUid(String uid) {
         return fileMapper.selectOne(new QueryWrapper<TlkFile>().eq("uid", uid));
     }
 
     public static final int DEFAULT_PAGE_SIZE = 12;
 
-    public List<TlkFile> listByCategory(String categoryId, int page, int pageSize) {
+    /** 可以用页码（OFFSET）访问的最大页数；更深的页只能通过游标访问。 */
+    public static final int MAX_NUMBERED_PAGES = 5;
+
+    /**
+     * 按页码读取一页（只用于前 {@link #MAX_NUMBERED_PAGES} 页，OFFSET 很小），并返回下一页的游标。
+     */
+    @ReplicaRead
+    public FilePage listPage(String categoryId, int page, int pageSize) {
         if (page < 1) page = 1;
         if (pageSize < 1) pageSize = DEFAULT_PAGE_SIZE;
         int offset = (page - 1) * pageSize;
-        QueryWrapper<TlkFile> qw = new QueryWrapper<TlkFile>()
-                .eq("status", BaseEntity.STATUS_ACTIVE)
-                .orderByDesc("create_time")
-                .last("LIMIT " + pageSize + " OFFSET " + offset);
-        if (categoryId != null && !categoryId.isBlank()) {
-            qw.eq("category_id", categoryId);
+        List<TlkFile> rows = fileMapper.selectList(listQuery(categoryId)
+                .orderByDesc("create_time", "id")
+                .last("LIMIT " + (pageSize + 1) + " OFFSET " + offset));
+        return toPage(rows, pageSize, false, false);
+    }
+
+    /**
+     * keyset 分页：从游标位置继续读取，查询只扫描 {@code pageSize + 1} 行，与页的深度无关。
+     *
+     * @param before 为 true 时读取游标之前（更新）的一页，否则读取之后（更早）的一页
+     */
+    @ReplicaRead
+    public FilePage listPage(String categoryId, FileCursor cursor, boolean before, int pageSize) {
+        if (pageSize < 1) pageSize = DEFAULT_PAGE_SIZE;
+        Date time = cursor.createTimeAsDate();
+        QueryWrapper<TlkFile> qw = listQuery(categoryId);
+        if (before) {
+            qw.and(w -> w.gt("create_time", time)
+                            .or(x -> x.eq("create_time", time).gt("id", cursor.id())))
+                    .orderByAsc("create_time", "id");
+        } else {
+            qw.and(w -> w.lt("create_time", time)
+                            .or(x -> x.eq("create_time", time).lt("id", cursor.id())))
+                    .orderByDesc("create_time", "id");
         }
-        return fileMapper.selectList(qw);
+        List<TlkFile> rows = fileMapper.selectList(qw.last("LIMIT " + (pageSize + 1)));
+        return toPage(rows, pageSize, true, before);
     }
 
-    public long countByCategory(String categoryId) {
+    private static QueryWrapper<TlkFile> listQuery(String categoryId) {
         QueryWrapper<TlkFile> qw = new QueryWrapper<TlkFile>()
                 .eq("status", BaseEntity.STATUS_ACTIVE);
         if (categoryId != null && !categoryId.isBlank()) {
             qw.eq("category_id", categoryId);
         }
-        return fileMapper.selectCount(qw);
-    }
-
-    // ---- helpers ----
-
-    private String generateUniqueUid() {
-        String uid;
-        int tries = 0;
-        do {
-            uid = randomUid();
-            tries++;
-            if (tries > 100) throw new RuntimeException("Unable to generate a unique UID, please try again later");
-        } while (fileMapper.selectCount(new QueryWrapper<TlkFile>().eq("uid", uid)) > 0);
-        return uid;
+        return qw;
     }
 
-    private String randomUid() {
-        StringBuilder sb = new StringBuilder(UID_LENGTH);
-        for (int i = 0; i < UID_LENGTH; i++) {
-            sb.append(UID_CHARS.charAt(RANDOM.nextInt(UID_CHARS.length())));
+    /**
+     * 多读的一行只用来判断那个方向是否还有数据。向前翻页时结果为升序，反转后与普通页一致。
+     */
+    private static FilePage toPage(List<TlkFile> rows, int pageSize, boolean keyset, boolean before) {
+        boolean more = rows.size() > pageSize;
+        List<TlkFile> files = new ArrayList<>(more ? rows.subList(0, pageSize) : rows);
+        if (before) {
+            Collections.reverse(files);
+        }
+        if (files.isEmpty()) {
+            return new FilePage(files, null, null);
         }
-        return sb.toString();
+        boolean hasNext = before || more;
+        boolean hasPrev = keyset && (!before || more);
+        return new FilePage(files,
+                hasNext ? FileCursor.of(files.get(files.size() - 1)).encode() : null,
+                hasPrev ? FileCursor.of(files.get(0)).encode() : null);
     }
 
-    private String extractExt(String filename) {
+    // ---- helpers ----
+
+    public static String extractExt(String filename) {
         int dot = filename.lastIndexOf('.');
         return (dot >= 0 && dot < filename.length() - 1) ? filename.substring(dot + 1).toLowerCase() : "";
     }
 
-    private String computeMd5(byte[] data) {
-        // MD5 used only for file deduplication/integrity checking, not for security
-        try {
-            MessageDigest md = MessageDigest.getInstance("MD5");
-            byte[] digest = md.digest(data);
-            StringBuilder sb = new StringBuilder();
-            for (byte b : digest) sb.append(String.format("%02x", b));
-            return sb.toString();
-        } catch (NoSuchAlgorithmException e) {
-            return "";
-        }
-    }
-
     private String getClientIp(HttpServletRequest request) {
         String ip = request.getHeader("X-Forwarded-For");
         if (ip == null || ip.isBlank() || "unknown".equalsIgnoreCase(ip)) {
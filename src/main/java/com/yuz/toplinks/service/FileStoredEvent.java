@@ -0,0 +1,9 @@
+package com.yuz.toplinks.service;
+
+import com.yuz.toplinks.entity.TlkFile;
+
+/**
+ * 文件记录已保存、内容可读取时发布的事件，供缩略图等派生内容的生成方监听。
+ */
+public record FileStoredEvent(TlkFile file) {
+}
@@ -0,0 +1,100 @@
+package com.yuz.toplinks.service;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * 在数据流向存储的同时计算 MD5（以及可选的 SHA-256），避免为计算哈希再次读取整个文件。
+ * MD5 仅用于去重和完整性校验，不用于安全用途。
+ */
+public class HashingInputStream extends FilterInputStream {
+
+    private static final HexFormat HEX = HexFormat.of();
+
+    private final MessageDigest md5;
+    private final MessageDigest sha256;
+    private long count;
+
+    public HashingInputStream(InputStream in, boolean withSha256) {
+        super(in);
+        this.md5 = newDigest("MD5");
+        this.sha256 = withSha256 ? newDigest("SHA-256") : null;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = in.read();
+        if (b >= 0) {
+            md5.update((byte) b);
+            if (sha256 != null) sha256.update((byte) b);
+            count++;
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int n = in.read(b, off, len);
+        if (n > 0) {
+            md5.update(b, off, n);
+            if (sha256 != null) sha256.update(b, off, n);
+            count += n;
+        }
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        // 跳过的字节必须参与哈希计算，因此通过 read 实现
+        byte[] buf = new byte[(int) Math.min(n, 8192)];
+        long remaining = n;
+        while (remaining > 0) {
+            int r = read(buf, 0, (int) Math.min(remaining, buf.length));
+            if (r < 0) break;
+            remaining -= r;
+        }
+        return n - remaining;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public synchronized void mark(int readlimit) {
+    }
+
+    @Override
+    public synchronized void reset() throws IOException {
+        throw new IOException("mark/reset not supported");
+    }
+
+    /** 已读取的字节数。 */
+    public long getCount() {
+        return count;
+    }
+
+    /** 返回 MD5 的十六进制字符串；调用后摘要状态被重置，应在读取完毕后只调用一次。 */
+    public String md5Hex() {
+        return HEX.formatHex(md5.digest());
+    }
+
+    /** 返回 SHA-256 的十六进制字符串，未启用时返回 null。 */
+    public String sha256Hex() {
+        return sha256 != null ? HEX.formatHex(sha256.digest()) : null;
+    }
+
+    private static MessageDigest newDigest(String algorithm) {
+        try {
+            return MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            // MD5 和 SHA-256 是所有 JRE 必须提供的算法
+            throw new IllegalStateException(algorithm + " not available", e);
+        }
+    }
+}
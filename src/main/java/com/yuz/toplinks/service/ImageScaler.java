@@ -0,0 +1,164 @@
+package com.yuz.toplinks.service;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Iterator;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+
+/**
+ * 图片缩放工具（基于 ImageIO）。
+ *
+ * <p>解码时按目标尺寸使用子采样读取（{@link ImageReadParam#setSourceSubsampling}），
+ * 大图不会以原始分辨率整幅解码；缩小时逐级减半再做最后一步双线性插值，效果接近高质量缩放而开销很小。</p>
+ */
+final class ImageScaler {
+
+    /** 子采样后至少保留目标尺寸的该倍数，再由逐级缩小得到最终结果，保证清晰度。 */
+    private static final int OVERSAMPLE = 2;
+
+    /** 解码后允许的最大像素数，防止异常尺寸的图片耗尽内存。 */
+    static final long MAX_DECODED_PIXELS = 64L * 1024 * 1024;
+
+    private ImageScaler() {
+    }
+
+    /** 图片尺寸超出可解码范围。 */
+    static final class ImageTooLargeException extends IOException {
+        ImageTooLargeException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * 解码第一帧，并按子采样使结果不小于目标框的 {@link #OVERSAMPLE} 倍。
+     *
+     * @return 解码结果；格式不受支持时返回 null
+     */
+    static BufferedImage decode(InputStream in, int maxWidth, int maxHeight) throws IOException {
+        try (ImageInputStream iis = ImageIO.createImageInputStream(in)) {
+            if (iis == null) return null;
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(iis);
+            if (!readers.hasNext()) return null;
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(iis, true, true);
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                ImageReadParam param = reader.getDefaultReadParam();
+                int sub = subsampling(width, height, maxWidth, maxHeight);
+                if ((long) (width / sub) * (height / sub) > MAX_DECODED_PIXELS) {
+                    throw new ImageTooLargeException("Image too large: " + width + "x" + height);
+                }
+                if (sub > 1) {
+                    param.setSourceSubsampling(sub, sub, 0, 0);
+                }
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    static int subsampling(int width, int height, int maxWidth, int maxHeight) {
+        double ratio = Math.min((double) width / maxWidth, (double) height / maxHeight);
+        return Math.max(1, (int) (ratio / OVERSAMPLE));
+    }
+
+    /** 等比缩小到目标框以内（不放大），结果为不透明 RGB，透明区域以白色填充。 */
+    static BufferedImage fit(BufferedImage src, int maxWidth, int maxHeight) {
+        return fit(src, maxWidth, maxHeight, false);
+    }
+
+    /**
+     * 等比缩小到目标框以内（不放大）。
+     *
+     * @param keepAlpha 为 true 时保留透明通道（用于 PNG 输出），否则以白色填充为不透明 RGB
+     */
+    static BufferedImage fit(BufferedImage src, int maxWidth, int maxHeight, boolean keepAlpha) {
+        double scale = Math.min(1.0, Math.min((double) maxWidth / src.getWidth(), (double) maxHeight / src.getHeight()));
+        int targetW = Math.max(1, (int) Math.round(src.getWidth() * scale));
+        int targetH = Math.max(1, (int) Math.round(src.getHeight() * scale));
+
+        int type = keepAlpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+        BufferedImage current = convert(src, type);
+        int w = current.getWidth();
+        int h = current.getHeight();
+        while (w / 2 >= targetW && h / 2 >= targetH) {
+            w /= 2;
+            h /= 2;
+            current = draw(current, w, h, type);
+        }
+        if (w != targetW || h != targetH) {
+            current = draw(current, targetW, targetH, type);
+        }
+        return current;
+    }
+
+    /** 以指定质量（0–1）编码为 JPEG。 */
+    static void writeJpeg(BufferedImage image, float quality, OutputStream out) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        try (ImageOutputStream ios = ImageIO.createImageOutputStream(out)) {
+            writer.setOutput(ios);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(quality);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+    }
+
+    /** 编码为 PNG。 */
+    static void writePng(BufferedImage image, OutputStream out) throws IOException {
+        if (!ImageIO.write(image, "png", out)) {
+            throw new IOException("No PNG writer available");
+        }
+    }
+
+    /** ImageIO 能否解码该扩展名（不含点）。 */
+    static boolean canRead(String ext) {
+        return ext != null && !ext.isEmpty() && ImageIO.getImageReadersBySuffix(ext.toLowerCase()).hasNext();
+    }
+
+    private static BufferedImage convert(BufferedImage src, int type) {
+        if (src.getType() == type) return src;
+        BufferedImage dst = new BufferedImage(src.getWidth(), src.getHeight(), type);
+        Graphics2D g = dst.createGraphics();
+        try {
+            if (type == BufferedImage.TYPE_INT_RGB) {
+                g.setColor(Color.WHITE);
+                g.fillRect(0, 0, dst.getWidth(), dst.getHeight());
+            }
+            g.drawImage(src, 0, 0, null);
+        } finally {
+            g.dispose();
+        }
+        return dst;
+    }
+
+    private static BufferedImage draw(BufferedImage src, int w, int h, int type) {
+        BufferedImage dst = new BufferedImage(w, h, type);
+        Graphics2D g = dst.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g.drawImage(src, 0, 0, w, h, null);
+        } finally {
+            g.dispose();
+        }
+        return dst;
+    }
+}
@@ -0,0 +1,270 @@
+package com.yuz.toplinks.service;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import com.yuz.toplinks.entity.TlkFile;
+
+/**
+ * 按需缩放的图片：按白名单中的宽度和格式生成原图的缩小版本，作为派生对象
+ * （原对象键去掉扩展名后加 {@code .w<宽度>.<格式>}）保存在原文件旁边，之后直接从存储读取。
+ *
+ * <p>解码使用 {@link ImageScaler} 的子采样读取，大图不会以原始分辨率整幅解码。
+ * 同一派生对象的并发请求只生成一次（single-flight），同时进行的缩放数受
+ * {@code file.image.max-concurrent} 限制，等待超时的请求由调用方返回 503。</p>
+ */
+@Service
+public class ImageVariantService {
+
+    private static final Logger logger = Logger.getLogger(ImageVariantService.class.getName());
+
+    /** 输出高度不超过宽度的该倍数，避免极端长图按宽度缩放后仍然过大。 */
+    private static final int MAX_ASPECT = 3;
+
+    /** 记住已存在的派生对象键，命中时不再向存储确认；超过该数量时清空重建。 */
+    private static final int MAX_KNOWN_KEYS = 100_000;
+
+    private final CloudflareStorageService storageService;
+    private final FileService fileService;
+    private final boolean enabled;
+    private final List<Integer> widths;
+    private final Set<String> formats;
+    private final float quality;
+    private final long maxSourceBytes;
+    private final long acquireTimeoutMillis;
+    private final Semaphore permits;
+
+    private final Map<String, CompletableFuture<byte[]>> inFlight = new ConcurrentHashMap<>();
+    private final Set<String> knownKeys = ConcurrentHashMap.newKeySet();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong generated = new AtomicLong();
+    private final AtomicLong joins = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    /** 缩放后的图片内容。 */
+    public record Variant(InputStream body, Long length, String contentType) {
+    }
+
+    /** 缩放任务已满，等待超时。 */
+    public static class BusyException extends IOException {
+        public BusyException(String message) {
+            super(message);
+        }
+    }
+
+    /** 统计：hits 为直接读取已有派生对象的次数，joins 为附加到进行中生成的请求数。 */
+    public record Stats(boolean enabled, long hits, long generated, long joins, long rejected, int inFlight) {
+    }
+
+    public ImageVariantService(CloudflareStorageService storageService, FileService fileService,
+            @Value("${file.image.enabled:false}") boolean enabled,
+            @Value("${file.image.widths:320,640,960,1280,1920}") String widths,
+            @Value("${file.image.formats:jpg,png}") String formats,
+            @Value("${file.image.quality:0.82}") float quality,
+            @Value("${file.image.max-source-bytes:52428800}") long maxSourceBytes,
+            @Value("${file.image.max-concurrent:2}") int maxConcurrent,
+            @Value("${file.image.acquire-timeout-millis:10000}") long acquireTimeoutMillis) {
+        this.storageService = storageService;
+        this.fileService = fileService;
+        this.enabled = enabled;
+        this.widths = Arrays.stream(widths.split(","))
+                .map(String::trim)
+                .filter(w -> !w.isEmpty())
+                .map(Integer::valueOf)
+                .filter(w -> w > 0)
+                .sorted()
+                .distinct()
+                .toList();
+        this.formats = Arrays.stream(formats.split(","))
+                .map(f -> normalizeFormat(f.trim()))
+                .filter(f -> f != null)
+                .collect(Collectors.toUnmodifiableSet());
+        this.quality = Math.min(1f, Math.max(0.1f, quality));
+        this.maxSourceBytes = maxSourceBytes;
+        this.acquireTimeoutMillis = acquireTimeoutMillis;
+        this.permits = new Semaphore(Math.max(1, maxConcurrent));
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /** 允许的输出宽度（升序）。 */
+    public List<Integer> getWidths() {
+        return widths;
+    }
+
+    public boolean isAllowed(int width, String format) {
+        String fmt = normalizeFormat(format);
+        return widths.contains(width) && fmt != null && formats.contains(fmt);
+    }
+
+    /** 文件能否生成缩放版本：启用、是 ImageIO 可解码的图片且不超过源文件大小上限。 */
+    public boolean supports(TlkFile file) {
+        return enabled && file.getPath() != null && "image".equals(file.getFileType())
+                && ImageScaler.canRead(file.getExt())
+                && file.getSize() != null && file.getSize() <= maxSourceBytes;
+    }
+
+    /** 派生对象键：files/abc.png, 640, jpg → files/abc.w640.jpg。 */
+    public static String variantKey(String objectKey, int width, String format) {
+        return Derivatives.key(objectKey, ".w" + width + "." + normalizeFormat(format));
+    }
+
+    /** 规范化格式名（jpeg → jpg）；不支持的格式返回 null。 */
+    static String normalizeFormat(String format) {
+        if (format == null) return null;
+        String f = format.toLowerCase(Locale.ROOT);
+        return switch (f) {
+            case "jpg", "jpeg" -> "jpg";
+            case "png" -> "png";
+            default -> null;
+        };
+    }
+
+    /**
+     * 打开缩放后的图片。派生对象已存在时直接读取存储，否则生成、保存后返回。
+     * 调用方须先用 {@link #isAllowed} 和 {@link #supports} 检查参数。
+     *
+     * @throws BusyException 缩放任务已满且在等待时间内没有空闲
+     */
+    public Variant open(TlkFile file, int width, String format) throws IOException {
+        String fmt = normalizeFormat(format);
+        String key = variantKey(file.getPath(), width, fmt);
+        String contentType = "png".equals(fmt) ? "image/png" : "image/jpeg";
+        if (knownKeys.contains(key) || storageService.exists(key)) {
+            remember(key);
+            hits.incrementAndGet();
+            return new Variant(storageService.getInputStream(key), null, contentType);
+        }
+        CompletableFuture<byte[]> created = new CompletableFuture<>();
+        CompletableFuture<byte[]> flight = inFlight.putIfAbsent(key, created);
+        byte[] bytes;
+        if (flight == null) {
+            try {
+                bytes = generate(file, key, width, fmt, contentType);
+                created.complete(bytes);
+            } catch (IOException | RuntimeException e) {
+                created.completeExceptionally(e);
+                throw e;
+            } finally {
+                inFlight.remove(key, created);
+            }
+        } else {
+            joins.incrementAndGet();
+            bytes = await(flight);
+        }
+        return new Variant(new ByteArrayInputStream(bytes), (long) bytes.length, contentType);
+    }
+
+    /** 删除原对象时清理所有可能存在的派生对象（删除不存在的对象静默成功）。 */
+    @EventListener
+    public void onObjectDeleted(StoredObjectDeletedEvent event) {
+        if (!enabled) return;
+        for (int width : widths) {
+            for (String fmt : formats) {
+                String key = variantKey(event.objectKey(), width, fmt);
+                knownKeys.remove(key);
+                try {
+                    storageService.delete(key);
+                } catch (IOException | RuntimeException e) {
+                    logger.warning("Failed to delete image variant " + key + ": " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    public Stats getStats() {
+        return new Stats(enabled, hits.get(), generated.get(), joins.get(), rejected.get(), inFlight.size());
+    }
+
+    private byte[] generate(TlkFile file, String key, int width, String fmt, String contentType)
+            throws IOException {
+        try {
+            if (!permits.tryAcquire(acquireTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                rejected.incrementAndGet();
+                throw new BusyException("Too many concurrent image resizes");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a resize slot");
+        }
+        byte[] bytes;
+        try {
+            BufferedImage image;
+            try (InputStream in = fileService.openStream(file)) {
+                image = ImageScaler.decode(in, width, width * MAX_ASPECT);
+            }
+            if (image == null) {
+                throw new IOException("Unsupported image format: " + file.getExt());
+            }
+            boolean png = "png".equals(fmt);
+            BufferedImage scaled = ImageScaler.fit(image, width, width * MAX_ASPECT, png);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            if (png) {
+                ImageScaler.writePng(scaled, out);
+            } else {
+                ImageScaler.writeJpeg(scaled, quality, out);
+            }
+            bytes = out.toByteArray();
+        } finally {
+            permits.release();
+        }
+        generated.incrementAndGet();
+        try {
+            storageService.upload(key, new ByteArrayInputStream(bytes), bytes.length, contentType);
+            remember(key);
+        } catch (IOException | RuntimeException e) {
+            // 保存失败不影响本次响应，下次请求重新生成
+            logger.warning("Failed to store image variant " + key + ": " + e.getMessage());
+        }
+        return bytes;
+    }
+
+    private byte[] await(CompletableFuture<byte[]> flight) throws IOException {
+        try {
+            // 生成方自身最多排队 acquireTimeoutMillis，再留出同样的时间给解码和编码
+            return flight.get(acquireTimeoutMillis * 2, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            rejected.incrementAndGet();
+            throw new BusyException("Timed out waiting for image resize");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for image resize");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException io) throw io;
+            throw new IOException("Image resize failed", cause);
+        }
+    }
+
+    private void remember(String key) {
+        if (knownKeys.size() >= MAX_KNOWN_KEYS) {
+            knownKeys.clear();
+        }
+        knownKeys.add(key);
+    }
+}
@@ -0,0 +1,107 @@
+package com.yuz.toplinks.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.UUID;
+
+/**
+ * 本地磁盘存储后端：对象以键的最后一段作为文件名存放在一个目录中
+ * （与本地降级存储的命名一致，键中包含唯一的 UID 或 ID，不会冲突）。
+ *
+ * <p>写入先落到同目录的临时文件再原子重命名，读取者不会看到写了一半的对象。</p>
+ */
+public class LocalStorageBackend implements StorageBackend {
+
+    static final String TEMP_SUFFIX = ".tmp";
+
+    private final String name;
+    private final Path dir;
+    private final String urlPrefix;
+
+    /**
+     * @param dir       存放目录（不存在时创建）
+     * @param urlPrefix 访问 URL 前缀，例如 "/files/"
+     */
+    public LocalStorageBackend(String name, Path dir, String urlPrefix) throws IOException {
+        this.name = name;
+        this.dir = dir.toAbsolutePath().normalize();
+        this.urlPrefix = urlPrefix;
+        Files.createDirectories(this.dir);
+    }
+
+    @Override
+    public String name() {
+        return name;
+    }
+
+    public Path getDir() {
+        return dir;
+    }
+
+    /** 对象键对应的本地文件路径。 */
+    public Path pathOf(String objectKey) {
+        Path resolved = dir.resolve(CloudflareStorageService.localName(objectKey)).normalize();
+        if (!resolved.startsWith(dir) || resolved.equals(dir)) {
+            throw new SecurityException("Access denied: path traversal attempt detected");
+        }
+        return resolved;
+    }
+
+    @Override
+    public String upload(String objectKey, InputStream inputStream, long size, String contentType) throws IOException {
+        Path target = pathOf(objectKey);
+        Path temp = dir.resolve(target.getFileName() + "." + UUID.randomUUID() + TEMP_SUFFIX);
+        try {
+            Files.copy(inputStream, temp);
+            move(temp, target);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        return urlPrefix + target.getFileName();
+    }
+
+    /** 将已写好的文件移入后端（移动而非复制），用于把本地暂存直接转为对象。 */
+    public void adopt(String objectKey, Path file) throws IOException {
+        try {
+            Files.move(file, pathOf(objectKey), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            // 跨文件系统：先复制到本目录的临时文件，再原子替换
+            try (InputStream in = Files.newInputStream(file)) {
+                upload(objectKey, in, Files.size(file), null);
+            }
+            Files.delete(file);
+        }
+    }
+
+    @Override
+    public InputStream getInputStream(String objectKey) throws IOException {
+        return Files.newInputStream(pathOf(objectKey));
+    }
+
+    @Override
+    public InputStream getInputStream(String objectKey, long start, long end) throws IOException {
+        return FileRangeInputStream.open(pathOf(objectKey), start, end);
+    }
+
+    @Override
+    public boolean exists(String objectKey) {
+        return Files.isRegularFile(pathOf(objectKey));
+    }
+
+    @Override
+    public void delete(String objectKey) throws IOException {
+        Files.deleteIfExists(pathOf(objectKey));
+    }
+
+    private static void move(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
@@ -0,0 +1,259 @@
+package com.yuz.toplinks.service;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import com.yuz.toplinks.entity.TlkFile;
+import com.yuz.toplinks.mapper.TlkFileMapper;
+
+import jakarta.annotation.PreDestroy;
+
+/**
+ * MOBI / AZW 服务端解析：上传完成后在有界线程池中解压全书文本，按分页标记和长度切分为独立的 HTML 片段，
+ * 以派生键（原对象键去掉扩展名后加 {@code .c<序号>.html}）存放在原文件旁边，片段数记录在
+ * {@code TLK_FILE.preview_pages}。阅读器逐段请求，只传输正在阅读的部分。
+ *
+ * <p>无法解析的文件（有 DRM、格式错误）记录为 0，详情页仍回退到浏览器端解析。书中的图片不提取。</p>
+ */
+@Service
+public class MobiBookService {
+
+    private static final Logger logger = Logger.getLogger(MobiBookService.class.getName());
+
+    /** MOBI 的分页标记，优先在这里切分。 */
+    private static final Pattern PAGE_BREAK = Pattern.compile("<mbp:pagebreak\\s*/?>", Pattern.CASE_INSENSITIVE);
+
+    /** 片段各自成为完整文档，去掉原文的外层结构标签和 head。 */
+    private static final Pattern OUTER_TAGS = Pattern.compile(
+            "(?is)<head\\b.*?</head>|</?html\\b[^>]*>|</?body\\b[^>]*>");
+
+    private static final Pattern HTML_HINT = Pattern.compile("(?i)<(html|body|div|p|span|h[1-6]|br)\\b");
+
+    private static final String CHUNK_HEAD = "<!DOCTYPE html>\n<html><head><meta charset=\"utf-8\">"
+            + "<style>body{font-family:Georgia,serif;line-height:1.6;margin:1rem;word-wrap:break-word}"
+            + "img{max-width:100%}</style></head><body>\n";
+    private static final String CHUNK_TAIL = "\n</body></html>\n";
+
+    private final TlkFileMapper fileMapper;
+    private final CloudflareStorageService storageService;
+    private final FileService fileService;
+    private final CacheManager cacheManager;
+    private final boolean enabled;
+    private final int chunkChars;
+    private final int maxChunks;
+    private final long maxSourceBytes;
+    private final long maxTextBytes;
+    private final ThreadPoolExecutor workers;
+
+    private final AtomicLong parsed = new AtomicLong();
+    private final AtomicLong skipped = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    /** 统计：parsed 为已切分的书籍数。 */
+    public record Stats(boolean enabled, long parsed, long skipped, long failed, int queued) {
+    }
+
+    public MobiBookService(TlkFileMapper fileMapper, CloudflareStorageService storageService,
+            FileService fileService, CacheManager cacheManager,
+            @Value("${file.mobi.enabled:false}") boolean enabled,
+            @Value("${file.mobi.chunk-chars:40000}") int chunkChars,
+            @Value("${file.mobi.max-chunks:2000}") int maxChunks,
+            @Value("${file.mobi.max-source-bytes:52428800}") long maxSourceBytes,
+            @Value("${file.mobi.max-text-bytes:33554432}") long maxTextBytes,
+            @Value("${file.mobi.workers:1}") int workerCount,
+            @Value("${file.mobi.queue-capacity:50}") int queueCapacity) {
+        this.fileMapper = fileMapper;
+        this.storageService = storageService;
+        this.fileService = fileService;
+        this.cacheManager = cacheManager;
+        this.enabled = enabled;
+        this.chunkChars = Math.max(1000, chunkChars);
+        this.maxChunks = Math.max(1, maxChunks);
+        this.maxSourceBytes = maxSourceBytes;
+        this.maxTextBytes = maxTextBytes;
+        if (enabled) {
+            this.workers = Derivatives.workerPool("mobi-parse-", workerCount, queueCapacity, Thread.NORM_PRIORITY);
+        } else {
+            this.workers = null;
+        }
+    }
+
+    /** 片段的派生对象键：files/abc.mobi, 1 → files/abc.c1.html。 */
+    public static String chunkKey(String objectKey, int chunk) {
+        return Derivatives.key(objectKey, ".c" + chunk + ".html");
+    }
+
+    /** 打开已切分的片段（序号从 1 开始）。调用方负责关闭流。 */
+    public InputStream openChunk(TlkFile file, int chunk) throws IOException {
+        return storageService.getInputStream(chunkKey(file.getPath(), chunk));
+    }
+
+    /** 新书保存后提交解析任务；队列已满时放弃，详情页回退到浏览器端解析。 */
+    @EventListener
+    public void onFileStored(FileStoredEvent event) {
+        TlkFile file = event.file();
+        if (!enabled || !"mobi".equals(file.getFileType()) || file.getPreviewPages() != null) return;
+        try {
+            workers.execute(() -> process(file));
+        } catch (RejectedExecutionException e) {
+            skipped.incrementAndGet();
+            logger.fine("MOBI parse queue full; skipped " + file.getUid());
+        }
+    }
+
+    /**
+     * 删除原对象时清理片段。片段数不在事件中，按序号逐个删除直到对象不存在。
+     */
+    @EventListener
+    public void onObjectDeleted(StoredObjectDeletedEvent event) {
+        String ext = FileService.extractExt(event.objectKey());
+        if (!enabled || !TlkFile.MOBI_EXTS.contains(ext)) return;
+        try {
+            for (int chunk = 1; chunk <= maxChunks; chunk++) {
+                String key = chunkKey(event.objectKey(), chunk);
+                if (!storageService.exists(key)) break;
+                storageService.delete(key);
+            }
+        } catch (IOException | RuntimeException e) {
+            logger.warning("Failed to delete MOBI chunks of " + event.objectKey() + ": " + e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (workers != null) workers.shutdownNow();
+    }
+
+    /**
+     * 解析一本书并记录到所有引用同一存储对象的记录上。同一对象已有片段（内容寻址共享对象）时直接复用。
+     */
+    void process(TlkFile file) {
+        String objectKey = file.getPath();
+        if (objectKey == null) return;
+        try {
+            if (Derivatives.reuseExisting(fileMapper, cacheManager, objectKey, "preview_pages",
+                    TlkFile::getPreviewPages)) {
+                return;
+            }
+            if (file.getSize() == null || file.getSize() > maxSourceBytes) {
+                skipped.incrementAndGet();
+                record(objectKey, 0);
+                return;
+            }
+            // PDB 记录表需要随机访问，整本读入内存（大小受 max-source-bytes 限制）
+            byte[] book;
+            try (InputStream in = fileService.openStream(file)) {
+                book = in.readAllBytes();
+            }
+            List<String> chunks = split(MobiParser.extractText(book, maxTextBytes), chunkChars);
+            if (chunks.size() > maxChunks) {
+                chunks = chunks.subList(0, maxChunks);
+            }
+            for (int i = 0; i < chunks.size(); i++) {
+                byte[] html = (CHUNK_HEAD + chunks.get(i) + CHUNK_TAIL).getBytes(StandardCharsets.UTF_8);
+                storageService.upload(chunkKey(objectKey, i + 1), new ByteArrayInputStream(html), html.length,
+                        "text/html; charset=utf-8");
+            }
+            record(objectKey, chunks.size());
+            if (chunks.isEmpty()) {
+                skipped.incrementAndGet();
+            } else {
+                parsed.incrementAndGet();
+            }
+        } catch (IOException | RuntimeException e) {
+            failed.incrementAndGet();
+            logger.warning("MOBI parse failed for " + file.getUid() + ": " + e.getMessage());
+            // 文件本身无法解析时不再重试；存储或数据库的临时错误保持未处理状态
+            if (e instanceof MobiParser.MobiFormatException) {
+                record(objectKey, 0);
+            }
+        }
+    }
+
+    /**
+     * 把全书文本切分为片段：先按分页标记切分，超过 {@code maxChars} 的部分再在段落或标签边界处切开。
+     * 纯文本（不含 HTML 标签）转义后按段落包装。
+     */
+    static List<String> split(String text, int maxChars) {
+        String html = HTML_HINT.matcher(text).find()
+                ? OUTER_TAGS.matcher(text).replaceAll("")
+                : plainToHtml(text);
+        List<String> chunks = new ArrayList<>();
+        for (String section : PAGE_BREAK.split(html)) {
+            int start = 0;
+            while (section.length() - start > maxChars) {
+                int cut = boundary(section, start, start + maxChars);
+                addChunk(chunks, section.substring(start, cut));
+                start = cut;
+            }
+            addChunk(chunks, section.substring(start));
+        }
+        return chunks;
+    }
+
+    /** 在 {@code (start, limit]} 内找最靠后的切分点：段落结束、换行、标签结束，依次退而求其次。 */
+    private static int boundary(String s, int start, int limit) {
+        int min = start + (limit - start) / 2;
+        String window = s.substring(start, limit).toLowerCase();
+        for (String marker : new String[] {"</p>", "</div>", "<br>", "<br/>", "\n", ">"}) {
+            int at = window.lastIndexOf(marker);
+            if (at >= 0 && start + at + marker.length() > min) {
+                return start + at + marker.length();
+            }
+        }
+        return limit;
+    }
+
+    private static void addChunk(List<String> chunks, String chunk) {
+        if (!chunk.isBlank()) {
+            chunks.add(chunk.strip());
+        }
+    }
+
+    private static String plainToHtml(String text) {
+        StringBuilder sb = new StringBuilder(text.length() + text.length() / 8);
+        Matcher paragraphs = Pattern.compile("\\r?\\n\\s*\\r?\\n").matcher(text);
+        int start = 0;
+        while (paragraphs.find()) {
+            appendParagraph(sb, text.substring(start, paragraphs.start()));
+            start = paragraphs.end();
+        }
+        appendParagraph(sb, text.substring(start));
+        return sb.toString();
+    }
+
+    private static void appendParagraph(StringBuilder sb, String paragraph) {
+        if (paragraph.isBlank()) return;
+        sb.append("<p>")
+                .append(paragraph.strip()
+                        .replace("&", "&amp;")
+                        .replace("<", "&lt;")
+                        .replace(">", "&gt;")
+                        .replace("\n", "<br>"))
+                .append("</p>\n");
+    }
+
+    public Stats getStats() {
+        return new Stats(enabled, parsed.get(), skipped.get(), failed.get(),
+                workers != null ? workers.getQueue().size() : 0);
+    }
+
+    private void record(String objectKey, int chunks) {
+        Derivatives.updateByPath(fileMapper, cacheManager, objectKey, "preview_pages", chunks);
+    }
+}
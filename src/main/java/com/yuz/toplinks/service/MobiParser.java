@@ -0,0 +1,310 @@
+package com.yuz.toplinks.service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * MOBI / AZW 文本提取（Palm Database 容器）。
+ *
+ * <p>按记录 0 中的 PalmDOC 头和 MOBI 头读取文本记录，去掉每条记录末尾的附加数据（trailing entries）后解压，
+ * 支持无压缩、PalmDOC LZ77 和 HUFF/CDIC 三种压缩方式。有 DRM 的文件无法解析。</p>
+ *
+ * <p>解压结果有上限：每条压缩记录解压后不超过头中的记录大小（通常 4096 字节），字典短语展开后同样如此，
+ * 全书文本不超过调用方给出的字节数；超出时按格式错误处理，构造的文件无法借解压放大耗尽内存。</p>
+ */
+final class MobiParser {
+
+    static final int COMPRESSION_NONE = 1;
+    static final int COMPRESSION_PALMDOC = 2;
+    static final int COMPRESSION_HUFF = 17480;
+    /** PalmDOC 头未给出记录大小时使用的标准值。 */
+    static final int DEFAULT_RECORD_SIZE = 4096;
+
+    private MobiParser() {
+    }
+
+    /** 文件不是可解析的 MOBI（格式错误、加密或不支持的压缩方式）。 */
+    static final class MobiFormatException extends IOException {
+        MobiFormatException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * 提取全书文本（MOBI 中通常为 HTML）。
+     *
+     * @param maxTextBytes 解压后全书文本的字节数上限
+     */
+    static String extractText(byte[] book, long maxTextBytes) throws IOException {
+        try {
+            return doExtract(book, maxTextBytes);
+        } catch (IndexOutOfBoundsException e) {
+            throw new MobiFormatException("Truncated MOBI record: " + e.getMessage());
+        }
+    }
+
+    private static String doExtract(byte[] book, long maxTextBytes) throws IOException {
+        if (book.length < 78) throw new MobiFormatException("Not a Palm database");
+        int numRecords = u16(book, 76);
+        if (numRecords < 2 || 78 + numRecords * 8 > book.length) throw new MobiFormatException("Bad record list");
+        int[] offsets = new int[numRecords + 1];
+        for (int i = 0; i < numRecords; i++) {
+            offsets[i] = (int) u32(book, 78 + i * 8);
+        }
+        offsets[numRecords] = book.length;
+        for (int i = 0; i < numRecords; i++) {
+            if (offsets[i] < 0 || offsets[i] > offsets[i + 1]) throw new MobiFormatException("Bad record offset");
+        }
+
+        int rec0 = offsets[0];
+        int compression = u16(book, rec0);
+        int textRecords = u16(book, rec0 + 8);
+        int recordSize = u16(book, rec0 + 10);
+        if (recordSize == 0) recordSize = DEFAULT_RECORD_SIZE;
+        int encryption = u16(book, rec0 + 12);
+        if (encryption != 0) throw new MobiFormatException("Encrypted (DRM) books are not supported");
+
+        Charset charset = Charset.forName("windows-1252");
+        int extraFlags = 0;
+        int huffRecord = 0;
+        int huffCount = 0;
+        boolean mobi = offsets[1] - rec0 >= 0x20 && "MOBI".equals(new String(book, rec0 + 16, 4, StandardCharsets.US_ASCII));
+        if (mobi) {
+            long headerLength = u32(book, rec0 + 0x14);
+            if (u32(book, rec0 + 0x1c) == 65001) charset = StandardCharsets.UTF_8;
+            if (offsets[1] - rec0 >= 0x78) {
+                huffRecord = (int) u32(book, rec0 + 0x70);
+                huffCount = (int) u32(book, rec0 + 0x74);
+            }
+            if (headerLength >= 0xE4 && offsets[1] - rec0 >= 0xF4 && u32(book, rec0 + 0x68) >= 5) {
+                extraFlags = u16(book, rec0 + 0xF2);
+            }
+        }
+
+        Huffcdic huff = null;
+        if (compression == COMPRESSION_HUFF) {
+            if (huffCount < 2 || huffRecord + huffCount > numRecords) throw new MobiFormatException("Missing HUFF records");
+            huff = new Huffcdic(record(book, offsets, huffRecord), recordSize);
+            for (int i = 1; i < huffCount; i++) {
+                huff.loadCdic(record(book, offsets, huffRecord + i));
+            }
+        } else if (compression != COMPRESSION_NONE && compression != COMPRESSION_PALMDOC) {
+            throw new MobiFormatException("Unsupported compression: " + compression);
+        }
+
+        ByteArrayOutputStream text = new ByteArrayOutputStream();
+        for (int r = 1; r <= textRecords && r < numRecords; r++) {
+            byte[] data = record(book, offsets, r);
+            int size = data.length - trailingEntriesSize(data, data.length, extraFlags);
+            if (size <= 0) continue;
+            byte[] body = java.util.Arrays.copyOf(data, size);
+            byte[] decoded = switch (compression) {
+                case COMPRESSION_PALMDOC -> decompressPalmDoc(body, recordSize);
+                case COMPRESSION_HUFF -> huff.unpack(body);
+                default -> body;
+            };
+            if (text.size() + (long) decoded.length > maxTextBytes) {
+                throw new MobiFormatException("Book text exceeds " + maxTextBytes + " bytes");
+            }
+            text.write(decoded);
+        }
+        return text.toString(charset);
+    }
+
+    /**
+     * PalmDOC LZ77 解压。
+     *
+     * @param limit 解压结果的字节数上限（记录大小）
+     */
+    static byte[] decompressPalmDoc(byte[] data, int limit) throws MobiFormatException {
+        byte[] buf = new byte[limit];
+        int len = 0;
+        int i = 0;
+        while (i < data.length) {
+            int c = data[i++] & 0xFF;
+            if (c >= 1 && c <= 8) {
+                int n = Math.min(c, data.length - i);
+                checkRoom(len, n, limit);
+                for (int j = 0; j < n; j++) {
+                    buf[len++] = data[i++];
+                }
+            } else if (c < 0x80) {
+                checkRoom(len, 1, limit);
+                buf[len++] = (byte) c;
+            } else if (c < 0xC0) {
+                if (i >= data.length) break;
+                int combined = (c << 8) | (data[i++] & 0xFF);
+                int dist = (combined >> 3) & 0x7FF;
+                int n = (combined & 7) + 3;
+                checkRoom(len, n, limit);
+                for (int k = 0; k < n; k++) {
+                    int pos = len - dist;
+                    buf[len++] = pos >= 0 && dist > 0 ? buf[pos] : 0;
+                }
+            } else {
+                checkRoom(len, 2, limit);
+                buf[len++] = ' ';
+                buf[len++] = (byte) (c ^ 0x80);
+            }
+        }
+        return java.util.Arrays.copyOf(buf, len);
+    }
+
+    private static void checkRoom(int len, int n, int limit) throws MobiFormatException {
+        if (len + n > limit) throw new MobiFormatException("Record decompresses beyond " + limit + " bytes");
+    }
+
+    /** 记录末尾附加数据的总长度（由 MOBI 头的 extra data flags 决定）。 */
+    static int trailingEntriesSize(byte[] data, int size, int flags) {
+        int num = 0;
+        for (int test = flags >> 1; test != 0; test >>= 1) {
+            if ((test & 1) != 0) {
+                num += trailingEntrySize(data, size - num);
+            }
+        }
+        if ((flags & 1) != 0 && size - num - 1 >= 0) {
+            num += (data[size - num - 1] & 0x3) + 1;
+        }
+        return num;
+    }
+
+    private static int trailingEntrySize(byte[] data, int size) {
+        int result = 0;
+        int bitpos = 0;
+        while (size > 0) {
+            int v = data[size - 1] & 0xFF;
+            result |= (v & 0x7F) << bitpos;
+            bitpos += 7;
+            size--;
+            if ((v & 0x80) != 0 || bitpos >= 28) break;
+        }
+        return result;
+    }
+
+    private static byte[] record(byte[] book, int[] offsets, int index) {
+        return java.util.Arrays.copyOfRange(book, offsets[index], offsets[index + 1]);
+    }
+
+    static int u16(byte[] b, int off) {
+        return ((b[off] & 0xFF) << 8) | (b[off + 1] & 0xFF);
+    }
+
+    static long u32(byte[] b, int off) {
+        return ((long) (b[off] & 0xFF) << 24) | ((b[off + 1] & 0xFF) << 16) | ((b[off + 2] & 0xFF) << 8)
+                | (b[off + 3] & 0xFF);
+    }
+
+    /**
+     * HUFF/CDIC 解码器：HUFF 记录给出规范 Huffman 码表，CDIC 记录给出短语字典，
+     * 短语本身可能仍是压缩数据，首次使用时递归展开并缓存。一条记录和一个展开后的短语都不超过记录大小。
+     */
+    static final class Huffcdic {
+
+        /** 嵌套展开的深度上限，防止构造的字典引用自身导致无限递归。 */
+        private static final int MAX_DEPTH = 32;
+
+        private final int[] codeLengths = new int[256];
+        private final boolean[] terminal = new boolean[256];
+        private final long[] maxCodes1 = new long[256];
+        private final long[] minCodes = new long[33];
+        private final long[] maxCodes = new long[33];
+        private final List<byte[]> phrases = new ArrayList<>();
+        private final List<Boolean> expanded = new ArrayList<>();
+        private final int limit;
+
+        Huffcdic(byte[] huff, int limit) throws MobiFormatException {
+            this.limit = limit;
+            if (huff.length < 16 || !"HUFF".equals(new String(huff, 0, 4, StandardCharsets.US_ASCII))) {
+                throw new MobiFormatException("Bad HUFF record");
+            }
+            int off1 = (int) u32(huff, 8);
+            int off2 = (int) u32(huff, 12);
+            for (int i = 0; i < 256; i++) {
+                long v = u32(huff, off1 + i * 4);
+                int codeLength = (int) (v & 0x1F);
+                if (codeLength == 0) throw new MobiFormatException("Bad HUFF code length");
+                codeLengths[i] = codeLength;
+                terminal[i] = (v & 0x80) != 0;
+                maxCodes1[i] = (((v >>> 8) + 1) << (32 - codeLength)) - 1;
+            }
+            minCodes[0] = 0;
+            maxCodes[0] = (1L << 32) - 1;
+            for (int len = 1; len <= 32; len++) {
+                minCodes[len] = u32(huff, off2 + (len - 1) * 8) << (32 - len);
+                maxCodes[len] = ((u32(huff, off2 + (len - 1) * 8 + 4) + 1) << (32 - len)) - 1;
+            }
+        }
+
+        void loadCdic(byte[] cdic) throws MobiFormatException {
+            if (cdic.length < 16 || !"CDIC".equals(new String(cdic, 0, 4, StandardCharsets.US_ASCII))) {
+                throw new MobiFormatException("Bad CDIC record");
+            }
+            long total = u32(cdic, 8);
+            int bits = (int) u32(cdic, 12);
+            int n = (int) Math.min(1L << Math.min(bits, 30), total - phrases.size());
+            for (int i = 0; i < n; i++) {
+                int off = u16(cdic, 16 + i * 2);
+                int blen = u16(cdic, 16 + off);
+                phrases.add(java.util.Arrays.copyOfRange(cdic, 18 + off, 18 + off + (blen & 0x7FFF)));
+                expanded.add((blen & 0x8000) != 0);
+            }
+        }
+
+        byte[] unpack(byte[] data) throws MobiFormatException {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(Math.min(limit, data.length * 3));
+            unpack(data, out, 0);
+            return out.toByteArray();
+        }
+
+        private void unpack(byte[] data, ByteArrayOutputStream out, int depth) throws MobiFormatException {
+            if (depth > MAX_DEPTH) throw new MobiFormatException("HUFF dictionary nesting too deep");
+            byte[] padded = java.util.Arrays.copyOf(data, data.length + 16);
+            long bitsLeft = (long) data.length * 8;
+            int pos = 0;
+            long x = u64(padded, pos);
+            int n = 32;
+            while (true) {
+                if (n <= 0) {
+                    pos += 4;
+                    x = u64(padded, pos);
+                    n += 32;
+                }
+                long code = (x >>> n) & 0xFFFFFFFFL;
+                int top = (int) (code >>> 24);
+                int codeLength = codeLengths[top];
+                long maxCode = maxCodes1[top];
+                if (!terminal[top]) {
+                    while (codeLength < 32 && code < minCodes[codeLength]) {
+                        codeLength++;
+                    }
+                    maxCode = maxCodes[codeLength];
+                }
+                n -= codeLength;
+                bitsLeft -= codeLength;
+                if (bitsLeft < 0) break;
+                int index = (int) ((maxCode - code) >>> (32 - codeLength));
+                if (index < 0 || index >= phrases.size()) throw new MobiFormatException("Bad HUFF code");
+                byte[] phrase = phrases.get(index);
+                if (!expanded.get(index)) {
+                    ByteArrayOutputStream nested = new ByteArrayOutputStream();
+                    unpack(phrase, nested, depth + 1);
+                    phrase = nested.toByteArray();
+                    phrases.set(index, phrase);
+                    expanded.set(index, true);
+                }
+                if (out.size() + phrase.length > limit) {
+                    throw new MobiFormatException("HUFF record decompresses beyond " + limit + " bytes");
+                }
+                out.write(phrase, 0, phrase.length);
+            }
+        }
+
+        private static long u64(byte[] b, int off) {
+            return (u32(b, off) << 32) | u32(b, off + 4);
+        }
+    }
+}
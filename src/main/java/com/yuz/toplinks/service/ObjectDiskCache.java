@@ -0,0 +1,354 @@
+package com.yuz.toplinks.service;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * 应用节点上的 R2 对象磁盘缓存（读穿透）。
+ *
+ * <p>未命中时，从 R2 读取的字节在返回给客户端的同时写入临时文件，完整读完后原子重命名为缓存文件；
+ * 客户端中途断开时丢弃临时文件，因此缓存中不会出现残缺对象。命中时直接读取本地文件（支持区间读取）。</p>
+ *
+ * <p>按字节预算做 LRU 淘汰。启动时扫描缓存目录重建索引（按文件修改时间恢复访问顺序），
+ * 并清理上次异常退出留下的临时文件。缓存键应包含内容标识（如哈希），避免 UID 复用后读到旧内容。</p>
+ */
+@Service
+public class ObjectDiskCache {
+
+    private static final Logger logger = Logger.getLogger(ObjectDiskCache.class.getName());
+
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final boolean enabled;
+    private final Path dir;
+    private final long maxBytes;
+    private final long maxObjectBytes;
+
+    /** 缓存文件名 → 字节数，按访问顺序排列（最久未访问在前）。 */
+    private final LinkedHashMap<String, Long> index = new LinkedHashMap<>(256, 0.75f, true);
+    private long usedBytes;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong bytesServed = new AtomicLong();
+    private final AtomicLong fills = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /** 缓存统计，用于评估命中率和调整容量。 */
+    public record Stats(boolean enabled, long hits, long misses, double hitRatio, long bytesServed,
+            long fills, long evictions, int entries, long usedBytes, long maxBytes) {
+    }
+
+    public ObjectDiskCache(CloudflareStorageService storageService,
+            @Value("${file.cache.enabled:false}") boolean cacheEnabled,
+            @Value("${file.cache.dir:cache}") String dir,
+            @Value("${file.cache.max-bytes:1073741824}") long maxBytes,
+            @Value("${file.cache.max-object-bytes:104857600}") long maxObjectBytes) throws IOException {
+        // 只缓存远端对象；本地存储模式下文件本身就在磁盘上
+        this.enabled = cacheEnabled && storageService.isR2Enabled() && maxBytes > 0;
+        this.dir = Paths.get(dir).toAbsolutePath().normalize();
+        this.maxBytes = maxBytes;
+        this.maxObjectBytes = Math.min(maxObjectBytes, maxBytes);
+        if (enabled) {
+            Files.createDirectories(this.dir);
+            recover();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 读取缓存中 {@code [start, end]} 字节区间（均含）。
+     *
+     * @return 命中时返回本地文件流；未命中返回 null
+     */
+    public InputStream open(String cacheKey, long start, long end) {
+        if (!enabled) return null;
+        String name = fileName(cacheKey);
+        synchronized (this) {
+            if (index.get(name) == null) {
+                misses.incrementAndGet();
+                return null;
+            }
+        }
+        Path path = dir.resolve(name);
+        try {
+            InputStream in = FileRangeInputStream.open(path, start, end);
+            hits.incrementAndGet();
+            bytesServed.addAndGet(end - start + 1);
+            touch(path);
+            return in;
+        } catch (IOException e) {
+            // 文件在查找后被淘汰或被外部删除
+            remove(name);
+            misses.incrementAndGet();
+            return null;
+        }
+    }
+
+    /**
+     * 包装远端对象流：调用方读完全部 {@code size} 字节后，内容被写入缓存。
+     * 对象超过单对象上限或未启用缓存时原样返回 source。
+     */
+    public InputStream fillThrough(String cacheKey, long size, InputStream source) {
+        if (!accepts(size)) {
+            return source;
+        }
+        String name = fileName(cacheKey);
+        Path temp = dir.resolve(name + "." + UUID.randomUUID() + TEMP_SUFFIX);
+        try {
+            return new FillingInputStream(source, name, temp, size);
+        } catch (IOException e) {
+            logger.warning("Cannot start cache fill for " + cacheKey + ": " + e.getMessage());
+            return source;
+        }
+    }
+
+    /** 缓存中是否有该对象（不计入命中统计）。 */
+    public synchronized boolean contains(String cacheKey) {
+        return enabled && index.containsKey(fileName(cacheKey));
+    }
+
+    /** 该大小的对象是否会被缓存。 */
+    public boolean accepts(long size) {
+        return enabled && size >= 0 && size <= maxObjectBytes;
+    }
+
+    /**
+     * 将已完整下载的文件转入缓存（移动而非复制）。已打开该文件的读取者不受影响。
+     */
+    public void adopt(String cacheKey, Path file, long size) throws IOException {
+        if (!accepts(size) || Files.size(file) != size) {
+            Files.deleteIfExists(file);
+            return;
+        }
+        commit(fileName(cacheKey), file, size);
+    }
+
+    /** 移除缓存条目（对象被删除时调用）。 */
+    public void invalidate(String cacheKey) {
+        if (enabled) {
+            remove(fileName(cacheKey));
+        }
+    }
+
+    public synchronized Stats getStats() {
+        long h = hits.get();
+        long m = misses.get();
+        return new Stats(enabled, h, m, h + m == 0 ? 0 : (double) h / (h + m), bytesServed.get(),
+                fills.get(), evictions.get(), index.size(), usedBytes, maxBytes);
+    }
+
+    private void commit(String name, Path temp, long size) throws IOException {
+        Path target = dir.resolve(name);
+        try {
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+        List<String> evicted;
+        synchronized (this) {
+            Long previous = index.put(name, size);
+            usedBytes += size - (previous != null ? previous : 0);
+            evicted = evictOverBudget();
+        }
+        fills.incrementAndGet();
+        deleteAll(evicted);
+    }
+
+    /** 必须在持有锁时调用；返回需要删除的文件名，在锁外删除。 */
+    private List<String> evictOverBudget() {
+        List<String> evicted = new ArrayList<>();
+        Iterator<Map.Entry<String, Long>> it = index.entrySet().iterator();
+        while (usedBytes > maxBytes && it.hasNext()) {
+            Map.Entry<String, Long> eldest = it.next();
+            usedBytes -= eldest.getValue();
+            evicted.add(eldest.getKey());
+            it.remove();
+        }
+        evictions.addAndGet(evicted.size());
+        return evicted;
+    }
+
+    private void remove(String name) {
+        synchronized (this) {
+            Long size = index.remove(name);
+            if (size == null) return;
+            usedBytes -= size;
+        }
+        deleteAll(List.of(name));
+    }
+
+    private void deleteAll(List<String> names) {
+        for (String name : names) {
+            try {
+                Files.deleteIfExists(dir.resolve(name));
+            } catch (IOException e) {
+                logger.warning("Failed to delete cache file " + name + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /** 重建索引：清理临时文件，按修改时间从旧到新恢复 LRU 顺序，超出预算的立即淘汰。 */
+    private void recover() throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (Stream<Path> stream = Files.list(dir)) {
+            stream.filter(Files::isRegularFile).forEach(files::add);
+        }
+        List<Object[]> entries = new ArrayList<>(files.size());
+        for (Path file : files) {
+            String name = file.getFileName().toString();
+            if (name.endsWith(TEMP_SUFFIX)) {
+                Files.deleteIfExists(file);
+                continue;
+            }
+            entries.add(new Object[] { name, Files.size(file), Files.getLastModifiedTime(file).toMillis() });
+        }
+        entries.sort(Comparator.comparingLong(e -> (Long) e[2]));
+        List<String> evicted;
+        synchronized (this) {
+            for (Object[] e : entries) {
+                index.put((String) e[0], (Long) e[1]);
+                usedBytes += (Long) e[1];
+            }
+            evicted = evictOverBudget();
+        }
+        deleteAll(evicted);
+        if (!entries.isEmpty()) {
+            logger.info("Recovered disk cache index: " + index.size() + " object(s), " + usedBytes + " bytes");
+        }
+    }
+
+    /** 更新修改时间，使重启后恢复的访问顺序接近真实的 LRU 顺序。 */
+    private static void touch(Path path) {
+        try {
+            Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException | RuntimeException ignored) {
+            // 仅影响重启后的淘汰顺序
+        }
+    }
+
+    private static String fileName(String cacheKey) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(cacheKey.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /** 边读边写临时文件；读到完整长度后提交，其他情况（中途关闭、长度不符、写入失败）丢弃。 */
+    private class FillingInputStream extends FilterInputStream {
+
+        private final String name;
+        private final Path temp;
+        private final long expected;
+        private OutputStream out;
+        private long written;
+
+        FillingInputStream(InputStream source, String name, Path temp, long expected) throws IOException {
+            super(source);
+            this.name = name;
+            this.temp = temp;
+            this.expected = expected;
+            this.out = Files.newOutputStream(temp);
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            int n = read(one, 0, 1);
+            return n == -1 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0 && out != null) {
+                try {
+                    out.write(b, off, n);
+                    written += n;
+                } catch (IOException e) {
+                    logger.warning("Cache fill aborted for " + name + ": " + e.getMessage());
+                    abandon();
+                }
+            } else if (n == -1 && out != null) {
+                finish();
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            abandon();
+            return super.skip(n);
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                abandon();
+            } finally {
+                super.close();
+            }
+        }
+
+        private void finish() {
+            try {
+                out.close();
+                out = null;
+                if (written == expected) {
+                    commit(name, temp, written);
+                } else {
+                    Files.deleteIfExists(temp);
+                }
+            } catch (IOException e) {
+                logger.warning("Cache fill failed for " + name + ": " + e.getMessage());
+                abandon();
+            }
+        }
+
+        private void abandon() {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException ignored) {
+                    // 临时文件随后删除
+                }
+                out = null;
+            }
+            try {
+                Files.deleteIfExists(temp);
+            } catch (IOException e) {
+                logger.warning("Failed to delete cache temp file " + temp + ": " + e.getMessage());
+            }
+        }
+    }
+}
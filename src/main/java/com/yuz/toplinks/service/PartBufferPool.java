@@ -0,0 +1,63 @@
+package com.yuz.toplinks.service;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 固定大小的分片缓冲池，用于 R2 分片上传。
+ * 缓冲按需创建，总数不超过 {@code maxBuffers}；池耗尽时 {@link #acquire()} 阻塞，
+ * 从而把所有并发上传占用的堆内存限制在 {@code bufferSize * maxBuffers} 以内。
+ */
+class PartBufferPool {
+
+    private final int bufferSize;
+    private final int maxBuffers;
+    private final BlockingQueue<byte[]> idle;
+    private final AtomicInteger created = new AtomicInteger();
+
+    PartBufferPool(int bufferSize, int maxBuffers) {
+        if (bufferSize <= 0 || maxBuffers <= 0) {
+            throw new IllegalArgumentException("bufferSize and maxBuffers must be positive");
+        }
+        this.bufferSize = bufferSize;
+        this.maxBuffers = maxBuffers;
+        this.idle = new ArrayBlockingQueue<>(maxBuffers);
+    }
+
+    byte[] acquire() throws IOException {
+        byte[] buf = idle.poll();
+        if (buf != null) {
+            return buf;
+        }
+        while (true) {
+            int n = created.get();
+            if (n >= maxBuffers) break;
+            if (created.compareAndSet(n, n + 1)) {
+                return new byte[bufferSize];
+            }
+        }
+        try {
+            return idle.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for an upload buffer");
+        }
+    }
+
+    void release(byte[] buf) {
+        if (buf != null && buf.length == bufferSize) {
+            idle.offer(buf);
+        }
+    }
+
+    int getBufferSize() {
+        return bufferSize;
+    }
+
+    int getMaxBuffers() {
+        return maxBuffers;
+    }
+}
@@ -0,0 +1,328 @@
+package com.yuz.toplinks.service;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.logging.Logger;
+
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.rendering.ImageType;
+import org.apache.pdfbox.rendering.PDFRenderer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import com.yuz.toplinks.entity.TlkFile;
+import com.yuz.toplinks.mapper.TlkFileMapper;
+
+import jakarta.annotation.PreDestroy;
+
+/**
+ * PDF 预览：上传完成后在专用的有界线程池中把前几页渲染为 JPEG，
+ * 以派生键（原对象键去掉扩展名后加 {@code .p<页码>.jpg}）存放在原文件旁边，
+ * 页数记录在 {@code TLK_FILE.preview_pages}。详情页先显示这些图片，需要时再加载完整 PDF。
+ *
+ * <p>每个文档有时间和内存预算：解析时 PDFBox 的主内存缓冲不超过 {@code max-memory-bytes}（超出部分使用临时文件），
+ * 单页渲染的像素数受限。PDFBox 的渲染不响应中断，因此每页在单独的渲染线程中执行，
+ * 工作线程最多等到预算截止：超时后放弃该渲染线程（随后关闭文档，使其尽快因读取失败退出）并停止渲染后续页，
+ * 已完成的页照常保存。渲染线程数有上限，被放弃的线程全部未退出时新的文档暂不渲染。
+ * 队列已满时直接放弃，该文件的详情页继续嵌入原文件。</p>
+ */
+@Service
+public class PdfPreviewService {
+
+    private static final Logger logger = Logger.getLogger(PdfPreviewService.class.getName());
+
+    private final TlkFileMapper fileMapper;
+    private final CloudflareStorageService storageService;
+    private final FileService fileService;
+    private final CacheManager cacheManager;
+    private final boolean enabled;
+    private final int maxPages;
+    private final int width;
+    private final float quality;
+    private final long maxSourceBytes;
+    private final long maxMemoryBytes;
+    private final long maxPagePixels;
+    private final long timeBudgetMillis;
+    private final LongSupplier clock;
+    private final ThreadPoolExecutor workers;
+    private final ThreadPoolExecutor renderers;
+
+    private final AtomicLong rendered = new AtomicLong();
+    private final AtomicLong skipped = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong overBudget = new AtomicLong();
+    private final AtomicLong abandoned = new AtomicLong();
+
+    /**
+     * 统计：rendered 为已生成预览的文档数，overBudget 为因超出时间预算而少渲染页数的文档数，
+     * abandoned 为超时后被放弃的单页渲染数，rendering 为当前仍在运行的渲染线程数（含被放弃但尚未退出的）。
+     */
+    public record Stats(boolean enabled, long rendered, long skipped, long failed, long overBudget, long abandoned,
+            int queued, int rendering) {
+    }
+
+    @Autowired
+    public PdfPreviewService(TlkFileMapper fileMapper, CloudflareStorageService storageService,
+            FileService fileService, CacheManager cacheManager,
+            @Value("${file.pdf-preview.enabled:false}") boolean enabled,
+            @Value("${file.pdf-preview.pages:3}") int maxPages,
+            @Value("${file.pdf-preview.width:1000}") int width,
+            @Value("${file.pdf-preview.quality:0.8}") float quality,
+            @Value("${file.pdf-preview.max-source-bytes:104857600}") long maxSourceBytes,
+            @Value("${file.pdf-preview.max-memory-bytes:67108864}") long maxMemoryBytes,
+            @Value("${file.pdf-preview.max-page-pixels:16777216}") long maxPagePixels,
+            @Value("${file.pdf-preview.time-budget-millis:20000}") long timeBudgetMillis,
+            @Value("${file.pdf-preview.workers:1}") int workerCount,
+            @Value("${file.pdf-preview.queue-capacity:50}") int queueCapacity) {
+        this(fileMapper, storageService, fileService, cacheManager, enabled, maxPages, width, quality,
+                maxSourceBytes, maxMemoryBytes, maxPagePixels, timeBudgetMillis, workerCount, queueCapacity,
+                System::currentTimeMillis);
+    }
+
+    PdfPreviewService(TlkFileMapper fileMapper, CloudflareStorageService storageService,
+            FileService fileService, CacheManager cacheManager, boolean enabled, int maxPages, int width,
+            float quality, long maxSourceBytes, long maxMemoryBytes, long maxPagePixels, long timeBudgetMillis,
+            int workerCount, int queueCapacity, LongSupplier clock) {
+        this.fileMapper = fileMapper;
+        this.storageService = storageService;
+        this.fileService = fileService;
+        this.cacheManager = cacheManager;
+        this.enabled = enabled;
+        this.maxPages = Math.max(1, maxPages);
+        this.width = Math.max(100, width);
+        this.quality = Math.min(1f, Math.max(0.1f, quality));
+        this.maxSourceBytes = maxSourceBytes;
+        this.maxMemoryBytes = maxMemoryBytes;
+        this.maxPagePixels = maxPagePixels;
+        this.timeBudgetMillis = timeBudgetMillis;
+        this.clock = clock;
+        if (enabled) {
+            // 渲染是纯 CPU 工作，让位于处理请求的线程
+            this.workers = Derivatives.workerPool("pdf-preview-", workerCount, queueCapacity,
+                    Thread.NORM_PRIORITY - 1);
+            // 每个工作线程一个渲染线程，另留同样数量的余量给超时后尚未退出的渲染
+            this.renderers = new ThreadPoolExecutor(0, 2 * Math.max(1, workerCount), 30, TimeUnit.SECONDS,
+                    new SynchronousQueue<>(), Derivatives.daemonThreads("pdf-render-", Thread.NORM_PRIORITY - 1));
+        } else {
+            this.workers = null;
+            this.renderers = null;
+        }
+    }
+
+    /** 预览页的派生对象键：files/abc.pdf, 1 → files/abc.p1.jpg。 */
+    public static String pageKey(String objectKey, int page) {
+        return Derivatives.key(objectKey, ".p" + page + ".jpg");
+    }
+
+    /** 打开已渲染的预览页（页码从 1 开始）。调用方负责关闭流。 */
+    public InputStream openPage(TlkFile file, int page) throws IOException {
+        return storageService.getInputStream(pageKey(file.getPath(), page));
+    }
+
+    /** 新 PDF 保存后提交渲染任务；队列已满时放弃。 */
+    @EventListener
+    public void onFileStored(FileStoredEvent event) {
+        TlkFile file = event.file();
+        if (!enabled || !"pdf".equals(file.getFileType()) || file.getPreviewPages() != null) return;
+        try {
+            workers.execute(() -> render(file));
+        } catch (RejectedExecutionException e) {
+            skipped.incrementAndGet();
+            logger.fine("PDF preview queue full; skipped " + file.getUid());
+        }
+    }
+
+    /** 删除原对象时清理预览页（删除不存在的对象静默成功）。 */
+    @EventListener
+    public void onObjectDeleted(StoredObjectDeletedEvent event) {
+        if (!enabled || !event.objectKey().toLowerCase().endsWith(".pdf")) return;
+        for (int page = 1; page <= maxPages; page++) {
+            try {
+                storageService.delete(pageKey(event.objectKey(), page));
+            } catch (IOException | RuntimeException e) {
+                logger.warning("Failed to delete PDF preview page of " + event.objectKey() + ": " + e.getMessage());
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (workers != null) workers.shutdownNow();
+        if (renderers != null) renderers.shutdownNow();
+    }
+
+    /**
+     * 渲染一个 PDF 的前几页并记录到所有引用同一存储对象的记录上。
+     * 同一对象已有预览（内容寻址共享对象）时直接复用。
+     */
+    void render(TlkFile file) {
+        String objectKey = file.getPath();
+        if (objectKey == null) return;
+        Path source = null;
+        try {
+            if (Derivatives.reuseExisting(fileMapper, cacheManager, objectKey, "preview_pages",
+                    TlkFile::getPreviewPages)) {
+                return;
+            }
+            if (file.getSize() == null || file.getSize() > maxSourceBytes) {
+                skipped.incrementAndGet();
+                record(objectKey, 0);
+                return;
+            }
+            // 复制到临时文件后按需随机读取，不把整个文档读入内存
+            source = Files.createTempFile("pdf-preview-", ".pdf");
+            try (InputStream in = fileService.openStream(file)) {
+                Files.copy(in, source, StandardCopyOption.REPLACE_EXISTING);
+            }
+            int pages = renderPages(source, objectKey);
+            record(objectKey, pages);
+            if (pages > 0) {
+                rendered.incrementAndGet();
+            } else {
+                skipped.incrementAndGet();
+            }
+        } catch (RejectedExecutionException e) {
+            // 渲染线程都被占用（包括超时后尚未退出的），与文档无关；保持未处理状态，之后再生成
+            skipped.incrementAndGet();
+            logger.info("PDF preview renderers busy; left " + file.getUid() + " for a later pass");
+        } catch (IOException | RuntimeException e) {
+            failed.incrementAndGet();
+            logger.warning("PDF preview failed for " + file.getUid() + ": " + e.getMessage());
+            // 文档本身无法解析时不再重试；存储或数据库的临时错误保持未处理状态
+            if (e instanceof InvalidDocumentException) {
+                record(objectKey, 0);
+            }
+        } finally {
+            if (source != null) {
+                try {
+                    Files.deleteIfExists(source);
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    /** 解析或渲染文档失败。 */
+    static final class InvalidDocumentException extends IOException {
+        InvalidDocumentException(String message, Throwable cause) {
+            super(message, cause);
+        }
+    }
+
+    /**
+     * 渲染前几页并保存，返回成功保存的连续页数。
+     *
+     * @throws InvalidDocumentException 文档无法解析，或第一页就无法渲染
+     * @throws RejectedExecutionException 所有渲染线程都被占用
+     */
+    int renderPages(Path source, String objectKey) throws IOException {
+        long deadline = clock.getAsLong() + timeBudgetMillis;
+        PDDocument document;
+        try {
+            document = Loader.loadPDF(source.toFile(), MemoryUsageSetting.setupMixed(maxMemoryBytes).streamCache);
+        } catch (IOException e) {
+            throw new InvalidDocumentException("Unreadable PDF: " + e.getMessage(), e);
+        }
+        try (document) {
+            PDFRenderer renderer = new PDFRenderer(document);
+            int count = Math.min(maxPages, document.getNumberOfPages());
+            int done = 0;
+            for (int page = 0; page < count; page++) {
+                if (page > 0 && clock.getAsLong() > deadline) {
+                    overBudget.incrementAndGet();
+                    logger.info("PDF preview time budget exceeded for " + objectKey + " after " + done + " page(s)");
+                    break;
+                }
+                int index = page;
+                float scale = scaleFor(document.getPage(page).getCropBox());
+                BufferedImage image;
+                try {
+                    image = renderWithin(() -> renderer.renderImage(index, scale, ImageType.RGB), deadline);
+                } catch (TimeoutException e) {
+                    overBudget.incrementAndGet();
+                    logger.info("PDF preview render of " + objectKey + " page " + (page + 1)
+                            + " abandoned at the time budget after " + done + " page(s)");
+                    break;
+                } catch (RejectedExecutionException e) {
+                    // 暂时没有空闲的渲染线程，不能据此判定文档无效
+                    throw e;
+                } catch (IOException | RuntimeException e) {
+                    if (done == 0) throw new InvalidDocumentException("Unrenderable PDF: " + e.getMessage(), e);
+                    break;
+                }
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                ImageScaler.writeJpeg(image, quality, out);
+                storageService.upload(pageKey(objectKey, page + 1), new ByteArrayInputStream(out.toByteArray()),
+                        out.size(), "image/jpeg");
+                done++;
+            }
+            return done;
+        }
+    }
+
+    /**
+     * 在渲染线程中执行单页渲染，最多等到 {@code deadline}。超时后中断并放弃该线程，不再等待其结束。
+     *
+     * @throws TimeoutException 到达截止时间仍未完成
+     * @throws RejectedExecutionException 所有渲染线程都被占用（包括被放弃但尚未退出的）
+     */
+    BufferedImage renderWithin(Callable<BufferedImage> task, long deadline) throws IOException, TimeoutException {
+        Future<BufferedImage> future = renderers.submit(task);
+        try {
+            return future.get(Math.max(0, deadline - clock.getAsLong()), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            abandoned.incrementAndGet();
+            throw e;
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while rendering PDF preview", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException io) throw io;
+            if (e.getCause() instanceof RuntimeException re) throw re;
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /** 按目标宽度换算缩放比例，并保证单页像素数不超过上限。 */
+    float scaleFor(PDRectangle box) {
+        float scale = width / Math.max(1f, box.getWidth());
+        double pixels = (double) box.getWidth() * box.getHeight() * scale * scale;
+        if (pixels > maxPagePixels) {
+            scale *= (float) Math.sqrt(maxPagePixels / pixels);
+        }
+        return scale;
+    }
+
+    public Stats getStats() {
+        return new Stats(enabled, rendered.get(), skipped.get(), failed.get(), overBudget.get(), abandoned.get(),
+                workers != null ? workers.getQueue().size() : 0, renderers != null ? renderers.getActiveCount() : 0);
+    }
+
+    private void record(String objectKey, int pages) {
+        Derivatives.updateByPath(fileMapper, cacheManager, objectKey, "preview_pages", pages);
+    }
+}
@@ -0,0 +1,94 @@
+package com.yuz.toplinks.service;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+import java.util.logging.Logger;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.yuz.toplinks.entity.TlkFile;
+
+/**
+ * 下载重定向：为 R2 对象生成短期有效的预签名地址，下载和原始内容接口以 302 跳转，
+ * 文件字节直接由 R2 提供，应用节点只处理元数据。
+ *
+ * <p>预签名地址按 UID、Content-Disposition 和 Content-Type 缓存在本节点内存中，
+ * 缓存时间比签名有效期略短，保证交给客户端的地址至少还有一段可用时间。
+ * 本地存储模式或尚未推送到 R2 的文件不会重定向，仍由应用代理。</p>
+ */
+@Service
+public class PresignedUrlService {
+
+    private static final Logger logger = Logger.getLogger(PresignedUrlService.class.getName());
+
+    /** 缓存条目超过该数量时清理过期条目。 */
+    static final int MAX_ENTRIES = 10_000;
+
+    private final CloudflareStorageService storageService;
+    private final boolean enabled;
+    private final Duration ttl;
+    private final long cacheMillis;
+    private final LongSupplier clock;
+
+    private final Map<String, CachedUrl> cache = new ConcurrentHashMap<>();
+
+    private record CachedUrl(String url, long expiresAt) {
+    }
+
+    @Autowired
+    public PresignedUrlService(CloudflareStorageService storageService,
+            @Value("${file.download.redirect.enabled:false}") boolean redirectEnabled,
+            @Value("${file.download.redirect.ttl-seconds:300}") long ttlSeconds) {
+        this(storageService, redirectEnabled, ttlSeconds, System::currentTimeMillis);
+    }
+
+    PresignedUrlService(CloudflareStorageService storageService, boolean redirectEnabled, long ttlSeconds,
+            LongSupplier clock) {
+        this.storageService = storageService;
+        this.enabled = redirectEnabled && storageService.isR2Enabled();
+        this.ttl = Duration.ofSeconds(Math.max(60, ttlSeconds));
+        // 提前失效：至少留出 10 秒或有效期的十分之一，避免客户端拿到即将过期的地址
+        long ttlMillis = ttl.toMillis();
+        this.cacheMillis = ttlMillis - Math.max(10_000, ttlMillis / 10);
+        this.clock = clock;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 返回文件的预签名下载地址；未启用重定向、文件尚未推送到 R2 或签名失败时返回 null，调用方应回退到代理。
+     *
+     * @param contentDisposition 需要 R2 返回的 Content-Disposition，可为 null
+     */
+    public String urlFor(TlkFile file, String contentType, String contentDisposition) {
+        if (!enabled || file.isStoragePending() || file.getPath() == null) {
+            return null;
+        }
+        String key = file.getUid() + '\n' + contentType + '\n' + contentDisposition;
+        long now = clock.getAsLong();
+        CachedUrl cached = cache.get(key);
+        if (cached != null && cached.expiresAt() > now) {
+            return cached.url();
+        }
+        try {
+            String url = storageService.presignGetUrl(file.getPath(), contentType, contentDisposition, ttl);
+            if (cache.size() >= MAX_ENTRIES) {
+                cache.values().removeIf(c -> c.expiresAt() <= now);
+            }
+            if (cache.size() < MAX_ENTRIES) {
+                cache.put(key, new CachedUrl(url, now + cacheMillis));
+            }
+            return url;
+        } catch (IOException e) {
+            logger.warning("Presign failed for " + file.getUid() + ", falling back to proxy: " + e.getMessage());
+            return null;
+        }
+    }
+}
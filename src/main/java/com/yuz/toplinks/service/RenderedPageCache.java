@@ -0,0 +1,259 @@
+package com.yuz.toplinks.service;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+/**
+ * 首页和文件详情页的渲染结果缓存（仅保存匿名访问渲染出的页面，gzip 压缩存放）。
+ *
+ * <p>页面中与用户相关的部分以 {@code <!--user:模板::片段-->…<!--/user-->} 标记包围；
+ * 已登录用户命中缓存时只重新渲染这些片段并拼接回缓存的页面（见 {@link #splice}）。</p>
+ *
+ * <p>条目超过 {@code ttl} 或因上传、删除失效后变为过期：过期条目继续返回给其他请求，
+ * 同时只有一个请求（{@link #tryRefresh} 成功的那个）重新渲染。删除文件时其详情页直接移除，不再返回；
+ * 保存文件时也移除同一 uid 的详情页，不让此前缓存的内容遮住新文件。</p>
+ */
+@Service
+public class RenderedPageCache {
+
+    private static final Pattern USER_FRAGMENT = Pattern.compile(
+            "<!--user:([\\w/-]+)::(\\w+)-->(.*?)<!--/user-->", Pattern.DOTALL);
+
+    private static final String LIST_PREFIX = "list:";
+    private static final String FILE_PREFIX = "file:";
+
+    private final boolean enabled;
+    private final long ttlMillis;
+    private final int maxEntries;
+    private final LongSupplier clock;
+
+    /** 按访问顺序排列，超出容量时淘汰最久未访问的条目。 */
+    private final Map<String, Entry> entries;
+
+    /** 每次失效加一；渲染期间发生过失效的结果不保存，避免把旧内容当作新内容缓存。 */
+    private final AtomicLong generation = new AtomicLong();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong staleHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong stores = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    @Autowired
+    public RenderedPageCache(
+            @Value("${file.page-cache.enabled:false}") boolean enabled,
+            @Value("${file.page-cache.ttl-seconds:60}") long ttlSeconds,
+            @Value("${file.page-cache.max-entries:500}") int maxEntries) {
+        this(enabled, ttlSeconds * 1000, maxEntries, System::currentTimeMillis);
+    }
+
+    RenderedPageCache(boolean enabled, long ttlMillis, int maxEntries, LongSupplier clock) {
+        this.enabled = enabled;
+        this.ttlMillis = ttlMillis;
+        this.maxEntries = Math.max(1, maxEntries);
+        this.clock = clock;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > RenderedPageCache.this.maxEntries;
+            }
+        };
+    }
+
+    /** 一个缓存的页面。{@code gzip} 为匿名访问时的完整页面。 */
+    public static final class Entry {
+        private final byte[] gzip;
+        private final long storedAt;
+        private volatile boolean invalidated;
+        private final AtomicBoolean refreshing = new AtomicBoolean();
+
+        Entry(byte[] gzip, long storedAt) {
+            this.gzip = gzip;
+            this.storedAt = storedAt;
+        }
+
+        public byte[] gzip() {
+            return gzip;
+        }
+
+        public String html() {
+            return gunzip(gzip);
+        }
+
+        /** 是否已有请求在重新渲染该页面。 */
+        public boolean isRefreshing() {
+            return refreshing.get();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /** 首页列表的缓存键：分类、页码和游标都相同的请求共享一个条目。 */
+    public static String listingKey(String categoryId, String page, String after, String before) {
+        return LIST_PREFIX + nullToEmpty(categoryId) + '|' + nullToEmpty(page) + '|' + nullToEmpty(after)
+                + '|' + nullToEmpty(before);
+    }
+
+    public static String detailKey(String uid) {
+        return FILE_PREFIX + uid;
+    }
+
+    public static boolean isDetailKey(String key) {
+        return key.startsWith(FILE_PREFIX);
+    }
+
+    /** 查找条目（包括过期条目），并计入命中统计。 */
+    public Entry get(String key) {
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(key);
+        }
+        if (entry == null) {
+            misses.incrementAndGet();
+        } else if (isFresh(entry)) {
+            hits.incrementAndGet();
+        } else {
+            staleHits.incrementAndGet();
+        }
+        return entry;
+    }
+
+    public boolean isFresh(Entry entry) {
+        return !entry.invalidated && clock.getAsLong() - entry.storedAt < ttlMillis;
+    }
+
+    /** 认领过期条目的重新渲染；返回 false 表示已有其他请求在渲染，调用方返回过期内容即可。 */
+    public boolean tryRefresh(Entry entry) {
+        return entry.refreshing.compareAndSet(false, true);
+    }
+
+    /** 重新渲染没有产生可缓存的结果时释放认领，让下一个请求再试。 */
+    public void release(Entry entry) {
+        entry.refreshing.set(false);
+    }
+
+    /** 当前失效代数，渲染开始前读取，保存时传给 {@link #put}。 */
+    public long generation() {
+        return generation.get();
+    }
+
+    /**
+     * 保存一次匿名访问渲染出的页面。
+     *
+     * @param renderedAt 渲染开始前的 {@link #generation()}；其间发生过失效时不保存
+     * @return 是否已保存
+     */
+    public boolean put(String key, String html, long renderedAt) {
+        Entry entry = new Entry(gzip(html), clock.getAsLong());
+        synchronized (entries) {
+            if (generation.get() != renderedAt) return false;
+            entries.put(key, entry);
+        }
+        stores.incrementAndGet();
+        return true;
+    }
+
+    /** 新文件出现在列表第一页，分类栏的计数也会变化：所有列表页过期，同一 uid 的详情页移除。 */
+    @EventListener
+    public void onFileStored(FileStoredEvent event) {
+        synchronized (entries) {
+            invalidateListings();
+            entries.remove(detailKey(event.file().getUid()));
+        }
+    }
+
+    /** 删除的文件从列表中消失，其详情页不应再返回。 */
+    @EventListener
+    public void onFileDeleted(FileDeletedEvent event) {
+        synchronized (entries) {
+            invalidateListings();
+            entries.remove(detailKey(event.file().getUid()));
+        }
+    }
+
+    private void invalidateListings() {
+        synchronized (entries) {
+            generation.incrementAndGet();
+            for (Map.Entry<String, Entry> e : entries.entrySet()) {
+                if (e.getKey().startsWith(LIST_PREFIX)) e.getValue().invalidated = true;
+            }
+        }
+        invalidations.incrementAndGet();
+    }
+
+    /**
+     * 把页面中以用户标记包围的片段替换为 {@code renderer} 为当前用户渲染的结果。
+     *
+     * @param renderer 参数为片段表达式（如 {@code template :: userNav}），返回渲染后的 HTML
+     */
+    public static String splice(String html, Function<String, String> renderer) {
+        Matcher m = USER_FRAGMENT.matcher(html);
+        StringBuilder sb = new StringBuilder(html.length() + 256);
+        while (m.find()) {
+            String selector = m.group(1) + " :: " + m.group(2);
+            String replacement = "<!--user:" + m.group(1) + "::" + m.group(2) + "-->" + renderer.apply(selector)
+                    + "<!--/user-->";
+            m.appendReplacement(sb, Matcher.quoteReplacement(replacement));
+        }
+        m.appendTail(sb);
+        return sb.toString();
+    }
+
+    /** 页面缓存统计。 */
+    public record Stats(boolean enabled, int entries, long bytes, long hits, long staleHits, long misses,
+            long stores, long invalidations) {
+    }
+
+    public Stats getStats() {
+        int count;
+        long bytes = 0;
+        synchronized (entries) {
+            count = entries.size();
+            for (Entry e : entries.values()) bytes += e.gzip.length;
+        }
+        return new Stats(enabled, count, bytes, hits.get(), staleHits.get(), misses.get(), stores.get(),
+                invalidations.get());
+    }
+
+    static byte[] gzip(String html) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(512, html.length() / 4));
+        try (GZIPOutputStream gz = new GZIPOutputStream(out)) {
+            gz.write(html.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    static String gunzip(byte[] gzip) {
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(gzip))) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static String nullToEmpty(String s) {
+        return s != null ? s : "";
+    }
+}
@@ -0,0 +1,433 @@
+package com.yuz.toplinks.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.stereotype.Service;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.baomidou.mybatisplus.core.conditions.update.UpdateWrapper;
+import com.yuz.toplinks.entity.TlkFile;
+import com.yuz.toplinks.entity.TlkUploadChunk;
+import com.yuz.toplinks.entity.TlkUploadSession;
+import com.yuz.toplinks.mapper.TlkUploadChunkMapper;
+import com.yuz.toplinks.mapper.TlkUploadSessionMapper;
+
+import jakarta.annotation.PreDestroy;
+import jakarta.servlet.http.HttpServletRequest;
+
+/**
+ * 可续传分片上传（思路参考 tus 协议）：创建会话 → 以任意顺序并行上传编号分片 → 查询缺失分片 → 完成。
+ *
+ * <p>R2 启用时每个分片直接对应一个 S3 分片（分片号 = 序号 + 1），不在本地落盘；
+ * 否则写入预分配的本地文件，各分片通过 {@link FileChannel} 按位置写入。
+ * 会话和已接收分片持久化在数据库中，客户端或服务端重启后都可以继续上传。
+ * 完成和过期清理都先以条件更新认领会话状态，同一会话的并发完成只有一个成功，其余返回冲突。
+ * 本地存储模式下的分片文件位于节点本地磁盘，多节点部署时需要会话粘滞。</p>
+ */
+@Service
+public class ResumableUploadService {
+
+    private static final Logger logger = Logger.getLogger(ResumableUploadService.class.getName());
+
+    /** S3 分片上传的分片数上限。 */
+    static final int MAX_PARTS = 10000;
+    private static final String SESSION_DIR = ".sessions";
+
+    private final TlkUploadSessionMapper sessionMapper;
+    private final TlkUploadChunkMapper chunkMapper;
+    private final CloudflareStorageService storageService;
+    private final FileStorageService localStorage;
+    private final FileService fileService;
+    private final long maxFileSize;
+    private final long expiryMillis;
+    private final ScheduledExecutorService cleaner;
+
+    public ResumableUploadService(TlkUploadSessionMapper sessionMapper, TlkUploadChunkMapper chunkMapper,
+            CloudflareStorageService storageService, FileStorageService localStorage, FileService fileService,
+            @Value("${file.resumable.max-file-size:1073741824}") long maxFileSize,
+            @Value("${file.resumable.expiry-hours:24}") long expiryHours) {
+        this.sessionMapper = sessionMapper;
+        this.chunkMapper = chunkMapper;
+        this.storageService = storageService;
+        this.localStorage = localStorage;
+        this.fileService = fileService;
+        this.maxFileSize = maxFileSize;
+        this.expiryMillis = TimeUnit.HOURS.toMillis(Math.max(1, expiryHours));
+        this.cleaner = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "upload-session-cleaner");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * 创建上传会话。分片大小取存储的分片大小，R2 模式下同时创建分片上传。
+     */
+    public TlkUploadSession create(String originalName, long size, String userId, String categoryId) throws IOException {
+        if (originalName == null || originalName.isBlank()) {
+            throw new IllegalArgumentException("File name cannot be empty");
+        }
+        if (size <= 0 || size > maxFileSize) {
+            throw new IllegalArgumentException("File size must be between 1 and " + maxFileSize + " bytes");
+        }
+        int chunkSize = storageService.getPartSize();
+        long chunkCount = (size + chunkSize - 1) / chunkSize;
+        if (chunkCount > MAX_PARTS) {
+            throw new IllegalArgumentException("File is too large for resumable upload");
+        }
+
+        String safeName = FileService.sanitizeName(originalName);
+        String uid = fileService.allocateUid();
+        String objectKey = FileService.objectKeyFor(uid, FileService.extractExt(safeName));
+
+        TlkUploadSession session = new TlkUploadSession();
+        session.setId(UUID.randomUUID().toString());
+        session.setUserId(userId);
+        session.setName(safeName);
+        session.setUid(uid);
+        session.setPath(objectKey);
+        session.setSize(size);
+        session.setChunkSize(chunkSize);
+        session.setChunkCount((int) chunkCount);
+        session.setCategoryId(categoryId);
+        session.setStatus(TlkUploadSession.STATUS_OPEN);
+        session.setCreateTime(new Date());
+
+        if (storageService.isR2Enabled()) {
+            session.setUploadId(storageService.createMultipartUpload(objectKey, contentTypeOf(safeName)));
+        } else {
+            Path part = partPath(session.getId());
+            Files.createDirectories(part.getParent());
+            try (RandomAccessFile raf = new RandomAccessFile(part.toFile(), "rw")) {
+                raf.setLength(size);
+            }
+        }
+        sessionMapper.insert(session);
+        return session;
+    }
+
+    /** 查找会话；不存在或不属于该用户时返回 null。 */
+    public TlkUploadSession find(String sessionId, String userId) {
+        TlkUploadSession session = sessionMapper.selectById(sessionId);
+        if (session == null || (session.getUserId() != null && !session.getUserId().equals(userId))) {
+            return null;
+        }
+        return session;
+    }
+
+    /** 已接收的分片序号（升序）。 */
+    public List<Integer> receivedChunks(TlkUploadSession session) {
+        List<Integer> received = new ArrayList<>();
+        for (TlkUploadChunk chunk : listChunks(session)) {
+            received.add(chunk.getChunkIndex());
+        }
+        received.sort(null);
+        return received;
+    }
+
+    /** 尚未接收的分片序号（升序）。 */
+    public List<Integer> missingChunks(TlkUploadSession session) {
+        boolean[] seen = new boolean[session.getChunkCount()];
+        for (Integer i : receivedChunks(session)) {
+            if (i >= 0 && i < seen.length) seen[i] = true;
+        }
+        List<Integer> missing = new ArrayList<>();
+        for (int i = 0; i < seen.length; i++) {
+            if (!seen[i]) missing.add(i);
+        }
+        return missing;
+    }
+
+    /**
+     * 接收一个分片。同一分片可重复上传（覆盖）；不同分片可并行上传。
+     *
+     * @param index  分片序号，从 0 开始
+     * @param length 请求体长度，必须与该分片的预期长度一致
+     * @throws IllegalStateException 会话已在完成或清理中
+     */
+    public void putChunk(TlkUploadSession session, int index, InputStream in, long length) throws IOException {
+        if (!isOpen(session)) {
+            throw new IllegalStateException("Upload session is no longer accepting chunks");
+        }
+        if (index < 0 || index >= session.getChunkCount()) {
+            throw new IllegalArgumentException("Chunk index out of range: " + index);
+        }
+        long offset = (long) index * session.getChunkSize();
+        long expected = Math.min(session.getChunkSize(), session.getSize() - offset);
+        if (length != expected) {
+            throw new IllegalArgumentException("Chunk " + index + " must be exactly " + expected + " bytes");
+        }
+
+        String eTag = null;
+        if (session.getUploadId() != null) {
+            eTag = storageService.uploadPart(session.getPath(), session.getUploadId(), index + 1, in, length);
+        } else {
+            writeAt(partPath(session.getId()), offset, in, length);
+        }
+
+        TlkUploadChunk chunk = new TlkUploadChunk();
+        chunk.setId(session.getId() + ":" + index);
+        chunk.setSessionId(session.getId());
+        chunk.setChunkIndex(index);
+        chunk.setSize(length);
+        chunk.setEtag(eTag);
+        chunk.setCreateTime(new Date());
+        try {
+            chunkMapper.insert(chunk);
+        } catch (DuplicateKeyException e) {
+            chunkMapper.updateById(chunk);
+        }
+    }
+
+    /**
+     * 所有分片到齐后合并内容，并通过 {@link FileService} 创建文件记录。
+     * 合并前以条件更新认领会话；合并后先把会话标记为已合并，再读回一次对象以计算哈希（ETag、去重依赖它）并登记。
+     * 登记失败时会话停在"已合并待登记"，重试只做哈希和登记，不再合并分片。
+     *
+     * @throws IllegalStateException 仍有缺失分片，或会话已被另一个请求完成或正在清理时
+     */
+    public TlkFile complete(TlkUploadSession session, HttpServletRequest request) throws IOException {
+        if (isStored(session)) {
+            if (!claim(session, TlkUploadSession.STATUS_STORED, TlkUploadSession.STATUS_REGISTERING)) {
+                throw new IllegalStateException("Upload session is already being completed");
+            }
+        } else {
+            List<TlkUploadChunk> chunks = listChunks(session);
+            if (chunks.size() != session.getChunkCount()) {
+                throw new IllegalStateException("Missing chunks: " + missingChunks(session));
+            }
+            if (!claim(session, TlkUploadSession.STATUS_OPEN, TlkUploadSession.STATUS_COMPLETING)) {
+                throw new IllegalStateException("Upload session is already being completed");
+            }
+            String cloudUrl;
+            try {
+                cloudUrl = assemble(session, chunks);
+            } catch (IOException | RuntimeException e) {
+                // 目标对象尚未生成，释放认领，客户端可以重试完成
+                claim(session, TlkUploadSession.STATUS_COMPLETING, TlkUploadSession.STATUS_OPEN);
+                throw e;
+            }
+            markStored(session, cloudUrl);
+        }
+
+        TlkFile file;
+        try {
+            file = register(session, request);
+        } catch (IOException | RuntimeException e) {
+            claim(session, TlkUploadSession.STATUS_REGISTERING, TlkUploadSession.STATUS_STORED);
+            throw e;
+        }
+        deleteSession(session);
+        return file;
+    }
+
+    /** 合并分片生成目标对象：R2 完成分片上传，本地把分片文件移动到存储目录。返回公开访问地址。 */
+    private String assemble(TlkUploadSession session, List<TlkUploadChunk> chunks) throws IOException {
+        if (session.getUploadId() != null) {
+            Map<Integer, String> eTags = new HashMap<>();
+            for (TlkUploadChunk chunk : chunks) {
+                eTags.put(chunk.getChunkIndex() + 1, chunk.getEtag());
+            }
+            return storageService.completeMultipartUpload(session.getPath(), session.getUploadId(), eTags);
+        }
+        Files.move(partPath(session.getId()), targetPath(session), StandardCopyOption.REPLACE_EXISTING);
+        return storageService.getPublicUrl(session.getPath());
+    }
+
+    /** 合并完成后记下访问地址并转入登记阶段；之后的失败、重试和清理都以目标对象已存在处理。 */
+    private void markStored(TlkUploadSession session, String cloudUrl) {
+        Date now = new Date();
+        boolean marked = sessionMapper.update(null, new UpdateWrapper<TlkUploadSession>()
+                .set("status", TlkUploadSession.STATUS_REGISTERING)
+                .set("cloud_url", cloudUrl)
+                .set("update_time", now)
+                .eq("id", session.getId())
+                .eq("status", TlkUploadSession.STATUS_COMPLETING)) > 0;
+        if (!marked) {
+            throw new IllegalStateException("Upload session was purged while being completed");
+        }
+        session.setStatus(TlkUploadSession.STATUS_REGISTERING);
+        session.setCloudUrl(cloudUrl);
+        session.setUpdateTime(now);
+    }
+
+    private TlkFile register(TlkUploadSession session, HttpServletRequest request) throws IOException {
+        // 分片乱序到达，无法增量计算整体哈希；内容合并后顺序读一遍
+        String hash;
+        String sha256;
+        try (HashingInputStream in = new HashingInputStream(session.getUploadId() != null
+                ? storageService.getInputStream(session.getPath())
+                : Files.newInputStream(targetPath(session)), fileService.needsSha256())) {
+            in.transferTo(java.io.OutputStream.nullOutputStream());
+            hash = in.md5Hex();
+            sha256 = in.sha256Hex();
+        }
+        return fileService.registerUpload(session.getName(), session.getUid(), session.getSize(),
+                session.getPath(), session.getCloudUrl(), hash, sha256, session.getUserId(), session.getCategoryId(),
+                request);
+    }
+
+    /**
+     * 放弃上传：中止 R2 分片上传或删除本地分片文件，已合并的删除目标对象，并删除会话记录。
+     *
+     * @throws IllegalStateException 会话正在完成或已在清理中
+     */
+    public void abort(TlkUploadSession session) {
+        int from = isStored(session) ? TlkUploadSession.STATUS_STORED : TlkUploadSession.STATUS_OPEN;
+        if (!claim(session, from, TlkUploadSession.STATUS_ABORTING)) {
+            throw new IllegalStateException("Upload session is already being completed");
+        }
+        discard(session);
+    }
+
+    private void discard(TlkUploadSession session) {
+        if (session.getCloudUrl() != null) {
+            // 登记成功但删除会话失败时文件记录已引用该对象，不能删
+            if (fileService.findByUid(session.getUid()) == null) {
+                try {
+                    storageService.delete(session.getPath());
+                } catch (IOException | RuntimeException e) {
+                    logger.warning("Failed to delete assembled object " + session.getPath() + ": " + e.getMessage());
+                }
+            }
+        } else if (session.getUploadId() != null) {
+            storageService.abortMultipartUpload(session.getPath(), session.getUploadId());
+        } else {
+            try {
+                Files.deleteIfExists(partPath(session.getId()));
+            } catch (IOException e) {
+                logger.warning("Failed to delete part file for session " + session.getId() + ": " + e.getMessage());
+            }
+        }
+        deleteSession(session);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void startCleaner() {
+        cleaner.scheduleWithFixedDelay(this::purgeExpired, 1, 1, TimeUnit.HOURS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        cleaner.shutdownNow();
+    }
+
+    /**
+     * 清理超过有效期仍未完成的会话，已合并未登记的连同目标对象一起删除。正在合并或登记的会话
+     * 只有在认领后超过有效期未更新（完成它的节点已退出）时才会被清理。
+     */
+    void purgeExpired() {
+        try {
+            Date cutoff = new Date(System.currentTimeMillis() - expiryMillis);
+            List<TlkUploadSession> expired = sessionMapper.selectList(new QueryWrapper<TlkUploadSession>()
+                    .lt("create_time", cutoff));
+            int purged = 0;
+            for (TlkUploadSession session : expired) {
+                int status = session.getStatus() != null ? session.getStatus() : TlkUploadSession.STATUS_OPEN;
+                boolean inProgress = status == TlkUploadSession.STATUS_COMPLETING
+                        || status == TlkUploadSession.STATUS_REGISTERING;
+                if (inProgress && session.getUpdateTime() != null && session.getUpdateTime().after(cutoff)) {
+                    continue;
+                }
+                if (claim(session, status, TlkUploadSession.STATUS_ABORTING)) {
+                    discard(session);
+                    purged++;
+                }
+            }
+            if (purged > 0) {
+                logger.info("Purged " + purged + " expired upload session(s)");
+            }
+        } catch (RuntimeException e) {
+            logger.warning("Upload session cleanup failed: " + e.getMessage());
+        }
+    }
+
+    private static boolean isOpen(TlkUploadSession session) {
+        return session.getStatus() == null || session.getStatus() == TlkUploadSession.STATUS_OPEN;
+    }
+
+    private static boolean isStored(TlkUploadSession session) {
+        return session.getStatus() != null && session.getStatus() == TlkUploadSession.STATUS_STORED;
+    }
+
+    /** 条件更新会话状态：只有当前状态仍为 {@code from} 时才成功，用于在多个请求或节点之间认领会话。 */
+    private boolean claim(TlkUploadSession session, int from, int to) {
+        Date now = new Date();
+        boolean claimed = sessionMapper.update(null, new UpdateWrapper<TlkUploadSession>()
+                .set("status", to)
+                .set("update_time", now)
+                .eq("id", session.getId())
+                .eq("status", from)) > 0;
+        if (claimed) {
+            session.setStatus(to);
+            session.setUpdateTime(now);
+        }
+        return claimed;
+    }
+
+    private List<TlkUploadChunk> listChunks(TlkUploadSession session) {
+        return chunkMapper.selectList(new QueryWrapper<TlkUploadChunk>().eq("session_id", session.getId()));
+    }
+
+    private void deleteSession(TlkUploadSession session) {
+        chunkMapper.delete(new QueryWrapper<TlkUploadChunk>().eq("session_id", session.getId()));
+        sessionMapper.deleteById(session.getId());
+    }
+
+    private Path partPath(String sessionId) {
+        return localStorage.getFilePath(SESSION_DIR + "/" + sessionId + ".part");
+    }
+
+    private Path targetPath(TlkUploadSession session) {
+        return localStorage.getFilePath(CloudflareStorageService.localName(session.getPath()));
+    }
+
+    /** 以位置写入的方式把分片写入预分配文件，多个分片可同时写入同一文件的不同区域。 */
+    private static void writeAt(Path file, long offset, InputStream in, long length) throws IOException {
+        byte[] buf = new byte[64 * 1024];
+        ByteBuffer bb = ByteBuffer.wrap(buf);
+        long written = 0;
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            while (written < length) {
+                int n = in.read(buf, 0, (int) Math.min(buf.length, length - written));
+                if (n < 0) {
+                    throw new IOException("Chunk body truncated: expected " + length + " bytes, got " + written);
+                }
+                bb.clear().limit(n);
+                while (bb.hasRemaining()) {
+                    written += ch.write(bb, offset + written);
+                }
+            }
+        }
+    }
+
+    private static String contentTypeOf(String name) {
+        return MediaTypeFactory.getMediaType(name)
+                .map(MediaType::toString)
+                .orElse("application/octet-stream");
+    }
+}
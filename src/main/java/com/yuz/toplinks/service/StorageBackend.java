@@ -0,0 +1,36 @@
+package com.yuz.toplinks.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * 对象存储后端：按对象键读写不可变对象。
+ *
+ * <p>实现有 S3 兼容存储（{@link CloudflareStorageService}，R2 未配置时降级为本地目录）
+ * 和本地磁盘（{@link LocalStorageBackend}）。分层存储（{@link TieredStorageService}）
+ * 在两者之上决定对象放在哪一层。</p>
+ */
+public interface StorageBackend {
+
+    /** 后端名称，用于日志和统计，例如 "r2"、"local"。 */
+    String name();
+
+    /**
+     * 写入对象并返回访问 URL。同一键已存在时覆盖。
+     *
+     * @param size 字节数
+     */
+    String upload(String objectKey, InputStream inputStream, long size, String contentType) throws IOException;
+
+    /** 读取整个对象；调用方负责关闭流。 */
+    InputStream getInputStream(String objectKey) throws IOException;
+
+    /** 读取对象中 {@code [start, end]} 字节区间（均含）；调用方负责关闭流。 */
+    InputStream getInputStream(String objectKey, long start, long end) throws IOException;
+
+    /** 对象是否存在。 */
+    boolean exists(String objectKey) throws IOException;
+
+    /** 删除对象；对象不存在时静默成功。 */
+    void delete(String objectKey) throws IOException;
+}
@@ -0,0 +1,16 @@
+package com.yuz.toplinks.service;
+
+import java.io.IOException;
+
+/**
+ * 异步上传的文件尚未推送到存储，而本节点上没有它的暂存文件（暂存在上传时所在的节点上）。
+ * 推送完成后即可读取，调用方可以提示客户端稍后重试。
+ */
+public class StoragePendingException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    public StoragePendingException(String uid) {
+        super("File " + uid + " is still being stored, try again shortly");
+    }
+}
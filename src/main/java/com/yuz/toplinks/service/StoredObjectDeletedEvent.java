@@ -0,0 +1,9 @@
+package com.yuz.toplinks.service;
+
+/**
+ * 存储对象已删除时发布的事件，供派生内容（按需缩放的图片等）的维护方清理对应的派生对象。
+ *
+ * @param objectKey 被删除对象的对象键
+ */
+public record StoredObjectDeletedEvent(String objectKey) {
+}
@@ -0,0 +1,170 @@
+package com.yuz.toplinks.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.stereotype.Service;
+
+import com.yuz.toplinks.entity.TlkFile;
+
+/**
+ * 文本文件预览：只读取文件开头（日志文件读取结尾）的一段字节，识别字符集后在整行处截断。
+ * 结果按 UID 缓存，文件内容不变，只在删除时失效。
+ *
+ * <p>字符集依次判断：BOM、严格的 UTF-8 解码，失败时按 {@code fallback-charsets} 逐个尝试
+ * （默认 GB18030，最后是永远成功的 windows-1252）。</p>
+ */
+@Service
+public class TextPreviewService {
+
+    /** 从结尾预览的扩展名：日志的新内容在末尾。 */
+    private static final String TAIL_EXT = "log";
+
+    private final FileService fileService;
+    private final int maxBytes;
+    private final List<Charset> fallbackCharsets;
+
+    /**
+     * 预览内容。
+     *
+     * @param truncated 文件比预览长（开头预览时后面还有内容，结尾预览时前面还有内容）
+     * @param tail      是否为结尾预览
+     */
+    public record TextPreview(String text, String charset, boolean truncated, boolean tail) {
+    }
+
+    public TextPreviewService(FileService fileService,
+            @Value("${file.text-preview.bytes:65536}") int maxBytes,
+            @Value("${file.text-preview.fallback-charsets:GB18030}") String fallbackCharsets) {
+        this.fileService = fileService;
+        this.maxBytes = Math.max(1024, maxBytes);
+        List<Charset> charsets = new ArrayList<>();
+        for (String name : fallbackCharsets.split(",")) {
+            if (!name.isBlank() && Charset.isSupported(name.trim())) {
+                charsets.add(Charset.forName(name.trim()));
+            }
+        }
+        charsets.add(Charset.forName("windows-1252"));
+        this.fallbackCharsets = List.copyOf(charsets);
+    }
+
+    public boolean supports(TlkFile file) {
+        return "text".equals(file.getFileType()) && file.getPath() != null && file.getSize() != null;
+    }
+
+    /**
+     * 读取预览；不是文本文件时返回 null（不缓存）。
+     */
+    @Cacheable(value = "textPreview", key = "#file.uid", unless = "#result == null")
+    public TextPreview preview(TlkFile file) throws IOException {
+        if (!supports(file)) return null;
+        long size = file.getSize();
+        boolean tail = TAIL_EXT.equalsIgnoreCase(file.getExt());
+        boolean truncated = size > maxBytes;
+        if (size == 0) {
+            return new TextPreview("", StandardCharsets.UTF_8.name(), false, tail);
+        }
+        long start = truncated && tail ? size - maxBytes : 0;
+        long end = truncated && !tail ? maxBytes - 1 : size - 1;
+        byte[] bytes;
+        try (InputStream in = fileService.openRange(file, start, end)) {
+            bytes = in.readNBytes((int) (end - start + 1));
+        }
+        return decode(bytes, truncated, tail);
+    }
+
+    /**
+     * 识别字符集并解码。截断的一端去掉不完整的行（也就去掉了被切开的多字节字符）。
+     */
+    TextPreview decode(byte[] bytes, boolean truncated, boolean tail) {
+        Charset bom = bomCharset(bytes);
+        if (bom != null && !(truncated && tail)) {
+            int skip = bom == StandardCharsets.UTF_8 ? 3 : 2;
+            String text = new String(bytes, skip, bytes.length - skip, bom);
+            return new TextPreview(truncated ? cutLines(text, false) : text, bom.name(), truncated, tail);
+        }
+        // UTF-16 以外的常见编码中换行都是单字节 0x0A，先按字节在整行处截断，再做严格解码
+        byte[] body = truncated ? cutLineBytes(bytes, tail) : bytes;
+        String text = strictDecode(truncated ? trimPartialUtf8(body, tail) : body, StandardCharsets.UTF_8);
+        if (text != null) {
+            return new TextPreview(text, StandardCharsets.UTF_8.name(), truncated, tail);
+        }
+        for (Charset charset : fallbackCharsets) {
+            text = strictDecode(body, charset);
+            if (text != null) {
+                return new TextPreview(text, charset.name(), truncated, tail);
+            }
+        }
+        return new TextPreview(new String(body, StandardCharsets.ISO_8859_1), StandardCharsets.ISO_8859_1.name(),
+                truncated, tail);
+    }
+
+    private static Charset bomCharset(byte[] b) {
+        if (b.length >= 3 && (b[0] & 0xFF) == 0xEF && (b[1] & 0xFF) == 0xBB && (b[2] & 0xFF) == 0xBF) {
+            return StandardCharsets.UTF_8;
+        }
+        if (b.length >= 2 && (b[0] & 0xFF) == 0xFF && (b[1] & 0xFF) == 0xFE) return StandardCharsets.UTF_16LE;
+        if (b.length >= 2 && (b[0] & 0xFF) == 0xFE && (b[1] & 0xFF) == 0xFF) return StandardCharsets.UTF_16BE;
+        return null;
+    }
+
+    /** 开头预览去掉最后一个换行之后的部分，结尾预览去掉第一个换行之前的部分；没有换行时保持原样。 */
+    private static byte[] cutLineBytes(byte[] bytes, boolean tail) {
+        if (tail) {
+            for (int i = 0; i < bytes.length; i++) {
+                if (bytes[i] == '\n') return Arrays.copyOfRange(bytes, i + 1, bytes.length);
+            }
+        } else {
+            for (int i = bytes.length - 1; i >= 0; i--) {
+                if (bytes[i] == '\n') return Arrays.copyOf(bytes, i + 1);
+            }
+        }
+        return bytes;
+    }
+
+    /** 没有换行可截断时，去掉截断端被切开的 UTF-8 多字节字符。 */
+    private static byte[] trimPartialUtf8(byte[] bytes, boolean tail) {
+        if (tail) {
+            int skip = 0;
+            while (skip < Math.min(3, bytes.length) && (bytes[skip] & 0xC0) == 0x80) {
+                skip++;
+            }
+            return skip == 0 ? bytes : Arrays.copyOfRange(bytes, skip, bytes.length);
+        }
+        for (int back = 1; back <= Math.min(3, bytes.length); back++) {
+            int b = bytes[bytes.length - back] & 0xFF;
+            if ((b & 0xC0) == 0x80) continue;
+            int needed = b >= 0xF0 ? 4 : b >= 0xE0 ? 3 : b >= 0xC0 ? 2 : 1;
+            return needed > back ? Arrays.copyOf(bytes, bytes.length - back) : bytes;
+        }
+        return bytes;
+    }
+
+    private static String cutLines(String text, boolean tail) {
+        int at = tail ? text.indexOf('\n') : text.lastIndexOf('\n');
+        if (at < 0) return text;
+        return tail ? text.substring(at + 1) : text.substring(0, at + 1);
+    }
+
+    private static String strictDecode(byte[] bytes, Charset charset) {
+        try {
+            return charset.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPORT)
+                    .onUnmappableCharacter(CodingErrorAction.REPORT)
+                    .decode(ByteBuffer.wrap(bytes))
+                    .toString();
+        } catch (CharacterCodingException e) {
+            return null;
+        }
+    }
+}
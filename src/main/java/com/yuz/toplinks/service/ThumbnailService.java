@@ -0,0 +1,228 @@
+package com.yuz.toplinks.service;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+import javax.imageio.IIOException;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.yuz.toplinks.entity.BaseEntity;
+import com.yuz.toplinks.entity.TlkFile;
+import com.yuz.toplinks.mapper.TlkFileMapper;
+
+import jakarta.annotation.PreDestroy;
+
+/**
+ * 图片缩略图：上传完成后在有界线程池中异步生成固定尺寸的 JPEG 缩略图，
+ * 以派生键（原对象键去掉扩展名后加 {@code .thumb.jpg}）存放在原文件旁边，地址记录在 {@code TLK_FILE.thumb_url}。
+ *
+ * <p>队列已满时直接放弃，由回填任务补上。回填任务按 ID 顺序扫描尚未生成缩略图的图片记录，
+ * 以限定的并发和速率生成。无法解码的图片记录为 {@link TlkFile#THUMB_NONE}，不再重试，首页继续显示原图。</p>
+ */
+@Service
+public class ThumbnailService {
+
+    private static final Logger logger = Logger.getLogger(ThumbnailService.class.getName());
+
+    static final String THUMB_SUFFIX = ".thumb.jpg";
+
+    private final TlkFileMapper fileMapper;
+    private final CloudflareStorageService storageService;
+    private final FileService fileService;
+    private final CacheManager cacheManager;
+    private final boolean enabled;
+    private final int size;
+    private final float quality;
+    private final long maxSourceBytes;
+    private final boolean backfillEnabled;
+    private final int backfillConcurrency;
+    private final double backfillPerSecond;
+    private final int backfillBatchSize;
+    private final ThreadPoolExecutor workers;
+
+    private final AtomicLong generated = new AtomicLong();
+    private final AtomicLong skipped = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    public ThumbnailService(TlkFileMapper fileMapper, CloudflareStorageService storageService,
+            FileService fileService, CacheManager cacheManager,
+            @Value("${file.thumbnail.enabled:false}") boolean enabled,
+            @Value("${file.thumbnail.size:400}") int size,
+            @Value("${file.thumbnail.quality:0.85}") float quality,
+            @Value("${file.thumbnail.max-source-bytes:52428800}") long maxSourceBytes,
+            @Value("${file.thumbnail.workers:2}") int workerCount,
+            @Value("${file.thumbnail.queue-capacity:100}") int queueCapacity,
+            @Value("${file.thumbnail.backfill.enabled:false}") boolean backfillEnabled,
+            @Value("${file.thumbnail.backfill.concurrency:2}") int backfillConcurrency,
+            @Value("${file.thumbnail.backfill.per-second:5}") double backfillPerSecond,
+            @Value("${file.thumbnail.backfill.batch-size:100}") int backfillBatchSize) {
+        this.fileMapper = fileMapper;
+        this.storageService = storageService;
+        this.fileService = fileService;
+        this.cacheManager = cacheManager;
+        this.enabled = enabled;
+        this.size = Math.max(16, size);
+        this.quality = Math.min(1f, Math.max(0.1f, quality));
+        this.maxSourceBytes = maxSourceBytes;
+        this.backfillEnabled = backfillEnabled;
+        this.backfillConcurrency = Math.max(1, backfillConcurrency);
+        this.backfillPerSecond = backfillPerSecond;
+        this.backfillBatchSize = Math.max(1, backfillBatchSize);
+        if (enabled) {
+            this.workers = Derivatives.workerPool("thumbnail-", workerCount, queueCapacity, Thread.NORM_PRIORITY);
+        } else {
+            this.workers = null;
+        }
+    }
+
+    /** 缩略图的派生对象键：files/abc.png → files/abc.thumb.jpg。 */
+    public static String thumbKey(String objectKey) {
+        return Derivatives.key(objectKey, THUMB_SUFFIX);
+    }
+
+    /** 新文件保存后提交缩略图任务；队列已满时留给回填任务。 */
+    @EventListener
+    public void onFileStored(FileStoredEvent event) {
+        TlkFile file = event.file();
+        if (!enabled || !"image".equals(file.getFileType()) || file.getThumbUrl() != null) return;
+        try {
+            workers.execute(() -> generate(file));
+        } catch (RejectedExecutionException e) {
+            logger.fine("Thumbnail queue full; " + file.getUid() + " left for backfill");
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void startBackfill() {
+        if (!enabled || !backfillEnabled) return;
+        Thread t = new Thread(this::backfill, "thumbnail-backfill");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (workers != null) workers.shutdownNow();
+    }
+
+    /**
+     * 生成一个文件的缩略图并记录到所有引用同一存储对象的记录上。
+     * 同一对象已有缩略图（内容寻址共享对象）时直接复用。
+     */
+    void generate(TlkFile file) {
+        String objectKey = file.getPath();
+        if (objectKey == null) return;
+        try {
+            if (Derivatives.reuseExisting(fileMapper, cacheManager, objectKey, "thumb_url", TlkFile::getThumbUrl)) {
+                return;
+            }
+            if (!ImageScaler.canRead(file.getExt()) || file.getSize() == null || file.getSize() > maxSourceBytes) {
+                skipped.incrementAndGet();
+                record(objectKey, TlkFile.THUMB_NONE);
+                return;
+            }
+            BufferedImage image;
+            try (InputStream in = fileService.openStream(file)) {
+                image = ImageScaler.decode(in, size, size);
+            }
+            if (image == null) {
+                skipped.incrementAndGet();
+                record(objectKey, TlkFile.THUMB_NONE);
+                return;
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ImageScaler.writeJpeg(ImageScaler.fit(image, size, size), quality, out);
+            String url = storageService.upload(thumbKey(objectKey), new ByteArrayInputStream(out.toByteArray()),
+                    out.size(), "image/jpeg");
+            record(objectKey, url);
+            generated.incrementAndGet();
+        } catch (IOException | RuntimeException e) {
+            failed.incrementAndGet();
+            logger.warning("Thumbnail generation failed for " + file.getUid() + ": " + e.getMessage());
+            // 解码失败（损坏或超大图片）不再重试；存储或数据库的临时错误留给下次回填
+            if (e instanceof IIOException || e instanceof ImageScaler.ImageTooLargeException) {
+                record(objectKey, TlkFile.THUMB_NONE);
+            }
+        }
+    }
+
+    /**
+     * 回填：按 ID 顺序分批扫描尚未处理的图片记录，以 {@code backfill.concurrency} 的并发、
+     * 每秒不超过 {@code backfill.per-second} 个的速率生成。
+     */
+    void backfill() {
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(backfillConcurrency, backfillConcurrency, 0,
+                TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(),
+                Derivatives.daemonThreads("thumbnail-backfill-", Thread.NORM_PRIORITY));
+        Semaphore permits = new Semaphore(backfillConcurrency);
+        long intervalNanos = backfillPerSecond > 0 ? (long) (1_000_000_000L / backfillPerSecond) : 0;
+        long next = System.nanoTime();
+        String lastId = "";
+        int total = 0;
+        try {
+            while (true) {
+                List<TlkFile> batch = fileMapper.selectList(new QueryWrapper<TlkFile>()
+                        .isNull("thumb_url")
+                        .in("ext", TlkFile.IMAGE_EXTS)
+                        .eq("status", BaseEntity.STATUS_ACTIVE)
+                        .gt("id", lastId)
+                        .orderByAsc("id")
+                        .last("LIMIT " + backfillBatchSize));
+                if (batch.isEmpty()) break;
+                for (TlkFile file : batch) {
+                    long wait = next - System.nanoTime();
+                    if (wait > 0) TimeUnit.NANOSECONDS.sleep(wait);
+                    next = Math.max(next, System.nanoTime()) + intervalNanos;
+                    permits.acquire();
+                    pool.execute(() -> {
+                        try {
+                            generate(file);
+                        } finally {
+                            permits.release();
+                        }
+                    });
+                    total++;
+                }
+                lastId = batch.get(batch.size() - 1).getId();
+            }
+            permits.acquire(backfillConcurrency);
+            logger.info("Thumbnail backfill finished: " + total + " file(s) processed");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            logger.warning("Thumbnail backfill stopped after " + total + " file(s): " + e.getMessage());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /** 缩略图统计。 */
+    public record Stats(boolean enabled, long generated, long skipped, long failed, int queued) {
+    }
+
+    public Stats getStats() {
+        return new Stats(enabled, generated.get(), skipped.get(), failed.get(),
+                workers != null ? workers.getQueue().size() : 0);
+    }
+
+    private void record(String objectKey, String thumbUrl) {
+        Derivatives.updateByPath(fileMapper, cacheManager, objectKey, "thumb_url", thumbUrl);
+    }
+}
@@ -0,0 +1,422 @@
+package com.yuz.toplinks.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.io.InputStreamSource;
+import org.springframework.stereotype.Service;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.yuz.toplinks.entity.BaseEntity;
+import com.yuz.toplinks.entity.TlkFile;
+import com.yuz.toplinks.mapper.TlkFileMapper;
+
+import jakarta.annotation.PreDestroy;
+
+/**
+ * 冷热分层存储：R2 始终保存完整副本（冷层），最近上传或被频繁访问的对象在本地 SSD 另存一份（热层）。
+ *
+ * <p>读取时优先使用热层，不在热层时由调用方读取冷层。每次读取都会记录访问；后台迁移任务按固定间隔运行：
+ * 一个间隔内访问次数达到阈值的冷对象被复制到热层，长时间未被访问的热对象被移出热层，
+ * 热层超过容量上限时按最久未访问的顺序移出。对象当前所在层级记录在 {@code TLK_FILE.storage_tier}。</p>
+ *
+ * <p>热层是节点本地目录：启动时按数据库中的层级记录重建索引，文件已丢失的记录改回冷层，
+ * 不在记录中的文件被清理。多个节点共享数据库时应只在一个节点开启，或让各节点挂载同一热层目录。</p>
+ */
+@Service
+public class TieredStorageService {
+
+    private static final Logger logger = Logger.getLogger(TieredStorageService.class.getName());
+
+    /** 访问统计最多跟踪的对象数，超出后不再记录新对象（已跟踪的继续计数）。 */
+    static final int MAX_TRACKED = 100_000;
+
+    /** 热层用量超过上限的该比例时开始移出，直到降到 {@link #LOW_WATERMARK}。 */
+    private static final double HIGH_WATERMARK = 0.9;
+    private static final double LOW_WATERMARK = 0.8;
+
+    /** 对象访问记录：hits 为本迁移周期内的访问次数。 */
+    private static final class Access {
+        final AtomicInteger hits = new AtomicInteger();
+        volatile long lastAccess;
+    }
+
+    /** 分层统计。 */
+    public record Stats(boolean enabled, int hotObjects, long hotBytes, long maxHotBytes, long hotReads,
+            long coldReads, long promotions, long demotions) {
+    }
+
+    private final TlkFileMapper fileMapper;
+    private final CloudflareStorageService coldStorage;
+    private final CacheManager cacheManager;
+    private final LocalStorageBackend hotStorage;
+    private final boolean enabled;
+    private final long maxHotBytes;
+    private final long maxObjectBytes;
+    private final boolean admitUploads;
+    private final int promoteHits;
+    private final long idleMillis;
+    private final long intervalMillis;
+    private final LongSupplier clock;
+    private final ScheduledExecutorService scheduler;
+
+    /** 热层中的对象：对象键 → 字节数。 */
+    private final Map<String, Long> hotObjects = new ConcurrentHashMap<>();
+    private final AtomicLong hotBytes = new AtomicLong();
+    private final Map<String, Access> accesses = new ConcurrentHashMap<>();
+
+    private final AtomicLong hotReads = new AtomicLong();
+    private final AtomicLong coldReads = new AtomicLong();
+    private final AtomicLong promotions = new AtomicLong();
+    private final AtomicLong demotions = new AtomicLong();
+
+    @Autowired
+    public TieredStorageService(TlkFileMapper fileMapper, CloudflareStorageService coldStorage,
+            CacheManager cacheManager,
+            @Value("${file.tier.enabled:false}") boolean tierEnabled,
+            @Value("${file.tier.hot-dir:tier/hot}") String hotDir,
+            @Value("${file.tier.hot-max-bytes:10737418240}") long maxHotBytes,
+            @Value("${file.tier.max-object-bytes:1073741824}") long maxObjectBytes,
+            @Value("${file.tier.admit-uploads:true}") boolean admitUploads,
+            @Value("${file.tier.promote-hits:3}") int promoteHits,
+            @Value("${file.tier.idle-hours:72}") long idleHours,
+            @Value("${file.tier.migrate-interval-millis:300000}") long intervalMillis) throws IOException {
+        this(fileMapper, coldStorage, cacheManager, tierEnabled, Paths.get(hotDir), maxHotBytes, maxObjectBytes,
+                admitUploads, promoteHits, TimeUnit.HOURS.toMillis(idleHours), intervalMillis,
+                System::currentTimeMillis);
+    }
+
+    TieredStorageService(TlkFileMapper fileMapper, CloudflareStorageService coldStorage, CacheManager cacheManager,
+            boolean tierEnabled, Path hotDir, long maxHotBytes, long maxObjectBytes, boolean admitUploads,
+            int promoteHits, long idleMillis, long intervalMillis, LongSupplier clock) throws IOException {
+        this.fileMapper = fileMapper;
+        this.coldStorage = coldStorage;
+        this.cacheManager = cacheManager;
+        // 本地存储模式下所有对象本来就在本地磁盘，不需要分层
+        this.enabled = tierEnabled && coldStorage.isR2Enabled() && maxHotBytes > 0;
+        this.maxHotBytes = maxHotBytes;
+        this.maxObjectBytes = Math.min(maxObjectBytes, maxHotBytes);
+        this.admitUploads = admitUploads;
+        this.promoteHits = Math.max(1, promoteHits);
+        this.idleMillis = idleMillis;
+        this.intervalMillis = intervalMillis;
+        this.clock = clock;
+        if (enabled) {
+            this.hotStorage = new LocalStorageBackend("hot", hotDir, "/files/");
+            this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "storage-tier-migrator");
+                t.setDaemon(true);
+                return t;
+            });
+        } else {
+            this.hotStorage = null;
+            this.scheduler = null;
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 记录一次读取，并在对象位于热层时打开本地副本。
+     *
+     * @param start 起始偏移（含），为 null 时读取整个对象
+     * @param end   结束偏移（含）
+     * @return 热层流；对象不在热层（或未启用分层）时返回 null，调用方应读取冷层
+     */
+    public InputStream open(String objectKey, Long start, Long end) {
+        if (!enabled || objectKey == null) return null;
+        // 播放器会对同一文件发出大量区间请求，只有从头开始的读取计为一次访问
+        recordAccess(objectKey, start == null || start == 0);
+        if (hotObjects.containsKey(objectKey)) {
+            try {
+                InputStream in = start == null
+                        ? hotStorage.getInputStream(objectKey)
+                        : hotStorage.getInputStream(objectKey, start, end);
+                hotReads.incrementAndGet();
+                return in;
+            } catch (IOException | SecurityException e) {
+                // 文件在查找后被移出热层或被外部删除
+                logger.fine("Hot copy of " + objectKey + " unavailable: " + e.getMessage());
+            }
+        }
+        coldReads.incrementAndGet();
+        return null;
+    }
+
+    /** 对象是否在热层（可以从本节点磁盘读取）。 */
+    public boolean isHot(String objectKey) {
+        return enabled && objectKey != null && hotObjects.containsKey(objectKey);
+    }
+
+    /**
+     * 将刚上传到冷层的对象同时写入热层（重新读取上传内容）。
+     *
+     * @return 写入热层后返回 true，调用方应将记录的层级设为热；未启用、对象过大或热层已满时返回 false
+     */
+    public boolean admitUpload(String objectKey, InputStreamSource content, long size) {
+        if (!enabled || !admitUploads || !reserve(size)) return false;
+        try (InputStream in = content.getInputStream()) {
+            hotStorage.upload(objectKey, in, size, null);
+        } catch (IOException | RuntimeException e) {
+            hotBytes.addAndGet(-size);
+            logger.warning("Failed to admit " + objectKey + " to hot tier: " + e.getMessage());
+            return false;
+        }
+        indexHot(objectKey, size);
+        return true;
+    }
+
+    /**
+     * 将已推送到冷层的本地暂存文件直接移入热层（异步上传完成时调用，避免再复制一次）。
+     *
+     * @return 移入热层后返回 true；返回 false 时暂存文件保持原样，由调用方删除
+     */
+    public boolean adoptUpload(String objectKey, Path spool) {
+        if (!enabled || !admitUploads) return false;
+        long size;
+        try {
+            size = Files.size(spool);
+        } catch (IOException e) {
+            return false;
+        }
+        if (!reserve(size)) return false;
+        try {
+            hotStorage.adopt(objectKey, spool);
+        } catch (IOException | RuntimeException e) {
+            hotBytes.addAndGet(-size);
+            logger.warning("Failed to move spool of " + objectKey + " to hot tier: " + e.getMessage());
+            return false;
+        }
+        indexHot(objectKey, size);
+        return true;
+    }
+
+    /** 删除热层副本（对象被删除或记录插入失败时调用），不修改数据库记录。 */
+    public void discard(String objectKey) {
+        if (!enabled || objectKey == null) return;
+        accesses.remove(objectKey);
+        Long size = hotObjects.remove(objectKey);
+        if (size == null) return;
+        hotBytes.addAndGet(-size);
+        try {
+            hotStorage.delete(objectKey);
+        } catch (IOException | SecurityException e) {
+            logger.warning("Failed to delete hot copy of " + objectKey + ": " + e.getMessage());
+        }
+    }
+
+    public Stats getStats() {
+        return new Stats(enabled, hotObjects.size(), hotBytes.get(), maxHotBytes, hotReads.get(), coldReads.get(),
+                promotions.get(), demotions.get());
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled) return;
+        scheduler.execute(this::recover);
+        long interval = intervalMillis > 0 ? intervalMillis : Long.MAX_VALUE / 2;
+        scheduler.scheduleWithFixedDelay(this::migrate, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (scheduler != null) scheduler.shutdownNow();
+    }
+
+    /**
+     * 重建热层索引：数据库中标记为热但本地文件已丢失的记录改回冷层，目录中无记录对应的文件被删除。
+     */
+    void recover() {
+        try {
+            List<TlkFile> hot = fileMapper.selectList(new QueryWrapper<TlkFile>()
+                    .select("path", "size")
+                    .eq("storage_tier", TlkFile.TIER_HOT));
+            long now = clock.getAsLong();
+            Set<Path> known = new HashSet<>();
+            Set<String> lost = new HashSet<>();
+            for (TlkFile file : hot) {
+                String key = file.getPath();
+                if (key == null || hotObjects.containsKey(key)) continue;
+                Path path = hotStorage.pathOf(key);
+                if (Files.isRegularFile(path)) {
+                    long size = Files.size(path);
+                    hotBytes.addAndGet(size);
+                    indexHot(key, size);
+                    known.add(path);
+                } else {
+                    lost.add(key);
+                }
+            }
+            for (String key : lost) {
+                setTier(key, TlkFile.TIER_COLD);
+            }
+            hotObjects.keySet().forEach(key -> known.add(hotStorage.pathOf(key)));
+            int orphans = 0;
+            try (Stream<Path> files = Files.list(hotStorage.getDir())) {
+                for (Path file : (Iterable<Path>) files::iterator) {
+                    if (Files.isRegularFile(file) && !known.contains(file) && !isRecentTemp(file, now)) {
+                        Files.deleteIfExists(file);
+                        orphans++;
+                    }
+                }
+            }
+            logger.info("Recovered hot tier: " + hotObjects.size() + " object(s), " + hotBytes.get() + " bytes"
+                    + (lost.isEmpty() ? "" : ", " + lost.size() + " lost copy(ies) reset to cold")
+                    + (orphans == 0 ? "" : ", " + orphans + " orphan file(s) removed"));
+        } catch (IOException | RuntimeException e) {
+            logger.warning("Hot tier recovery failed: " + e.getMessage());
+        }
+    }
+
+    /** 正在写入的临时文件（写入完成后会被重命名）不能当作孤儿删除。 */
+    private static boolean isRecentTemp(Path file, long now) throws IOException {
+        return file.getFileName().toString().endsWith(LocalStorageBackend.TEMP_SUFFIX)
+                && now - Files.getLastModifiedTime(file).toMillis() < TimeUnit.HOURS.toMillis(1);
+    }
+
+    /**
+     * 一次迁移：移出闲置的热对象、把热层压回容量水位以下、提升本周期内的高频冷对象，最后开始新的统计周期。
+     */
+    void migrate() {
+        try {
+            long now = clock.getAsLong();
+            for (String key : new ArrayList<>(hotObjects.keySet())) {
+                if (now - lastAccess(key) > idleMillis) {
+                    demote(key);
+                }
+            }
+            if (hotBytes.get() > maxHotBytes * HIGH_WATERMARK) {
+                List<String> byAge = new ArrayList<>(hotObjects.keySet());
+                byAge.sort(Comparator.comparingLong(this::lastAccess));
+                for (String key : byAge) {
+                    if (hotBytes.get() <= maxHotBytes * LOW_WATERMARK) break;
+                    demote(key);
+                }
+            }
+
+            List<Map.Entry<String, Access>> candidates = new ArrayList<>();
+            for (Map.Entry<String, Access> e : accesses.entrySet()) {
+                if (e.getValue().hits.get() >= promoteHits && !hotObjects.containsKey(e.getKey())) {
+                    candidates.add(e);
+                }
+            }
+            candidates.sort(Comparator.comparingInt((Map.Entry<String, Access> e) -> e.getValue().hits.get()).reversed());
+            for (Map.Entry<String, Access> e : candidates) {
+                promote(e.getKey());
+            }
+
+            accesses.entrySet().removeIf(e -> !hotObjects.containsKey(e.getKey())
+                    && now - e.getValue().lastAccess > idleMillis);
+            accesses.values().forEach(a -> a.hits.set(0));
+        } catch (RuntimeException e) {
+            logger.warning("Storage tier migration failed: " + e.getMessage());
+        }
+    }
+
+    /** 从冷层复制到热层并记录层级；热层放不下时跳过。 */
+    private void promote(String key) {
+        TlkFile file = fileMapper.selectOne(new QueryWrapper<TlkFile>()
+                .select("size")
+                .eq("path", key)
+                .eq("status", BaseEntity.STATUS_ACTIVE)
+                .eq("storage_status", TlkFile.STORAGE_SYNCED)
+                .last("LIMIT 1"));
+        if (file == null || file.getSize() == null || !reserve(file.getSize())) return;
+        long size = file.getSize();
+        try (InputStream in = coldStorage.getInputStream(key)) {
+            hotStorage.upload(key, in, size, null);
+            long written = Files.size(hotStorage.pathOf(key));
+            if (written != size) {
+                hotStorage.delete(key);
+                throw new IOException("Expected " + size + " bytes but copied " + written);
+            }
+        } catch (IOException | RuntimeException e) {
+            hotBytes.addAndGet(-size);
+            logger.warning("Failed to promote " + key + " to hot tier: " + e.getMessage());
+            return;
+        }
+        indexHot(key, size);
+        setTier(key, TlkFile.TIER_HOT);
+        promotions.incrementAndGet();
+    }
+
+    /** 移出热层：先改记录再删本地副本；已打开副本的读取者不受影响。 */
+    private void demote(String key) {
+        Long size = hotObjects.remove(key);
+        if (size == null) return;
+        hotBytes.addAndGet(-size);
+        setTier(key, TlkFile.TIER_COLD);
+        try {
+            hotStorage.delete(key);
+        } catch (IOException | SecurityException e) {
+            logger.warning("Failed to delete hot copy of " + key + ": " + e.getMessage());
+        }
+        demotions.incrementAndGet();
+    }
+
+    /** 更新所有引用该对象的记录的层级，并清除这些记录的缓存。 */
+    private void setTier(String key, int tier) {
+        Derivatives.updateByPath(fileMapper, cacheManager, key, "storage_tier", tier);
+    }
+
+    private void recordAccess(String key, boolean countHit) {
+        Access access = accesses.get(key);
+        if (access == null) {
+            if (accesses.size() >= MAX_TRACKED) return;
+            access = accesses.computeIfAbsent(key, k -> new Access());
+        }
+        if (countHit) {
+            access.hits.incrementAndGet();
+        }
+        access.lastAccess = clock.getAsLong();
+    }
+
+    private long lastAccess(String key) {
+        Access access = accesses.get(key);
+        return access != null ? access.lastAccess : 0;
+    }
+
+    /** 预留热层空间；超出容量或单对象上限时返回 false。 */
+    private boolean reserve(long size) {
+        if (size < 0 || size > maxObjectBytes) return false;
+        while (true) {
+            long used = hotBytes.get();
+            if (used + size > maxHotBytes) return false;
+            if (hotBytes.compareAndSet(used, used + size)) return true;
+        }
+    }
+
+    /** 登记热对象（空间已预留）；新进入热层的对象视为刚被访问，避免下一轮立即被移出。 */
+    private void indexHot(String key, long size) {
+        Long previous = hotObjects.put(key, size);
+        if (previous != null) {
+            hotBytes.addAndGet(-previous);
+        }
+        accesses.computeIfAbsent(key, k -> new Access()).lastAccess = clock.getAsLong();
+    }
+}
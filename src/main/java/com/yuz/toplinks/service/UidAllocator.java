@@ -0,0 +1,188 @@
+package com.yuz.toplinks.service;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.logging.Logger;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.stereotype.Service;
+
+import com.baomidou.mybatisplus.core.conditions.update.UpdateWrapper;
+import com.yuz.toplinks.entity.TlkSequence;
+import com.yuz.toplinks.mapper.TlkSequenceMapper;
+
+/**
+ * 文件访问码分配器，分配时不查询数据库。
+ *
+ * <p>访问码由一个递增序号一一映射而来：各节点每次从 {@code TLK_SEQUENCE} 以条件更新预留
+ * {@code block-size} 个序号，之后在内存中逐个分配，只有用完一段时才访问数据库；不同节点预留的段互不重叠。
+ * 序号经以 {@code secret} 为密钥的 Feistel 置换打乱后编码为 base62，相邻序号得到的访问码看不出规律，
+ * 而置换是双射，不同序号的访问码一定不同。密钥必须配置且保密，未配置时启动失败。</p>
+ *
+ * <p>长度从 {@code min-length} 开始，该长度的码空间用完后自动变长。已有记录是随机生成的 6 位码，
+ * 因此默认从 7 位开始，新分配的码不可能与它们重复；没有历史数据的部署可以设为 6。</p>
+ */
+@Service
+public class UidAllocator {
+
+    private static final Logger logger = Logger.getLogger(UidAllocator.class.getName());
+
+    static final String SEQUENCE = "file_uid";
+    private static final String CHARS = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789";
+    private static final int BASE = CHARS.length();
+    /** 与 {@code TLK_FILE.uid} 的列宽一致。 */
+    static final int MAX_LENGTH = 10;
+    private static final int ROUNDS = 4;
+    private static final int MAX_RESERVE_ATTEMPTS = 20;
+
+    private final TlkSequenceMapper sequenceMapper;
+    private final int minLength;
+    private final int blockSize;
+    private final long[] keys;
+
+    private long next;
+    private long limit;
+
+    public UidAllocator(TlkSequenceMapper sequenceMapper,
+            @Value("${file.uid.min-length:7}") int minLength,
+            @Value("${file.uid.block-size:100}") int blockSize,
+            @Value("${file.uid.secret:}") String secret) {
+        if (secret == null || secret.isBlank()) {
+            // 密钥公开时，任何人都能按顺序算出所有已分配的访问码
+            throw new IllegalStateException("file.uid.secret (FILE_UID_SECRET) must be set");
+        }
+        this.sequenceMapper = sequenceMapper;
+        this.minLength = Math.min(MAX_LENGTH, Math.max(6, minLength));
+        this.blockSize = Math.max(1, blockSize);
+        this.keys = deriveKeys(secret);
+    }
+
+    /** 分配一个访问码。 */
+    public synchronized String next() {
+        if (next >= limit) {
+            reserveBlock();
+        }
+        return encode(next++);
+    }
+
+    /** 一次分配多个访问码（批量上传）。 */
+    public synchronized List<String> next(int count) {
+        List<String> uids = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            uids.add(next());
+        }
+        return uids;
+    }
+
+    /**
+     * 预留下一段序号：读取当前值后以 {@code WHERE next_value = 读到的值} 条件更新，
+     * 更新成功说明没有其他节点同时预留，该段归本节点所有；否则重新读取再试。
+     */
+    private void reserveBlock() {
+        for (int attempt = 0; attempt < MAX_RESERVE_ATTEMPTS; attempt++) {
+            TlkSequence seq = sequenceMapper.selectById(SEQUENCE);
+            if (seq == null) {
+                seq = new TlkSequence();
+                seq.setId(SEQUENCE);
+                seq.setNextValue(0L);
+                seq.setUpdateTime(new Date());
+                try {
+                    sequenceMapper.insert(seq);
+                } catch (DuplicateKeyException e) {
+                    // 另一个节点刚刚创建了序列
+                }
+                continue;
+            }
+            long start = seq.getNextValue() != null ? seq.getNextValue() : 0L;
+            int updated = sequenceMapper.update(null, new UpdateWrapper<TlkSequence>()
+                    .set("next_value", start + blockSize)
+                    .set("update_time", new Date())
+                    .eq("id", SEQUENCE)
+                    .eq("next_value", start));
+            if (updated == 1) {
+                next = start;
+                limit = start + blockSize;
+                return;
+            }
+        }
+        logger.warning("UID block reservation kept losing to other nodes");
+        throw new IllegalStateException("Unable to reserve UIDs, please try again later");
+    }
+
+    /** 序号 → 访问码：先确定长度，再在该长度的码空间内置换并编码。 */
+    String encode(long sequence) {
+        long offset = sequence;
+        for (int length = minLength; length <= MAX_LENGTH; length++) {
+            long domain = pow(BASE, length);
+            if (offset < domain) {
+                return toBase62(permute(offset, domain, keys), length);
+            }
+            offset -= domain;
+        }
+        throw new IllegalStateException("UID space exhausted");
+    }
+
+    /**
+     * [0, domain) 上的置换：在覆盖 domain 的最小偶数位宽上做平衡 Feistel 网络，
+     * 结果超出 domain 时继续置换（cycle walking），直到落回范围内。
+     */
+    static long permute(long value, long domain, long[] keys) {
+        int bits = 64 - Long.numberOfLeadingZeros(domain - 1);
+        int half = Math.max(1, (bits + 1) / 2);
+        long mask = (1L << half) - 1;
+        long x = value;
+        do {
+            long left = x >>> half;
+            long right = x & mask;
+            for (int round = 0; round < ROUNDS; round++) {
+                long tmp = right;
+                right = left ^ (mix(right ^ keys[round]) & mask);
+                left = tmp;
+            }
+            x = (left << half) | right;
+        } while (x >= domain);
+        return x;
+    }
+
+    static String toBase62(long value, int length) {
+        char[] out = new char[length];
+        for (int i = length - 1; i >= 0; i--) {
+            out[i] = CHARS.charAt((int) (value % BASE));
+            value /= BASE;
+        }
+        return new String(out);
+    }
+
+    /** SplitMix64 的混合函数。 */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    static long[] deriveKeys(String secret) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(secret.getBytes(StandardCharsets.UTF_8));
+            ByteBuffer buf = ByteBuffer.wrap(digest);
+            long[] keys = new long[ROUNDS];
+            for (int i = 0; i < ROUNDS; i++) {
+                keys[i] = buf.getLong();
+            }
+            return keys;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static long pow(long base, int exp) {
+        long r = 1;
+        for (int i = 0; i < exp; i++) r *= base;
+        return r;
+    }
+}
@@ -0,0 +1,237 @@
+package com.yuz.toplinks.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.stereotype.Service;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.baomidou.mybatisplus.core.conditions.update.UpdateWrapper;
+import com.yuz.toplinks.entity.TlkFile;
+import com.yuz.toplinks.mapper.TlkFileMapper;
+
+import jakarta.annotation.PreDestroy;
+
+/**
+ * 异步上传：文件先暂存到本地磁盘并立即返回，后台线程池再推送到 R2。
+ *
+ * <p>推送失败按指数退避重试；超过最大次数后保留为待同步状态，由定时重扫再次尝试。
+ * 应用启动时会重扫本节点上仍有暂存文件的待同步记录，因此队列在重启后不会丢失。
+ * 在同步完成前，下载由本地暂存文件提供；启用冷热分层时，同步完成后暂存文件转为热层副本。</p>
+ *
+ * <p>暂存文件只在接收上传的节点上。多节点部署时，{@code file.upload-dir} 须为各节点共享的目录，
+ * 否则同步完成前其他节点无法提供该文件：下载返回 503 并提示稍后重试，记录中的 {@code /files/} 临时地址也只在本节点有效。</p>
+ */
+@Service
+public class UploadReplicationService {
+
+    private static final Logger logger = Logger.getLogger(UploadReplicationService.class.getName());
+
+    private final TlkFileMapper fileMapper;
+    private final CloudflareStorageService storageService;
+    private final FileStorageService localStorage;
+    private final CacheManager cacheManager;
+    private final TieredStorageService tieredStorage;
+    private final boolean enabled;
+    private final int maxAttempts;
+    private final long baseBackoffMillis;
+    private final long rescanIntervalMillis;
+
+    /** 正在排队或推送中的文件 ID，避免重扫时重复提交。 */
+    private final Set<String> inFlight = ConcurrentHashMap.newKeySet();
+
+    private final ThreadPoolExecutor workers;
+    private final ScheduledExecutorService scheduler;
+
+    public UploadReplicationService(TlkFileMapper fileMapper, CloudflareStorageService storageService,
+            FileStorageService localStorage, CacheManager cacheManager, TieredStorageService tieredStorage,
+            @Value("${file.async-upload.enabled:false}") boolean asyncEnabled,
+            @Value("${file.async-upload.workers:4}") int workerCount,
+            @Value("${file.async-upload.queue-capacity:200}") int queueCapacity,
+            @Value("${file.async-upload.max-attempts:6}") int maxAttempts,
+            @Value("${file.async-upload.backoff-millis:2000}") long baseBackoffMillis,
+            @Value("${file.async-upload.rescan-interval-millis:600000}") long rescanIntervalMillis) {
+        this.fileMapper = fileMapper;
+        this.storageService = storageService;
+        this.localStorage = localStorage;
+        this.cacheManager = cacheManager;
+        this.tieredStorage = tieredStorage;
+        // 仅当 R2 启用时才有意义；本地存储模式下暂存文件即为最终文件
+        this.enabled = asyncEnabled && storageService.isR2Enabled();
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.baseBackoffMillis = Math.max(100, baseBackoffMillis);
+        this.rescanIntervalMillis = rescanIntervalMillis;
+
+        if (enabled) {
+            AtomicInteger seq = new AtomicInteger();
+            int n = Math.max(1, workerCount);
+            this.workers = new ThreadPoolExecutor(n, n, 60, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<>(Math.max(1, queueCapacity)), r -> {
+                        Thread t = new Thread(r, "upload-replicator-" + seq.incrementAndGet());
+                        t.setDaemon(true);
+                        return t;
+                    });
+            this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "upload-replicator-scheduler");
+                t.setDaemon(true);
+                return t;
+            });
+        } else {
+            this.workers = null;
+            this.scheduler = null;
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 将上传内容暂存到本地存储目录，供 {@link #submit(TlkFile)} 推送。
+     *
+     * @return 本地访问 URL（同步完成前作为 cloudUrl 使用）
+     */
+    public String spool(String objectKey, InputStream inputStream) throws IOException {
+        String filename = CloudflareStorageService.localName(objectKey);
+        localStorage.storeWithName(inputStream, filename);
+        return "/files/" + filename;
+    }
+
+    /** 暂存文件路径。 */
+    public Path spoolPath(String objectKey) {
+        return localStorage.getFilePath(CloudflareStorageService.localName(objectKey));
+    }
+
+    /** 提交推送任务；队列已满时留给定时重扫处理。 */
+    public void submit(TlkFile file) {
+        if (!enabled || !inFlight.add(file.getId())) return;
+        enqueue(file, 1);
+    }
+
+    /** 删除文件时清理本地暂存。 */
+    public void discardSpool(String objectKey) {
+        try {
+            Files.deleteIfExists(spoolPath(objectKey));
+        } catch (IOException | SecurityException e) {
+            logger.warning("Failed to delete spool file for " + objectKey + ": " + e.getMessage());
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void startRescan() {
+        if (!enabled) return;
+        long interval = rescanIntervalMillis > 0 ? rescanIntervalMillis : Long.MAX_VALUE / 2;
+        scheduler.scheduleWithFixedDelay(this::rescan, 0, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /** 重新提交本节点上仍有暂存文件的待同步记录。 */
+    void rescan() {
+        try {
+            List<TlkFile> pending = fileMapper.selectList(new QueryWrapper<TlkFile>()
+                    .eq("storage_status", TlkFile.STORAGE_PENDING));
+            int submitted = 0;
+            for (TlkFile file : pending) {
+                if (file.getPath() != null && Files.exists(spoolPath(file.getPath())) && inFlight.add(file.getId())) {
+                    enqueue(file, 1);
+                    submitted++;
+                }
+            }
+            if (submitted > 0) {
+                logger.info("Re-queued " + submitted + " pending upload(s) for replication");
+            }
+        } catch (RuntimeException e) {
+            logger.warning("Pending upload rescan failed: " + e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (scheduler != null) scheduler.shutdownNow();
+        if (workers != null) workers.shutdown();
+    }
+
+    private void enqueue(TlkFile file, int attempt) {
+        try {
+            workers.execute(() -> replicate(file, attempt));
+        } catch (RejectedExecutionException e) {
+            inFlight.remove(file.getId());
+            logger.warning("Replication queue full; " + file.getUid() + " will be retried on next rescan");
+        }
+    }
+
+    private void replicate(TlkFile file, int attempt) {
+        String objectKey = file.getPath();
+        Path spool = spoolPath(objectKey);
+        try {
+            String contentType = MediaTypeFactory.getMediaType(file.getName() != null ? file.getName() : objectKey)
+                    .map(MediaType::toString)
+                    .orElse("application/octet-stream");
+            String cloudUrl;
+            try (InputStream in = Files.newInputStream(spool)) {
+                cloudUrl = storageService.upload(objectKey, in, Files.size(spool), contentType);
+            }
+            // 启用分层时暂存文件直接转为热层副本，否则删除
+            boolean hot = tieredStorage != null && tieredStorage.adoptUpload(objectKey, spool);
+            int updated = fileMapper.update(null, new UpdateWrapper<TlkFile>()
+                    .set("cloud_url", cloudUrl)
+                    .set("storage_status", TlkFile.STORAGE_SYNCED)
+                    .set("storage_tier", hot ? TlkFile.TIER_HOT : TlkFile.TIER_COLD)
+                    .eq("id", file.getId()));
+            evictCache(file.getUid());
+            if (updated == 0) {
+                // 记录在同步期间被删除：清理已上传的对象
+                storageService.delete(objectKey);
+                if (hot) tieredStorage.discard(objectKey);
+            }
+            if (!hot) {
+                Files.deleteIfExists(spool);
+            }
+            inFlight.remove(file.getId());
+        } catch (java.nio.file.NoSuchFileException e) {
+            inFlight.remove(file.getId());
+            logger.warning("Spool file missing for " + file.getUid() + "; skipping replication");
+        } catch (IOException | RuntimeException e) {
+            if (attempt >= maxAttempts) {
+                inFlight.remove(file.getId());
+                logger.warning("Replication of " + file.getUid() + " failed after " + attempt
+                        + " attempts; will retry on next rescan: " + e.getMessage());
+                return;
+            }
+            long delay = Math.min(baseBackoffMillis << (attempt - 1), TimeUnit.MINUTES.toMillis(5));
+            logger.warning("Replication of " + file.getUid() + " failed (attempt " + attempt
+                    + "), retrying in " + delay + " ms: " + e.getMessage());
+            try {
+                scheduler.schedule(() -> enqueue(file, attempt + 1), delay, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException shuttingDown) {
+                inFlight.remove(file.getId());
+            }
+        }
+    }
+
+    private void evictCache(String uid) {
+        Cache cache = cacheManager.getCache("fileByUid");
+        if (cache != null && uid != null) {
+            cache.evict(uid);
+        }
+    }
+}
@@ -2,10 +2,13 @@ package com.yuz.toplinks.service;
 
 import java.util.Collections;
 import java.util.Date;
-import java.util.UUID;
+import java.util.List;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.cache.annotation.Cacheable;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.userdetails.User;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
@@ -24,6 +27,10 @@ public class UserService implements UserDetailsService {
     private final SysUserMapper userMapper;
     private final PasswordEncoder passwordEncoder;
 
+    /** 拥有管理员角色的邮箱（不区分大小写），可以访问 /internal/** 等运维接口。 */
+    @Value("${app.admin-emails:}")
+    private List<String> adminEmails = List.of();
+
     public UserService(SysUserMapper userMapper, PasswordEncoder passwordEncoder) {
         this.userMapper = userMapper;
         this.passwordEncoder = passwordEncoder;
@@ -37,10 +44,22 @@ public class UserService implements UserDetailsService {
         }
         return User.withUsername(user.getEmail())
                 .password(user.getPassword() != null ? user.getPassword() : "")
-                .authorities(Collections.emptyList())
+                .authorities(authoritiesFor(user.getEmail()))
                 .build();
     }
 
+    /** 登录用户的权限：配置为管理员的邮箱获得 ROLE_ADMIN，其他用户没有额外权限。 */
+    public List<GrantedAuthority> authoritiesFor(String email) {
+        if (email != null && adminEmails != null) {
+            for (String admin : adminEmails) {
+                if (email.equalsIgnoreCase(admin.trim())) {
+                    return List.of(new SimpleGrantedAuthority("ROLE_ADMIN"));
+                }
+            }
+        }
+        return Collections.emptyList();
+    }
+
     @Cacheable(value = "users", key = "#email")
     public SysUser findByEmail(String email) {
         return userMapper.selectOne(new QueryWrapper<SysUser>().eq("email", email));
@@ -52,7 +71,6 @@ public class UserService implements UserDetailsService {
             throw new IllegalArgumentException("This email is already registered");
         }
         SysUser user = new SysUser();
-        user.setId(UUID.randomUUID().toString());
         user.setEmail(email);
         user.setPassword(passwordEncoder.encode(password));
         user.setNickname(nickname != null ? nickname : email);
@@ -71,7 +89,6 @@ public class UserService implements UserDetailsService {
         }
         if (user == null) {
             user = new SysUser();
-            user.setId(UUID.randomUUID().toString());
             user.setEmail(email);
             user.setGoogleId(googleId);
             user.setNickname(name);
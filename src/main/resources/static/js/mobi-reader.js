@@ -1,7 +1,9 @@
 /**
  * Minimal MOBI / PalmDOC reader for in-browser preview.
+ * Books parsed on the server are read chunk by chunk (MobiReader.chunks); the in-browser parser
+ * is the fallback for books that have not been parsed yet.
  * Supports PalmDOC compression (type 1 = none, type 2 = PalmDOC LZ).
- * Huffman-compressed MOBI (type 17480) is not supported.
+ * Huffman-compressed MOBI (type 17480) is not supported in the browser.
  */
 (function (global) {
     'use strict';
@@ -98,7 +100,50 @@
         return s.replace(/&/g, '&amp;').replace(/</g, '&lt;').replace(/>/g, '&gt;');
     }
 
+    function button(label) {
+        var b = document.createElement('button');
+        b.type = 'button';
+        b.className = 'btn btn-sm btn-outline-secondary';
+        b.textContent = label;
+        return b;
+    }
+
     global.MobiReader = {
+        /**
+         * Read a book that was split into HTML chunks on the server: `baseUrl + n` (1..count),
+         * loading only the chunk being viewed.
+         */
+        chunks: function (baseUrl, count, container) {
+            var current = 1;
+            var iframe = document.createElement('iframe');
+            iframe.setAttribute('sandbox', '');
+            iframe.style.cssText = 'width:100%;height:75vh;border:0;border-radius:4px;';
+            var nav = document.createElement('div');
+            nav.className = 'd-flex align-items-center justify-content-center gap-3 mt-2';
+            var prev = button('\u2039 Prev');
+            var next = button('Next \u203a');
+            var label = document.createElement('span');
+            label.className = 'text-muted small';
+            nav.appendChild(prev);
+            nav.appendChild(label);
+            nav.appendChild(next);
+
+            function show(n) {
+                current = Math.min(Math.max(n, 1), count);
+                iframe.src = baseUrl + current;
+                label.textContent = current + ' / ' + count;
+                prev.disabled = current <= 1;
+                next.disabled = current >= count;
+            }
+            prev.addEventListener('click', function () { show(current - 1); });
+            next.addEventListener('click', function () { show(current + 1); });
+
+            container.innerHTML = '';
+            container.appendChild(iframe);
+            container.appendChild(nav);
+            show(1);
+        },
+
         /**
          * Fetch a MOBI file from `url` and render its content into `container`.
          */
@@ -0,0 +1,73 @@
+/**
+ * Upload page: instant upload ("秒传") pre-check.
+ * Before sending the file body, hash it in a worker and ask the server whether identical content already
+ * exists. On a hit the server creates the record and we jump straight to it; on a miss or any error we fall
+ * back to the normal multipart form submit.
+ */
+(function () {
+    'use strict';
+
+    var form = document.getElementById('upload-form');
+    if (!form || form.getAttribute('data-instant-upload') !== 'true' || !window.Worker) return;
+
+    var fileInput = document.getElementById('file');
+    var status = document.getElementById('upload-status');
+    var submitting = false;
+
+    function setStatus(text) {
+        if (status) status.textContent = text;
+    }
+
+    function fallback() {
+        submitting = true;
+        setStatus('Uploading...');
+        form.submit();
+    }
+
+    form.addEventListener('submit', function (e) {
+        if (submitting) return;
+        var file = fileInput.files && fileInput.files[0];
+        if (!file) return;
+        e.preventDefault();
+
+        var worker = new Worker(form.getAttribute('data-hash-worker'));
+        worker.onmessage = function (msg) {
+            var data = msg.data;
+            if (data.type === 'progress') {
+                setStatus('Checking file... ' + Math.floor(data.loaded * 100 / data.total) + '%');
+                return;
+            }
+            worker.terminate();
+            if (data.type !== 'done') {
+                fallback();
+                return;
+            }
+            var body = new URLSearchParams();
+            body.append('hash', data.hash);
+            body.append('size', String(file.size));
+            body.append('name', file.name);
+            var csrf = form.querySelector('input[name="_csrf"]');
+            if (csrf) body.append('_csrf', csrf.value);
+
+            fetch(form.getAttribute('data-precheck-url'), {
+                method: 'POST',
+                body: body,
+                credentials: 'same-origin',
+                headers: { 'Accept': 'application/json' }
+            }).then(function (resp) {
+                return resp.ok ? resp.json() : { hit: false };
+            }).then(function (result) {
+                if (result.hit) {
+                    window.location.href = result.url;
+                } else {
+                    fallback();
+                }
+            }).catch(fallback);
+        };
+        worker.onerror = function () {
+            worker.terminate();
+            fallback();
+        };
+        worker.postMessage({ file: file });
+    });
+})();
@@ -0,0 +1,54 @@
+package com.yuz.toplinks.config;
+
+import com.yuz.toplinks.service.FileCursor;
+import com.yuz.toplinks.service.RenderedPageCache;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import java.util.Base64;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 验证页面缓存键：列表参数规范化后组成键，格式不合法的分类、页码和游标不经过缓存。
+ */
+class RenderedPageCacheFilterTest {
+
+    private static final String FILE_ID = "0190a1b2c3d47e5f8a9b0c1d2e3f4a5b";
+
+    private static String keyOf(String path, Map<String, String> params) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", path);
+        params.forEach(request::addParameter);
+        return RenderedPageCacheFilter.keyOf(request);
+    }
+
+    @Test
+    void equivalentListingRequestsShareOneKey() {
+        String first = RenderedPageCache.listingKey(null, "1", null, null);
+        assertEquals(first, keyOf("/", Map.of()));
+        assertEquals(first, keyOf("/", Map.of("page", "1")));
+        assertEquals(first, keyOf("/", Map.of("page", "-3")));
+
+        String cursor = new FileCursor(1_700_000_000_000L, FILE_ID).encode();
+        String expected = RenderedPageCache.listingKey(null, null, cursor, null);
+        assertEquals(expected, keyOf("/", Map.of("after", cursor, "page", "4")));
+        assertEquals(expected, keyOf("/", Map.of("after", cursor, "before", cursor)));
+    }
+
+    @Test
+    void malformedListingParametersAreNotCached() {
+        assertNull(keyOf("/", Map.of("page", "abc")));
+        assertNull(keyOf("/", Map.of("page", "999999")));
+        assertNull(keyOf("/", Map.of("categoryId", "x".repeat(200))));
+        assertNull(keyOf("/", Map.of("after", "not-a-cursor")));
+        String foreignId = Base64.getUrlEncoder().withoutPadding().encodeToString("1:anything".getBytes());
+        assertNull(keyOf("/", Map.of("before", foreignId)));
+        assertNull(keyOf("/", Map.of("q", "x")));
+    }
+
+    @Test
+    void detailPagesAreKeyedByUid() {
+        assertEquals(RenderedPageCache.detailKey("aB3xY9k"), keyOf("/file/aB3xY9k", Map.of()));
+    }
+}
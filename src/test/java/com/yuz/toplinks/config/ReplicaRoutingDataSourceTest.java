@@ -0,0 +1,158 @@
+package com.yuz.toplinks.config;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+/**
+ * 验证读写分离路由：只读方法内轮询副本、其余和读己之写走主库，不健康或延迟过大的副本被移出轮询并在恢复后加回，
+ * 没有复制状态行或延迟未知的副本默认不参与轮询。
+ */
+@ExtendWith(MockitoExtension.class)
+class ReplicaRoutingDataSourceTest {
+
+    @Mock
+    private DataSource primary;
+    @Mock
+    private DataSource replicaA;
+    @Mock
+    private DataSource replicaB;
+
+    private ReplicaRoutingDataSource routing;
+
+    @BeforeEach
+    void setUp() {
+        routing = new ReplicaRoutingDataSource(primary, List.of(replicaA, replicaB), 5, false);
+    }
+
+    @AfterEach
+    void tearDown() {
+        ReplicaRoutingDataSource.pinPrimary(false);
+        routing.shutdown();
+    }
+
+    @Test
+    void writesAndUnmarkedQueriesUsePrimary() {
+        assertEquals(ReplicaRoutingDataSource.PRIMARY, routing.determineCurrentLookupKey());
+    }
+
+    @Test
+    void readsAreRoundRobinedOverReplicas() {
+        ReplicaRoutingDataSource.enterRead();
+        try {
+            assertEquals("replica-0", routing.determineCurrentLookupKey());
+            assertEquals("replica-1", routing.determineCurrentLookupKey());
+            assertEquals("replica-0", routing.determineCurrentLookupKey());
+        } finally {
+            ReplicaRoutingDataSource.exitRead();
+        }
+        assertEquals(ReplicaRoutingDataSource.PRIMARY, routing.determineCurrentLookupKey());
+        assertEquals(2, routing.getStats().replicas().get(0).reads());
+    }
+
+    @Test
+    void pinnedSessionReadsFromPrimary() {
+        ReplicaRoutingDataSource.pinPrimary(true);
+        ReplicaRoutingDataSource.enterRead();
+        try {
+            assertEquals(ReplicaRoutingDataSource.PRIMARY, routing.determineCurrentLookupKey());
+        } finally {
+            ReplicaRoutingDataSource.exitRead();
+        }
+        assertEquals(1, routing.getStats().primaryReads());
+    }
+
+    @Test
+    void unreachableOrLaggingReplicasAreEjectedAndReadmitted() throws SQLException {
+        when(replicaA.getConnection()).thenThrow(new SQLException("connection refused"));
+        stubLag(replicaB, 30);
+
+        routing.checkReplicas();
+
+        ReplicaRoutingDataSource.Stats stats = routing.getStats();
+        assertFalse(stats.replicas().get(0).healthy());
+        assertFalse(stats.replicas().get(1).healthy());
+        assertEquals(30, stats.replicas().get(1).lagSeconds());
+        assertEquals(1, stats.replicas().get(1).ejections());
+        ReplicaRoutingDataSource.enterRead();
+        try {
+            assertEquals(ReplicaRoutingDataSource.PRIMARY, routing.determineCurrentLookupKey());
+        } finally {
+            ReplicaRoutingDataSource.exitRead();
+        }
+
+        reset(replicaB);
+        stubLag(replicaB, 2);
+        routing.checkReplicas();
+
+        assertTrue(routing.getStats().replicas().get(1).healthy());
+        ReplicaRoutingDataSource.enterRead();
+        try {
+            assertEquals("replica-1", routing.determineCurrentLookupKey());
+            assertEquals("replica-1", routing.determineCurrentLookupKey());
+        } finally {
+            ReplicaRoutingDataSource.exitRead();
+        }
+    }
+
+    @Test
+    void missingStatusRowOrUnknownLagIsUnhealthy() throws SQLException {
+        ResultSet noRows = stubQuery(replicaA);
+        when(noRows.next()).thenReturn(false);
+        Statement denied = mock(Statement.class);
+        Connection connection = mock(Connection.class);
+        when(replicaB.getConnection()).thenReturn(connection);
+        when(connection.createStatement()).thenReturn(denied);
+        when(denied.executeQuery(anyString())).thenThrow(new SQLException("Access denied"));
+
+        routing.checkReplicas();
+
+        assertFalse(routing.getStats().replicas().get(0).healthy());
+        assertFalse(routing.getStats().replicas().get(1).healthy());
+        assertEquals(-1, routing.getStats().replicas().get(1).lagSeconds());
+
+        ReplicaRoutingDataSource lenient = new ReplicaRoutingDataSource(primary, List.of(replicaB), 5, true);
+        try {
+            lenient.checkReplicas();
+            assertTrue(lenient.getStats().replicas().get(0).healthy());
+        } finally {
+            lenient.shutdown();
+        }
+    }
+
+    private static ResultSet stubQuery(DataSource replica) throws SQLException {
+        Connection connection = mock(Connection.class);
+        Statement statement = mock(Statement.class);
+        ResultSet rs = mock(ResultSet.class);
+        when(replica.getConnection()).thenReturn(connection);
+        when(connection.createStatement()).thenReturn(statement);
+        when(statement.executeQuery(anyString())).thenReturn(rs);
+        return rs;
+    }
+
+    private static void stubLag(DataSource replica, long lagSeconds) throws SQLException {
+        Connection connection = mock(Connection.class);
+        Statement statement = mock(Statement.class);
+        ResultSet rs = mock(ResultSet.class);
+        when(replica.getConnection()).thenReturn(connection);
+        when(connection.createStatement()).thenReturn(statement);
+        when(statement.executeQuery(anyString())).thenReturn(rs);
+        when(rs.next()).thenReturn(true);
+        when(rs.getLong("Seconds_Behind_Source")).thenReturn(lagSeconds);
+        when(rs.wasNull()).thenReturn(false);
+    }
+}
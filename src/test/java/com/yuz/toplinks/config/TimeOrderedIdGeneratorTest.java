@@ -0,0 +1,46 @@
+package com.yuz.toplinks.config;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 验证 UUIDv7 主键：格式符合版本和变体位，以时间戳开头，同一毫秒内和时钟回拨时仍严格递增。
+ */
+class TimeOrderedIdGeneratorTest {
+
+    private final AtomicLong now = new AtomicLong(1_700_000_000_000L);
+    private final TimeOrderedIdGenerator generator = new TimeOrderedIdGenerator(now::get);
+
+    @Test
+    void formatIsVersion7WithTimestampPrefix() {
+        String id = generator.nextUUID(null);
+        assertEquals(32, id.length());
+        assertTrue(id.matches("[0-9a-f]{32}"));
+        assertEquals('7', id.charAt(12));
+        assertTrue("89ab".indexOf(id.charAt(16)) >= 0);
+        assertEquals(String.format("%012x", now.get()), id.substring(0, 12));
+    }
+
+    @Test
+    void idsIncreaseWithinOneMillisecondAndAcrossTime() {
+        String previous = generator.nextUUID(null);
+        for (int i = 0; i < 10_000; i++) {
+            if (i % 1000 == 0) now.addAndGet(1);
+            String id = generator.nextUUID(null);
+            assertTrue(id.compareTo(previous) > 0, id + " <= " + previous);
+            previous = id;
+        }
+    }
+
+    @Test
+    void clockGoingBackwardsKeepsOrder() {
+        String first = generator.nextUUID(null);
+        now.addAndGet(-5_000);
+        String second = generator.nextUUID(null);
+        assertTrue(second.compareTo(first) > 0);
+        assertEquals(first.substring(0, 12), second.substring(0, 12));
+    }
+}
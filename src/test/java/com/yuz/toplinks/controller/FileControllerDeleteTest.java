@@ -0,0 +1,126 @@
+package com.yuz.toplinks.controller;
+
+import com.yuz.toplinks.entity.SysUser;
+import com.yuz.toplinks.entity.TlkFile;
+import com.yuz.toplinks.mapper.TlkBlobMapper;
+import com.yuz.toplinks.mapper.TlkFileMapper;
+import com.yuz.toplinks.service.BlobService;
+import com.yuz.toplinks.service.CloudflareStorageService;
+import com.yuz.toplinks.service.FileDeletedEvent;
+import com.yuz.toplinks.service.FileService;
+import com.yuz.toplinks.service.FileServiceBuilder;
+import com.yuz.toplinks.service.StoredObjectDeletedEvent;
+import com.yuz.toplinks.service.ThumbnailService;
+import com.yuz.toplinks.service.UserService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.support.RedirectAttributesModelMap;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * 验证删除接口：只有上传者可以删除；删除后释放 blob 引用计数、删除存储对象并发布删除事件。
+ */
+@ExtendWith(MockitoExtension.class)
+class FileControllerDeleteTest {
+
+    private static final String BLOB_KEY = "blobs/abc/b1.png";
+
+    @Mock
+    private TlkFileMapper fileMapper;
+
+    @Mock
+    private TlkBlobMapper blobMapper;
+
+    @Mock
+    private CloudflareStorageService storageService;
+
+    @Mock
+    private UserService userService;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    private FileController controller;
+    private final Authentication owner = new UsernamePasswordAuthenticationToken("owner@example.com", null, List.of());
+
+    @BeforeEach
+    void setUp() {
+        BlobService blobService = new BlobService(blobMapper, storageService, eventPublisher);
+        FileService fileService = new FileServiceBuilder()
+                .fileMapper(fileMapper)
+                .storageService(storageService)
+                .blobService(blobService)
+                .eventPublisher(eventPublisher)
+                .build();
+        controller = new FileController(fileService, userService, null, null, null, null, null, null, null);
+
+        TlkFile file = new TlkFile();
+        file.setId("file-1");
+        file.setUid("aB3xY9k");
+        file.setName("photo.png");
+        file.setPath(BLOB_KEY);
+        file.setUserId("user-1");
+        when(fileMapper.selectOne(any())).thenReturn(file);
+    }
+
+    private static SysUser user(String id) {
+        SysUser user = new SysUser();
+        user.setId(id);
+        return user;
+    }
+
+    @Test
+    void ownerDeleteReleasesBlobAndPublishesEvents() throws Exception {
+        when(userService.findByEmail("owner@example.com")).thenReturn(user("user-1"));
+        when(fileMapper.deleteById("file-1")).thenReturn(1);
+        when(blobMapper.delete(any())).thenReturn(1);
+
+        String view = controller.deleteFile("aB3xY9k", owner, new RedirectAttributesModelMap());
+
+        assertEquals("redirect:/", view);
+        verify(blobMapper).update(isNull(), any());
+        verify(storageService).delete(BLOB_KEY);
+        verify(storageService).delete(ThumbnailService.thumbKey(BLOB_KEY));
+        ArgumentCaptor<Object> events = ArgumentCaptor.forClass(Object.class);
+        verify(eventPublisher, times(2)).publishEvent(events.capture());
+        assertInstanceOf(FileDeletedEvent.class, events.getAllValues().get(0));
+        assertEquals("aB3xY9k", ((FileDeletedEvent) events.getAllValues().get(0)).file().getUid());
+        assertEquals(new StoredObjectDeletedEvent(BLOB_KEY), events.getAllValues().get(1));
+    }
+
+    @Test
+    void otherUsersAreForbidden() {
+        when(userService.findByEmail("owner@example.com")).thenReturn(user("user-2"));
+
+        ResponseStatusException e = assertThrows(ResponseStatusException.class,
+                () -> controller.deleteFile("aB3xY9k", owner, new RedirectAttributesModelMap()));
+
+        assertEquals(HttpStatus.FORBIDDEN, e.getStatusCode());
+        verify(fileMapper, never()).deleteById(any(java.io.Serializable.class));
+        verifyNoInteractions(blobMapper, storageService, eventPublisher);
+    }
+
+    @Test
+    void missingFileIsNotFound() {
+        when(fileMapper.selectOne(any())).thenReturn(null);
+
+        ResponseStatusException e = assertThrows(ResponseStatusException.class,
+                () -> controller.deleteFile("zzzzzzz", owner, new RedirectAttributesModelMap()));
+
+        assertEquals(HttpStatus.NOT_FOUND, e.getStatusCode());
+    }
+}
@@ -0,0 +1,45 @@
+package com.yuz.toplinks.controller;
+
+import com.yuz.toplinks.service.UserService;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.multipart.MaxUploadSizeExceededException;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+/**
+ * 验证超过 multipart 上限的批量上传返回 413 和 JSON 错误，其他请求交回默认处理。
+ */
+class GlobalControllerAdviceTest {
+
+    private final GlobalControllerAdvice advice = new GlobalControllerAdvice(mock(UserService.class),
+            DataSize.ofMegabytes(100), DataSize.ofGigabytes(1));
+
+    @Test
+    void oversizedBatchGetsJsonError() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/upload/batch");
+        request.setServletPath("/upload/batch");
+
+        ResponseEntity<Map<String, Object>> response =
+                advice.uploadTooLarge(new MaxUploadSizeExceededException(DataSize.ofGigabytes(1).toBytes()), request);
+
+        assertEquals(HttpStatus.PAYLOAD_TOO_LARGE, response.getStatusCode());
+        assertTrue(response.getBody().get("error").toString().contains("split it into smaller batches"));
+        assertEquals(DataSize.ofGigabytes(1).toBytes(), response.getBody().get("maxRequestBytes"));
+    }
+
+    @Test
+    void otherUploadsFallBackToDefaultHandling() {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/upload");
+        request.setServletPath("/upload");
+        MaxUploadSizeExceededException e = new MaxUploadSizeExceededException(DataSize.ofMegabytes(100).toBytes());
+
+        assertSame(e, assertThrows(MaxUploadSizeExceededException.class, () -> advice.uploadTooLarge(e, request)));
+    }
+}
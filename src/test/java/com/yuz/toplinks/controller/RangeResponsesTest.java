@@ -0,0 +1,136 @@
+package com.yuz.toplinks.controller;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 验证 Range 响应：单区间 206、多区间 multipart/byteranges、区间过多时返回完整内容、越界 416，且只按区间打开内容。
+ */
+class RangeResponsesTest {
+
+    private static final byte[] CONTENT = "0123456789abcdefghij".getBytes(StandardCharsets.US_ASCII);
+
+    private final List<long[]> opened = new ArrayList<>();
+
+    private InputStream open(long start, long end) {
+        opened.add(new long[] { start, end });
+        int to = (int) Math.min(CONTENT.length - 1, end);
+        return new ByteArrayInputStream(CONTENT, (int) start, to - (int) start + 1);
+    }
+
+    private ResponseEntity<Resource> build(String range) throws IOException {
+        return RangeResponses.build(range, (long) CONTENT.length, MediaType.TEXT_PLAIN, new HttpHeaders(), this::open);
+    }
+
+    private static String body(ResponseEntity<Resource> response) throws IOException {
+        try (InputStream in = response.getBody().getInputStream()) {
+            return new String(in.readAllBytes(), StandardCharsets.US_ASCII);
+        }
+    }
+
+    @Test
+    void noRangeReturnsFullContent() throws IOException {
+        ResponseEntity<Resource> response = build(null);
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals("bytes", response.getHeaders().getFirst(HttpHeaders.ACCEPT_RANGES));
+        assertEquals(CONTENT.length, response.getHeaders().getContentLength());
+        assertEquals(new String(CONTENT, StandardCharsets.US_ASCII), body(response));
+    }
+
+    @Test
+    void singleRangeReturnsPartialContent() throws IOException {
+        ResponseEntity<Resource> response = build("bytes=5-9");
+        assertEquals(HttpStatus.PARTIAL_CONTENT, response.getStatusCode());
+        assertEquals("bytes 5-9/20", response.getHeaders().getFirst(HttpHeaders.CONTENT_RANGE));
+        assertEquals(5, response.getHeaders().getContentLength());
+        assertEquals("56789", body(response));
+        assertArrayEquals(new long[] { 5, 9 }, opened.get(0));
+    }
+
+    @Test
+    void suffixRangeReturnsTail() throws IOException {
+        ResponseEntity<Resource> response = build("bytes=-3");
+        assertEquals("bytes 17-19/20", response.getHeaders().getFirst(HttpHeaders.CONTENT_RANGE));
+        assertEquals("hij", body(response));
+    }
+
+    @Test
+    void multipleRangesReturnByteranges() throws IOException {
+        ResponseEntity<Resource> response = build("bytes=0-1,4-5,5-6,15-");
+        assertEquals(HttpStatus.PARTIAL_CONTENT, response.getStatusCode());
+        MediaType type = response.getHeaders().getContentType();
+        assertEquals("multipart", type.getType());
+        assertEquals("byteranges", type.getSubtype());
+
+        String body = body(response);
+        assertEquals(response.getHeaders().getContentLength(), body.length());
+        assertTrue(body.contains("Content-Range: bytes 0-1/20\r\n\r\n01"));
+        assertTrue(body.contains("Content-Range: bytes 4-6/20\r\n\r\n456"));
+        assertTrue(body.contains("Content-Range: bytes 15-19/20\r\n\r\nfghij"));
+        assertTrue(body.endsWith("--" + type.getParameter("boundary") + "--\r\n"));
+        // 重叠区间合并后只打开三次
+        assertEquals(3, opened.size());
+    }
+
+    @Test
+    void tooManyRangesFallBackToFullContent() throws IOException {
+        assertEquals(HttpStatus.PARTIAL_CONTENT, buildLarge(disjointRanges(RangeResponses.MAX_PARTS)).getStatusCode());
+
+        opened.clear();
+        ResponseEntity<Resource> response = buildLarge(disjointRanges(RangeResponses.MAX_PARTS + 1));
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(1000, response.getHeaders().getContentLength());
+        assertEquals(1, opened.size());
+        assertArrayEquals(new long[] { 0, 999 }, opened.get(0));
+    }
+
+    /** bytes=0-0,10-10,20-20,…：互不相邻，合并后仍是 {@code count} 个区间。 */
+    private static String disjointRanges(int count) {
+        StringBuilder header = new StringBuilder("bytes=");
+        for (int i = 0; i < count; i++) {
+            header.append(i == 0 ? "" : ",").append(i * 10).append('-').append(i * 10);
+        }
+        return header.toString();
+    }
+
+    private ResponseEntity<Resource> buildLarge(String range) throws IOException {
+        return RangeResponses.build(range, 1000L, MediaType.TEXT_PLAIN, new HttpHeaders(), (start, end) -> {
+            opened.add(new long[] { start, end });
+            return new ByteArrayInputStream(new byte[0]);
+        });
+    }
+
+    @Test
+    void unsatisfiableRangeReturns416() throws IOException {
+        ResponseEntity<Resource> response = build("bytes=20-30");
+        assertEquals(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE, response.getStatusCode());
+        assertEquals("bytes */20", response.getHeaders().getFirst(HttpHeaders.CONTENT_RANGE));
+        assertTrue(opened.isEmpty());
+    }
+
+    @Test
+    void ifRangeMismatchFallsBackToFullContent() {
+        long lastModified = 1_700_000_000_000L;
+        assertEquals("bytes=0-1", RangeResponses.effectiveRange("bytes=0-1", "\"abc\"", "\"abc\"", lastModified));
+        assertNull(RangeResponses.effectiveRange("bytes=0-1", "\"old\"", "\"abc\"", lastModified));
+        assertNull(RangeResponses.effectiveRange("bytes=0-1", "W/\"abc\"", "\"abc\"", lastModified));
+        assertEquals("bytes=0-1", RangeResponses.effectiveRange("bytes=0-1",
+                "Tue, 14 Nov 2023 22:13:20 GMT", "\"abc\"", lastModified));
+        assertNull(RangeResponses.effectiveRange("bytes=0-1",
+                "Mon, 13 Nov 2023 22:13:20 GMT", "\"abc\"", lastModified));
+        assertEquals("bytes=0-1", RangeResponses.effectiveRange("bytes=0-1", null, "\"abc\"", lastModified));
+    }
+}
@@ -0,0 +1,142 @@
+package com.yuz.toplinks.service;
+
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import org.springframework.http.HttpHeaders;
+import software.amazon.awssdk.core.async.ResponsePublisher;
+import software.amazon.awssdk.core.async.SdkPublisher;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 验证非阻塞下载的背压：连接不可写时不写出、不向上游请求数据，可写后再继续；上游失败时结束请求。
+ */
+@ExtendWith(MockitoExtension.class)
+class AsyncDownloadServiceTest {
+
+    @Mock
+    private CloudflareStorageService storageService;
+
+    @Mock
+    private HttpServletRequest request;
+
+    @Mock
+    private HttpServletResponse response;
+
+    @Mock
+    private AsyncContext context;
+
+    @Mock
+    private ServletOutputStream out;
+
+    @Mock
+    private Subscription subscription;
+
+    private final AtomicBoolean ready = new AtomicBoolean(true);
+    private final AtomicReference<Subscriber<? super ByteBuffer>> subscriber = new AtomicReference<>();
+
+    private AsyncDownloadService service;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        when(storageService.isR2Enabled()).thenReturn(true);
+        service = new AsyncDownloadService(storageService, true, 60_000);
+        when(request.startAsync()).thenReturn(context);
+        when(response.getOutputStream()).thenReturn(out);
+        lenient().when(out.isReady()).thenAnswer(inv -> ready.get());
+    }
+
+    private WriteListener start(CompletableFuture<ResponsePublisher<GetObjectResponse>> future) throws IOException {
+        when(storageService.getObjectPublisher("files/a.bin", 0L, 9L)).thenReturn(future);
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentLength(10);
+        service.stream(request, response, "files/a.bin", 0L, 9L, 206, headers);
+
+        verify(response).setStatus(206);
+        verify(response).addHeader(HttpHeaders.CONTENT_LENGTH, "10");
+        ArgumentCaptor<WriteListener> listener = ArgumentCaptor.forClass(WriteListener.class);
+        verify(out).setWriteListener(listener.capture());
+        return listener.getValue();
+    }
+
+    private static CompletableFuture<ResponsePublisher<GetObjectResponse>> publisher(
+            AtomicReference<Subscriber<? super ByteBuffer>> target, Subscription subscription) {
+        SdkPublisher<ByteBuffer> body = s -> {
+            target.set(s);
+            s.onSubscribe(subscription);
+        };
+        return CompletableFuture.completedFuture(
+                new ResponsePublisher<>(GetObjectResponse.builder().build(), body));
+    }
+
+    @Test
+    void requestsNextChunkOnlyAfterPendingDataIsWritten() throws Exception {
+        WriteListener listener = start(publisher(subscriber, subscription));
+        verify(subscription, times(1)).request(1);
+        assertEquals(1, service.getStats().active());
+
+        // 客户端暂时不可写：数据留在手中，不再向上游请求
+        ready.set(false);
+        subscriber.get().onNext(ByteBuffer.wrap("01234".getBytes()));
+        verify(out, never()).write(any(byte[].class), anyInt(), anyInt());
+        verify(subscription, times(1)).request(1);
+
+        // 可写后写出并请求下一块
+        ready.set(true);
+        listener.onWritePossible();
+        verify(out).write(any(byte[].class), eq(0), eq(5));
+        verify(subscription, times(2)).request(1);
+
+        subscriber.get().onNext(ByteBuffer.wrap("56789".getBytes()));
+        subscriber.get().onComplete();
+        verify(context).complete();
+        assertEquals(0, service.getStats().active());
+        assertEquals(10, service.getStats().bytesWritten());
+        assertEquals(0, service.getStats().failed());
+    }
+
+    @Test
+    void upstreamFailureBeforeCommitAnswers500() throws Exception {
+        start(CompletableFuture.failedFuture(new IOException("no such key")));
+
+        verify(response).reset();
+        verify(response).setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+        verify(context).complete();
+        assertEquals(1, service.getStats().failed());
+        assertEquals(0, service.getStats().active());
+    }
+
+    @Test
+    void clientDisconnectCancelsUpstream() throws Exception {
+        start(publisher(subscriber, subscription));
+        ArgumentCaptor<AsyncListener> listener = ArgumentCaptor.forClass(AsyncListener.class);
+        verify(context).addListener(listener.capture());
+
+        listener.getValue().onError(new AsyncEvent(context, new IOException("Connection reset")));
+
+        verify(subscription).cancel();
+        assertEquals(0, service.getStats().active());
+    }
+}
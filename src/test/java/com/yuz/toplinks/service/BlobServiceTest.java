@@ -0,0 +1,116 @@
+package com.yuz.toplinks.service;
+
+import com.yuz.toplinks.entity.TlkBlob;
+import com.yuz.toplinks.mapper.TlkBlobMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.core.io.InputStreamSource;
+import org.springframework.dao.DuplicateKeyException;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * 验证内容寻址存储：重复内容不再写入存储，引用归零时才删除对象。
+ */
+@ExtendWith(MockitoExtension.class)
+class BlobServiceTest {
+
+    private static final String SHA = "d7a8fbb307d7809469ca9abcb0082e4f8d5651e46d3cdb762d02d0bf37c9e592";
+
+    @Mock
+    private TlkBlobMapper blobMapper;
+
+    @Mock
+    private CloudflareStorageService storageService;
+
+    @InjectMocks
+    private BlobService blobService;
+
+    private final InputStreamSource source = () -> new ByteArrayInputStream(new byte[]{1, 2, 3});
+
+    @Test
+    void duplicateContentReusesExistingBlobWithoutUpload() throws IOException {
+        TlkBlob existing = blob("blob-1", "blobs/" + SHA + "/blob-1.png", 1);
+        when(blobMapper.selectOne(any())).thenReturn(existing);
+        when(blobMapper.update(any(), any())).thenReturn(1);
+
+        TlkBlob result = blobService.acquire(SHA, 3, "png", "image/png", source);
+
+        assertSame(existing, result);
+        assertEquals(2, result.getRefCount());
+        verifyNoInteractions(storageService);
+        verify(blobMapper, never()).insert(any(TlkBlob.class));
+    }
+
+    @Test
+    void newContentIsUploadedUnderContentAddressedKey() throws IOException {
+        when(blobMapper.selectOne(any())).thenReturn(null);
+        when(storageService.upload(anyString(), any(), anyLong(), anyString())).thenReturn("https://cdn/x");
+
+        TlkBlob result = blobService.acquire(SHA, 3, "png", "image/png", source);
+
+        ArgumentCaptor<String> keyCaptor = ArgumentCaptor.forClass(String.class);
+        verify(storageService).upload(keyCaptor.capture(), any(), eq(3L), eq("image/png"));
+        assertTrue(keyCaptor.getValue().startsWith("blobs/" + SHA + "/"));
+        assertTrue(keyCaptor.getValue().endsWith(".png"));
+        assertEquals(keyCaptor.getValue(), result.getPath());
+        assertEquals(1, result.getRefCount());
+        verify(blobMapper).insert(result);
+    }
+
+    @Test
+    void concurrentInsertFallsBackToWinnerAndDeletesOwnObject() throws IOException {
+        TlkBlob winner = blob("blob-w", "blobs/" + SHA + "/blob-w.png", 1);
+        when(blobMapper.selectOne(any())).thenReturn(null, winner);
+        when(storageService.upload(anyString(), any(), anyLong(), anyString())).thenReturn("https://cdn/x");
+        when(blobMapper.insert(any(TlkBlob.class))).thenThrow(new DuplicateKeyException("dup"));
+        when(blobMapper.update(any(), any())).thenReturn(1);
+
+        TlkBlob result = blobService.acquire(SHA, 3, "png", "image/png", source);
+
+        assertSame(winner, result);
+        ArgumentCaptor<String> keyCaptor = ArgumentCaptor.forClass(String.class);
+        verify(storageService).upload(keyCaptor.capture(), any(), anyLong(), anyString());
+        verify(storageService).delete(keyCaptor.getValue());
+    }
+
+    @Test
+    void releaseDeletesObjectOnlyWhenLastReferenceIsGone() throws IOException {
+        String key = "blobs/" + SHA + "/blob-1.png";
+        when(blobMapper.delete(any())).thenReturn(0);
+        blobService.release(key);
+        verify(storageService, never()).delete(anyString());
+
+        when(blobMapper.delete(any())).thenReturn(1);
+        blobService.release(key);
+        verify(storageService).delete(key);
+    }
+
+    @Test
+    void releaseIgnoresNonBlobKeys() {
+        blobService.release("files/abc123.png");
+        verifyNoInteractions(blobMapper, storageService);
+    }
+
+    private static TlkBlob blob(String id, String path, int refCount) {
+        TlkBlob blob = new TlkBlob();
+        blob.setId(id);
+        blob.setHash(SHA);
+        blob.setSize(3L);
+        blob.setPath(path);
+        blob.setRefCount(refCount);
+        return blob;
+    }
+}
@@ -8,12 +8,21 @@ import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import software.amazon.awssdk.core.sync.RequestBody;
 import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadResponse;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadResponse;
 import software.amazon.awssdk.services.s3.model.PutObjectRequest;
 import software.amazon.awssdk.services.s3.model.PutObjectResponse;
+import software.amazon.awssdk.services.s3.model.UploadPartRequest;
+import software.amazon.awssdk.services.s3.model.UploadPartResponse;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.lang.reflect.Field;
+import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
@@ -71,6 +80,7 @@ class CloudflareStorageServiceTest {
         assertEquals("test-bucket", req.bucket());
         assertEquals("files/test.txt", req.key());
         assertEquals("text/plain", req.contentType());
+        assertEquals("public, max-age=31536000, immutable", req.cacheControl());
 
         // RequestBody built from bytes has a known content length equal to byte array length
         RequestBody body = bodyCaptor.getValue();
@@ -92,4 +102,84 @@ class CloudflareStorageServiceTest {
         assertEquals("/files/local.txt", url);
         verifyNoInteractions(s3Client);
     }
+
+    @Test
+    void rangeReadUsesRangedGetObjectOrPositionalLocalRead(@org.junit.jupiter.api.io.TempDir java.nio.file.Path dir)
+            throws IOException {
+        ArgumentCaptor<software.amazon.awssdk.services.s3.model.GetObjectRequest> captor =
+                ArgumentCaptor.forClass(software.amazon.awssdk.services.s3.model.GetObjectRequest.class);
+        when(s3Client.getObject(captor.capture())).thenReturn(null);
+        storageService.getInputStream("files/a.mp4", 100, 199);
+        assertEquals("bytes=100-199", captor.getValue().range());
+
+        java.nio.file.Files.writeString(dir.resolve("a.txt"), "0123456789");
+        when(localStorage.getFilePath("a.txt")).thenReturn(dir.resolve("a.txt"));
+        CloudflareStorageService disabled = new CloudflareStorageService("", "", "", "bucket", "", localStorage);
+        try (java.io.InputStream in = disabled.getInputStream("files/a.txt", 3, 6)) {
+            assertEquals("3456", new String(in.readAllBytes()));
+        }
+    }
+
+    @Test
+    void largeUploadUsesMultipartWithBoundedParts() throws Exception {
+        CloudflareStorageService multipart = multipartService();
+        when(s3Client.createMultipartUpload(any(CreateMultipartUploadRequest.class)))
+                .thenReturn(CreateMultipartUploadResponse.builder().uploadId("up-1").build());
+        when(s3Client.uploadPart(any(UploadPartRequest.class), any(RequestBody.class)))
+                .thenAnswer(inv -> UploadPartResponse.builder()
+                        .eTag("etag-" + inv.getArgument(0, UploadPartRequest.class).partNumber()).build());
+        when(s3Client.completeMultipartUpload(any(CompleteMultipartUploadRequest.class)))
+                .thenReturn(CompleteMultipartUploadResponse.builder().build());
+
+        int partSize = CloudflareStorageService.MIN_PART_SIZE;
+        byte[] content = new byte[partSize * 2 + 123];
+        String url = multipart.upload("files/big.bin", new ByteArrayInputStream(content), content.length,
+                "application/octet-stream");
+
+        ArgumentCaptor<UploadPartRequest> partCaptor = ArgumentCaptor.forClass(UploadPartRequest.class);
+        verify(s3Client, times(3)).uploadPart(partCaptor.capture(), any(RequestBody.class));
+        long total = partCaptor.getAllValues().stream().mapToLong(UploadPartRequest::contentLength).sum();
+        assertEquals(content.length, total);
+
+        ArgumentCaptor<CompleteMultipartUploadRequest> completeCaptor =
+                ArgumentCaptor.forClass(CompleteMultipartUploadRequest.class);
+        verify(s3Client).completeMultipartUpload(completeCaptor.capture());
+        List<CompletedPart> parts = completeCaptor.getValue().multipartUpload().parts();
+        assertEquals(3, parts.size());
+        for (int i = 0; i < parts.size(); i++) {
+            assertEquals(i + 1, parts.get(i).partNumber());
+            assertEquals("etag-" + (i + 1), parts.get(i).eTag());
+        }
+        verify(s3Client, never()).putObject(any(PutObjectRequest.class), any(RequestBody.class));
+        assertEquals("https://pub.example.com/files/big.bin", url);
+    }
+
+    @Test
+    void failedPartAbortsMultipartUpload() throws Exception {
+        CloudflareStorageService multipart = multipartService();
+        when(s3Client.createMultipartUpload(any(CreateMultipartUploadRequest.class)))
+                .thenReturn(CreateMultipartUploadResponse.builder().uploadId("up-2").build());
+        when(s3Client.uploadPart(any(UploadPartRequest.class), any(RequestBody.class)))
+                .thenThrow(new RuntimeException("boom"));
+
+        byte[] content = new byte[CloudflareStorageService.MIN_PART_SIZE * 2];
+        assertThrows(IOException.class, () -> multipart.upload("files/fail.bin",
+                new ByteArrayInputStream(content), content.length, "application/octet-stream"));
+
+        ArgumentCaptor<AbortMultipartUploadRequest> abortCaptor =
+                ArgumentCaptor.forClass(AbortMultipartUploadRequest.class);
+        verify(s3Client).abortMultipartUpload(abortCaptor.capture());
+        assertEquals("up-2", abortCaptor.getValue().uploadId());
+        verify(s3Client, never()).completeMultipartUpload(any(CompleteMultipartUploadRequest.class));
+    }
+
+    private CloudflareStorageService multipartService() throws Exception {
+        CloudflareStorageService service = new CloudflareStorageService(
+                "test-account", "test-access-key", "test-secret-key", "test-bucket",
+                "https://pub.example.com", CloudflareStorageService.MIN_PART_SIZE, 2, 3, localStorage);
+        Field field = CloudflareStorageService.class.getDeclaredField("s3Client");
+        field.setAccessible(true);
+        field.set(service, s3Client);
+        return service;
+    }
 }
@@ -0,0 +1,215 @@
+package com.yuz.toplinks.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 验证冷下载合并：并发读取只打开一次源流，读取者各自按自己的速度读完，
+ * 读取者全部离开后抓取被放弃时新读取者仍能读到完整内容，源失败时读取者收到异常，完成后结果转入磁盘缓存。
+ */
+@ExtendWith(MockitoExtension.class)
+class DownloadCoalescerTest {
+
+    private static final byte[] CONTENT = new byte[300_000];
+
+    static {
+        for (int i = 0; i < CONTENT.length; i++) CONTENT[i] = (byte) (i * 31);
+    }
+
+    @TempDir
+    Path dir;
+
+    @Mock
+    private CloudflareStorageService storageService;
+
+    private DownloadCoalescer coalescer;
+
+    @BeforeEach
+    void setUp() {
+        when(storageService.isR2Enabled()).thenReturn(true);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (coalescer != null) coalescer.shutdown();
+    }
+
+    private DownloadCoalescer coalescer(ObjectDiskCache cache) throws IOException {
+        coalescer = new DownloadCoalescer(storageService, cache, true, dir.resolve("inflight").toString(), 4,
+                1 << 30);
+        return coalescer;
+    }
+
+    @Test
+    void concurrentReadersShareOneSourceRead() throws Exception {
+        DownloadCoalescer coalescer = coalescer(null);
+        CountDownLatch gate = new CountDownLatch(1);
+        AtomicInteger opens = new AtomicInteger();
+        DownloadCoalescer.Source source = () -> {
+            opens.incrementAndGet();
+            return new GatedInputStream(new ByteArrayInputStream(CONTENT), gate);
+        };
+
+        InputStream first = coalescer.open("k", CONTENT.length, source);
+        InputStream second = coalescer.open("k", CONTENT.length, source);
+        InputStream third = coalescer.open("k", CONTENT.length, source);
+        gate.countDown();
+
+        // 第一个读取者读完时，其他读取者还没有读取任何字节
+        assertArrayEquals(CONTENT, first.readAllBytes());
+        assertArrayEquals(CONTENT, second.readAllBytes());
+        assertArrayEquals(CONTENT, third.readAllBytes());
+        first.close();
+        second.close();
+        third.close();
+
+        assertEquals(1, opens.get());
+        assertEquals(1, coalescer.getStats().fetches());
+        assertEquals(2, coalescer.getStats().joins());
+    }
+
+    @Test
+    void readerJoiningAfterOthersLeftKeepsTheFetch() throws Exception {
+        DownloadCoalescer coalescer = coalescer(null);
+        CountDownLatch gate = new CountDownLatch(1);
+        AtomicInteger opens = new AtomicInteger();
+        DownloadCoalescer.Source source = () -> {
+            opens.incrementAndGet();
+            return new GatedInputStream(new ByteArrayInputStream(CONTENT), gate);
+        };
+
+        coalescer.open("k", CONTENT.length, source).close();
+        try (InputStream second = coalescer.open("k", CONTENT.length, source)) {
+            gate.countDown();
+            assertArrayEquals(CONTENT, second.readAllBytes());
+        }
+
+        assertEquals(1, opens.get());
+        assertEquals(1, coalescer.getStats().joins());
+    }
+
+    @Test
+    void readerArrivingAsFetchIsAbandonedStillGetsFullContent() throws Exception {
+        DownloadCoalescer coalescer = coalescer(null);
+        CountDownLatch gate = new CountDownLatch(1);
+        DownloadCoalescer.Source source = () -> new GatedInputStream(new ByteArrayInputStream(CONTENT), gate);
+
+        coalescer.open("k", CONTENT.length, source).close();
+        // 唯一的读取者已离开，抓取在读到下一块时放弃；此时到达的读取者要么附加成功，要么等它结束后重新抓取
+        gate.countDown();
+        for (int i = 0; i < 20; i++) {
+            try (InputStream in = coalescer.open("k", CONTENT.length, source)) {
+                assertArrayEquals(CONTENT, in.readAllBytes());
+            }
+        }
+    }
+
+    @Test
+    void sourceFailureReachesReaders() throws Exception {
+        DownloadCoalescer coalescer = coalescer(null);
+        DownloadCoalescer.Source source = () -> new InputStream() {
+            private int count;
+
+            @Override
+            public int read() throws IOException {
+                if (count++ >= 1000) throw new IOException("connection reset");
+                return 1;
+            }
+        };
+
+        try (InputStream in = coalescer.open("k", CONTENT.length, source)) {
+            assertThrows(IOException.class, in::readAllBytes);
+        }
+    }
+
+    @Test
+    void completedFetchIsAdoptedByDiskCache() throws Exception {
+        ObjectDiskCache cache = new ObjectDiskCache(storageService, true, dir.resolve("cache").toString(),
+                1 << 20, 1 << 20);
+        DownloadCoalescer coalescer = coalescer(cache);
+
+        try (InputStream in = coalescer.open("k", CONTENT.length, () -> new ByteArrayInputStream(CONTENT))) {
+            assertArrayEquals(CONTENT, in.readAllBytes());
+        }
+
+        long deadline = System.currentTimeMillis() + 2000;
+        InputStream cached;
+        while ((cached = cache.open("k", 0, CONTENT.length - 1)) == null && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertNotNull(cached);
+        try (InputStream in = cached) {
+            assertTrue(Arrays.equals(CONTENT, in.readAllBytes()));
+        }
+    }
+
+    @Test
+    void fullReadsWithinCacheOrCoalescerLimitsStayShared() throws Exception {
+        ObjectDiskCache cache = new ObjectDiskCache(storageService, true, dir.resolve("cache").toString(),
+                1 << 20, 1000);
+        coalescer = new DownloadCoalescer(storageService, cache, true, dir.resolve("inflight").toString(), 4, 5000);
+        FileService cacheOnly = new FileServiceBuilder().storageService(storageService).diskCache(cache).build();
+        FileService both = new FileServiceBuilder()
+                .storageService(storageService)
+                .diskCache(cache)
+                .downloadCoalescer(coalescer)
+                .build();
+        com.yuz.toplinks.entity.TlkFile file = new com.yuz.toplinks.entity.TlkFile();
+
+        file.setSize(1000L);
+        assertTrue(cacheOnly.isFullReadShared(file));
+        file.setSize(4000L);
+        assertFalse(cacheOnly.isFullReadShared(file));
+        assertTrue(both.isFullReadShared(file));
+        file.setSize(6000L);
+        assertFalse(both.isFullReadShared(file));
+    }
+
+    /** 在闸门打开前阻塞读取，模拟尚未返回数据的 R2 连接。 */
+    private static final class GatedInputStream extends InputStream {
+        private final InputStream delegate;
+        private final CountDownLatch gate;
+
+        GatedInputStream(InputStream delegate, CountDownLatch gate) {
+            this.delegate = delegate;
+            this.gate = gate;
+        }
+
+        @Override
+        public int read() throws IOException {
+            await();
+            return delegate.read();
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            await();
+            return delegate.read(b, off, len);
+        }
+
+        private void await() throws IOException {
+            try {
+                if (!gate.await(5, TimeUnit.SECONDS)) throw new IOException("gate timeout");
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.yuz.toplinks.service;
+
+import com.yuz.toplinks.entity.BaseEntity;
+import com.yuz.toplinks.entity.TlkFile;
+import com.yuz.toplinks.mapper.TlkFileMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * 验证分类计数：首次读取时统计一次（冷启动的并发读取也只统计一次），之后由上传和删除事件维护，定期重新统计纠正偏差。
+ */
+@ExtendWith(MockitoExtension.class)
+class FileCounterServiceTest {
+
+    @Mock
+    private TlkFileMapper fileMapper;
+
+    private static Map<String, Object> row(String categoryId, long count) {
+        Map<String, Object> row = new HashMap<>();
+        row.put("CATEGORY_ID", categoryId);
+        row.put("FILE_COUNT", count);
+        return row;
+    }
+
+    private static TlkFile file(String categoryId) {
+        TlkFile file = new TlkFile();
+        file.setCategoryId(categoryId);
+        file.setStatus(BaseEntity.STATUS_ACTIVE);
+        return file;
+    }
+
+    @Test
+    void countsAreLoadedOnceAndMaintainedByEvents() {
+        when(fileMapper.selectMaps(any())).thenReturn(List.of(row("c1", 3), row("c2", 5), row(null, 2)));
+        FileCounterService counters = new FileCounterService(fileMapper, 0);
+
+        assertEquals(10, counters.count(null));
+        assertEquals(3, counters.count("c1"));
+        assertEquals(0, counters.count("missing"));
+
+        counters.onFileStored(new FileStoredEvent(file("c1")));
+        counters.onFileStored(new FileStoredEvent(file("c3")));
+        counters.onFileDeleted(new FileDeletedEvent(file("c2")));
+
+        assertEquals(4, counters.count("c1"));
+        assertEquals(4, counters.count("c2"));
+        assertEquals(11, counters.count(""));
+        assertEquals(Map.of("c1", 4L, "c2", 4L, "c3", 1L), counters.getCounts());
+        verify(fileMapper, times(1)).selectMaps(any());
+    }
+
+    @Test
+    void concurrentColdReadsCountOnce() throws Exception {
+        CountDownLatch querying = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(fileMapper.selectMaps(any())).thenAnswer(inv -> {
+            querying.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return List.of(row("c1", 3));
+        });
+        FileCounterService counters = new FileCounterService(fileMapper, 0);
+        ExecutorService readers = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Long>> results = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                results.add(readers.submit(() -> counters.count("c1")));
+            }
+            assertTrue(querying.await(5, TimeUnit.SECONDS));
+            release.countDown();
+            for (Future<Long> result : results) {
+                assertEquals(3L, result.get(5, TimeUnit.SECONDS));
+            }
+        } finally {
+            readers.shutdownNow();
+        }
+        verify(fileMapper, times(1)).selectMaps(any());
+    }
+
+    @Test
+    void inactiveFilesAreIgnored() {
+        when(fileMapper.selectMaps(any())).thenReturn(List.of(row("c1", 1)));
+        FileCounterService counters = new FileCounterService(fileMapper, 0);
+        TlkFile inactive = file("c1");
+        inactive.setStatus(BaseEntity.STATUS_INACTIVE);
+
+        counters.onFileDeleted(new FileDeletedEvent(inactive));
+
+        assertEquals(1, counters.count("c1"));
+    }
+
+    @Test
+    void reconcileCorrectsDrift() {
+        when(fileMapper.selectMaps(any())).thenReturn(List.of(row("c1", 3)));
+        FileCounterService counters = new FileCounterService(fileMapper, 0);
+        counters.reconcile();
+        counters.onFileStored(new FileStoredEvent(file("c1")));
+
+        // 另一个实例删除了两个文件
+        when(fileMapper.selectMaps(any())).thenReturn(List.of(row("c1", 2)));
+        counters.reconcile();
+
+        assertEquals(2, counters.count("c1"));
+        assertEquals(2, counters.getStats().lastDrift());
+        counters.onFileStored(new FileStoredEvent(file("c1")));
+        assertEquals(3, counters.count("c1"));
+    }
+
+    @Test
+    void emptiedCategoryDropsToZero() {
+        when(fileMapper.selectMaps(any())).thenReturn(List.of(row("c1", 1)));
+        FileCounterService counters = new FileCounterService(fileMapper, 0);
+        counters.reconcile();
+
+        when(fileMapper.selectMaps(any())).thenReturn(List.of());
+        counters.reconcile();
+
+        assertEquals(0, counters.count("c1"));
+        assertEquals(0, counters.count(null));
+    }
+}
@@ -0,0 +1,141 @@
+package com.yuz.toplinks.service;
+
+import com.yuz.toplinks.entity.TlkFile;
+import com.yuz.toplinks.mapper.TlkFileMapper;
+import jakarta.servlet.http.HttpServletRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.*;
+
+/**
+ * 验证批量上传：存储写入并发执行，记录一次批量插入，单个文件失败只影响自身结果。
+ */
+@ExtendWith(MockitoExtension.class)
+class FileServiceBatchUploadTest {
+
+    @Mock
+    private TlkFileMapper fileMapper;
+
+    @Mock
+    private CloudflareStorageService storageService;
+
+    @Mock
+    private CategoryService categoryService;
+
+    @Mock
+    private UidAllocator uidAllocator;
+
+    @Mock
+    private HttpServletRequest request;
+
+    private ExecutorService executor;
+    private FileService fileService;
+
+    @BeforeEach
+    void setUp() {
+        executor = Executors.newFixedThreadPool(2);
+        fileService = new FileServiceBuilder()
+                .fileMapper(fileMapper)
+                .storageService(storageService)
+                .categoryService(categoryService)
+                .uidAllocator(uidAllocator)
+                .batchExecutor(executor)
+                .build();
+        when(request.getRemoteAddr()).thenReturn("127.0.0.1");
+        when(uidAllocator.next(anyInt())).thenAnswer(inv -> IntStream.range(0, inv.<Integer>getArgument(0))
+                .mapToObj(i -> "uid000" + i).toList());
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void storedFilesAreInsertedInOneBatch() throws Exception {
+        when(storageService.upload(anyString(), any(), anyLong(), anyString()))
+                .thenAnswer(inv -> "/files/" + CloudflareStorageService.localName(inv.getArgument(0)));
+
+        List<MultipartFile> files = List.of(
+                new MockMultipartFile("files", "a.txt", "text/plain", "aaa".getBytes()),
+                new MockMultipartFile("files", "b.png", "image/png", "bbb".getBytes()));
+
+        List<BatchUploadResult> results = fileService.uploadBatch(files, "user-1", "cat-001", request);
+
+        assertEquals(2, results.size());
+        assertTrue(results.stream().allMatch(BatchUploadResult::success));
+        assertEquals("a.txt", results.get(0).name());
+        assertEquals("b.png", results.get(1).name());
+        assertNotEquals(results.get(0).uid(), results.get(1).uid());
+
+        ArgumentCaptor<Collection<TlkFile>> captor = ArgumentCaptor.forClass(Collection.class);
+        verify(fileMapper).insert(captor.capture());
+        assertEquals(2, captor.getValue().size());
+        verify(fileMapper, never()).insert(any(TlkFile.class));
+        verify(storageService, times(2)).upload(anyString(), any(), anyLong(), anyString());
+    }
+
+    @Test
+    void emptyFileFailsWithoutAffectingOthers() throws Exception {
+        when(storageService.upload(anyString(), any(), anyLong(), anyString())).thenReturn("/files/x.txt");
+
+        List<MultipartFile> files = List.of(
+                new MockMultipartFile("files", "empty.txt", "text/plain", new byte[0]),
+                new MockMultipartFile("files", "ok.txt", "text/plain", "ok".getBytes()));
+
+        List<BatchUploadResult> results = fileService.uploadBatch(files, "user-1", "cat-001", request);
+
+        assertFalse(results.get(0).success());
+        assertEquals("File is empty", results.get(0).error());
+        assertTrue(results.get(1).success());
+        verify(storageService, times(1)).upload(startsWith("files/"), any(), anyLong(), anyString());
+    }
+
+    @Test
+    void storageFailureIsReportedWithoutInternalDetails() throws Exception {
+        when(storageService.upload(anyString(), any(), anyLong(), anyString()))
+                .thenThrow(new java.io.IOException("PUT https://acct.r2.cloudflarestorage.com/bucket/files/x.txt: 503"));
+
+        List<BatchUploadResult> results = fileService.uploadBatch(
+                List.of(new MockMultipartFile("files", "a.txt", "text/plain", "aaa".getBytes())),
+                "user-1", "cat-001", request);
+
+        assertFalse(results.get(0).success());
+        assertEquals("Failed to store file", results.get(0).error());
+        verify(fileMapper, never()).insert(anyCollection());
+    }
+
+    @Test
+    void failedBatchInsertRemovesStoredObjects() throws Exception {
+        when(storageService.upload(anyString(), any(), anyLong(), anyString())).thenReturn("/files/x.txt");
+        doThrow(new RuntimeException("db down")).when(fileMapper).insert(anyCollection());
+
+        List<BatchUploadResult> results = fileService.uploadBatch(
+                List.of(new MockMultipartFile("files", "a.txt", "text/plain", "aaa".getBytes())),
+                "user-1", "cat-001", request);
+
+        assertFalse(results.get(0).success());
+        verify(storageService).delete(startsWith("files/"));
+    }
+}
@@ -0,0 +1,87 @@
+package com.yuz.toplinks.service;
+
+import com.yuz.toplinks.mapper.TlkFileMapper;
+import org.springframework.context.ApplicationEventPublisher;
+
+import java.util.concurrent.ExecutorService;
+
+import static org.mockito.Mockito.mock;
+
+/**
+ * 测试用的 {@link FileService} 构造器：未指定的依赖使用 Mockito mock，
+ * 其方法默认返回 null / false，相当于对应的可选功能（异步上传、磁盘缓存、下载合并、分层存储）未启用。
+ */
+public final class FileServiceBuilder {
+
+    private TlkFileMapper fileMapper = mock(TlkFileMapper.class);
+    private CloudflareStorageService storageService = mock(CloudflareStorageService.class);
+    private CategoryService categoryService = mock(CategoryService.class);
+    private UidAllocator uidAllocator = mock(UidAllocator.class);
+    private BlobService blobService = mock(BlobService.class);
+    private UploadReplicationService replicationService = mock(UploadReplicationService.class);
+    private ObjectDiskCache diskCache = mock(ObjectDiskCache.class);
+    private DownloadCoalescer downloadCoalescer = mock(DownloadCoalescer.class);
+    private TieredStorageService tieredStorage = mock(TieredStorageService.class);
+    private ApplicationEventPublisher eventPublisher = mock(ApplicationEventPublisher.class);
+    private ExecutorService batchExecutor = mock(ExecutorService.class);
+
+    public FileServiceBuilder fileMapper(TlkFileMapper fileMapper) {
+        this.fileMapper = fileMapper;
+        return this;
+    }
+
+    public FileServiceBuilder storageService(CloudflareStorageService storageService) {
+        this.storageService = storageService;
+        return this;
+    }
+
+    public FileServiceBuilder categoryService(CategoryService categoryService) {
+        this.categoryService = categoryService;
+        return this;
+    }
+
+    public FileServiceBuilder uidAllocator(UidAllocator uidAllocator) {
+        this.uidAllocator = uidAllocator;
+        return this;
+    }
+
+    public FileServiceBuilder blobService(BlobService blobService) {
+        this.blobService = blobService;
+        return this;
+    }
+
+    public FileServiceBuilder replicationService(UploadReplicationService replicationService) {
+        this.replicationService = replicationService;
+        return this;
+    }
+
+    public FileServiceBuilder diskCache(ObjectDiskCache diskCache) {
+        this.diskCache = diskCache;
+        return this;
+    }
+
+    public FileServiceBuilder downloadCoalescer(DownloadCoalescer downloadCoalescer) {
+        this.downloadCoalescer = downloadCoalescer;
+        return this;
+    }
+
+    public FileServiceBuilder tieredStorage(TieredStorageService tieredStorage) {
+        this.tieredStorage = tieredStorage;
+        return this;
+    }
+
+    public FileServiceBuilder eventPublisher(ApplicationEventPublisher eventPublisher) {
+        this.eventPublisher = eventPublisher;
+        return this;
+    }
+
+    public FileServiceBuilder batchExecutor(ExecutorService batchExecutor) {
+        this.batchExecutor = batchExecutor;
+        return this;
+    }
+
+    public FileService build() {
+        return new FileService(fileMapper, storageService, categoryService, uidAllocator, blobService,
+                replicationService, diskCache, downloadCoalescer, tieredStorage, eventPublisher, batchExecutor);
+    }
+}
@@ -0,0 +1,102 @@
+package com.yuz.toplinks.service;
+
+import com.yuz.toplinks.entity.TlkBlob;
+import com.yuz.toplinks.entity.TlkFile;
+import com.yuz.toplinks.mapper.TlkFileMapper;
+import jakarta.servlet.http.HttpServletRequest;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.lang.reflect.Field;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+/**
+ * 验证秒传预检：命中时直接创建新记录并共享存储对象，不经过存储写入。
+ */
+@ExtendWith(MockitoExtension.class)
+class FileServiceInstantUploadTest {
+
+    private static final String SHA = "d7a8fbb307d7809469ca9abcb0082e4f8d5651e46d3cdb762d02d0bf37c9e592";
+
+    @Mock
+    private TlkFileMapper fileMapper;
+
+    @Mock
+    private CloudflareStorageService storageService;
+
+    @Mock
+    private CategoryService categoryService;
+
+    @Mock
+    private BlobService blobService;
+
+    @Mock
+    private UidAllocator uidAllocator;
+
+    @Mock
+    private HttpServletRequest request;
+
+    private FileService fileService;
+
+    @BeforeEach
+    void enableDedup() throws Exception {
+        fileService = new FileServiceBuilder()
+                .fileMapper(fileMapper)
+                .storageService(storageService)
+                .categoryService(categoryService)
+                .blobService(blobService)
+                .uidAllocator(uidAllocator)
+                .build();
+        Field field = FileService.class.getDeclaredField("dedupEnabled");
+        field.setAccessible(true);
+        field.set(fileService, true);
+    }
+
+    @Test
+    void hitCreatesRecordSharingExistingBlob() {
+        TlkFile match = new TlkFile();
+        match.setHash("md5hash");
+        match.setPath("blobs/" + SHA + "/b1.png");
+        TlkBlob blob = new TlkBlob();
+        blob.setPath(match.getPath());
+        blob.setCloudUrl("https://cdn/blobs/x.png");
+        when(fileMapper.selectOne(any())).thenReturn(match);
+        when(uidAllocator.next()).thenReturn("aB3xY9k");
+        when(blobService.reuse(SHA, 42L)).thenReturn(blob);
+        when(request.getRemoteAddr()).thenReturn("127.0.0.1");
+
+        TlkFile created = fileService.instantUpload(SHA, 42L, "photo.png", "user-1", "cat-001", request);
+
+        assertNotNull(created);
+        assertEquals(match.getPath(), created.getPath());
+        assertEquals("md5hash", created.getHash());
+        assertEquals("photo.png", created.getName());
+        assertEquals("aB3xY9k", created.getUid());
+        verify(fileMapper).insert(created);
+        verifyNoInteractions(storageService);
+    }
+
+    @Test
+    void missReturnsNullWithoutTouchingBlobs() {
+        when(fileMapper.selectOne(any())).thenReturn(null);
+
+        assertNull(fileService.instantUpload(SHA, 42L, "photo.png", "user-1", null, request));
+        verifyNoInteractions(blobService);
+        verify(fileMapper, never()).insert(any(TlkFile.class));
+    }
+
+    @Test
+    void malformedHashIsRejected() throws Exception {
+        assertNull(fileService.instantUpload("not-a-hash", 42L, "photo.png", "user-1", null, request));
+        verifyNoInteractions(fileMapper, blobService);
+        verify(storageService, never()).upload(anyString(), any(), anyLong(), anyString());
+    }
+}
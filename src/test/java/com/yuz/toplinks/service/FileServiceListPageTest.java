@@ -0,0 +1,113 @@
+package com.yuz.toplinks.service;
+
+import com.baomidou.mybatisplus.core.conditions.Wrapper;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.yuz.toplinks.entity.TlkFile;
+import com.yuz.toplinks.mapper.TlkFileMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * 验证首页 keyset 分页：游标编码、按 (create_time, id) 定位的查询不带 OFFSET、前后翻页的游标。
+ */
+@ExtendWith(MockitoExtension.class)
+class FileServiceListPageTest {
+
+    @Mock
+    private TlkFileMapper fileMapper;
+
+    private FileService fileService;
+
+    @BeforeEach
+    void setUp() {
+        fileService = new FileServiceBuilder().fileMapper(fileMapper).build();
+    }
+
+    private static TlkFile file(String id, long time) {
+        TlkFile file = new TlkFile();
+        file.setId(id);
+        file.setCreateTime(new Date(time));
+        return file;
+    }
+
+    /** 按时间倒序的 n 行，从 newest 开始。 */
+    private static List<TlkFile> rows(int n, long newest) {
+        List<TlkFile> rows = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            rows.add(file("id-" + (newest - i), newest - i));
+        }
+        return rows;
+    }
+
+    @SuppressWarnings("unchecked")
+    private QueryWrapper<TlkFile> captureQuery() {
+        ArgumentCaptor<Wrapper<TlkFile>> query = ArgumentCaptor.forClass(Wrapper.class);
+        verify(fileMapper).selectList(query.capture());
+        return (QueryWrapper<TlkFile>) query.getValue();
+    }
+
+    @Test
+    void cursorRoundTripsAndRejectsGarbage() {
+        FileCursor cursor = new FileCursor(1_700_000_000_000L, "0b6f7c1e-aaaa-bbbb-cccc-123456789abc");
+        assertEquals(cursor, FileCursor.decode(cursor.encode()));
+        assertNull(FileCursor.decode("not-base64!"));
+        assertNull(FileCursor.decode("bm9jb2xvbg"));
+        assertNull(FileCursor.decode(null));
+    }
+
+    @Test
+    void afterCursorSeeksWithoutOffset() {
+        when(fileMapper.selectList(any())).thenReturn(rows(3, 100));
+
+        FilePage page = fileService.listPage("cat-1", new FileCursor(101, "id-101"), false, 2);
+
+        QueryWrapper<TlkFile> query = captureQuery();
+        String sql = query.getCustomSqlSegment();
+        assertTrue(sql.contains("create_time <"), sql);
+        assertTrue(sql.contains("ORDER BY create_time DESC,id DESC"), sql);
+        assertTrue(sql.endsWith("LIMIT 3"), sql);
+        assertFalse(sql.contains("OFFSET"), sql);
+        assertEquals(List.of("id-100", "id-99"), page.files().stream().map(TlkFile::getId).toList());
+        assertEquals(new FileCursor(99, "id-99"), FileCursor.decode(page.nextCursor()));
+        assertEquals(new FileCursor(100, "id-100"), FileCursor.decode(page.prevCursor()));
+    }
+
+    @Test
+    void beforeCursorReadsAscendingAndReverses() {
+        // 游标之前只剩两行更新的文件：这是最新的一页，没有上一页
+        when(fileMapper.selectList(any())).thenReturn(List.of(file("id-51", 51), file("id-52", 52)));
+
+        FilePage page = fileService.listPage(null, new FileCursor(50, "id-50"), true, 2);
+
+        String sql = captureQuery().getCustomSqlSegment();
+        assertTrue(sql.contains("create_time >"), sql);
+        assertTrue(sql.contains("ORDER BY create_time ASC,id ASC"), sql);
+        assertEquals(List.of("id-52", "id-51"), page.files().stream().map(TlkFile::getId).toList());
+        assertNull(page.prevCursor());
+        assertEquals(new FileCursor(51, "id-51"), FileCursor.decode(page.nextCursor()));
+    }
+
+    @Test
+    void numberedPageHasNextCursorOnlyWhenMoreRowsExist() {
+        when(fileMapper.selectList(any())).thenReturn(rows(2, 10));
+
+        FilePage page = fileService.listPage(null, 1, 2);
+
+        assertTrue(captureQuery().getCustomSqlSegment().endsWith("LIMIT 3 OFFSET 0"));
+        assertNull(page.nextCursor());
+        assertNull(page.prevCursor());
+        assertEquals(2, page.files().size());
+    }
+}
@@ -0,0 +1,43 @@
+package com.yuz.toplinks.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 验证 HashingInputStream 在单次读取中计算出与整体计算一致的 MD5 / SHA-256。
+ */
+class HashingInputStreamTest {
+
+    private static final byte[] CONTENT = "The quick brown fox jumps over the lazy dog".getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    void computesMd5WhileStreaming() throws IOException {
+        ByteArrayOutputStream sink = new ByteArrayOutputStream();
+        try (HashingInputStream in = new HashingInputStream(new ByteArrayInputStream(CONTENT), false)) {
+            in.transferTo(sink);
+            assertEquals("9e107d9d372bb6826bd81d3542a419d6", in.md5Hex());
+            assertNull(in.sha256Hex());
+            assertEquals(CONTENT.length, in.getCount());
+        }
+        assertArrayEquals(CONTENT, sink.toByteArray());
+    }
+
+    @Test
+    void computesSha256WhenEnabled() throws IOException {
+        try (HashingInputStream in = new HashingInputStream(new ByteArrayInputStream(CONTENT), true)) {
+            // Mix single-byte and bulk reads
+            assertEquals('T', in.read());
+            in.readNBytes(5);
+            in.skip(3);
+            in.readAllBytes();
+            assertEquals("9e107d9d372bb6826bd81d3542a419d6", in.md5Hex());
+            assertEquals("d7a8fbb307d7809469ca9abcb0082e4f8d5651e46d3cdb762d02d0bf37c9e592", in.sha256Hex());
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package com.yuz.toplinks.service;
+
+import com.yuz.toplinks.entity.TlkFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * 验证按需缩放：白名单校验、派生对象复用、并发请求只生成一次、删除原对象时清理派生对象。
+ */
+@ExtendWith(MockitoExtension.class)
+class ImageVariantServiceTest {
+
+    @Mock
+    private CloudflareStorageService storageService;
+
+    @Mock
+    private FileService fileService;
+
+    private ImageVariantService service(int maxConcurrent) {
+        return new ImageVariantService(storageService, fileService, true, "640,320", "jpg,png",
+                0.8f, 50L * 1024 * 1024, maxConcurrent, 5_000);
+    }
+
+    private static TlkFile image() {
+        TlkFile file = new TlkFile();
+        file.setUid("abc123");
+        file.setName("photo.png");
+        file.setExt("png");
+        file.setPath("files/abc123.png");
+        file.setSize(1000L);
+        return file;
+    }
+
+    private static byte[] png(int width, int height) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB), "png", out);
+        return out.toByteArray();
+    }
+
+    @Test
+    void onlyWhitelistedSizesAndFormats() {
+        ImageVariantService service = service(1);
+        assertTrue(service.isAllowed(640, "jpg"));
+        assertTrue(service.isAllowed(320, "JPEG"));
+        assertTrue(service.isAllowed(320, "png"));
+        assertFalse(service.isAllowed(500, "jpg"));
+        assertFalse(service.isAllowed(640, "webp"));
+        assertEquals(java.util.List.of(320, 640), service.getWidths());
+        assertEquals("files/abc123.w640.jpg", ImageVariantService.variantKey("files/abc123.png", 640, "jpeg"));
+    }
+
+    @Test
+    void existingVariantIsReadFromStorage() throws IOException {
+        when(storageService.exists("files/abc123.w320.jpg")).thenReturn(true);
+        when(storageService.getInputStream("files/abc123.w320.jpg"))
+                .thenAnswer(inv -> new ByteArrayInputStream(new byte[] {1, 2, 3}));
+        ImageVariantService service = service(1);
+
+        service.open(image(), 320, "jpg");
+        ImageVariantService.Variant variant = service.open(image(), 320, "jpg");
+
+        assertEquals("image/jpeg", variant.contentType());
+        // 第二次命中已知键，不再向存储确认
+        verify(storageService, times(1)).exists(any());
+        verify(fileService, never()).openStream(any());
+        assertEquals(2, service.getStats().hits());
+    }
+
+    @Test
+    void concurrentRequestsGenerateOnce() throws Exception {
+        byte[] original = png(2000, 1000);
+        CountDownLatch opened = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(storageService.exists(any())).thenReturn(false);
+        when(fileService.openStream(any())).thenAnswer(inv -> {
+            opened.countDown();
+            release.await();
+            return new ByteArrayInputStream(original);
+        });
+        ImageVariantService service = service(2);
+
+        ExecutorService pool = Executors.newFixedThreadPool(3);
+        try {
+            Future<ImageVariantService.Variant> first = pool.submit(() -> service.open(image(), 640, "jpg"));
+            opened.await();
+            Future<ImageVariantService.Variant> second = pool.submit(() -> service.open(image(), 640, "jpg"));
+            Future<ImageVariantService.Variant> third = pool.submit(() -> service.open(image(), 640, "jpg"));
+            while (service.getStats().joins() < 2) {
+                Thread.sleep(5);
+            }
+            release.countDown();
+
+            BufferedImage resized = ImageIO.read(first.get().body());
+            assertEquals(640, resized.getWidth());
+            assertEquals(320, resized.getHeight());
+            assertEquals(first.get().length(), second.get().length());
+            assertEquals(first.get().length(), third.get().length());
+        } finally {
+            pool.shutdownNow();
+        }
+        verify(fileService, times(1)).openStream(any());
+        verify(storageService, times(1)).upload(eq("files/abc123.w640.jpg"), any(), anyLong(), eq("image/jpeg"));
+        assertEquals(1, service.getStats().generated());
+        assertEquals(0, service.getStats().inFlight());
+    }
+
+    @Test
+    void busyWhenNoResizeSlotIsFree() throws Exception {
+        CountDownLatch opened = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(storageService.exists(any())).thenReturn(false);
+        when(fileService.openStream(any())).thenAnswer(inv -> {
+            opened.countDown();
+            release.await();
+            return new ByteArrayInputStream(png(10, 10));
+        });
+        ImageVariantService service = new ImageVariantService(storageService, fileService, true, "320,640",
+                "jpg", 0.8f, 50L * 1024 * 1024, 1, 50);
+
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        try {
+            Future<ImageVariantService.Variant> first = pool.submit(() -> service.open(image(), 640, "jpg"));
+            opened.await();
+            assertThrows(ImageVariantService.BusyException.class, () -> service.open(image(), 320, "jpg"));
+            release.countDown();
+            assertNotNull(first.get().body());
+        } finally {
+            pool.shutdownNow();
+        }
+        assertEquals(1, service.getStats().rejected());
+    }
+
+    @Test
+    void deletingOriginalRemovesVariants() throws IOException {
+        service(1).onObjectDeleted(new StoredObjectDeletedEvent("files/abc123.png"));
+        verify(storageService).delete("files/abc123.w320.jpg");
+        verify(storageService).delete("files/abc123.w640.png");
+        verify(storageService, times(4)).delete(any());
+    }
+}
@@ -0,0 +1,212 @@
+package com.yuz.toplinks.service;
+
+import com.baomidou.mybatisplus.core.conditions.Wrapper;
+import com.yuz.toplinks.entity.TlkFile;
+import com.yuz.toplinks.mapper.TlkFileMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.cache.CacheManager;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * 验证 MOBI 服务端解析：PalmDOC 与 HUFF/CDIC 解压、记录末尾附加数据的剥离、按分页标记切分为片段。
+ */
+@ExtendWith(MockitoExtension.class)
+class MobiBookServiceTest {
+
+    @Mock
+    private TlkFileMapper fileMapper;
+
+    @Mock
+    private CloudflareStorageService storageService;
+
+    @Mock
+    private FileService fileService;
+
+    @Mock
+    private CacheManager cacheManager;
+
+    /** 构造一个 Palm Database：记录 0 为 PalmDOC + MOBI 头，其后为文本记录和附加记录。 */
+    private static byte[] book(int compression, int extraFlags, int huffRecord, int huffCount, byte[]... records)
+            throws IOException {
+        int textRecords = records.length - huffCount;
+        ByteBuffer rec0 = ByteBuffer.allocate(0x100);
+        rec0.putShort(0, (short) compression);
+        rec0.putShort(8, (short) textRecords);
+        rec0.put(16, "MOBI".getBytes(StandardCharsets.US_ASCII));
+        rec0.putInt(0x14, 0xE8);
+        rec0.putInt(0x1C, 65001);
+        rec0.putInt(0x68, 6);
+        rec0.putInt(0x70, huffRecord);
+        rec0.putInt(0x74, huffCount);
+        rec0.putShort(0xF2, (short) extraFlags);
+
+        int count = records.length + 1;
+        int offset = 78 + count * 8 + 2;
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteBuffer header = ByteBuffer.allocate(78 + count * 8 + 2);
+        header.putShort(76, (short) count);
+        header.putInt(78, offset);
+        offset += rec0.capacity();
+        for (int i = 0; i < records.length; i++) {
+            header.putInt(78 + (i + 1) * 8, offset);
+            offset += records[i].length;
+        }
+        out.write(header.array());
+        out.write(rec0.array());
+        for (byte[] record : records) {
+            out.write(record);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] concat(byte[]... parts) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            out.write(part);
+        }
+        return out.toByteArray();
+    }
+
+    @Test
+    void palmDocDecompression() throws IOException {
+        // "abc" 字面量 + 回溯 3 字节复制 3 字节 + 空格与字符的组合字节
+        byte[] compressed = {'a', 'b', 'c', (byte) 0x80, 0x18, (byte) 0xC1, 2, (byte) 0xE9, '!'};
+        assertEquals("abcabc Aé!", new String(MobiParser.decompressPalmDoc(compressed, 4096), StandardCharsets.ISO_8859_1));
+    }
+
+    @Test
+    void palmDocBookWithTrailingEntries() throws IOException {
+        // 每条记录末尾附加一个 2 字节的 trailing entry（flags 第 1 位）
+        byte[] first = concat("<html><body><p>Chapter one</p>".getBytes(StandardCharsets.US_ASCII),
+                new byte[] {(byte) 0xAA, (byte) 0x82});
+        byte[] second = concat("<mbp:pagebreak/><p>Chapter two</p></body></html>".getBytes(StandardCharsets.US_ASCII),
+                new byte[] {(byte) 0xAA, (byte) 0x82});
+        String text = MobiParser.extractText(book(MobiParser.COMPRESSION_PALMDOC, 0b10, 0, 0, first, second), 1 << 20);
+
+        assertEquals("<html><body><p>Chapter one</p><mbp:pagebreak/><p>Chapter two</p></body></html>", text);
+        assertEquals(List.of("<p>Chapter one</p>", "<p>Chapter two</p>"), MobiBookService.split(text, 1000));
+    }
+
+    /** 构造一本 HUFF/CDIC 压缩的书。码表：所有码长为 8 的终结码，字节 k 对应字典第 k 个短语。 */
+    private static byte[] huffBook(byte[][] phrases, boolean[] literal, byte[] text) throws IOException {
+        ByteBuffer huff = ByteBuffer.allocate(24 + 256 * 4 + 64 * 4);
+        huff.put("HUFF".getBytes(StandardCharsets.US_ASCII)).putInt(0x18).putInt(24).putInt(24 + 1024);
+        for (int b = 0; b < 256; b++) {
+            huff.putInt(24 + b * 4, 8 | 0x80 | ((b + b) << 8));
+        }
+        ByteArrayOutputStream entries = new ByteArrayOutputStream();
+        ByteBuffer table = ByteBuffer.allocate(phrases.length * 2);
+        for (int i = 0; i < phrases.length; i++) {
+            table.putShort((short) (phrases.length * 2 + entries.size()));
+            int blen = phrases[i].length | (literal[i] ? 0x8000 : 0);
+            entries.write(blen >> 8);
+            entries.write(blen);
+            entries.write(phrases[i]);
+        }
+        ByteBuffer cdicHeader = ByteBuffer.allocate(16);
+        cdicHeader.put("CDIC".getBytes(StandardCharsets.US_ASCII)).putInt(0x10).putInt(phrases.length).putInt(8);
+        byte[] cdic = concat(cdicHeader.array(), table.array(), entries.toByteArray());
+        return book(MobiParser.COMPRESSION_HUFF, 0, 2, 2, text, huff.array(), cdic);
+    }
+
+    @Test
+    void huffCdicBook() throws IOException {
+        // 短语 2 本身是压缩数据（引用短语 0 和 1），首次使用时展开
+        byte[][] phrases = {"Hello".getBytes(StandardCharsets.US_ASCII), ", world".getBytes(StandardCharsets.US_ASCII),
+                {0, 1}};
+        String decoded = MobiParser.extractText(huffBook(phrases, new boolean[] {true, true, false}, new byte[] {2, 1, 0}),
+                1 << 20);
+        assertEquals("Hello, world, worldHello", decoded);
+    }
+
+    @Test
+    void decompressionBombsAreRejected() throws IOException {
+        // PalmDOC：字面量后接 500 个"回溯 1 字节复制 10 字节"，解压后超过 4096 字节的记录大小
+        ByteArrayOutputStream palm = new ByteArrayOutputStream();
+        palm.write('a');
+        for (int i = 0; i < 500; i++) {
+            palm.write(0x80);
+            palm.write(0x0F);
+        }
+        assertThrows(MobiParser.MobiFormatException.class,
+                () -> MobiParser.decompressPalmDoc(palm.toByteArray(), 4096));
+
+        // HUFF：每层短语引用上一层短语 8 次，展开后的长度按层指数增长
+        byte[][] phrases = new byte[6][];
+        boolean[] literal = new boolean[6];
+        phrases[0] = "x".repeat(64).getBytes(StandardCharsets.US_ASCII);
+        literal[0] = true;
+        for (int level = 1; level < phrases.length; level++) {
+            phrases[level] = new byte[8];
+            java.util.Arrays.fill(phrases[level], (byte) (level - 1));
+        }
+        byte[] bomb = huffBook(phrases, literal, new byte[] {5});
+        assertThrows(MobiParser.MobiFormatException.class, () -> MobiParser.extractText(bomb, 1L << 40));
+
+        // 全书文本上限
+        byte[] plain = book(MobiParser.COMPRESSION_NONE, 0, 0, 0, "text".getBytes(StandardCharsets.US_ASCII));
+        assertThrows(MobiParser.MobiFormatException.class, () -> MobiParser.extractText(plain, 3));
+    }
+
+    @Test
+    void encryptedBookIsRejected() throws IOException {
+        byte[] bytes = book(MobiParser.COMPRESSION_NONE, 0, 0, 0, "text".getBytes(StandardCharsets.US_ASCII));
+        bytes[78 + 2 * 8 + 2 + 12 + 1] = 2; // 记录 0 的 encryption 字段
+        assertThrows(MobiParser.MobiFormatException.class, () -> MobiParser.extractText(bytes, 1 << 20));
+    }
+
+    @Test
+    void longSectionsSplitAtParagraphs() {
+        String html = "<p>" + "a".repeat(60) + "</p><p>" + "b".repeat(60) + "</p><p>" + "c".repeat(10) + "</p>";
+        List<String> chunks = MobiBookService.split(html, 100);
+        assertEquals(2, chunks.size());
+        assertEquals("<p>" + "a".repeat(60) + "</p>", chunks.get(0));
+        assertTrue(chunks.get(1).startsWith("<p>b"));
+        assertEquals(html, String.join("", chunks));
+
+        // 纯文本转义后按段落包装
+        assertEquals(List.of("<p>a &lt; b</p>\n<p>c</p>"), MobiBookService.split("a < b\n\nc", 1000));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void processStoresChunksAndRecordsCount() throws IOException {
+        byte[] bytes = book(MobiParser.COMPRESSION_NONE, 0, 0, 0,
+                "<p>One</p><mbp:pagebreak /><p>Two</p>".getBytes(StandardCharsets.US_ASCII));
+        TlkFile file = new TlkFile();
+        file.setUid("abc123");
+        file.setExt("mobi");
+        file.setPath("files/abc123.mobi");
+        file.setSize((long) bytes.length);
+        when(fileService.openStream(file)).thenReturn(new ByteArrayInputStream(bytes));
+        MobiBookService service = new MobiBookService(fileMapper, storageService, fileService, cacheManager,
+                true, 1000, 100, 1024 * 1024, 1024 * 1024, 1, 10);
+        service.process(file);
+
+        verify(storageService).upload(eq("files/abc123.c1.html"), any(), anyLong(), eq("text/html; charset=utf-8"));
+        ArgumentCaptor<InputStream> body = ArgumentCaptor.forClass(InputStream.class);
+        verify(storageService).upload(eq("files/abc123.c2.html"), body.capture(), anyLong(), any());
+        String chunk = new String(body.getValue().readAllBytes(), StandardCharsets.UTF_8);
+        assertTrue(chunk.contains("<p>Two</p>"));
+        assertTrue(chunk.startsWith("<!DOCTYPE html>"));
+        verify(fileMapper).update(isNull(), any(Wrapper.class));
+        assertEquals(1, service.getStats().parsed());
+    }
+}
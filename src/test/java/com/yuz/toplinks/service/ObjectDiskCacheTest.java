@@ -0,0 +1,107 @@
+package com.yuz.toplinks.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 验证磁盘缓存：完整读取后才写入、LRU 按字节预算淘汰、中途关闭不留残缺文件、重启后恢复索引。
+ */
+@ExtendWith(MockitoExtension.class)
+class ObjectDiskCacheTest {
+
+    @TempDir
+    Path cacheDir;
+
+    @Mock
+    private CloudflareStorageService storageService;
+
+    @BeforeEach
+    void setUp() {
+        when(storageService.isR2Enabled()).thenReturn(true);
+    }
+
+    private ObjectDiskCache cache(long maxBytes) throws IOException {
+        return new ObjectDiskCache(storageService, true, cacheDir.toString(), maxBytes, maxBytes);
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String drain(InputStream in) throws IOException {
+        try (in) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    @Test
+    void fullReadFillsCacheAndLaterReadsHit() throws IOException {
+        ObjectDiskCache cache = cache(100);
+        assertNull(cache.open("k1", 0, 9));
+
+        assertEquals("0123456789", drain(cache.fillThrough("k1", 10, new ByteArrayInputStream(bytes("0123456789")))));
+
+        assertEquals("0123456789", drain(cache.open("k1", 0, 9)));
+        assertEquals("345", drain(cache.open("k1", 3, 5)));
+        ObjectDiskCache.Stats stats = cache.getStats();
+        assertEquals(2, stats.hits());
+        assertEquals(1, stats.misses());
+        assertEquals(13, stats.bytesServed());
+        assertEquals(10, stats.usedBytes());
+    }
+
+    @Test
+    void abortedReadLeavesNoEntry() throws IOException {
+        ObjectDiskCache cache = cache(100);
+        InputStream in = cache.fillThrough("k1", 10, new ByteArrayInputStream(bytes("0123456789")));
+        in.read(new byte[4]);
+        in.close();
+
+        assertNull(cache.open("k1", 0, 9));
+        try (Stream<Path> files = Files.list(cacheDir)) {
+            assertEquals(0, files.count());
+        }
+    }
+
+    @Test
+    void leastRecentlyUsedIsEvictedOverBudget() throws IOException {
+        ObjectDiskCache cache = cache(25);
+        drain(cache.fillThrough("a", 10, new ByteArrayInputStream(bytes("aaaaaaaaaa"))));
+        drain(cache.fillThrough("b", 10, new ByteArrayInputStream(bytes("bbbbbbbbbb"))));
+        drain(cache.open("a", 0, 9));
+        drain(cache.fillThrough("c", 10, new ByteArrayInputStream(bytes("cccccccccc"))));
+
+        assertNotNull(cache.open("a", 0, 0));
+        assertNull(cache.open("b", 0, 0));
+        assertNotNull(cache.open("c", 0, 0));
+        assertEquals(1, cache.getStats().evictions());
+        assertEquals(20, cache.getStats().usedBytes());
+    }
+
+    @Test
+    void indexIsRecoveredOnRestart() throws IOException {
+        ObjectDiskCache first = cache(100);
+        drain(first.fillThrough("k1", 3, new ByteArrayInputStream(bytes("abc"))));
+        Files.writeString(cacheDir.resolve("leftover.tmp"), "partial");
+
+        ObjectDiskCache restarted = cache(100);
+        assertEquals("abc", drain(restarted.open("k1", 0, 2)));
+        assertEquals(1, restarted.getStats().entries());
+        assertFalse(Files.exists(cacheDir.resolve("leftover.tmp")));
+    }
+}
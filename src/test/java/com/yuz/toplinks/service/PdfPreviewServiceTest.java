@@ -0,0 +1,203 @@
+package com.yuz.toplinks.service;
+
+import com.baomidou.mybatisplus.core.conditions.Wrapper;
+import com.baomidou.mybatisplus.core.conditions.update.UpdateWrapper;
+import com.yuz.toplinks.entity.TlkFile;
+import com.yuz.toplinks.mapper.TlkFileMapper;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.cache.CacheManager;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * 验证 PDF 预览：渲染前几页为图片派生对象，超出时间预算时停止（卡住的渲染在截止时被放弃），无法解析的文档记录为无预览，
+ * 渲染线程占满时保持未处理。
+ */
+@ExtendWith(MockitoExtension.class)
+class PdfPreviewServiceTest {
+
+    @Mock
+    private TlkFileMapper fileMapper;
+
+    @Mock
+    private CloudflareStorageService storageService;
+
+    @Mock
+    private FileService fileService;
+
+    @Mock
+    private CacheManager cacheManager;
+
+    private final AtomicLong now = new AtomicLong();
+
+    private PdfPreviewService service(long timeBudgetMillis) {
+        return new PdfPreviewService(fileMapper, storageService, fileService, cacheManager, true, 3, 400, 0.8f,
+                10L * 1024 * 1024, 16L * 1024 * 1024, 4_000_000, timeBudgetMillis, 1, 10, now::get);
+    }
+
+    private static TlkFile pdf(long size) {
+        TlkFile file = new TlkFile();
+        file.setUid("abc123");
+        file.setName("doc.pdf");
+        file.setExt("pdf");
+        file.setPath("files/abc123.pdf");
+        file.setSize(size);
+        return file;
+    }
+
+    private static byte[] document(int pages) throws IOException {
+        try (PDDocument doc = new PDDocument()) {
+            for (int i = 0; i < pages; i++) {
+                doc.addPage(new PDPage(PDRectangle.A4));
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            doc.save(out);
+            return out.toByteArray();
+        }
+    }
+
+    @Test
+    void pageKeyReplacesExtension() {
+        assertEquals("files/abc.p1.jpg", PdfPreviewService.pageKey("files/abc.pdf", 1));
+        assertEquals("blobs/ff/id-1.p3.jpg", PdfPreviewService.pageKey("blobs/ff/id-1.pdf", 3));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void rendersFirstPagesAsImages() throws IOException {
+        byte[] bytes = document(5);
+        TlkFile file = pdf(bytes.length);
+        when(fileService.openStream(file)).thenReturn(new ByteArrayInputStream(bytes));
+        ArgumentCaptor<InputStream> body = ArgumentCaptor.forClass(InputStream.class);
+        when(storageService.upload(eq("files/abc123.p1.jpg"), body.capture(), anyLong(), eq("image/jpeg")))
+                .thenReturn("url");
+
+        PdfPreviewService service = service(60_000);
+        service.render(file);
+
+        verify(storageService).upload(eq("files/abc123.p2.jpg"), any(), anyLong(), eq("image/jpeg"));
+        verify(storageService).upload(eq("files/abc123.p3.jpg"), any(), anyLong(), eq("image/jpeg"));
+        verify(storageService, never()).upload(eq("files/abc123.p4.jpg"), any(), anyLong(), any());
+        BufferedImage page = ImageIO.read(body.getValue());
+        assertEquals(400, page.getWidth());
+        ArgumentCaptor<Wrapper<TlkFile>> update = ArgumentCaptor.forClass(Wrapper.class);
+        verify(fileMapper).update(isNull(), update.capture());
+        assertTrue(((UpdateWrapper<TlkFile>) update.getValue()).getSqlSet().contains("preview_pages"));
+        assertEquals(1, service.getStats().rendered());
+    }
+
+    @Test
+    void stopsWhenTimeBudgetIsExceeded() throws IOException {
+        byte[] bytes = document(3);
+        when(storageService.upload(any(), any(), anyLong(), any())).thenAnswer(inv -> {
+            now.addAndGet(10_000);
+            return "url";
+        });
+        PdfPreviewService service = service(5_000);
+        java.nio.file.Path source = java.nio.file.Files.createTempFile("pdf-preview-test-", ".pdf");
+        try {
+            java.nio.file.Files.write(source, bytes);
+            assertEquals(1, service.renderPages(source, "files/abc123.pdf"));
+        } finally {
+            java.nio.file.Files.deleteIfExists(source);
+        }
+        assertEquals(1, service.getStats().overBudget());
+    }
+
+    @Test
+    void hungRenderIsAbandonedAtTheDeadline() throws Exception {
+        PdfPreviewService service = service(60_000);
+        java.util.concurrent.CountDownLatch interrupted = new java.util.concurrent.CountDownLatch(1);
+        try {
+            assertTimeoutPreemptively(java.time.Duration.ofSeconds(5), () ->
+                    assertThrows(java.util.concurrent.TimeoutException.class, () -> service.renderWithin(() -> {
+                        try {
+                            Thread.sleep(60_000);
+                        } catch (InterruptedException e) {
+                            interrupted.countDown();
+                        }
+                        return null;
+                    }, now.get() + 200)));
+            assertTrue(interrupted.await(5, java.util.concurrent.TimeUnit.SECONDS));
+            assertEquals(1, service.getStats().abandoned());
+        } finally {
+            service.shutdown();
+        }
+    }
+
+    @Test
+    void busyRenderersLeaveTheFileUnprocessed() throws Exception {
+        byte[] bytes = document(2);
+        TlkFile file = pdf(bytes.length);
+        when(fileService.openStream(file)).thenReturn(new ByteArrayInputStream(bytes));
+        PdfPreviewService service = service(60_000);
+        // 占满两个渲染线程（workers=1 时上限为 2）
+        java.util.concurrent.CountDownLatch started = new java.util.concurrent.CountDownLatch(2);
+        java.util.concurrent.CountDownLatch release = new java.util.concurrent.CountDownLatch(1);
+        java.util.concurrent.ExecutorService callers = java.util.concurrent.Executors.newFixedThreadPool(2);
+        try {
+            for (int i = 0; i < 2; i++) {
+                callers.submit(() -> service.renderWithin(() -> {
+                    started.countDown();
+                    release.await();
+                    return null;
+                }, now.get() + 60_000));
+            }
+            assertTrue(started.await(5, java.util.concurrent.TimeUnit.SECONDS));
+
+            service.render(file);
+
+            verify(storageService, never()).upload(any(), any(), anyLong(), any());
+            verify(fileMapper, never()).update(isNull(), any());
+            assertEquals(1, service.getStats().skipped());
+            assertEquals(0, service.getStats().failed());
+        } finally {
+            release.countDown();
+            callers.shutdownNow();
+            service.shutdown();
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void unreadableDocumentIsRecordedAsNone() throws IOException {
+        TlkFile file = pdf(20);
+        when(fileService.openStream(file)).thenReturn(new ByteArrayInputStream("not a pdf at all".getBytes()));
+
+        PdfPreviewService service = service(60_000);
+        service.render(file);
+
+        verify(storageService, never()).upload(any(), any(), anyLong(), any());
+        verify(fileMapper).update(isNull(), any(Wrapper.class));
+        assertEquals(1, service.getStats().failed());
+    }
+
+    @Test
+    void pagePixelsAreCapped() {
+        PdfPreviewService service = service(60_000);
+        assertEquals(400 / PDRectangle.A4.getWidth(), service.scaleFor(PDRectangle.A4), 1e-4);
+        // 极长的页面按像素上限缩小
+        PDRectangle tall = new PDRectangle(100, 100_000);
+        float scale = service.scaleFor(tall);
+        assertTrue(100 * 100_000 * scale * scale <= 4_000_001);
+    }
+}
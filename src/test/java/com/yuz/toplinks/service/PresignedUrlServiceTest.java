@@ -0,0 +1,76 @@
+package com.yuz.toplinks.service;
+
+import com.yuz.toplinks.entity.TlkFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.*;
+
+/**
+ * 验证预签名下载地址：按 UID 和响应头缓存，在签名过期前提前失效，未推送到 R2 的文件不重定向。
+ */
+@ExtendWith(MockitoExtension.class)
+class PresignedUrlServiceTest {
+
+    @Mock
+    private CloudflareStorageService storageService;
+
+    private final AtomicLong now = new AtomicLong(1_000_000L);
+
+    private PresignedUrlService service(boolean enabled) {
+        lenient().when(storageService.isR2Enabled()).thenReturn(true);
+        return new PresignedUrlService(storageService, enabled, 300, now::get);
+    }
+
+    @Test
+    void urlIsCachedPerDispositionUntilShortlyBeforeExpiry() throws IOException {
+        PresignedUrlService service = service(true);
+        when(storageService.presignGetUrl(eq("files/abc123.pdf"), anyString(), any(), eq(Duration.ofSeconds(300))))
+                .thenReturn("https://r2/signed-1", "https://r2/signed-2", "https://r2/signed-3");
+
+        TlkFile file = file();
+        assertEquals("https://r2/signed-1", service.urlFor(file, "application/pdf", "attachment"));
+        assertEquals("https://r2/signed-1", service.urlFor(file, "application/pdf", "attachment"));
+        assertEquals("https://r2/signed-2", service.urlFor(file, "application/octet-stream", null));
+
+        // 300 秒有效期提前 30 秒失效
+        now.addAndGet(270_000);
+        assertEquals("https://r2/signed-3", service.urlFor(file, "application/pdf", "attachment"));
+        verify(storageService, times(3)).presignGetUrl(anyString(), anyString(), any(), any());
+    }
+
+    @Test
+    void pendingOrDisabledFilesAreProxied() throws IOException {
+        TlkFile pending = file();
+        pending.setStorageStatus(TlkFile.STORAGE_PENDING);
+        assertNull(service(true).urlFor(pending, "application/pdf", null));
+        assertNull(service(false).urlFor(file(), "application/pdf", null));
+        verify(storageService, never()).presignGetUrl(anyString(), anyString(), isNull(), any());
+    }
+
+    @Test
+    void presignFailureFallsBackToProxy() throws IOException {
+        PresignedUrlService service = service(true);
+        when(storageService.presignGetUrl(anyString(), anyString(), any(), any())).thenThrow(new IOException("boom"));
+        assertNull(service.urlFor(file(), "application/pdf", null));
+    }
+
+    private static TlkFile file() {
+        TlkFile file = new TlkFile();
+        file.setUid("abc123");
+        file.setPath("files/abc123.pdf");
+        file.setStorageStatus(TlkFile.STORAGE_SYNCED);
+        return file;
+    }
+}
@@ -0,0 +1,124 @@
+package com.yuz.toplinks.service;
+
+import com.yuz.toplinks.entity.TlkFile;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 验证页面缓存：压缩存取、过期后只允许一个请求重新渲染、上传删除时的失效范围，以及用户片段的拼接。
+ */
+class RenderedPageCacheTest {
+
+    private static final String PAGE = "<html><nav><!--user:template::userNav--><a>Login</a><!--/user--></nav>"
+            + "<main>files</main></html>";
+
+    private final AtomicLong now = new AtomicLong(1_000_000);
+    private final RenderedPageCache cache = new RenderedPageCache(true, 60_000, 10, now::get);
+
+    private static TlkFile file(String uid) {
+        TlkFile file = new TlkFile();
+        file.setUid(uid);
+        return file;
+    }
+
+    @Test
+    void storesCompressedPage() {
+        String key = RenderedPageCache.listingKey(null, "1", null, null);
+        assertTrue(cache.put(key, PAGE, cache.generation()));
+
+        RenderedPageCache.Entry entry = cache.get(key);
+        assertTrue(cache.isFresh(entry));
+        assertEquals(PAGE, entry.html());
+        assertEquals(PAGE, RenderedPageCache.gunzip(entry.gzip()));
+        assertNull(cache.get(RenderedPageCache.listingKey("c1", "1", null, null)));
+        assertEquals(1, cache.getStats().hits());
+        assertEquals(1, cache.getStats().misses());
+    }
+
+    @Test
+    void expiredEntryIsRefreshedByOneRequest() {
+        String key = RenderedPageCache.detailKey("abc");
+        cache.put(key, PAGE, cache.generation());
+        now.addAndGet(60_000);
+
+        RenderedPageCache.Entry entry = cache.get(key);
+        assertFalse(cache.isFresh(entry));
+        assertTrue(cache.tryRefresh(entry));
+        assertFalse(cache.tryRefresh(entry));
+        assertTrue(entry.isRefreshing());
+
+        cache.release(entry);
+        assertTrue(cache.tryRefresh(entry));
+    }
+
+    @Test
+    void uploadExpiresListingsButKeepsDetailPages() {
+        String listing = RenderedPageCache.listingKey("c1", null, null, null);
+        String detail = RenderedPageCache.detailKey("abc");
+        cache.put(listing, PAGE, cache.generation());
+        cache.put(detail, PAGE, cache.generation());
+
+        cache.onFileStored(new FileStoredEvent(file("new")));
+
+        RenderedPageCache.Entry stale = cache.get(listing);
+        assertNotNull(stale);
+        assertFalse(cache.isFresh(stale));
+        assertTrue(cache.isFresh(cache.get(detail)));
+    }
+
+    @Test
+    void deleteRemovesDetailPage() {
+        cache.put(RenderedPageCache.detailKey("abc"), PAGE, cache.generation());
+        cache.put(RenderedPageCache.detailKey("other"), PAGE, cache.generation());
+
+        cache.onFileDeleted(new FileDeletedEvent(file("abc")));
+
+        assertNull(cache.get(RenderedPageCache.detailKey("abc")));
+        assertNotNull(cache.get(RenderedPageCache.detailKey("other")));
+    }
+
+    @Test
+    void storeRemovesDetailPageOfSameUid() {
+        cache.put(RenderedPageCache.detailKey("abc"), PAGE, cache.generation());
+
+        cache.onFileStored(new FileStoredEvent(file("abc")));
+
+        assertNull(cache.get(RenderedPageCache.detailKey("abc")));
+    }
+
+    @Test
+    void renderOverlappingInvalidationIsNotStored() {
+        long generation = cache.generation();
+        cache.onFileStored(new FileStoredEvent(file("new")));
+
+        assertFalse(cache.put(RenderedPageCache.listingKey(null, null, null, null), PAGE, generation));
+        assertEquals(0, cache.getStats().entries());
+    }
+
+    @Test
+    void leastRecentlyUsedEntriesAreEvicted() {
+        for (int i = 0; i < 12; i++) {
+            cache.put(RenderedPageCache.detailKey("f" + i), PAGE, cache.generation());
+        }
+        assertEquals(10, cache.getStats().entries());
+        assertNull(cache.get(RenderedPageCache.detailKey("f0")));
+        assertNotNull(cache.get(RenderedPageCache.detailKey("f11")));
+    }
+
+    @Test
+    void spliceReplacesUserFragments() {
+        List<String> rendered = new ArrayList<>();
+        String html = RenderedPageCache.splice(PAGE, selector -> {
+            rendered.add(selector);
+            return "<a>Logout $1</a>";
+        });
+        assertEquals(List.of("template :: userNav"), rendered);
+        assertEquals("<html><nav><!--user:template::userNav--><a>Logout $1</a><!--/user--></nav>"
+                + "<main>files</main></html>", html);
+    }
+}
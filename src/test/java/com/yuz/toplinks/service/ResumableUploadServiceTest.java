@@ -0,0 +1,301 @@
+package com.yuz.toplinks.service;
+
+import com.yuz.toplinks.entity.TlkFile;
+import com.yuz.toplinks.entity.TlkUploadChunk;
+import com.yuz.toplinks.entity.TlkUploadSession;
+import com.yuz.toplinks.mapper.TlkUploadChunkMapper;
+import com.yuz.toplinks.mapper.TlkUploadSessionMapper;
+import jakarta.servlet.http.HttpServletRequest;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.*;
+
+/**
+ * 验证可续传上传：分片乱序写入后合并并带哈希登记文件；完成和清理须先认领会话，并发完成只有一个成功；
+ * 合并后登记失败时重试不再合并，清理时删除已合并的对象。
+ */
+@ExtendWith(MockitoExtension.class)
+class ResumableUploadServiceTest {
+
+    private static final byte[] CONTENT = "0123456789abcdefghij".getBytes(StandardCharsets.UTF_8);
+
+    @TempDir
+    Path uploadDir;
+
+    @Mock
+    private TlkUploadSessionMapper sessionMapper;
+
+    @Mock
+    private TlkUploadChunkMapper chunkMapper;
+
+    @Mock
+    private CloudflareStorageService storageService;
+
+    @Mock
+    private FileService fileService;
+
+    @Mock
+    private HttpServletRequest request;
+
+    private ResumableUploadService uploadService;
+    private final List<TlkUploadChunk> storedChunks = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() throws IOException {
+        uploadService = new ResumableUploadService(sessionMapper, chunkMapper, storageService,
+                new FileStorageService(uploadDir.toString()), fileService, 1024, 24);
+        lenient().when(storageService.getPartSize()).thenReturn(8);
+        lenient().when(storageService.isR2Enabled()).thenReturn(false);
+        lenient().when(fileService.allocateUid()).thenReturn("abc123");
+    }
+
+    @Test
+    void outOfOrderChunksAreAssembledAndRegistered() throws IOException {
+        when(chunkMapper.insert(any(TlkUploadChunk.class))).thenAnswer(inv -> {
+            storedChunks.add(inv.getArgument(0));
+            return 1;
+        });
+        when(chunkMapper.selectList(any())).thenAnswer(inv -> new ArrayList<>(storedChunks));
+        when(sessionMapper.update(isNull(), any())).thenReturn(1);
+        when(storageService.getPublicUrl("files/abc123.txt")).thenReturn("/files/abc123.txt");
+        when(fileService.registerUpload(anyString(), anyString(), anyLong(), anyString(), anyString(),
+                anyString(), isNull(), isNull(), isNull(), any())).thenReturn(new TlkFile());
+
+        TlkUploadSession session = uploadService.create("notes.txt", CONTENT.length, null, null);
+        assertEquals(3, session.getChunkCount());
+        assertEquals("files/abc123.txt", session.getPath());
+
+        putChunk(session, 2);
+        putChunk(session, 0);
+        assertEquals(List.of(1), uploadService.missingChunks(session));
+        assertThrows(IllegalStateException.class, () -> uploadService.complete(session, request));
+
+        putChunk(session, 1);
+        uploadService.complete(session, request);
+
+        assertArrayEquals(CONTENT, Files.readAllBytes(uploadDir.resolve("abc123.txt")));
+        ArgumentCaptor<String> hashCaptor = ArgumentCaptor.forClass(String.class);
+        verify(fileService).registerUpload(eq("notes.txt"), eq("abc123"), eq((long) CONTENT.length),
+                eq("files/abc123.txt"), eq("/files/abc123.txt"), hashCaptor.capture(), isNull(), isNull(), isNull(),
+                eq(request));
+        assertEquals(md5Hex(CONTENT), hashCaptor.getValue());
+        verify(sessionMapper).deleteById(session.getId());
+    }
+
+    @Test
+    void r2UploadIsHashedAfterAssembly() throws IOException {
+        when(storageService.isR2Enabled()).thenReturn(true);
+        when(storageService.createMultipartUpload(eq("files/abc123.txt"), anyString())).thenReturn("upload-1");
+        when(storageService.uploadPart(eq("files/abc123.txt"), eq("upload-1"), anyInt(), any(), anyLong()))
+                .thenAnswer(inv -> "etag-" + inv.getArgument(2));
+        when(chunkMapper.insert(any(TlkUploadChunk.class))).thenAnswer(inv -> {
+            storedChunks.add(inv.getArgument(0));
+            return 1;
+        });
+        when(chunkMapper.selectList(any())).thenAnswer(inv -> new ArrayList<>(storedChunks));
+        when(sessionMapper.update(isNull(), any())).thenReturn(1);
+        when(storageService.completeMultipartUpload(eq("files/abc123.txt"), eq("upload-1"), any()))
+                .thenReturn("https://cdn.example.com/files/abc123.txt");
+        when(storageService.getInputStream("files/abc123.txt")).thenReturn(new ByteArrayInputStream(CONTENT));
+        when(fileService.needsSha256()).thenReturn(true);
+
+        TlkUploadSession session = uploadService.create("notes.txt", CONTENT.length, null, null);
+        for (int i = 0; i < session.getChunkCount(); i++) {
+            putChunk(session, i);
+        }
+        uploadService.complete(session, request);
+
+        verify(fileService).registerUpload(eq("notes.txt"), eq("abc123"), eq((long) CONTENT.length),
+                eq("files/abc123.txt"), eq("https://cdn.example.com/files/abc123.txt"), eq(md5Hex(CONTENT)),
+                eq(sha256Hex(CONTENT)), isNull(), isNull(), eq(request));
+    }
+
+    @Test
+    void concurrentCompleteLosesTheClaim() throws IOException {
+        TlkUploadSession session = uploadService.create("notes.txt", CONTENT.length, null, null);
+        when(chunkMapper.selectList(any())).thenReturn(allChunks(session));
+        // 另一个请求已把会话从"上传中"改为"正在完成"，条件更新不命中
+        when(sessionMapper.update(isNull(), any())).thenReturn(0);
+
+        IllegalStateException e = assertThrows(IllegalStateException.class,
+                () -> uploadService.complete(session, request));
+
+        assertTrue(e.getMessage().contains("already being completed"));
+        verify(fileService, never()).registerUpload(any(), any(), anyLong(), any(), any(), any(), any(), any(),
+                any(), any());
+        verify(sessionMapper, never()).deleteById(anyString());
+        assertTrue(Files.exists(uploadDir.resolve(".sessions").resolve(session.getId() + ".part")));
+    }
+
+    @Test
+    void failedAssemblyReleasesTheClaim() throws IOException {
+        when(storageService.isR2Enabled()).thenReturn(true);
+        when(storageService.createMultipartUpload(eq("files/abc123.txt"), anyString())).thenReturn("upload-1");
+        TlkUploadSession session = uploadService.create("notes.txt", CONTENT.length, null, null);
+        when(chunkMapper.selectList(any())).thenReturn(allChunks(session));
+        when(sessionMapper.update(isNull(), any())).thenReturn(1);
+        when(storageService.completeMultipartUpload(eq("files/abc123.txt"), eq("upload-1"), any()))
+                .thenThrow(new IOException("R2 unavailable"));
+
+        assertThrows(IOException.class, () -> uploadService.complete(session, request));
+
+        verify(sessionMapper, times(2)).update(isNull(), any());
+        assertEquals(TlkUploadSession.STATUS_OPEN, session.getStatus());
+        assertNull(session.getCloudUrl());
+        verify(sessionMapper, never()).deleteById(anyString());
+    }
+
+    @Test
+    void failedHashReadAfterMultipartCompleteIsRetriedWithoutReassembling() throws IOException {
+        when(storageService.isR2Enabled()).thenReturn(true);
+        when(storageService.createMultipartUpload(eq("files/abc123.txt"), anyString())).thenReturn("upload-1");
+        TlkUploadSession session = uploadService.create("notes.txt", CONTENT.length, null, null);
+        when(chunkMapper.selectList(any())).thenReturn(allChunks(session));
+        when(sessionMapper.update(isNull(), any())).thenReturn(1);
+        when(storageService.completeMultipartUpload(eq("files/abc123.txt"), eq("upload-1"), any()))
+                .thenReturn("https://cdn.example.com/files/abc123.txt");
+        when(storageService.getInputStream("files/abc123.txt"))
+                .thenThrow(new IOException("read timed out"))
+                .thenReturn(new ByteArrayInputStream(CONTENT));
+        when(fileService.registerUpload(any(), any(), anyLong(), any(), any(), any(), any(), any(), any(), any()))
+                .thenReturn(new TlkFile());
+
+        assertThrows(IOException.class, () -> uploadService.complete(session, request));
+        assertEquals(TlkUploadSession.STATUS_STORED, session.getStatus());
+        assertEquals("https://cdn.example.com/files/abc123.txt", session.getCloudUrl());
+        verify(sessionMapper, never()).deleteById(anyString());
+
+        uploadService.complete(session, request);
+
+        // 分片上传已完成，重试不再合并，只重新读对象计算哈希并登记
+        verify(storageService, times(1)).completeMultipartUpload(any(), any(), any());
+        verify(fileService).registerUpload(eq("notes.txt"), eq("abc123"), eq((long) CONTENT.length),
+                eq("files/abc123.txt"), eq("https://cdn.example.com/files/abc123.txt"), eq(md5Hex(CONTENT)),
+                isNull(), isNull(), isNull(), eq(request));
+        verify(sessionMapper).deleteById(session.getId());
+    }
+
+    @Test
+    void failedInsertAfterLocalMoveIsRetriedFromTheStoredFile() throws IOException {
+        TlkUploadSession session = uploadService.create("notes.txt", CONTENT.length, null, null);
+        for (int i = 0; i < session.getChunkCount(); i++) {
+            putChunk(session, i);
+        }
+        when(chunkMapper.selectList(any())).thenReturn(allChunks(session));
+        when(sessionMapper.update(isNull(), any())).thenReturn(1);
+        when(storageService.getPublicUrl("files/abc123.txt")).thenReturn("/files/abc123.txt");
+        when(fileService.registerUpload(any(), any(), anyLong(), any(), any(), any(), any(), any(), any(), any()))
+                .thenThrow(new IllegalArgumentException("duplicate uid"))
+                .thenReturn(new TlkFile());
+
+        assertThrows(IllegalArgumentException.class, () -> uploadService.complete(session, request));
+        assertEquals(TlkUploadSession.STATUS_STORED, session.getStatus());
+        assertFalse(Files.exists(uploadDir.resolve(".sessions").resolve(session.getId() + ".part")));
+
+        uploadService.complete(session, request);
+
+        verify(fileService, times(2)).registerUpload(eq("notes.txt"), eq("abc123"), eq((long) CONTENT.length),
+                eq("files/abc123.txt"), eq("/files/abc123.txt"), eq(md5Hex(CONTENT)), isNull(), isNull(), isNull(),
+                eq(request));
+        verify(sessionMapper).deleteById(session.getId());
+    }
+
+    @Test
+    void purgeDeletesObjectOfStoredSession() throws IOException {
+        TlkUploadSession stored = new TlkUploadSession();
+        stored.setId("s-1");
+        stored.setUid("abc123");
+        stored.setPath("files/abc123.txt");
+        stored.setUploadId("upload-1");
+        stored.setStatus(TlkUploadSession.STATUS_STORED);
+        stored.setCloudUrl("https://cdn.example.com/files/abc123.txt");
+        when(sessionMapper.selectList(any())).thenReturn(List.of(stored));
+        when(sessionMapper.update(isNull(), any())).thenReturn(1);
+
+        uploadService.purgeExpired();
+
+        verify(storageService).delete("files/abc123.txt");
+        verify(storageService, never()).abortMultipartUpload(any(), any());
+        verify(sessionMapper).deleteById("s-1");
+    }
+
+    @Test
+    void purgeSkipsSessionsBeingCompleted() {
+        TlkUploadSession completing = new TlkUploadSession();
+        completing.setId("s-1");
+        completing.setStatus(TlkUploadSession.STATUS_COMPLETING);
+        completing.setUpdateTime(new java.util.Date());
+        TlkUploadSession stale = new TlkUploadSession();
+        stale.setId("s-2");
+        stale.setStatus(TlkUploadSession.STATUS_OPEN);
+        when(sessionMapper.selectList(any())).thenReturn(List.of(completing, stale));
+        when(sessionMapper.update(isNull(), any())).thenReturn(1);
+
+        uploadService.purgeExpired();
+
+        verify(sessionMapper, times(1)).update(isNull(), any());
+        verify(sessionMapper, never()).deleteById("s-1");
+        verify(sessionMapper).deleteById("s-2");
+    }
+
+    @Test
+    void chunkWithWrongLengthIsRejected() throws IOException {
+        TlkUploadSession session = uploadService.create("notes.txt", CONTENT.length, null, null);
+        assertThrows(IllegalArgumentException.class, () ->
+                uploadService.putChunk(session, 0, new ByteArrayInputStream(CONTENT), CONTENT.length));
+        assertThrows(IllegalArgumentException.class, () ->
+                uploadService.putChunk(session, 3, new ByteArrayInputStream(CONTENT), 4));
+    }
+
+    private void putChunk(TlkUploadSession session, int index) throws IOException {
+        int from = index * session.getChunkSize();
+        int to = Math.min(CONTENT.length, from + session.getChunkSize());
+        uploadService.putChunk(session, index, new ByteArrayInputStream(CONTENT, from, to - from), to - from);
+    }
+
+    private static List<TlkUploadChunk> allChunks(TlkUploadSession session) {
+        List<TlkUploadChunk> all = new ArrayList<>();
+        for (int i = 0; i < session.getChunkCount(); i++) {
+            TlkUploadChunk chunk = new TlkUploadChunk();
+            chunk.setChunkIndex(i);
+            chunk.setEtag("etag-" + (i + 1));
+            all.add(chunk);
+        }
+        return all;
+    }
+
+    private static String sha256Hex(byte[] data) throws IOException {
+        try (HashingInputStream in = new HashingInputStream(new ByteArrayInputStream(data), true)) {
+            in.readAllBytes();
+            return in.sha256Hex();
+        }
+    }
+
+    private static String md5Hex(byte[] data) throws IOException {
+        try (HashingInputStream in = new HashingInputStream(new ByteArrayInputStream(data), false)) {
+            in.readAllBytes();
+            return in.md5Hex();
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.yuz.toplinks.service;
+
+import com.yuz.toplinks.entity.TlkFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * 验证文本预览：只读取开头或结尾的区间，在整行处截断，并识别字符集。
+ */
+@ExtendWith(MockitoExtension.class)
+class TextPreviewServiceTest {
+
+    @Mock
+    private FileService fileService;
+
+    private TextPreviewService service() {
+        return new TextPreviewService(fileService, 1024, "GB18030");
+    }
+
+    private static TlkFile text(String ext, long size) {
+        TlkFile file = new TlkFile();
+        file.setUid("abc123");
+        file.setExt(ext);
+        file.setPath("files/abc123." + ext);
+        file.setSize(size);
+        return file;
+    }
+
+    /** 模拟区间读取：返回 content 中对应的字节。 */
+    private void serve(byte[] content) throws IOException {
+        when(fileService.openRange(any(), anyLong(), anyLong())).thenAnswer(inv -> {
+            long start = inv.getArgument(1);
+            long end = inv.getArgument(2);
+            return new ByteArrayInputStream(Arrays.copyOfRange(content, (int) start, (int) end + 1));
+        });
+    }
+
+    private static byte[] lines(int count, Charset charset) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 1; i <= count; i++) {
+            sb.append("第").append(i).append("行 line ").append(i).append('\n');
+        }
+        return sb.toString().getBytes(charset);
+    }
+
+    @Test
+    void headIsReadWithRangeAndCutAtLine() throws IOException {
+        byte[] content = lines(200, StandardCharsets.UTF_8);
+        serve(content);
+
+        TextPreviewService.TextPreview preview = service().preview(text("txt", content.length));
+
+        verify(fileService).openRange(any(), eq(0L), eq(1023L));
+        assertTrue(preview.truncated());
+        assertFalse(preview.tail());
+        assertEquals("UTF-8", preview.charset());
+        assertTrue(preview.text().startsWith("第1行 line 1\n"));
+        assertTrue(preview.text().endsWith("\n"));
+        assertTrue(new String(content, StandardCharsets.UTF_8).startsWith(preview.text()));
+    }
+
+    @Test
+    void logsShowTheEnd() throws IOException {
+        byte[] content = lines(200, StandardCharsets.UTF_8);
+        serve(content);
+
+        TextPreviewService.TextPreview preview = service().preview(text("log", content.length));
+
+        verify(fileService).openRange(any(), eq(content.length - 1024L), eq(content.length - 1L));
+        assertTrue(preview.tail());
+        assertTrue(preview.text().endsWith("第200行 line 200\n"));
+        assertTrue(preview.text().startsWith("第"));
+    }
+
+    @Test
+    void gbkTextFallsBackToGb18030() throws IOException {
+        byte[] content = lines(5, Charset.forName("GB18030"));
+        serve(content);
+
+        TextPreviewService.TextPreview preview = service().preview(text("txt", content.length));
+
+        assertFalse(preview.truncated());
+        assertEquals("GB18030", preview.charset());
+        assertTrue(preview.text().startsWith("第1行"));
+    }
+
+    @Test
+    void bomIsHonoredAndPartialCharacterDropped() {
+        byte[] utf16 = "\uFEFFhello".getBytes(StandardCharsets.UTF_16LE);
+        assertEquals("hello", service().decode(utf16, false, false).text());
+
+        // 没有换行的长行被切在多字节字符中间
+        byte[] head = Arrays.copyOf("ab中".getBytes(StandardCharsets.UTF_8), 4);
+        TextPreviewService.TextPreview preview = service().decode(head, true, false);
+        assertEquals("UTF-8", preview.charset());
+        assertEquals("ab", preview.text());
+    }
+
+    @Test
+    void nonTextFilesAreNotPreviewed() throws IOException {
+        assertNull(service().preview(text("pdf", 100)));
+        verifyNoInteractions(fileService);
+    }
+}
@@ -0,0 +1,125 @@
+package com.yuz.toplinks.service;
+
+import com.baomidou.mybatisplus.core.conditions.Wrapper;
+import com.yuz.toplinks.entity.TlkFile;
+import com.yuz.toplinks.mapper.TlkFileMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.cache.CacheManager;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * 验证缩略图生成：按比例缩小到固定尺寸以内并写入派生键，无法解码的图片记录为无缩略图。
+ */
+@ExtendWith(MockitoExtension.class)
+class ThumbnailServiceTest {
+
+    @Mock
+    private TlkFileMapper fileMapper;
+
+    @Mock
+    private CloudflareStorageService storageService;
+
+    @Mock
+    private FileService fileService;
+
+    @Mock
+    private CacheManager cacheManager;
+
+    private ThumbnailService service(boolean enabled) {
+        return new ThumbnailService(fileMapper, storageService, fileService, cacheManager,
+                enabled, 400, 0.85f, 50L * 1024 * 1024, 1, 10, false, 1, 0, 100);
+    }
+
+    private static TlkFile image(String path, String ext, long size) {
+        TlkFile file = new TlkFile();
+        file.setUid("abc123");
+        file.setName("photo." + ext);
+        file.setExt(ext);
+        file.setPath(path);
+        file.setSize(size);
+        return file;
+    }
+
+    private static byte[] png(int width, int height) throws IOException {
+        BufferedImage img = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = img.createGraphics();
+        g.setColor(Color.RED);
+        g.fillRect(0, 0, width / 2, height);
+        g.dispose();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(img, "png", out);
+        return out.toByteArray();
+    }
+
+    @Test
+    void thumbKeyReplacesExtension() {
+        assertEquals("files/abc.thumb.jpg", ThumbnailService.thumbKey("files/abc.png"));
+        assertEquals("blobs/ff/id-1.thumb.jpg", ThumbnailService.thumbKey("blobs/ff/id-1.jpeg"));
+        assertEquals("files/noext.thumb.jpg", ThumbnailService.thumbKey("files/noext"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void generatesBoundedJpegBesideOriginal() throws IOException {
+        byte[] original = png(2400, 1200);
+        TlkFile file = image("files/abc123.png", "png", original.length);
+        when(fileService.openStream(file)).thenReturn(new ByteArrayInputStream(original));
+        ArgumentCaptor<InputStream> body = ArgumentCaptor.forClass(InputStream.class);
+        when(storageService.upload(eq("files/abc123.thumb.jpg"), body.capture(), anyLong(), eq("image/jpeg")))
+                .thenReturn("https://pub.example.com/files/abc123.thumb.jpg");
+
+        ThumbnailService service = service(true);
+        service.generate(file);
+
+        BufferedImage thumb = ImageIO.read(body.getValue());
+        assertEquals(400, thumb.getWidth());
+        assertEquals(200, thumb.getHeight());
+        verify(fileMapper).update(isNull(), any(Wrapper.class));
+        assertEquals(1, service.getStats().generated());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void undecodableImageIsRecordedAsNone() throws IOException {
+        TlkFile file = image("files/abc123.svg", "svg", 100);
+
+        service(true).generate(file);
+
+        verify(fileService, never()).openStream(any());
+        verify(storageService, never()).upload(any(), any(), anyLong(), any());
+        verify(fileMapper).update(isNull(), any(Wrapper.class));
+    }
+
+    @Test
+    void subsamplingKeepsTwiceTheTarget() {
+        assertEquals(1, ImageScaler.subsampling(800, 600, 400, 400));
+        assertEquals(5, ImageScaler.subsampling(4000, 4000, 400, 400));
+        assertEquals(4, ImageScaler.subsampling(8000, 3200, 400, 400));
+    }
+
+    @Test
+    void nonImageUploadsAreIgnored() {
+        TlkFile file = image("files/abc123.pdf", "pdf", 100);
+        service(true).onFileStored(new FileStoredEvent(file));
+        service(false).onFileStored(new FileStoredEvent(image("files/abc123.png", "png", 100)));
+        verifyNoInteractions(fileMapper, fileService, storageService);
+    }
+}
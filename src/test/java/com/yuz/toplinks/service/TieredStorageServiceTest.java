@@ -0,0 +1,141 @@
+package com.yuz.toplinks.service;
+
+import com.yuz.toplinks.entity.TlkFile;
+import com.yuz.toplinks.mapper.TlkFileMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.cache.CacheManager;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * 验证冷热分层：高频冷对象被提升到热层，闲置热对象被移出，热层容量受限，启动时按记录重建索引。
+ */
+@ExtendWith(MockitoExtension.class)
+class TieredStorageServiceTest {
+
+    private static final byte[] CONTENT = "0123456789".getBytes();
+
+    @TempDir
+    Path hotDir;
+
+    @Mock
+    private TlkFileMapper fileMapper;
+
+    @Mock
+    private CloudflareStorageService coldStorage;
+
+    @Mock
+    private CacheManager cacheManager;
+
+    private final AtomicLong now = new AtomicLong(1_000_000);
+    private TieredStorageService tiered;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        when(coldStorage.isR2Enabled()).thenReturn(true);
+        tiered = new TieredStorageService(fileMapper, coldStorage, cacheManager, true, hotDir,
+                1000, 500, true, 2, 10_000, 60_000, now::get);
+    }
+
+    private static TlkFile file(String path, long size) {
+        TlkFile file = new TlkFile();
+        file.setPath(path);
+        file.setSize(size);
+        file.setUid("u-" + path.hashCode());
+        return file;
+    }
+
+    @Test
+    void frequentlyReadColdObjectIsPromoted() throws IOException {
+        assertNull(tiered.open("files/a.bin", null, null));
+        assertNull(tiered.open("files/a.bin", 0L, 4L));
+        // 从中间开始的区间读取不计为一次访问
+        assertNull(tiered.open("files/b.bin", 5L, 9L));
+        assertNull(tiered.open("files/b.bin", 5L, 9L));
+
+        when(fileMapper.selectOne(any())).thenReturn(file("files/a.bin", CONTENT.length));
+        when(coldStorage.getInputStream("files/a.bin")).thenReturn(new ByteArrayInputStream(CONTENT));
+        tiered.migrate();
+
+        assertTrue(tiered.isHot("files/a.bin"));
+        assertFalse(tiered.isHot("files/b.bin"));
+        verify(fileMapper).update(isNull(), any());
+        try (InputStream in = tiered.open("files/a.bin", 2L, 5L)) {
+            assertEquals("2345", new String(in.readAllBytes()));
+        }
+        assertEquals(1, tiered.getStats().promotions());
+        assertEquals(1, tiered.getStats().hotReads());
+    }
+
+    @Test
+    void idleHotObjectIsDemoted() {
+        assertTrue(tiered.admitUpload("files/new.bin", () -> new ByteArrayInputStream(CONTENT), CONTENT.length));
+        assertTrue(tiered.isHot("files/new.bin"));
+        assertTrue(Files.exists(hotDir.resolve("new.bin")));
+
+        tiered.migrate();
+        assertTrue(tiered.isHot("files/new.bin"));
+
+        now.addAndGet(20_000);
+        tiered.migrate();
+        assertFalse(tiered.isHot("files/new.bin"));
+        assertFalse(Files.exists(hotDir.resolve("new.bin")));
+        assertEquals(0, tiered.getStats().hotBytes());
+        assertEquals(1, tiered.getStats().demotions());
+    }
+
+    @Test
+    void admissionRespectsCapacity() {
+        assertFalse(tiered.admitUpload("files/huge.bin", () -> new ByteArrayInputStream(new byte[600]), 600));
+        assertTrue(tiered.admitUpload("files/a.bin", () -> new ByteArrayInputStream(new byte[400]), 400));
+        assertTrue(tiered.admitUpload("files/b.bin", () -> new ByteArrayInputStream(new byte[400]), 400));
+        assertFalse(tiered.admitUpload("files/c.bin", () -> new ByteArrayInputStream(new byte[400]), 400));
+        assertEquals(800, tiered.getStats().hotBytes());
+
+        tiered.discard("files/a.bin");
+        assertEquals(400, tiered.getStats().hotBytes());
+        assertTrue(tiered.admitUpload("files/c.bin", () -> new ByteArrayInputStream(new byte[400]), 400));
+    }
+
+    @Test
+    void recoveryRebuildsIndexFromRecords() throws IOException {
+        Files.write(hotDir.resolve("kept.bin"), CONTENT);
+        Files.write(hotDir.resolve("orphan.bin"), CONTENT);
+        when(fileMapper.selectList(any())).thenReturn(
+                List.of(file("files/kept.bin", CONTENT.length), file("files/lost.bin", CONTENT.length)));
+
+        tiered.recover();
+
+        assertTrue(tiered.isHot("files/kept.bin"));
+        assertFalse(tiered.isHot("files/lost.bin"));
+        assertEquals(CONTENT.length, tiered.getStats().hotBytes());
+        assertFalse(Files.exists(hotDir.resolve("orphan.bin")));
+        // 文件已丢失的记录改回冷层
+        verify(fileMapper, times(1)).update(isNull(), any());
+    }
+
+    @Test
+    void disabledWithoutR2() throws IOException {
+        when(coldStorage.isR2Enabled()).thenReturn(false);
+        TieredStorageService disabled = new TieredStorageService(fileMapper, coldStorage, cacheManager, true,
+                hotDir, 1000, 500, true, 2, 10_000, 60_000, now::get);
+        assertFalse(disabled.isEnabled());
+        assertNull(disabled.open("files/a.bin", null, null));
+        assertFalse(disabled.admitUpload("files/a.bin", () -> new ByteArrayInputStream(CONTENT), CONTENT.length));
+    }
+}
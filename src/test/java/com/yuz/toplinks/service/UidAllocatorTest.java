@@ -0,0 +1,102 @@
+package com.yuz.toplinks.service;
+
+import com.yuz.toplinks.entity.TlkSequence;
+import com.yuz.toplinks.mapper.TlkSequenceMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * 验证访问码分配：序号置换是双射、编码长度随码空间增长，号段以条件更新预留且用完前不访问数据库。
+ */
+@ExtendWith(MockitoExtension.class)
+class UidAllocatorTest {
+
+    @Mock
+    private TlkSequenceMapper sequenceMapper;
+
+    private static TlkSequence sequence(long nextValue) {
+        TlkSequence seq = new TlkSequence();
+        seq.setId(UidAllocator.SEQUENCE);
+        seq.setNextValue(nextValue);
+        return seq;
+    }
+
+    @Test
+    void permutationIsBijective() {
+        long[] keys = UidAllocator.deriveKeys("test");
+        for (long domain : new long[] { 1000, 62 * 62, 4096 }) {
+            Set<Long> seen = new HashSet<>();
+            for (long i = 0; i < domain; i++) {
+                long p = UidAllocator.permute(i, domain, keys);
+                assertTrue(p >= 0 && p < domain);
+                assertTrue(seen.add(p), "duplicate image for " + i);
+            }
+        }
+    }
+
+    @Test
+    void consecutiveSequencesGiveDistinctScrambledCodes() {
+        UidAllocator allocator = new UidAllocator(sequenceMapper, 7, 100, "test");
+        Set<String> codes = new HashSet<>();
+        for (long i = 0; i < 20_000; i++) {
+            String code = allocator.encode(i);
+            assertEquals(7, code.length());
+            assertTrue(code.matches("[A-Za-z0-9]+"));
+            assertTrue(codes.add(code));
+        }
+        String a = allocator.encode(1000);
+        String b = allocator.encode(1001);
+        assertNotEquals(a.substring(0, 6), b.substring(0, 6));
+        assertNotEquals(a, new UidAllocator(sequenceMapper, 7, 100, "other").encode(1000));
+    }
+
+    @Test
+    void missingSecretIsRejected() {
+        assertThrows(IllegalStateException.class, () -> new UidAllocator(sequenceMapper, 7, 100, ""));
+        assertThrows(IllegalStateException.class, () -> new UidAllocator(sequenceMapper, 7, 100, null));
+    }
+
+    @Test
+    void codesGrowOnceLengthIsExhausted() {
+        UidAllocator allocator = new UidAllocator(sequenceMapper, 6, 100, "test");
+        long sixCharSpace = 62L * 62 * 62 * 62 * 62 * 62;
+        assertEquals(6, allocator.encode(sixCharSpace - 1).length());
+        assertEquals(7, allocator.encode(sixCharSpace).length());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void blocksAreReservedWithCompareAndSet() {
+        UidAllocator allocator = new UidAllocator(sequenceMapper, 7, 2, "test");
+        when(sequenceMapper.selectById(UidAllocator.SEQUENCE)).thenReturn(sequence(100), sequence(200));
+        // 第一次条件更新输给了另一个节点
+        when(sequenceMapper.update(isNull(), any())).thenReturn(0, 1);
+
+        List<String> uids = allocator.next(2);
+
+        assertEquals(List.of(allocator.encode(200), allocator.encode(201)), uids);
+        verify(sequenceMapper, times(2)).selectById(UidAllocator.SEQUENCE);
+        verify(sequenceMapper, times(2)).update(isNull(), any());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void missingSequenceRowIsCreated() {
+        UidAllocator allocator = new UidAllocator(sequenceMapper, 7, 10, "test");
+        when(sequenceMapper.selectById(UidAllocator.SEQUENCE)).thenReturn(null, sequence(0));
+        when(sequenceMapper.update(isNull(), any())).thenReturn(1);
+
+        assertEquals(allocator.encode(0), allocator.next());
+        verify(sequenceMapper).insert(any(TlkSequence.class));
+    }
+}
@@ -0,0 +1,155 @@
+package com.yuz.toplinks.service;
+
+import com.yuz.toplinks.entity.TlkFile;
+import com.yuz.toplinks.mapper.TlkFileMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * 验证异步上传：本地暂存后由后台推送到 R2，成功后更新记录并清理暂存，失败时退避重试。
+ */
+@ExtendWith(MockitoExtension.class)
+class UploadReplicationServiceTest {
+
+    @TempDir
+    Path uploadDir;
+
+    @Mock
+    private TlkFileMapper fileMapper;
+
+    @Mock
+    private CloudflareStorageService storageService;
+
+    @Mock
+    private CacheManager cacheManager;
+
+    @Mock
+    private Cache cache;
+
+    private UploadReplicationService replicationService;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        when(storageService.isR2Enabled()).thenReturn(true);
+        replicationService = new UploadReplicationService(fileMapper, storageService,
+                new FileStorageService(uploadDir.toString()), cacheManager, null,
+                true, 1, 10, 3, 100, 0);
+    }
+
+    @AfterEach
+    void tearDown() {
+        replicationService.shutdown();
+    }
+
+    @Test
+    void spooledFileIsPushedAndRecordUpdated() throws IOException {
+        when(storageService.upload(anyString(), any(), anyLong(), anyString())).thenReturn("https://pub/files/abc123.txt");
+        when(fileMapper.update(any(), any())).thenReturn(1);
+        when(cacheManager.getCache("fileByUid")).thenReturn(cache);
+
+        String localUrl = replicationService.spool("files/abc123.txt", new ByteArrayInputStream("hi".getBytes()));
+        assertEquals("/files/abc123.txt", localUrl);
+        assertTrue(Files.exists(uploadDir.resolve("abc123.txt")));
+
+        replicationService.submit(pendingFile());
+
+        verify(storageService, timeout(2000)).upload(eq("files/abc123.txt"), any(), eq(2L), eq("text/plain"));
+        verify(cache, timeout(2000)).evict("abc123");
+        verify(fileMapper).update(any(), any());
+        await(() -> !Files.exists(uploadDir.resolve("abc123.txt")));
+    }
+
+    @Test
+    void failedPushIsRetriedWithBackoff() throws IOException {
+        when(storageService.upload(anyString(), any(), anyLong(), anyString()))
+                .thenThrow(new IOException("network down"))
+                .thenReturn("https://pub/files/abc123.txt");
+        when(fileMapper.update(any(), any())).thenReturn(1);
+
+        replicationService.spool("files/abc123.txt", new ByteArrayInputStream("hi".getBytes()));
+        replicationService.submit(pendingFile());
+
+        verify(storageService, timeout(3000).times(2)).upload(eq("files/abc123.txt"), any(), anyLong(), anyString());
+        verify(fileMapper, timeout(2000)).update(any(), any());
+    }
+
+    @Test
+    void disabledWhenR2IsNotConfigured() throws IOException {
+        when(storageService.isR2Enabled()).thenReturn(false);
+        UploadReplicationService disabled = new UploadReplicationService(fileMapper, storageService,
+                new FileStorageService(uploadDir.toString()), cacheManager, null, true, 1, 10, 3, 100, 0);
+        assertFalse(disabled.isEnabled());
+    }
+
+    @Test
+    void pendingFileReadsFallBackOnlyOnceSynced() throws IOException {
+        FileService fileService = new FileServiceBuilder()
+                .fileMapper(fileMapper)
+                .storageService(storageService)
+                .replicationService(replicationService)
+                .build();
+        TlkFile file = pendingFile();
+
+        replicationService.spool(file.getPath(), new ByteArrayInputStream("hi".getBytes()));
+        try (java.io.InputStream in = fileService.openStream(file)) {
+            assertEquals("hi", new String(in.readAllBytes()));
+        }
+
+        // 暂存不在本节点，记录仍未同步：存储中还没有对象
+        replicationService.discardSpool(file.getPath());
+        when(fileMapper.selectById("id-1")).thenReturn(pendingFile());
+        assertThrows(StoragePendingException.class, () -> fileService.openStream(file));
+        assertThrows(StoragePendingException.class, () -> fileService.openRange(file, 0, 0));
+
+        // 推送刚刚完成，传入的是缓存中的旧记录：读取存储
+        TlkFile synced = pendingFile();
+        synced.setStorageStatus(TlkFile.STORAGE_SYNCED);
+        when(fileMapper.selectById("id-1")).thenReturn(synced);
+        when(storageService.getInputStream("files/abc123.txt")).thenReturn(new ByteArrayInputStream("hi".getBytes()));
+        try (java.io.InputStream in = fileService.openStream(file)) {
+            assertEquals("hi", new String(in.readAllBytes()));
+        }
+    }
+
+    private static TlkFile pendingFile() {
+        TlkFile file = new TlkFile();
+        file.setId("id-1");
+        file.setUid("abc123");
+        file.setName("note.txt");
+        file.setPath("files/abc123.txt");
+        file.setStorageStatus(TlkFile.STORAGE_PENDING);
+        return file;
+    }
+
+    private static void await(java.util.function.BooleanSupplier condition) {
+        long deadline = System.currentTimeMillis() + 2000;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) fail("condition not met in time");
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+}
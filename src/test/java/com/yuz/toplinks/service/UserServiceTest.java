@@ -8,9 +8,13 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.util.ReflectionTestUtils;
 
 import java.lang.reflect.Method;
+import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
@@ -58,4 +62,23 @@ class UserServiceTest {
         assertThrows(IllegalArgumentException.class,
                 () -> userService.register("existing@example.com", "pass123", null));
     }
+
+    @Test
+    void onlyConfiguredAdminEmailsGetAdminRole() {
+        ReflectionTestUtils.setField(userService, "adminEmails", List.of("ops@example.com", " Root@Example.com"));
+        SysUser admin = new SysUser();
+        admin.setEmail("root@example.com");
+        admin.setPassword("encoded");
+        SysUser user = new SysUser();
+        user.setEmail("someone@example.com");
+        user.setPassword("encoded");
+        when(userMapper.selectOne(any())).thenReturn(admin, user);
+
+        assertEquals(List.of("ROLE_ADMIN"), authorityNames(userService.loadUserByUsername("root@example.com")));
+        assertEquals(List.of(), authorityNames(userService.loadUserByUsername("someone@example.com")));
+    }
+
+    private static List<String> authorityNames(UserDetails details) {
+        return details.getAuthorities().stream().map(GrantedAuthority::getAuthority).toList();
+    }
 }